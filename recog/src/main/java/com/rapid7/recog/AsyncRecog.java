@@ -0,0 +1,257 @@
+package com.rapid7.recog;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Fingerprints inputs asynchronously, so that callers do not block while patterns are evaluated.
+ * Each input is matched against a collection of {@link RecogMatchers} on an {@link Executor}, and
+ * the matches of all of them are returned, in order, through a {@link CompletableFuture}.
+ *
+ * <p>Cancelling a returned future stops the evaluation of its input before the next matcher. Inputs
+ * other than {@link String}s are also read through a view that stops it from within a pattern that
+ * backtracks for a long time; strings are matched as they are, so that they keep the faster string
+ * path, and rely on the {@link RecogMatchers#setMatchBudget(MatchBudget) match budget} for such
+ * patterns. At most {@link #getMaxPending() max pending} inputs are queued or being matched at
+ * once; further inputs are rejected straight away, with a future that fails with
+ * {@link RejectedExecutionException}, rather than piling up. A cancelled input stops counting as
+ * pending straight away, and is removed from the queue of a {@link ThreadPoolExecutor}.
+ *
+ * <p>By default, inputs are matched on virtual threads where the JVM supports them (Java 21 and
+ * later), or else on a pool with one daemon thread per processor. Such an executor is shut down by
+ * {@link #close()}; an executor passed to the constructor is not.
+ */
+public class AsyncRecog implements AutoCloseable {
+
+  /** The maximum number of inputs queued or being matched at once, by default. */
+  public static final int DEFAULT_MAX_PENDING = 1024;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsyncRecog.class);
+
+  private final Collection<RecogMatchers> matchers;
+  private final Executor executor;
+  private final ExecutorService ownedExecutor;
+  private final int maxPending;
+  private final Semaphore pending;
+  private final LongAdder rejectedCount = new LongAdder();
+  private final LongAdder cancelledCount = new LongAdder();
+
+  /**
+   * Creates an instance that matches inputs on virtual threads, if available, or else on a pool
+   * with one thread per processor, with at most {@value #DEFAULT_MAX_PENDING} pending inputs.
+   *
+   * @param matchers The matchers to match inputs against, in order. Must not be {@code null}. The
+   *     collection is read on each match, so it may be a live view such as the one returned by
+   *     {@link com.rapid7.recog.provider.IRecogMatchersProvider#getMatchers(RecogType)}.
+   */
+  public AsyncRecog(Collection<RecogMatchers> matchers) {
+    this(matchers, defaultExecutor(), true, DEFAULT_MAX_PENDING);
+  }
+
+  /**
+   * Creates an instance that matches inputs on the given executor.
+   *
+   * @param matchers The matchers to match inputs against, in order. Must not be {@code null}.
+   * @param executor The executor that matches inputs. Must not be {@code null}.
+   * @param maxPending The maximum number of inputs queued or being matched at once. Must be
+   *     positive.
+   * @throws IllegalArgumentException If {@code maxPending} is not positive.
+   */
+  public AsyncRecog(Collection<RecogMatchers> matchers, Executor executor, int maxPending) {
+    this(matchers, executor, false, maxPending);
+  }
+
+  private AsyncRecog(Collection<RecogMatchers> matchers, Executor executor, boolean owned, int maxPending) {
+    if (maxPending <= 0)
+      throw new IllegalArgumentException("Maximum pending inputs must be positive: " + maxPending);
+    this.matchers = requireNonNull(matchers);
+    this.executor = requireNonNull(executor);
+    this.ownedExecutor = owned ? (ExecutorService) executor : null;
+    this.maxPending = maxPending;
+    this.pending = new Semaphore(maxPending);
+  }
+
+  /**
+   * Finds the matches of an input against all matchers, asynchronously.
+   *
+   * <p>The parameters of the matches of a {@link String} input are extracted when first requested;
+   * those of other inputs are extracted straight away, as by
+   * {@link RecogMatchers#getMatches(CharSequence)}.
+   *
+   * @param input The input to match. May be {@code null}, in which case there are no matches.
+   * @return A future of the matches of the input, in the order of the matchers. Cancelling it
+   *     stops the evaluation. It fails with {@link RejectedExecutionException} if too many inputs
+   *     are pending.
+   */
+  public CompletableFuture<List<RecogMatch>> fingerprintAsync(CharSequence input) {
+    CompletableFuture<List<RecogMatch>> future = new CompletableFuture<>();
+    if (!pending.tryAcquire()) {
+      rejectedCount.increment();
+      future.completeExceptionally(new RejectedExecutionException("Too many pending inputs: " + maxPending));
+      return future;
+    }
+
+    // the input stops counting as pending as soon as its future completes, including when it is
+    // cancelled while queued
+    Runnable task = () -> run(input, future);
+    future.whenComplete((matches, failure) -> {
+      pending.release();
+      if (future.isCancelled()) {
+        cancelledCount.increment();
+        if (executor instanceof ThreadPoolExecutor)
+          ((ThreadPoolExecutor) executor).remove(task);
+      }
+    });
+
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException exception) {
+      rejectedCount.increment();
+      future.completeExceptionally(exception);
+    }
+    return future;
+  }
+
+  /** Returns the maximum number of inputs queued or being matched at once. */
+  public int getMaxPending() {
+    return maxPending;
+  }
+
+  /** Returns the number of inputs queued or being matched. */
+  public int getPendingCount() {
+    return maxPending - pending.availablePermits();
+  }
+
+  /** Returns the number of inputs rejected because too many inputs were pending. */
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  /** Returns the number of inputs whose future was cancelled before they were completely matched. */
+  public long getCancelledCount() {
+    return cancelledCount.sum();
+  }
+
+  /**
+   * Shuts down the default executor, if this instance created it. Inputs already submitted are
+   * still matched.
+   */
+  @Override
+  public void close() {
+    if (ownedExecutor != null)
+      ownedExecutor.shutdown();
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private void run(CharSequence input, CompletableFuture<List<RecogMatch>> future) {
+    try {
+      if (future.isDone())
+        return;
+
+      List<RecogMatch> matches = new ArrayList<>();
+      if (input != null) {
+        CharSequence scanned = input instanceof String ? input : new CancellableCharSequence(input, future);
+        for (RecogMatchers candidates : matchers) {
+          matches.addAll(candidates.getMatchesUntil(scanned, future::isCancelled));
+          if (future.isCancelled())
+            return;
+        }
+      }
+      future.complete(matches);
+    } catch (CancellationException exception) {
+      // the future was cancelled during the evaluation of a pattern
+    } catch (Throwable exception) {
+      future.completeExceptionally(exception);
+    }
+  }
+
+  /**
+   * Returns an executor that starts a virtual thread per input, if the JVM supports them, or else a
+   * pool with one daemon thread per processor. Virtual threads are created through reflection so
+   * that this class still runs on Java 8.
+   */
+  private static ExecutorService defaultExecutor() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException exception) {
+      LOGGER.debug("Virtual threads are not available, matching inputs on a thread pool.");
+    }
+    int threads = Runtime.getRuntime().availableProcessors();
+    AtomicInteger count = new AtomicInteger();
+    ThreadFactory factory = runnable -> {
+      Thread thread = new Thread(runnable, "recog-async-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    // the queue is bounded by the pending inputs
+    return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory);
+  }
+
+  /**
+   * A view of an input that throws {@link CancellationException} once its future is cancelled.
+   * Pattern engines read the input through {@link #charAt(int)}, so this stops an evaluation from
+   * within the engine. The future is only checked every {@value #CHECK_INTERVAL} accesses.
+   */
+  private static final class CancellableCharSequence implements CharSequence {
+
+    /** The number of character accesses between checks of the future. */
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final CharSequence input;
+    private final CompletableFuture<?> future;
+    private int accesses;
+
+    CancellableCharSequence(CharSequence input, CompletableFuture<?> future) {
+      this.input = input;
+      this.future = future;
+    }
+
+    @Override
+    public int length() {
+      return input.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (++accesses == CHECK_INTERVAL) {
+        accesses = 0;
+        if (future.isCancelled())
+          throw new CancellationException();
+      }
+      return input.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      // scan windows are sub-sequences, so they must stay cancellable
+      return new CancellableCharSequence(input.subSequence(start, end), future);
+    }
+
+    @Override
+    public String toString() {
+      return input.toString();
+    }
+  }
+}
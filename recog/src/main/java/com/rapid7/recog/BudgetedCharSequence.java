@@ -0,0 +1,67 @@
+package com.rapid7.recog;
+
+/**
+ * A view of an input that counts accesses to its characters, and throws
+ * {@link MatchBudgetExceededException} once a {@link MatchBudget} is spent. Pattern engines read
+ * the input through {@link #charAt(int)}, so this aborts an evaluation from within the engine. The
+ * clock is only read every {@value #CLOCK_INTERVAL} accesses.
+ *
+ * <p>Instances are used by a single evaluation, and are not thread-safe.
+ */
+final class BudgetedCharSequence implements CharSequence {
+
+  /** The number of character accesses between reads of the clock. */
+  private static final int CLOCK_INTERVAL = 4096;
+
+  private final CharSequence input;
+  private final long maxAccesses;
+  private final long deadline;
+  private final boolean timed;
+  private long accesses;
+
+  /** The number of accesses at which the budget is next checked. */
+  private long nextCheck;
+
+  BudgetedCharSequence(CharSequence input, long maxAccesses, long maxNanos) {
+    this.input = input;
+    this.maxAccesses = maxAccesses == 0 ? Long.MAX_VALUE : maxAccesses;
+    this.timed = maxNanos > 0;
+    this.deadline = timed ? System.nanoTime() + maxNanos : 0;
+    this.nextCheck = Math.min(this.maxAccesses, timed ? CLOCK_INTERVAL : Long.MAX_VALUE);
+  }
+
+  @Override
+  public int length() {
+    return input.length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (++accesses > nextCheck)
+      check();
+    return input.charAt(index);
+  }
+
+  /** Returns the characters of a range, without a budget: engines only use it to copy groups. */
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return input.subSequence(start, end);
+  }
+
+  @Override
+  public String toString() {
+    return input.toString();
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private void check() {
+    if (accesses > maxAccesses)
+      throw new MatchBudgetExceededException("Match budget of " + maxAccesses + " character accesses exceeded");
+    if (timed && System.nanoTime() - deadline > 0)
+      throw new MatchBudgetExceededException("Match budget exceeded after " + accesses + " character accesses");
+    nextCheck = Math.min(maxAccesses, timed ? accesses + CLOCK_INTERVAL : Long.MAX_VALUE);
+  }
+}
@@ -0,0 +1,307 @@
+package com.rapid7.recog;
+
+import com.rapid7.recog.provider.IRecogMatchersProvider;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A stage of a streaming pipeline that fingerprints records, such as scan results, each carrying a
+ * banner and the key of the database to match it against. Each record is matched against the
+ * {@link RecogMatchers} its key names in an {@link IRecogMatchersProvider}, and a
+ * {@link FingerprintResult} is published for it.
+ *
+ * <p>The processor follows the signals and rules of {@code java.util.concurrent.Flow.Processor},
+ * expressed with Java 8 functional types so that it does not depend on Java 9:
+ *
+ * <ul>
+ *   <li>Upstream, it is subscribed with {@link #onSubscribe(LongConsumer, Runnable)}, given the
+ *       functions that request more records and cancel, and receives {@link #onNext(Object)},
+ *       {@link #onError(Throwable)} and {@link #onComplete()}.
+ *   <li>Downstream, a single subscriber registers with
+ *       {@link #subscribe(Consumer, Consumer, Runnable)}, and signals demand with
+ *       {@link #request(long)} or stops with {@link #cancel()}. Downstream signals are serialized.
+ * </ul>
+ *
+ * <p>On Java 9 and later, {@code FlowFingerprintProcessor} adapts a processor to
+ * {@code java.util.concurrent.Flow.Processor}.
+ *
+ * <p>At most {@code parallelism} records are requested from upstream but not yet published, so a
+ * slow subscriber slows the source down instead of results piling up. Records are matched on an
+ * executor, up to {@code parallelism} at a time. In ordered mode, results are published in the
+ * order records were received; otherwise they are published as they are ready, so that one slow
+ * record does not hold up the others.
+ *
+ * @param <T> The type of record.
+ */
+public class FingerprintProcessor<T> {
+
+  private final IRecogMatchersProvider provider;
+  private final RecogType type;
+  private final Function<? super T, String> key;
+  private final Function<? super T, ? extends CharSequence> banner;
+  private final Executor executor;
+  private final int parallelism;
+  private final boolean ordered;
+
+  /** The number of threads in, or waiting to enter, the drain loop. */
+  private final AtomicInteger drainers = new AtomicInteger();
+
+  // guarded by this
+  private LongConsumer upstreamRequest;
+  private Runnable upstreamCancel;
+  private Consumer<? super FingerprintResult<T>> onNext;
+  private Consumer<? super Throwable> onError;
+  private Runnable onComplete;
+  private long demand;
+  private long outstanding;
+  private int inFlight;
+  private long received;
+  private long nextPublished;
+  private final Map<Long, FingerprintResult<T>> orderedResults = new HashMap<>();
+  private final Queue<FingerprintResult<T>> unorderedResults = new ArrayDeque<>();
+  private boolean upstreamDone;
+  private Throwable error;
+  private boolean terminated;
+
+  /**
+   * Creates a processor.
+   *
+   * @param provider The provider of the databases records are matched against. Must not be
+   *     {@code null}.
+   * @param type The type of the databases. Must not be {@code null}.
+   * @param key Returns the name or key of the database to match a record against. Must not be
+   *     {@code null}.
+   * @param banner Returns the banner of a record. Must not be {@code null}.
+   * @param executor The executor that matches records. Must not be {@code null}.
+   * @param parallelism The maximum number of records requested but not yet published. Must be
+   *     positive.
+   * @param ordered {@code true} to publish results in the order records are received,
+   *     {@code false} to publish them as soon as they are ready.
+   * @throws IllegalArgumentException If {@code parallelism} is not positive.
+   */
+  public FingerprintProcessor(IRecogMatchersProvider provider, RecogType type, Function<? super T, String> key,
+      Function<? super T, ? extends CharSequence> banner, Executor executor, int parallelism, boolean ordered) {
+    if (parallelism <= 0)
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    this.provider = requireNonNull(provider);
+    this.type = requireNonNull(type);
+    this.key = requireNonNull(key);
+    this.banner = requireNonNull(banner);
+    this.executor = requireNonNull(executor);
+    this.parallelism = parallelism;
+    this.ordered = ordered;
+  }
+
+  /**
+   * Subscribes the downstream subscriber. Only one subscriber is supported.
+   *
+   * @param onNext Receives each result. Must not be {@code null}.
+   * @param onError Receives the error that terminates the stream. Must not be {@code null}.
+   * @param onComplete Runs when the stream completes. Must not be {@code null}.
+   * @throws IllegalStateException If a subscriber was already subscribed.
+   */
+  public void subscribe(Consumer<? super FingerprintResult<T>> onNext, Consumer<? super Throwable> onError, Runnable onComplete) {
+    synchronized (this) {
+      if (this.onNext != null)
+        throw new IllegalStateException("A subscriber is already subscribed.");
+      this.onNext = requireNonNull(onNext);
+      this.onError = requireNonNull(onError);
+      this.onComplete = requireNonNull(onComplete);
+    }
+    drain();
+  }
+
+  /**
+   * Signals downstream demand for more results.
+   *
+   * @param count The number of results. A non-positive count terminates the stream with an
+   *     {@link IllegalArgumentException}, as with {@code Flow.Subscription.request}.
+   */
+  public void request(long count) {
+    synchronized (this) {
+      if (count <= 0)
+        fail(new IllegalArgumentException("Requested count must be positive: " + count));
+      else
+        demand = demand + count < 0 ? Long.MAX_VALUE : demand + count;
+    }
+    drain();
+  }
+
+  /** Stops publishing results, and cancels the upstream subscription. */
+  public void cancel() {
+    Runnable cancel;
+    synchronized (this) {
+      terminated = true;
+      orderedResults.clear();
+      unorderedResults.clear();
+      cancel = upstreamCancel;
+    }
+    if (cancel != null)
+      cancel.run();
+  }
+
+  /**
+   * Subscribes this processor to its source.
+   *
+   * @param request Requests more records from the source. Must not be {@code null}.
+   * @param cancel Cancels the subscription to the source. Must not be {@code null}.
+   */
+  public void onSubscribe(LongConsumer request, Runnable cancel) {
+    boolean cancelled;
+    synchronized (this) {
+      cancelled = terminated || upstreamRequest != null;
+      if (!cancelled) {
+        upstreamRequest = requireNonNull(request);
+        upstreamCancel = requireNonNull(cancel);
+      }
+    }
+    // a second subscription, or one after cancellation, is cancelled as Flow requires
+    if (cancelled)
+      cancel.run();
+    else
+      drain();
+  }
+
+  /**
+   * Receives a record from the source, and starts matching it.
+   *
+   * @param record The record. Must not be {@code null}.
+   */
+  public void onNext(T record) {
+    requireNonNull(record);
+    long sequence;
+    synchronized (this) {
+      if (terminated || upstreamDone)
+        return;
+      sequence = received++;
+      inFlight++;
+    }
+    CompletableFuture.supplyAsync(() -> fingerprint(record), executor)
+        .whenComplete((result, exception) -> completed(sequence, result, exception));
+  }
+
+  /** Receives the error that terminates the source. Results not yet published are dropped. */
+  public void onError(Throwable throwable) {
+    requireNonNull(throwable);
+    synchronized (this) {
+      upstreamDone = true;
+      fail(throwable);
+    }
+    drain();
+  }
+
+  /** Receives the completion of the source. Results are published before the stream completes. */
+  public void onComplete() {
+    synchronized (this) {
+      upstreamDone = true;
+    }
+    drain();
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private FingerprintResult<T> fingerprint(T record) {
+    CharSequence input = banner.apply(record);
+    RecogMatchers matchers = provider.getMatchers(key.apply(record), type);
+    return new FingerprintResult<>(record, matchers == null || input == null ? Collections.emptyList() : matchers.getMatches(input));
+  }
+
+  private void completed(long sequence, FingerprintResult<T> result, Throwable exception) {
+    synchronized (this) {
+      inFlight--;
+      if (exception != null)
+        fail(exception);
+      else if (!terminated && ordered)
+        orderedResults.put(sequence, result);
+      else if (!terminated)
+        unorderedResults.add(result);
+    }
+    drain();
+  }
+
+  /** Records the first error, to be signalled downstream. Must be called holding the lock. */
+  private void fail(Throwable throwable) {
+    if (error == null && !terminated)
+      error = throwable;
+  }
+
+  /** Returns the next result that may be published, if any. Must be called holding the lock. */
+  private FingerprintResult<T> poll() {
+    if (!ordered)
+      return unorderedResults.poll();
+    FingerprintResult<T> result = orderedResults.remove(nextPublished);
+    if (result != null)
+      nextPublished++;
+    return result;
+  }
+
+  /**
+   * Publishes ready results while there is demand, requests more records from upstream, and
+   * signals termination. Only one thread drains at a time; signals raised meanwhile are picked up
+   * by that thread before it leaves.
+   */
+  private void drain() {
+    if (drainers.getAndIncrement() != 0)
+      return;
+
+    for (int missed = 1; missed != 0; missed = drainers.addAndGet(-missed)) {
+      while (true) {
+        FingerprintResult<T> result;
+        Consumer<? super FingerprintResult<T>> subscriber;
+        synchronized (this) {
+          if (terminated || error != null || onNext == null || demand == 0)
+            break;
+          result = poll();
+          if (result == null)
+            break;
+          demand--;
+          outstanding--;
+          subscriber = onNext;
+        }
+        subscriber.accept(result);
+      }
+
+      Throwable failure = null;
+      Runnable completion = null;
+      Runnable cancel = null;
+      LongConsumer request = null;
+      long count = 0;
+      synchronized (this) {
+        boolean idle = inFlight == 0 && orderedResults.isEmpty() && unorderedResults.isEmpty();
+        if (!terminated && onNext != null && error != null) {
+          terminated = true;
+          failure = error;
+          cancel = upstreamDone ? null : upstreamCancel;
+        } else if (!terminated && onNext != null && upstreamDone && idle) {
+          terminated = true;
+          completion = onComplete;
+        } else if (!terminated && !upstreamDone && upstreamRequest != null && outstanding < parallelism) {
+          count = parallelism - outstanding;
+          outstanding = parallelism;
+          request = upstreamRequest;
+        }
+      }
+      if (failure != null) {
+        if (cancel != null)
+          cancel.run();
+        onError.accept(failure);
+      } else if (completion != null) {
+        completion.run();
+      } else if (request != null) {
+        request.accept(count);
+      }
+    }
+  }
+}
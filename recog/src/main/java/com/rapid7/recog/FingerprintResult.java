@@ -0,0 +1,39 @@
+package com.rapid7.recog;
+
+import java.util.List;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The matches of a record fingerprinted by a {@link FingerprintProcessor}.
+ *
+ * @param <T> The type of record.
+ */
+public final class FingerprintResult<T> {
+
+  private final T record;
+  private final List<RecogMatch> matches;
+
+  public FingerprintResult(T record, List<RecogMatch> matches) {
+    this.record = record;
+    this.matches = requireNonNull(matches);
+  }
+
+  /** Returns the record that was fingerprinted. */
+  public T getRecord() {
+    return record;
+  }
+
+  /**
+   * Returns the matches of the record's banner against the database named by its key.
+   *
+   * @return The matches. Will not be {@code null}, and is empty if the database is not found.
+   */
+  public List<RecogMatch> getMatches() {
+    return matches;
+  }
+
+  @Override
+  public String toString() {
+    return record + " => " + matches.size() + " matches";
+  }
+}
@@ -0,0 +1,131 @@
+package com.rapid7.recog;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A parameter value in the "recog interpolation syntax", such as
+ * {@code cpe:/a:apache:http_server:{service.version}}, parsed into literal segments and the names of
+ * the parameters between them. A template is parsed once, when its value is added to a
+ * {@link RecogMatcher}, and interpolated in a single pass for each match.
+ *
+ * <p>The most recent interpolation is memoized: as long as the parameters referenced have the same
+ * values, for example the same version for a CPE, the same string is returned without building it
+ * again.
+ */
+final class InterpolationTemplate implements Serializable {
+
+  private final String text;
+  private final String[] literals;
+  private final String[] names;
+
+  /** The arguments and result of the most recent interpolation. */
+  private transient volatile Memo memo;
+
+  private static final class Memo {
+    private final String[] arguments;
+    private final String result;
+
+    Memo(String[] arguments, String result) {
+      this.arguments = arguments;
+      this.result = result;
+    }
+  }
+
+  private InterpolationTemplate(String text, String[] literals, String[] names) {
+    this.text = text;
+    this.literals = literals;
+    this.names = names;
+  }
+
+  /**
+   * Parses a template. A placeholder is a parameter name between braces; the name cannot contain
+   * braces itself.
+   *
+   * @param text The template. Must not be {@code null}.
+   * @return The template. Will not be {@code null}.
+   */
+  static InterpolationTemplate parse(String text) {
+    List<String> literals = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    int position = 0;
+    int open = text.indexOf('{');
+    while (open >= 0) {
+      int close = open + 1;
+      while (close < text.length() && text.charAt(close) != '}' && text.charAt(close) != '{')
+        close++;
+      if (close == text.length())
+        break;
+      if (text.charAt(close) == '{') {
+        // not a placeholder, but the brace found may open one
+        open = close;
+        continue;
+      }
+
+      literals.add(text.substring(position, open));
+      names.add(text.substring(open + 1, close));
+      position = close + 1;
+      open = text.indexOf('{', position);
+    }
+    literals.add(text.substring(position));
+    return new InterpolationTemplate(text, literals.toArray(new String[0]), names.toArray(new String[0]));
+  }
+
+  /** Returns whether the template has any placeholders. */
+  boolean hasPlaceholders() {
+    return names.length > 0;
+  }
+
+  /**
+   * Interpolates the template.
+   *
+   * @param arguments Returns the value to replace the placeholder with the given parameter name,
+   *     or {@code null} to leave the placeholder unchanged. Must not be {@code null}.
+   * @return The interpolated string. Will not be {@code null}.
+   */
+  String interpolate(Function<String, String> arguments) {
+    Memo memo = this.memo;
+    if (memo != null && isSame(memo.arguments, arguments))
+      return memo.result;
+
+    String[] values = new String[names.length];
+    StringBuilder result = new StringBuilder(text.length() + 16).append(literals[0]);
+    for (int i = 0; i < names.length; i++) {
+      values[i] = arguments.apply(names[i]);
+      if (values[i] == null)
+        result.append('{').append(names[i]).append('}');
+      else
+        result.append(values[i]);
+      result.append(literals[i + 1]);
+    }
+
+    String interpolated = result.toString();
+    this.memo = new Memo(values, interpolated);
+    return interpolated;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof InterpolationTemplate && text.equals(((InterpolationTemplate) other).text);
+  }
+
+  @Override
+  public int hashCode() {
+    return text.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  private boolean isSame(String[] previous, Function<String, String> arguments) {
+    for (int i = 0; i < names.length; i++)
+      if (!Objects.equals(previous[i], arguments.apply(names[i])))
+        return false;
+    return true;
+  }
+}
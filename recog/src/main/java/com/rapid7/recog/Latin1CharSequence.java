@@ -0,0 +1,106 @@
+package com.rapid7.recog;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A read-only {@link CharSequence} view of bytes decoded as ISO-8859-1 (Latin-1), of which ASCII is
+ * a subset: each byte is one character. Banners received in a {@code byte[]} or a {@link ByteBuffer},
+ * heap or direct, can be matched through this view without being decoded into a {@link String};
+ * only {@link #toString()}, for example for the values of captured groups, copies characters.
+ *
+ * <p>The view reads the underlying bytes on each access, so it must not be used after they change,
+ * for instance when the buffer is reused for the next read. Instances are not thread-safe if the
+ * bytes are modified concurrently.
+ */
+public final class Latin1CharSequence implements CharSequence {
+
+  /** The backing array, or {@code null} if backed by a buffer without an accessible array. */
+  private final byte[] array;
+  private final ByteBuffer buffer;
+  private final int offset;
+  private final int length;
+
+  private Latin1CharSequence(byte[] array, ByteBuffer buffer, int offset, int length) {
+    this.array = array;
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * Returns a view of an array.
+   *
+   * @param bytes The bytes. Must not be {@code null}.
+   * @return The view. Will not be {@code null}.
+   */
+  public static Latin1CharSequence of(byte[] bytes) {
+    return of(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Returns a view of a range of an array.
+   *
+   * @param bytes The bytes. Must not be {@code null}.
+   * @param offset The index of the first byte of the range.
+   * @param length The number of bytes in the range.
+   * @return The view. Will not be {@code null}.
+   * @throws IndexOutOfBoundsException If the range is not within the array.
+   */
+  public static Latin1CharSequence of(byte[] bytes, int offset, int length) {
+    checkRange(offset, length, requireNonNull(bytes).length);
+    return new Latin1CharSequence(bytes, null, offset, length);
+  }
+
+  /**
+   * Returns a view of the remaining bytes of a buffer, between its position and its limit. The
+   * position of the buffer is not changed.
+   *
+   * @param buffer The buffer, which may be direct. Must not be {@code null}.
+   * @return The view. Will not be {@code null}.
+   */
+  public static Latin1CharSequence of(ByteBuffer buffer) {
+    if (buffer.hasArray())
+      return new Latin1CharSequence(buffer.array(), null, buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    return new Latin1CharSequence(null, buffer, buffer.position(), buffer.remaining());
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length)
+      throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+    return (char) ((array != null ? array[offset + index] : buffer.get(offset + index)) & 0xFF);
+  }
+
+  @Override
+  public Latin1CharSequence subSequence(int start, int end) {
+    checkRange(start, end - start, length);
+    return new Latin1CharSequence(array, buffer, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    if (array != null)
+      return new String(array, offset, length, StandardCharsets.ISO_8859_1);
+
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++)
+      bytes[i] = buffer.get(offset + i);
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private static void checkRange(int offset, int length, int size) {
+    if (offset < 0 || length < 0 || offset > size - length)
+      throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + size);
+  }
+}
@@ -0,0 +1,81 @@
+package com.rapid7.recog;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.StringJoiner;
+
+/**
+ * A limit on the work spent evaluating one pattern against one input, to stop patterns that
+ * backtrack catastrophically. The work is measured in accesses to the characters of the input,
+ * which grow with the number of backtracking steps, and optionally in wall time. Evaluations that
+ * go over budget throw {@link MatchBudgetExceededException}.
+ *
+ * <p>Patterns evaluated by finite automata run in linear time, and are not limited.
+ */
+public final class MatchBudget implements Serializable {
+
+  private final long maxCharAccesses;
+  private final long maxNanos;
+
+  /**
+   * Creates a budget.
+   *
+   * @param maxCharAccesses The maximum number of character accesses, or 0 for no limit.
+   * @param maxTime The maximum wall time. May be {@code null} for no limit.
+   * @throws IllegalArgumentException If the number of accesses or the time are negative, or if
+   *     neither is limited.
+   */
+  public MatchBudget(long maxCharAccesses, Duration maxTime) {
+    if (maxCharAccesses < 0)
+      throw new IllegalArgumentException("Maximum character accesses must not be negative: " + maxCharAccesses);
+    if (maxTime != null && maxTime.isNegative())
+      throw new IllegalArgumentException("Maximum time must not be negative: " + maxTime);
+    if (maxCharAccesses == 0 && (maxTime == null || maxTime.isZero()))
+      throw new IllegalArgumentException("A match budget must limit character accesses or time.");
+    this.maxCharAccesses = maxCharAccesses;
+    this.maxNanos = maxTime == null ? 0 : maxTime.toNanos();
+  }
+
+  /** Returns the maximum number of character accesses, or 0 if not limited. */
+  public long getMaxCharAccesses() {
+    return maxCharAccesses;
+  }
+
+  /** Returns the maximum wall time, or {@code null} if not limited. */
+  public Duration getMaxTime() {
+    return maxNanos == 0 ? null : Duration.ofNanos(maxNanos);
+  }
+
+  /**
+   * Returns a view of an input that throws {@link MatchBudgetExceededException} from
+   * {@link CharSequence#charAt(int)} once this budget is spent. Each view has its own budget, which
+   * starts when the view is created.
+   *
+   * @param input The input. Must not be {@code null}.
+   * @return The view. Will not be {@code null}.
+   */
+  CharSequence apply(CharSequence input) {
+    return new BudgetedCharSequence(input, maxCharAccesses, maxNanos);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof MatchBudget))
+      return false;
+    MatchBudget that = (MatchBudget) other;
+    return maxCharAccesses == that.maxCharAccesses && maxNanos == that.maxNanos;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(maxCharAccesses) * 31 + Long.hashCode(maxNanos);
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", MatchBudget.class.getSimpleName() + "[", "]")
+        .add("Max Char Accesses=" + maxCharAccesses)
+        .add("Max Time=" + getMaxTime())
+        .toString();
+  }
+}
@@ -0,0 +1,12 @@
+package com.rapid7.recog;
+
+/**
+ * Thrown when evaluating a pattern goes over its {@link MatchBudget}. The evaluation is abandoned,
+ * so whether the pattern matches the input is unknown.
+ */
+public class MatchBudgetExceededException extends RuntimeException {
+
+  public MatchBudgetExceededException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,184 @@
+package com.rapid7.recog;
+
+import com.rapid7.recog.pattern.RecogPatternMatchResult;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * The parameters a {@link RecogMatcher} produces, laid out in slots shared by all of its matches.
+ * Constant values are stored once, here; each match only stores the slots that vary between
+ * matches, that is the captured parameters and the interpolated templates, in a
+ * {@link ParameterMap}.
+ *
+ * <p>Slots {@code [0, dynamicCount)} vary between matches; the remaining slots hold constants.
+ * Instances are immutable, and rebuilt by the matcher whenever its parameters change.
+ */
+final class ParameterLayout {
+
+  /** The value of a dynamic slot absent from a match, distinct from a {@code null} value. */
+  static final Object ABSENT = new Object();
+
+  private final String[] keys;
+  private final Map<String, Integer> slots;
+  private final int dynamicCount;
+  private final Object[] defaults;
+  private final String[] constants;
+  private final int[] positionalSlots;
+  private final int[] positionalGroups;
+  private final int[] namedSlots;
+  private final String[] namedGroups;
+  private final InterpolationTemplate[] templates;
+
+  /** Whether each dynamic slot holds a template, or {@code null} if none does. */
+  private final boolean[] templateSlots;
+
+  private ParameterLayout(List<String> keys, int dynamicCount, Map<String, String> values,
+      Map<String, InterpolationTemplate> templates, Map<String, Integer> positionalParameters,
+      Collection<String> namedParameters) {
+    this.keys = keys.toArray(new String[0]);
+    this.slots = new HashMap<>();
+    for (int slot = 0; slot < this.keys.length; slot++)
+      slots.put(this.keys[slot], slot);
+
+    this.dynamicCount = dynamicCount;
+    this.defaults = new Object[dynamicCount];
+    this.templates = new InterpolationTemplate[dynamicCount];
+    this.templateSlots = templates.isEmpty() ? null : new boolean[dynamicCount];
+    for (int slot = 0; slot < dynamicCount; slot++) {
+      defaults[slot] = values.containsKey(this.keys[slot]) ? values.get(this.keys[slot]) : ABSENT;
+      this.templates[slot] = templates.get(this.keys[slot]);
+      if (this.templates[slot] != null)
+        templateSlots[slot] = true;
+    }
+    this.constants = new String[this.keys.length - dynamicCount];
+    for (int slot = dynamicCount; slot < this.keys.length; slot++)
+      constants[slot - dynamicCount] = values.get(this.keys[slot]);
+
+    this.positionalSlots = new int[positionalParameters.size()];
+    this.positionalGroups = new int[positionalParameters.size()];
+    int index = 0;
+    for (Entry<String, Integer> parameter : positionalParameters.entrySet()) {
+      positionalSlots[index] = slots.get(parameter.getKey());
+      positionalGroups[index++] = parameter.getValue();
+    }
+    this.namedSlots = new int[namedParameters.size()];
+    this.namedGroups = namedParameters.toArray(new String[0]);
+    for (index = 0; index < namedGroups.length; index++)
+      namedSlots[index] = slots.get(namedGroups[index]);
+  }
+
+  /**
+   * Lays out the parameters of a matcher.
+   *
+   * @param values The constant values, including templates, by name.
+   * @param templates The values with placeholders, by name.
+   * @param positionalParameters The group index of each positional parameter, by name.
+   * @param namedParameters The names of the named parameters.
+   * @return The layout. Will not be {@code null}.
+   */
+  static ParameterLayout of(Map<String, String> values, Map<String, InterpolationTemplate> templates,
+      Map<String, Integer> positionalParameters, Set<String> namedParameters) {
+    Set<String> dynamic = new LinkedHashSet<>(positionalParameters.keySet());
+    dynamic.addAll(namedParameters);
+    dynamic.addAll(templates.keySet());
+
+    List<String> keys = new ArrayList<>(dynamic);
+    for (String name : values.keySet())
+      if (!dynamic.contains(name))
+        keys.add(name);
+    return new ParameterLayout(keys, dynamic.size(), values, templates, positionalParameters, namedParameters);
+  }
+
+  /**
+   * Extracts the parameters of a match: constant values, captured groups and interpolated
+   * templates.
+   *
+   * @param result The match. Must not be {@code null}.
+   * @return The parameters. Will not be {@code null}.
+   */
+  ParameterMap extract(RecogPatternMatchResult result) {
+    Object[] values = defaults.clone();
+    boolean[] pending = templateSlots == null ? null : templateSlots.clone();
+
+    // parse positional parameters for the groups specified
+    for (int index = 0; index < positionalSlots.length; index++)
+      if (positionalGroups[index] <= result.groupCount())
+        capture(values, pending, positionalSlots[index], result.group(positionalGroups[index]));
+
+    for (int index = 0; index < namedSlots.length; index++) {
+      try {
+        capture(values, pending, namedSlots[index], result.group(namedGroups[index]));
+      } catch (IllegalArgumentException exception) {
+        // the group with the name doesn't exist, ignore it
+      }
+    }
+
+    if (pending != null)
+      for (int slot = 0; slot < dynamicCount; slot++)
+        resolve(slot, values, pending);
+    return new ParameterMap(this, values);
+  }
+
+  int size() {
+    return keys.length;
+  }
+
+  String getKey(int slot) {
+    return keys[slot];
+  }
+
+  /** Returns the slot of a parameter, or -1 if the matcher has no such parameter. */
+  int getSlot(Object key) {
+    Integer slot = slots.get(key);
+    return slot == null ? -1 : slot;
+  }
+
+  /** Returns the value of a slot in a match, or {@link #ABSENT}. */
+  Object getValue(Object[] values, int slot) {
+    return slot < dynamicCount ? values[slot] : constants[slot - dynamicCount];
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private static void capture(Object[] values, boolean[] pending, int slot, String value) {
+    values[slot] = value;
+    // a captured value replaces a template with the same name, and is not interpolated itself
+    if (pending != null)
+      pending[slot] = false;
+  }
+
+  /**
+   * Interpolates the template in a slot, if still pending. Templates referencing another template
+   * see its interpolated value.
+   */
+  private void resolve(int slot, Object[] values, boolean[] pending) {
+    // clearing the slot first makes a template that references itself, directly or not, see its
+    // own uninterpolated text rather than recurse
+    if (pending[slot]) {
+      pending[slot] = false;
+      values[slot] = templates[slot].interpolate(name -> argument(name, values, pending));
+    }
+  }
+
+  /** Returns the value to replace a placeholder with, or {@code null} to leave it unchanged. */
+  private String argument(String name, Object[] values, boolean[] pending) {
+    int slot = getSlot(name);
+    if (slot < 0)
+      return null;
+    if (slot < dynamicCount)
+      resolve(slot, values, pending);
+
+    Object value = getValue(values, slot);
+    if (value == ABSENT)
+      return null;
+    return value == null ? "-" : (String) value;
+  }
+}
@@ -0,0 +1,101 @@
+package com.rapid7.recog;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The read-only parameters of a match, backed by the {@link ParameterLayout} of the matcher and an
+ * array of the values that vary between its matches. Iteration follows the order of the slots.
+ */
+final class ParameterMap extends AbstractMap<String, String> implements Serializable {
+
+  private final transient ParameterLayout layout;
+  private final transient Object[] values;
+  private transient int size = -1;
+
+  ParameterMap(ParameterLayout layout, Object[] values) {
+    this.layout = layout;
+    this.values = values;
+  }
+
+  @Override
+  public int size() {
+    if (size < 0) {
+      int count = 0;
+      for (int slot = 0; slot < layout.size(); slot++)
+        if (layout.getValue(values, slot) != ParameterLayout.ABSENT)
+          count++;
+      size = count;
+    }
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    int slot = layout.getSlot(key);
+    return slot >= 0 && layout.getValue(values, slot) != ParameterLayout.ABSENT;
+  }
+
+  @Override
+  public String get(Object key) {
+    int slot = layout.getSlot(key);
+    if (slot < 0)
+      return null;
+    Object value = layout.getValue(values, slot);
+    return value == ParameterLayout.ABSENT ? null : (String) value;
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return new AbstractSet<Entry<String, String>>() {
+      @Override
+      public Iterator<Entry<String, String>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return ParameterMap.this.size();
+      }
+    };
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /** Serializes a copy of the parameters rather than the layout. */
+  private Object writeReplace() {
+    return new HashMap<>(this);
+  }
+
+  private final class EntryIterator implements Iterator<Entry<String, String>> {
+    private int next = advance(0);
+
+    @Override
+    public boolean hasNext() {
+      return next < layout.size();
+    }
+
+    @Override
+    public Entry<String, String> next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      Entry<String, String> entry = new SimpleImmutableEntry<>(layout.getKey(next), (String) layout.getValue(values, next));
+      next = advance(next + 1);
+      return entry;
+    }
+
+    private int advance(int slot) {
+      while (slot < layout.size() && layout.getValue(values, slot) == ParameterLayout.ABSENT)
+        slot++;
+      return slot;
+    }
+  }
+}
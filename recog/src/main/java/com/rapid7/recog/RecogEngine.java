@@ -0,0 +1,200 @@
+package com.rapid7.recog;
+
+import com.rapid7.recog.provider.IRecogMatchersProvider;
+import com.rapid7.recog.provider.ReloadingRecogMatchersProvider;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link Recog} implementation over the databases of an {@link IRecogMatchersProvider}. The
+ * databases are indexed by key, protocol and type, so that an input known to be, say, an SSH banner
+ * is only matched against the databases that apply to it.
+ *
+ * <p>Results are ordered by {@link RecogMatchers#getPreference() preference}, highest first, and
+ * within a database by the order of its matchers. Each {@link RecogMatchResult} refers to the
+ * matcher it came from, and reads examples and parameters only when asked for them.
+ *
+ * <p>The index is rebuilt whenever the {@link IRecogMatchersProvider#getContentGeneration()
+ * generation} of the provider's content changes, such as after a
+ * {@link ReloadingRecogMatchersProvider} reloads its content, and otherwise only by
+ * {@link #refreshContent()}. A type for which the provider returns {@code null} has no databases.
+ */
+public class RecogEngine implements Recog {
+
+  private static final Comparator<RecogMatchers> BY_PREFERENCE = Comparator.comparing(RecogMatchers::getPreference).reversed();
+
+  private final IRecogMatchersProvider provider;
+  private final RecogType[] types;
+
+  /** The current index of databases. */
+  private volatile Routes routes;
+
+  /** The databases of the provider, indexed by key, protocol and type. */
+  private static final class Routes {
+
+    /** The generation of the provider's content the index was built from. */
+    private final long generation;
+    private final List<RecogMatchers> all;
+    private final Map<String, List<RecogMatchers>> byKey;
+    private final Map<String, List<RecogMatchers>> byProtocol;
+    private final Map<String, List<RecogMatchers>> byType;
+
+    Routes(long generation, List<RecogMatchers> all) {
+      this.generation = generation;
+      all.sort(BY_PREFERENCE);
+      this.all = Collections.unmodifiableList(all);
+      this.byKey = index(all, RecogMatchers::getKey);
+      this.byProtocol = index(all, RecogMatchers::getProtocol);
+      this.byType = index(all, RecogMatchers::getType);
+    }
+
+    /** Groups the databases by a property, keeping them in order of preference. */
+    private static Map<String, List<RecogMatchers>> index(List<RecogMatchers> all, Function<RecogMatchers, String> property) {
+      Map<String, List<RecogMatchers>> index = new HashMap<>();
+      for (RecogMatchers matchers : all) {
+        String value = property.apply(matchers);
+        if (value != null)
+          index.computeIfAbsent(value, ignored -> new ArrayList<>()).add(matchers);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * Creates an engine over the databases of all {@link RecogType}s of a provider.
+   *
+   * @param provider The provider of the databases. Must not be {@code null}.
+   */
+  public RecogEngine(IRecogMatchersProvider provider) {
+    this(provider, RecogType.values());
+  }
+
+  /**
+   * Creates an engine over the databases of some {@link RecogType}s of a provider.
+   *
+   * @param provider The provider of the databases. Must not be {@code null}.
+   * @param types The types of databases to use. Must not be {@code null}.
+   */
+  public RecogEngine(IRecogMatchersProvider provider, RecogType... types) {
+    this.provider = requireNonNull(provider);
+    this.types = types.clone();
+    this.routes = routes(provider.getContentGeneration());
+  }
+
+  /**
+   * Matches an input against all databases.
+   *
+   * @param input The input. May be {@code null}, in which case there are no matches.
+   * @return The matches, by descending preference of their database. Will not be {@code null}.
+   */
+  @Override
+  public List<RecogMatchResult> fingerprint(String input) {
+    return fingerprint(input, routes().all);
+  }
+
+  /**
+   * Matches an input against the databases with a key, such as {@code ssh.banner}.
+   *
+   * @param input The input. May be {@code null}, in which case there are no matches.
+   * @param key The key of the databases. Must not be {@code null}.
+   * @return The matches, by descending preference of their database. Will not be {@code null}.
+   */
+  public List<RecogMatchResult> fingerprintByKey(String input, String key) {
+    return fingerprint(input, routes().byKey.get(requireNonNull(key)));
+  }
+
+  /**
+   * Matches an input against the databases for a protocol, such as {@code ssh}.
+   *
+   * @param input The input. May be {@code null}, in which case there are no matches.
+   * @param protocol The protocol of the databases. Must not be {@code null}.
+   * @return The matches, by descending preference of their database. Will not be {@code null}.
+   */
+  public List<RecogMatchResult> fingerprintByProtocol(String input, String protocol) {
+    return fingerprint(input, routes().byProtocol.get(requireNonNull(protocol)));
+  }
+
+  /**
+   * Matches an input against the databases of a type, such as {@code service}.
+   *
+   * @param input The input. May be {@code null}, in which case there are no matches.
+   * @param type The type of the databases. Must not be {@code null}.
+   * @return The matches, by descending preference of their database. Will not be {@code null}.
+   */
+  public List<RecogMatchResult> fingerprintByType(String input, String type) {
+    return fingerprint(input, routes().byType.get(requireNonNull(type)));
+  }
+
+  /**
+   * Returns the databases this engine matches against.
+   *
+   * @return A non-null, immutable list of the databases, by descending preference.
+   */
+  public List<RecogMatchers> getMatchers() {
+    return routes().all;
+  }
+
+  /**
+   * Re-reads the databases of the provider and rebuilds the index. A
+   * {@link ReloadingRecogMatchersProvider} reloads its content first. Fingerprinting in progress
+   * completes against the previous databases.
+   *
+   * @return The version of the content now used, or {@code null} if the provider does not report
+   *     it.
+   */
+  @Override
+  public RecogVersion refreshContent() {
+    RecogVersion version = null;
+    if (provider instanceof ReloadingRecogMatchersProvider)
+      version = ((ReloadingRecogMatchersProvider) provider).reload();
+    routes = routes(provider.getContentGeneration());
+    return version;
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /** Returns the current index, rebuilding it if the provider's content changed. */
+  private Routes routes() {
+    Routes routes = this.routes;
+    long generation = provider.getContentGeneration();
+    if (generation != routes.generation) {
+      routes = routes(generation);
+      this.routes = routes;
+    }
+    return routes;
+  }
+
+  /**
+   * Indexes the databases the provider returns for each type. The generation is read before them,
+   * so content that changes while they are read is indexed again on the next call.
+   */
+  private Routes routes(long generation) {
+    List<RecogMatchers> all = new ArrayList<>();
+    for (RecogType type : types) {
+      Collection<RecogMatchers> matchers = provider.getMatchers(type);
+      if (matchers != null)
+        all.addAll(matchers);
+    }
+    return new Routes(generation, all);
+  }
+
+  private static List<RecogMatchResult> fingerprint(String input, List<RecogMatchers> databases) {
+    if (input == null || databases == null)
+      return Collections.emptyList();
+
+    List<RecogMatchResult> results = new ArrayList<>();
+    for (RecogMatchers matchers : databases)
+      for (RecogMatch match : matchers.getMatches(input))
+        results.add(new RecogMatchResult(matchers, match));
+    return results;
+  }
+}
@@ -1,23 +1,60 @@
 package com.rapid7.recog;
 
+import java.util.Collections;
 import java.util.Map;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * A {@link RecogMatcher} that matched an input, along with the parameters extracted from the input.
+ * Matches found by {@link RecogMatchers} defer the extraction until {@link #getParameters()} is
+ * first called, so that callers inspecting only some of the matches do not pay for the others.
+ */
 public class RecogMatch {
 
   private RecogMatcher matcher;
-  private Map<String, String> parameters;
+  private volatile Map<String, String> parameters;
+
+  /** The input the parameters are extracted from on first access, or {@code null} once extracted. */
+  private String input;
 
   public RecogMatch(RecogMatcher matcher, Map<String, String> parameters) {
     this.matcher = requireNonNull(matcher);
     this.parameters = requireNonNull(parameters);
   }
 
+  private RecogMatch(RecogMatcher matcher, String input) {
+    this.matcher = requireNonNull(matcher);
+    this.input = requireNonNull(input);
+  }
+
+  /**
+   * Creates a match whose parameters are extracted from the input on first access.
+   *
+   * @param matcher The matcher, which must match the input. Must not be {@code null}.
+   * @param input The matched input. Must not be {@code null}.
+   */
+  static RecogMatch deferred(RecogMatcher matcher, String input) {
+    return new RecogMatch(matcher, input);
+  }
+
   public RecogMatcher getMatcher() {
     return matcher;
   }
 
   public Map<String, String> getParameters() {
+    Map<String, String> parameters = this.parameters;
+    if (parameters == null) {
+      synchronized (this) {
+        parameters = this.parameters;
+        if (parameters == null) {
+          parameters = matcher.match(input);
+          if (parameters == null)
+            parameters = Collections.emptyMap();
+          this.parameters = parameters;
+          input = null;
+        }
+      }
+    }
     return parameters;
   }
 }
@@ -1,9 +1,11 @@
 package com.rapid7.recog;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringJoiner;
 import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toSet;
 
 public class RecogMatchResult {
 
@@ -16,6 +18,9 @@ public class RecogMatchResult {
   private Set<String> examples;
   private Map<String, String> matches;
 
+  /** The match this result was created from, which supplies examples and parameters on demand. */
+  private RecogMatch match;
+
   public RecogMatchResult(String key, String type, String protocol, float preference, String description, String pattern, Set<String> examples, Map<String, String> matches) {
     this.key = requireNonNull(key);
     this.type = requireNonNull(type);
@@ -27,6 +32,26 @@ public class RecogMatchResult {
     this.matches = requireNonNull(matches);
   }
 
+  /**
+   * Creates a result for a match from a database. The result shares the matcher's pattern and
+   * description; the example texts and the parameters are only read from the match when first
+   * requested, so creating a result copies nothing.
+   *
+   * @param matchers The database the match was found in. Must not be {@code null}.
+   * @param match The match. Must not be {@code null}.
+   */
+  public RecogMatchResult(RecogMatchers matchers, RecogMatch match) {
+    requireNonNull(matchers);
+    RecogMatcher matcher = requireNonNull(match).getMatcher();
+    this.key = matchers.getKey();
+    this.type = matchers.getType();
+    this.protocol = matchers.getProtocol();
+    this.preference = matchers.getPreference();
+    this.description = matcher.getDescription();
+    this.pattern = matcher.getPattern();
+    this.match = match;
+  }
+
   public String getKey() {
     return key;
   }
@@ -52,11 +77,13 @@ public class RecogMatchResult {
   }
 
   public Set<String> getExamples() {
+    if (examples == null && match != null)
+      examples = Collections.unmodifiableSet(match.getMatcher().getExamples().stream().map(FingerprintExample::getText).collect(toSet()));
     return examples;
   }
 
   public Map<String, String> getMatches() {
-    return matches;
+    return matches != null ? matches : match.getParameters();
   }
 
   @Override
@@ -68,8 +95,8 @@ public class RecogMatchResult {
         .add("Preference=" + preference)
         .add("Description=" + description)
         .add("Pattern=" + pattern)
-        .add("Examples=" + examples)
-        .add("Matches=" + matches)
+        .add("Examples=" + getExamples())
+        .add("Matches=" + getMatches())
         .toString();
   }
 }
@@ -1,8 +1,17 @@
 package com.rapid7.recog;
 
+import com.rapid7.recog.pattern.AutomatonRecogPatternMatcher;
 import com.rapid7.recog.pattern.JavaRegexRecogPatternMatcher;
 import com.rapid7.recog.pattern.RecogPatternMatchResult;
 import com.rapid7.recog.pattern.RecogPatternMatcher;
+import com.rapid7.recog.regex.FirstLineAnchor;
+import com.rapid7.recog.regex.PatternRewriter;
+import com.rapid7.recog.regex.PatternRewriter.Result;
+import com.rapid7.recog.regex.PatternRewriter.Rewrite;
+import com.rapid7.recog.regex.QuickReject;
+import com.rapid7.recog.regex.RegexParser;
+import com.rapid7.recog.regex.RegexTree;
+import com.rapid7.recog.regex.UnsupportedRegexException;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -14,8 +23,11 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.IntUnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.unmodifiableSet;
 import static java.util.Objects.requireNonNull;
@@ -80,6 +92,9 @@ public class RecogMatcher implements Serializable {
   /** "Constant" values always matched as parameters. Key is the name, value is the value. */
   private Map<String, String> values;
 
+  /** The values with placeholders to interpolate (see {@link #interpolate(String, Map)}), by name. */
+  private Map<String, InterpolationTemplate> templates;
+
   /**
    * Positional parameters which are associated to a matching group in the expression. Key is the
    * parameter name, the value is the group position (one-based).
@@ -101,6 +116,34 @@ public class RecogMatcher implements Serializable {
   /** The matcher source data line number. */
   private int line;
 
+  /** A digest of the matcher source data, which changes exactly when the source data does. */
+  private String contentHash;
+
+  /** The layout of the parameters of matches, built on first use and reset when they change. */
+  private transient volatile ParameterLayout parameterLayout;
+
+  /** The quick-reject test and first-line analysis of the pattern, derived on first use. */
+  private transient volatile PatternAnalysis analysis;
+
+  /** The number of evaluations of the pattern that went over a {@link MatchBudget}. */
+  private transient int budgetOverruns;
+
+  /** Whether this matcher is quarantined, after going over budget too many times. */
+  private transient volatile boolean quarantined;
+
+  /** The equivalent matcher evaluated in place of this one once quarantined, if any. */
+  private transient volatile RecogMatcher safeMatcher;
+
+  private static final class PatternAnalysis {
+    private final QuickReject quickReject;
+    private final boolean firstLineAnchored;
+
+    PatternAnalysis(QuickReject quickReject, boolean firstLineAnchored) {
+      this.quickReject = quickReject;
+      this.firstLineAnchored = firstLineAnchored;
+    }
+  }
+
   /**
    * Creates a new RecogMatcher using a {@link JavaRegexRecogPatternMatcher} to
    * match fingerprint values.
@@ -119,6 +162,7 @@ public class RecogMatcher implements Serializable {
   public RecogMatcher(RecogPatternMatcher matcher) {
     this.matcher = matcher;
     values = new HashMap<>();
+    templates = new HashMap<>();
     positionalParameters = new LinkedHashMap<>();
     namedParameters = new HashSet<>();
     examples = new LinkedHashSet<>();
@@ -154,6 +198,39 @@ public class RecogMatcher implements Serializable {
     this.line = line;
   }
 
+  /**
+   * Returns a copy of this matcher at another line of the source data. The copy shares the pattern
+   * matcher and the state derived from the pattern with this matcher, including its quarantine, so
+   * moved source data need not be analyzed again; this matcher is left unchanged.
+   *
+   * @param line The line of the copy.
+   * @return The copy. Will not be {@code null}.
+   */
+  public synchronized RecogMatcher withLine(int line) {
+    RecogMatcher copy = withPatternMatcher(matcher, IntUnaryOperator.identity());
+    copy.line = line;
+    copy.parameterLayout = parameterLayout;
+    copy.analysis = analysis;
+    copy.budgetOverruns = budgetOverruns;
+    copy.quarantined = quarantined;
+    copy.safeMatcher = safeMatcher;
+    return copy;
+  }
+
+  /**
+   * Returns a digest of the source data of the matcher, such as its {@code <fingerprint>} element,
+   * so that reloaded content can tell unchanged matchers from changed ones.
+   *
+   * @return The digest, or {@code null} if the matcher was not parsed from source data.
+   */
+  public String getContentHash() {
+    return contentHash;
+  }
+
+  public void setContentHash(String contentHash) {
+    this.contentHash = contentHash;
+  }
+
   /**
    * Adds an example to this matcher.
    *
@@ -189,12 +266,44 @@ public class RecogMatcher implements Serializable {
    *         pattern.
    */
   public boolean matches(String input) {
+    return matches((CharSequence) input);
+  }
+
+  /**
+   * Returns whether this matcher matches the specified input, which need not be a {@link String}.
+   * See {@link #matches(String)}.
+   *
+   * @param input The fingerprint to test this matcher against. May be {@code null}.
+   * @return {@code true} if the input is non-{@code null} and matches the fingerprint matcher
+   *         pattern.
+   */
+  public boolean matches(CharSequence input) {
     if (input == null)
       return false;
     else
       return matcher.matches(input);
   }
 
+  /**
+   * Returns whether this matcher matches an input, abandoning the evaluation if it goes over a
+   * budget. Inputs the pattern matcher evaluates in linear time (see
+   * {@link RecogPatternMatcher#evaluatesInLinearTime(CharSequence)}), such as those the automata
+   * of the {@value AutomatonRecogPatternMatcher#ENGINE} engine evaluate, are evaluated without a
+   * budget.
+   *
+   * @param input The fingerprint to test this matcher against. May be {@code null}.
+   * @param budget The budget. May be {@code null} for no limit.
+   * @return {@code true} if the input is non-{@code null} and matches the fingerprint matcher
+   *         pattern.
+   * @throws MatchBudgetExceededException If the evaluation went over budget.
+   */
+  public boolean matches(CharSequence input, MatchBudget budget) {
+    if (input == null || budget == null || matcher.evaluatesInLinearTime(input))
+      return matches(input);
+    else
+      return matcher.matches(budget.apply(input));
+  }
+
   /**
    * Returns the matched parameter names and values for the fingerprint input. If the matcher
    * matches, all values, matching positional groups, and matching named groups will be returned in
@@ -203,34 +312,36 @@ public class RecogMatcher implements Serializable {
    * {@code true}.
    *
    * @param input The fingerprint to match. May be {@code null}.
-   * @return {@code null} if the input does not match the pattern, otherwise a non-{@code null}
-   *         {@link Map} of parameter name and values (may be empty).
+   * @return {@code null} if the input does not match the pattern, otherwise a non-{@code null},
+   *         read-only {@link Map} of parameter name and values (may be empty). Constant values are
+   *         shared between the maps returned for this matcher.
    */
   public Map<String, String> match(String input) {
+    return match((CharSequence) input);
+  }
+
+  /**
+   * Returns the matched parameter names and values for an input which need not be a
+   * {@link String}, such as a {@link Latin1CharSequence} over a network buffer. See
+   * {@link #match(String)}. Only the captured values are copied out of the input.
+   *
+   * @param input The fingerprint to match. May be {@code null}.
+   * @return {@code null} if the input does not match the pattern, otherwise a non-{@code null},
+   *         read-only {@link Map} of parameter name and values (may be empty).
+   */
+  public Map<String, String> match(CharSequence input) {
     if (input == null)
       return null;
 
     RecogPatternMatchResult result = matcher.match(input);
-    if (result != null) {
-      Map<String, String> values = new HashMap<>();
-      values.putAll(this.values);
-
-      // parse positional parameters for the groups specified
-      for (Entry<String, Integer> parameter : positionalParameters.entrySet())
-        if (parameter.getValue() <= result.groupCount())
-          values.put(parameter.getKey(), result.group(parameter.getValue()));
-
-      for (String parameter : namedParameters) {
-        try {
-          values.put(parameter, result.group(parameter));
-        } catch (IllegalArgumentException exception) {
-          // the group with the name doesn't exist, ignore it
-        }
-      }
-
-      return interpolate(null, values);
-    } else
+    if (result == null)
       return null;
+
+    try {
+      return getParameterLayout().extract(result);
+    } finally {
+      result.release();
+    }
   }
 
   public void verifyExamples(BiConsumer<VerifyStatus, String> consumer) {
@@ -306,7 +417,9 @@ public class RecogMatcher implements Serializable {
 
   /**
    * Adds a constant parameter value with the given name. If the matcher matches, this key-value
-   * pair is guaranteed to be returned in the result of {@link #match(String)}.
+   * pair is guaranteed to be returned in the result of {@link #match(String)}. Placeholders in the
+   * value, such as {@code {service.version}}, are replaced by the values of the parameters they
+   * name (see {@link #interpolate(String, Map)}); the value is parsed for placeholders only once.
    *
    * @param name The name of the value to add to the match. Must not be {@code null}.
    * @param value The value to add. May be {@code null}.
@@ -314,6 +427,12 @@ public class RecogMatcher implements Serializable {
    */
   public RecogMatcher addValue(String name, String value) {
     values.put(requireNonNull(name), value);
+    InterpolationTemplate template = value == null ? null : InterpolationTemplate.parse(value);
+    if (template != null && template.hasPlaceholders())
+      templates.put(name, template);
+    else
+      templates.remove(name);
+    parameterLayout = null;
     return this;
   }
 
@@ -333,6 +452,7 @@ public class RecogMatcher implements Serializable {
       throw new IllegalArgumentException("The value '" + group + "' must be a positive integer.");
     
     positionalParameters.put(requireNonNull(name), group);
+    parameterLayout = null;
     return this;
   }
 
@@ -347,6 +467,7 @@ public class RecogMatcher implements Serializable {
    */
   public RecogMatcher addParam(String name) {
     namedParameters.add(requireNonNull(name));
+    parameterLayout = null;
     return this;
   }
 
@@ -354,6 +475,100 @@ public class RecogMatcher implements Serializable {
     return matcher.getPattern();
   }
 
+  /**
+   * Returns the {@link Pattern} flags the pattern of this matcher is compiled with.
+   */
+  public int getFlags() {
+    return matcher.getFlags();
+  }
+
+  /** Returns the {@link RecogPatternMatcher} that evaluates the pattern of this matcher. */
+  public RecogPatternMatcher getPatternMatcher() {
+    return matcher;
+  }
+
+  /**
+   * Returns the test that rules out inputs the pattern of this matcher cannot match, without
+   * evaluating the pattern. Patterns that cannot be analyzed, or whose matcher does not have
+   * {@link Pattern} semantics, yield {@link QuickReject#NONE}.
+   *
+   * @return The test. Will not be {@code null}.
+   */
+  public QuickReject getQuickReject() {
+    return getAnalysis().quickReject;
+  }
+
+  /**
+   * Returns whether the pattern of this matcher is anchored at the start of the input and can only
+   * match within its first line, so that it matches an input exactly when it matches the text
+   * before the first {@code '\n'}. Patterns that cannot be analyzed yield {@code false}.
+   *
+   * @see FirstLineAnchor
+   */
+  public boolean isFirstLineAnchored() {
+    return getAnalysis().firstLineAnchored;
+  }
+
+  /** Returns the number of evaluations of this matcher by {@link RecogMatchers} that went over budget. */
+  public synchronized int getBudgetOverruns() {
+    return budgetOverruns;
+  }
+
+  /**
+   * Returns whether this matcher has been quarantined by {@link RecogMatchers} after going over
+   * its {@link MatchBudget} too many times. Quarantined matchers are evaluated by the
+   * {@value AutomatonRecogPatternMatcher#ENGINE} engine instead, or skipped if it cannot evaluate
+   * the pattern.
+   */
+  public boolean isQuarantined() {
+    return quarantined;
+  }
+
+  /**
+   * Returns an equivalent matcher whose pattern is rewritten to be cheaper for a backtracking engine
+   * to evaluate: capturing groups no parameter uses become non-capturing, repetitions that can
+   * never give characters back become possessive, and text common to all alternatives is factored
+   * out of alternations (see {@link PatternRewriter}). Each rewrite is kept only if the matcher
+   * extracts the same parameters from every example as this one, so matchers without examples are
+   * not rewritten, and neither are matchers whose engine has no java.util.regex semantics.
+   * Rewritten patterns are compiled with the flags of this one.
+   *
+   * @param factory Creates the pattern matcher for a rewritten pattern and its {@link Pattern}
+   *     flags. Must not be {@code null}.
+   * @return The rewritten matcher, or this matcher if no rewrite applies.
+   */
+  public RecogMatcher optimize(BiFunction<String, Integer, RecogPatternMatcher> factory) {
+    if (examples.isEmpty() || matcher.getPattern() == null || !matcher.hasRegexSemantics())
+      return this;
+
+    int flags = getFlags();
+    RecogMatcher optimized = this;
+    for (Rewrite rewrite : Rewrite.values()) {
+      try {
+        RegexTree tree = RegexParser.parse(optimized.getPattern(), flags);
+        Result result = PatternRewriter.rewrite(tree, rewrite, new HashSet<>(optimized.positionalParameters.values()), namedParameters);
+        if (result.getPattern().equals(tree.getPattern()))
+          continue;
+
+        RecogMatcher candidate = optimized.withPatternMatcher(factory.apply(result.getPattern(), flags), result::getGroup);
+        if (hasSameMatches(candidate))
+          optimized = candidate;
+      } catch (PatternSyntaxException | UnsupportedRegexException exception) {
+        // keep the pattern as is
+      }
+    }
+    return optimized;
+  }
+
+  /**
+   * Returns the name of the engine that evaluates the pattern of this matcher.
+   *
+   * @see RecogPatternMatcher#getEngine()
+   */
+  public String getEngine() {
+    return matcher.getEngine();
+  }
+
   /**
    * Utility method to build a {@link Pattern} with compilation flags that is suitable for use in
    * invocation of the constructor {@link #RecogMatcher(Pattern)}.
@@ -402,4 +617,95 @@ public class RecogMatcher implements Serializable {
           && Objects.equals(namedParameters, other.namedParameters);
     }
   }
+
+  /**
+   * Returns the matcher evaluated in place of this quarantined one.
+   *
+   * @return A matcher with the same parameters whose pattern is evaluated by finite automata, or
+   *     {@code null} if this matcher is skipped.
+   */
+  RecogMatcher getSafeMatcher() {
+    return safeMatcher;
+  }
+
+  /**
+   * Records an evaluation of this matcher that went over budget, and quarantines the matcher once
+   * that happened a number of times.
+   *
+   * @param threshold The number of overruns that quarantine the matcher, or 0 to never quarantine.
+   * @return {@code true} if this call quarantined the matcher.
+   */
+  synchronized boolean recordBudgetOverrun(int threshold) {
+    budgetOverruns++;
+    if (quarantined || threshold == 0 || budgetOverruns < threshold)
+      return false;
+
+    if (matcher.getPattern() != null && matcher.hasRegexSemantics()) {
+      RecogPatternMatcher safe = AutomatonRecogPatternMatcher.create(matcher.getPattern(), matcher.getFlags());
+      if (AutomatonRecogPatternMatcher.ENGINE.equals(safe.getEngine()))
+        safeMatcher = withPatternMatcher(safe, IntUnaryOperator.identity());
+    }
+    quarantined = true;
+    return true;
+  }
+
+  /**
+   * Returns a copy of this matcher that evaluates its pattern with another pattern matcher.
+   *
+   * @param groups Maps the group of each positional parameter to its group in the new pattern.
+   */
+  private RecogMatcher withPatternMatcher(RecogPatternMatcher patternMatcher, IntUnaryOperator groups) {
+    RecogMatcher copy = new RecogMatcher(patternMatcher);
+    copy.values.putAll(values);
+    copy.templates.putAll(templates);
+    for (Entry<String, Integer> parameter : positionalParameters.entrySet())
+      copy.positionalParameters.put(parameter.getKey(), groups.applyAsInt(parameter.getValue()));
+    copy.namedParameters.addAll(namedParameters);
+    copy.examples.addAll(examples);
+    copy.description = description;
+    copy.line = line;
+    copy.contentHash = contentHash;
+    return copy;
+  }
+
+  /** Returns whether another matcher extracts the same parameters from the examples of this one. */
+  private boolean hasSameMatches(RecogMatcher other) {
+    for (FingerprintExample example : examples)
+      if (!Objects.equals(match(example.getText()), other.match(example.getText())))
+        return false;
+    return true;
+  }
+
+  /** Returns the layout of the parameters of this matcher, building it if required. */
+  private ParameterLayout getParameterLayout() {
+    ParameterLayout layout = parameterLayout;
+    if (layout == null) {
+      layout = ParameterLayout.of(values, templates, positionalParameters, namedParameters);
+      parameterLayout = layout;
+    }
+    return layout;
+  }
+
+  /** Returns the analysis of the pattern of this matcher, deriving it if required. */
+  private PatternAnalysis getAnalysis() {
+    PatternAnalysis analysis = this.analysis;
+    if (analysis == null) {
+      analysis = analyze(matcher);
+      this.analysis = analysis;
+    }
+    return analysis;
+  }
+
+  private static PatternAnalysis analyze(RecogPatternMatcher matcher) {
+    // only patterns with java.util.regex semantics can be analyzed
+    if (matcher.getPattern() == null || !matcher.hasRegexSemantics())
+      return new PatternAnalysis(QuickReject.NONE, false);
+
+    try {
+      RegexTree tree = RegexParser.parse(matcher.getPattern(), matcher.getFlags());
+      return new PatternAnalysis(QuickReject.of(tree), FirstLineAnchor.of(tree));
+    } catch (PatternSyntaxException | UnsupportedRegexException exception) {
+      return new PatternAnalysis(QuickReject.NONE, false);
+    }
+  }
 }
@@ -1,25 +1,242 @@
 package com.rapid7.recog;
 
+import com.rapid7.recog.index.IndexFeature;
+import com.rapid7.recog.index.MatcherIndex;
+import com.rapid7.recog.pattern.LazyRecogPatternMatcher;
+import com.rapid7.recog.pattern.RecogPatternMatcher;
+import com.rapid7.recog.regex.CharBitmap;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import static java.util.Objects.requireNonNull;
-import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
 
 /**
  * Manages a group of related {@link RecogMatcher} instances that can be matched together against a
  * single input. This object typically corresponds to one file of XML input from recog.
+ *
+ * <p>Optionally, a {@link MatcherIndex} can be enabled (see {@link #setIndexFeatures(Set)}) to skip
+ * matchers that cannot match an input. The index is built on first use and rebuilt after the list
+ * of matchers is modified; match results are the same with or without it.
+ *
+ * <p>Independently of the index, each matcher's {@link RecogMatcher#getQuickReject() quick-reject}
+ * test skips matchers whose pattern requires a character missing from the input, or a longer input.
+ * This is enabled by default (see {@link #setQuickRejectEnabled(boolean)}).
+ *
+ * <p>A maximum scan length (see {@link #setMaxScanLength(int)}) bounds the part of each input that
+ * matchers see, like {@link java.util.regex.Matcher#region(int, int)} with anchoring bounds.
+ *
+ * <p>A {@link MatchBudget} (see {@link #setMatchBudget(MatchBudget)}) bounds the work spent on each
+ * matcher for each input. A matcher that goes over budget does not match that input; one that goes
+ * over budget repeatedly is {@link RecogMatcher#isQuarantined() quarantined}.
  */
 public class RecogMatchers extends ArrayList<RecogMatcher> {
 
+  /** The number of budget overruns after which a matcher is quarantined, by default. */
+  public static final int DEFAULT_QUARANTINE_THRESHOLD = 3;
+
+  /** The input length from which matchers are evaluated in parallel, by default. */
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 16 * 1024;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RecogMatchers.class);
+
+  /** The minimum number of candidate matchers per chunk evaluated in parallel. */
+  private static final int MIN_CHUNK_SIZE = 16;
+
+  /** The minimum number of distinct inputs per chunk of a batch evaluated in parallel. */
+  private static final int MIN_BATCH_CHUNK_SIZE = 8;
+
+  /** The number of distinct inputs each matcher is evaluated against in turn, in pattern-major batches. */
+  private static final int BATCH_TILE_SIZE = 256;
+
   private String path;
   private String key;
   private String protocol;
   private String type;
   private float preference;
+  private Set<IndexFeature> indexFeatures = EnumSet.noneOf(IndexFeature.class);
+  private boolean quickRejectEnabled = true;
+  private int maxScanLength;
+  private MatchBudget matchBudget;
+  private int quarantineThreshold = DEFAULT_QUARANTINE_THRESHOLD;
+  private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+  private boolean patternMajorBatches;
+  private final LongAdder scanCount = new LongAdder();
+  private final LongAdder truncatedScanCount = new LongAdder();
+  private final LongAdder budgetExceededCount = new LongAdder();
+  private final LongAdder quarantinedCount = new LongAdder();
+
+  /** The current index and the modification count of this list it was built for. */
+  private transient volatile IndexSnapshot index;
+
+  /** The state of matching one input: the window scanned, its characters, and the candidates. */
+  private final class Scan {
+    private final CharSequence window;
+    private final CharSequence firstLine;
+    private final CharBitmap chars;
+
+    /** The candidate matchers, or {@code null} if all matchers are candidates. */
+    private final BitSet candidates;
+
+    Scan(CharSequence input) {
+      window = window(input);
+      firstLine = firstLine(window);
+      chars = quickRejectEnabled ? CharBitmap.of(window) : null;
+      MatcherIndex index = getIndex();
+      candidates = index == null ? null : index.candidates(window);
+    }
+
+    /** Returns the number of candidate matchers. */
+    int candidateCount() {
+      return candidates == null ? size() : candidates.cardinality();
+    }
+
+    /** Adds the matches of the candidates with indexes in {@code [from, to)}, in order, unless stopped. */
+    void matchAll(int from, int to, List<RecogMatch> matches, BooleanSupplier stopped) {
+      for (int i = next(from); i >= 0 && i < to && !stopped.getAsBoolean(); i = next(i + 1)) {
+        RecogMatch match = match(i);
+        if (match != null)
+          matches.add(match);
+      }
+    }
+
+    /** Returns the first match of the candidates with indexes in {@code [from, to)}, unless stopped. */
+    RecogMatch matchFirst(int from, int to, BooleanSupplier stopped) {
+      for (int i = next(from); i >= 0 && i < to && !stopped.getAsBoolean(); i = next(i + 1)) {
+        RecogMatch match = match(i);
+        if (match != null)
+          return match;
+      }
+      return null;
+    }
+
+    /** Returns whether the matcher with the given index is a candidate. */
+    boolean isCandidate(int index) {
+      return candidates == null || candidates.get(index);
+    }
+
+    /** Returns whether the matcher with the given index matches. */
+    boolean matches(int index) {
+      RecogMatcher matcher = get(index);
+      return RecogMatchers.this.matches(matcher, chars, scope(matcher, window, firstLine));
+    }
+
+    /** Returns the match of the matcher with the given index, which is known to match. */
+    RecogMatch newMatch(int index) {
+      RecogMatcher matcher = get(index);
+      return RecogMatchers.newMatch(matcher, scope(matcher, window, firstLine));
+    }
+
+    private int next(int from) {
+      return candidates == null ? from : candidates.nextSetBit(from);
+    }
+
+    private RecogMatch match(int index) {
+      return matches(index) ? newMatch(index) : null;
+    }
+  }
+
+  /** A batch of inputs, of which the distinct ones are matched. */
+  private final class Batch {
+    private final List<? extends CharSequence> inputs;
+
+    /** The distinct inputs, in order of first occurrence. */
+    private final List<CharSequence> unique = new ArrayList<>();
+
+    /** The position in {@link #unique} of each input. */
+    private final int[] positions;
+
+    /** The matches of each distinct input. */
+    private final List<List<RecogMatch>> matches;
+
+    Batch(List<? extends CharSequence> inputs) {
+      this.inputs = requireNonNull(inputs);
+      this.positions = new int[inputs.size()];
+      Map<String, Integer> strings = new HashMap<>();
+      for (int i = 0; i < positions.length; i++) {
+        CharSequence input = inputs.get(i);
+        // only strings are compared; other sequences may not implement equals, or may change
+        Integer position = input instanceof String ? strings.putIfAbsent((String) input, unique.size()) : null;
+        if (position == null) {
+          position = unique.size();
+          unique.add(input);
+        }
+        positions[i] = position;
+      }
+      this.matches = new ArrayList<>(Collections.nCopies(unique.size(), null));
+    }
+
+    /** Matches the distinct inputs in {@code [from, to)}. */
+    void match(int from, int to) {
+      if (patternMajorBatches) {
+        for (int tile = from; tile < to; tile += BATCH_TILE_SIZE)
+          matchTile(tile, Math.min(to, tile + BATCH_TILE_SIZE));
+        return;
+      }
+      for (int position = from; position < to; position++)
+        matches.set(position, Collections.unmodifiableList(getMatches(unique.get(position))));
+    }
+
+    /**
+     * Matches the distinct inputs in {@code [from, to)} pattern by pattern: each matcher is
+     * evaluated against every input of the tile before the next, and the hits are collected per
+     * input so that matches are built, in matcher order, at the end.
+     */
+    private void matchTile(int from, int to) {
+      Scan[] scans = new Scan[to - from];
+      BitSet[] hits = new BitSet[scans.length];
+      for (int offset = 0; offset < scans.length; offset++) {
+        CharSequence input = unique.get(from + offset);
+        scans[offset] = input == null ? null : new Scan(input);
+        hits[offset] = new BitSet();
+      }
+
+      for (int index = 0; index < size(); index++)
+        for (int offset = 0; offset < scans.length; offset++) {
+          Scan scan = scans[offset];
+          if (scan != null && scan.isCandidate(index) && scan.matches(index))
+            hits[offset].set(index);
+        }
+
+      for (int offset = 0; offset < scans.length; offset++) {
+        List<RecogMatch> found = new ArrayList<>(hits[offset].cardinality());
+        for (int index = hits[offset].nextSetBit(0); index >= 0; index = hits[offset].nextSetBit(index + 1))
+          found.add(scans[offset].newMatch(index));
+        matches.set(from + offset, Collections.unmodifiableList(found));
+      }
+    }
+
+    /** Returns the matches of each input, by input position. */
+    List<List<RecogMatch>> results() {
+      List<List<RecogMatch>> results = new ArrayList<>(positions.length);
+      for (int position : positions)
+        results.add(matches.get(position));
+      return results;
+    }
+  }
+
+  private static final class IndexSnapshot {
+    private final MatcherIndex index;
+    private final int modCount;
+
+    IndexSnapshot(MatcherIndex index, int modCount) {
+      this.index = index;
+      this.modCount = modCount;
+    }
+  }
 
   public RecogMatchers() {
     // no name
@@ -57,20 +274,329 @@ public class RecogMatchers extends ArrayList<RecogMatcher> {
     return preference;
   }
 
+  /**
+   * Returns the {@link IndexFeature}s used to select candidate matchers for an input.
+   *
+   * @return A non-null, immutable {@link Set} of features. May be empty.
+   */
+  public Set<IndexFeature> getIndexFeatures() {
+    return Collections.unmodifiableSet(indexFeatures);
+  }
+
+  /**
+   * Sets the {@link IndexFeature}s used to select candidate matchers for an input. An empty set
+   * disables the index, and every matcher is evaluated against every input.
+   *
+   * @param features The features to enable. Must not be {@code null}.
+   * @return A reference to this object, for method chaining.
+   */
+  public RecogMatchers setIndexFeatures(Set<IndexFeature> features) {
+    indexFeatures = features.isEmpty() ? EnumSet.noneOf(IndexFeature.class) : EnumSet.copyOf(features);
+    index = null;
+    return this;
+  }
+
+  public boolean isQuickRejectEnabled() {
+    return quickRejectEnabled;
+  }
+
+  /**
+   * Sets whether matchers are skipped when their {@link RecogMatcher#getQuickReject() quick-reject}
+   * test rules out the input. Match results are the same either way.
+   *
+   * @param quickRejectEnabled {@code true} to skip rejected matchers, {@code false} to evaluate
+   *     every (candidate) matcher.
+   * @return A reference to this object, for method chaining.
+   */
+  public RecogMatchers setQuickRejectEnabled(boolean quickRejectEnabled) {
+    this.quickRejectEnabled = quickRejectEnabled;
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of leading characters of an input that matchers are evaluated
+   * against, or 0 if inputs are matched whole.
+   */
+  public int getMaxScanLength() {
+    return maxScanLength;
+  }
+
+  /**
+   * Sets the maximum number of leading characters of an input that matchers are evaluated against.
+   * Longer inputs are matched as if they ended after that many characters, so {@code $} matches at
+   * the end of the window and captured values stop there. Within the window, matchers whose pattern
+   * is {@link RecogMatcher#isFirstLineAnchored() anchored to the first line} are only evaluated
+   * against the text before the first {@code '\n'}, which does not change their results.
+   *
+   * @param maxScanLength The maximum length, or 0 to match inputs whole.
+   * @return A reference to this object, for method chaining.
+   * @throws IllegalArgumentException If the length is negative.
+   */
+  public RecogMatchers setMaxScanLength(int maxScanLength) {
+    if (maxScanLength < 0)
+      throw new IllegalArgumentException("Maximum scan length must not be negative: " + maxScanLength);
+    this.maxScanLength = maxScanLength;
+    return this;
+  }
+
+  /** Returns the number of inputs matched by {@link #getMatches} and {@link #getFirstMatch}. */
+  public long getScanCount() {
+    return scanCount.sum();
+  }
+
+  /**
+   * Returns the number of inputs matched by {@link #getMatches} and {@link #getFirstMatch} that
+   * were longer than the {@link #getMaxScanLength() maximum scan length}, and so only partially
+   * scanned.
+   */
+  public long getTruncatedScanCount() {
+    return truncatedScanCount.sum();
+  }
+
+  /** Returns the budget of each evaluation of a matcher, or {@code null} if not limited. */
+  public MatchBudget getMatchBudget() {
+    return matchBudget;
+  }
+
+  /**
+   * Sets the budget of each evaluation of a matcher against an input. Evaluations that go over
+   * budget are abandoned, and the matcher is considered not to match the input.
+   *
+   * @param matchBudget The budget, or {@code null} for no limit.
+   * @return A reference to this object, for method chaining.
+   */
+  public RecogMatchers setMatchBudget(MatchBudget matchBudget) {
+    this.matchBudget = matchBudget;
+    return this;
+  }
+
+  public int getQuarantineThreshold() {
+    return quarantineThreshold;
+  }
+
+  /**
+   * Sets the number of times a matcher may go over its {@link MatchBudget} before it is
+   * quarantined. A quarantined matcher is evaluated by finite automata, in linear time, if its
+   * pattern allows; otherwise it is skipped.
+   *
+   * @param quarantineThreshold The number of overruns, or 0 to never quarantine matchers.
+   * @return A reference to this object, for method chaining.
+   * @throws IllegalArgumentException If the threshold is negative.
+   */
+  public RecogMatchers setQuarantineThreshold(int quarantineThreshold) {
+    if (quarantineThreshold < 0)
+      throw new IllegalArgumentException("Quarantine threshold must not be negative: " + quarantineThreshold);
+    this.quarantineThreshold = quarantineThreshold;
+    return this;
+  }
+
+  public int getParallelThreshold() {
+    return parallelThreshold;
+  }
+
+  /**
+   * Sets the input length from which {@link #getMatches(CharSequence, Executor)} and
+   * {@link #getFirstMatch(CharSequence, Executor)} evaluate matchers in parallel. Shorter inputs
+   * are matched on the calling thread, since splitting the work would cost more than it saves.
+   *
+   * @param parallelThreshold The minimum length of the (windowed) input.
+   * @return A reference to this object, for method chaining.
+   * @throws IllegalArgumentException If the threshold is negative.
+   */
+  public RecogMatchers setParallelThreshold(int parallelThreshold) {
+    if (parallelThreshold < 0)
+      throw new IllegalArgumentException("Parallel threshold must not be negative: " + parallelThreshold);
+    this.parallelThreshold = parallelThreshold;
+    return this;
+  }
+
+  public boolean isPatternMajorBatches() {
+    return patternMajorBatches;
+  }
+
+  /**
+   * Sets whether batches are evaluated pattern by pattern rather than input by input. In
+   * pattern-major order, each matcher is evaluated against a tile of inputs before the next, which
+   * keeps its compiled pattern hot in the cache across the tile; this suits offline rescans of many
+   * inputs. Match results are the same, and in the same order, either way.
+   *
+   * @param patternMajorBatches {@code true} to loop over matchers outermost in
+   *     {@link #getBatchMatches(List)}, {@code false} to loop over inputs outermost.
+   * @return A reference to this object, for method chaining.
+   */
+  public RecogMatchers setPatternMajorBatches(boolean patternMajorBatches) {
+    this.patternMajorBatches = patternMajorBatches;
+    return this;
+  }
+
+  /** Returns the number of evaluations of matchers that went over the {@link MatchBudget}. */
+  public long getBudgetExceededCount() {
+    return budgetExceededCount.sum();
+  }
+
+  /** Returns the number of matchers quarantined for going over the {@link MatchBudget}. */
+  public long getQuarantinedCount() {
+    return quarantinedCount.sum();
+  }
+
+  /**
+   * Builds the index for the enabled {@link IndexFeature}s now, rather than on first use. This
+   * method has no effect if no features are enabled.
+   */
+  public void buildIndex() {
+    getIndex();
+  }
+
+  /**
+   * Compiles the patterns of the matchers that compile them on first use (see
+   * {@link LazyRecogPatternMatcher}), so that the first inputs matched do not wait for them. Patterns
+   * are compiled concurrently on an executor.
+   *
+   * <p>Joining the result validates the patterns up front, as parsing in strict mode does for
+   * patterns compiled as they are parsed.
+   *
+   * @param executor The executor to compile patterns on. Must not be {@code null}.
+   * @return A future that completes once all patterns are compiled, or completes exceptionally with
+   *     a {@link java.util.regex.PatternSyntaxException} if a pattern is not valid.
+   */
+  public CompletableFuture<Void> compilePatterns(Executor executor) {
+    requireNonNull(executor);
+    List<CompletableFuture<RecogPatternMatcher>> compiles = new ArrayList<>();
+    for (RecogMatcher matcher : this)
+      if (matcher.getPatternMatcher() instanceof LazyRecogPatternMatcher)
+        compiles.add(CompletableFuture.supplyAsync(((LazyRecogPatternMatcher) matcher.getPatternMatcher())::compile, executor));
+    return CompletableFuture.allOf(compiles.toArray(new CompletableFuture<?>[0]));
+  }
+
   /**
    * Finds matches for a string input against all matchers.
    *
    * @param input Input to check against a set of recog fingerprints. May be {@code null}.
-   * @return List of {@link RecogMatch}es containing matches parameters for any matches.
+   * @return List of {@link RecogMatch}es containing matches parameters for any matches. The
+   *     parameters of each match are extracted when first requested.
    */
   public List<RecogMatch> getMatches(String input) {
+    return getMatches((CharSequence) input);
+  }
+
+  /**
+   * Finds matches for an input against all matchers. The input need not be a {@link String}: a
+   * {@link Latin1CharSequence} over a network buffer, for example, is matched without being copied.
+   * Since such an input may change after this call, the parameters of its matches are extracted
+   * straight away rather than on first access.
+   *
+   * @param input Input to check against a set of recog fingerprints. May be {@code null}.
+   * @return List of {@link RecogMatch}es containing matches parameters for any matches.
+   */
+  public List<RecogMatch> getMatches(CharSequence input) {
     if (input == null)
       return Collections.emptyList();
-    else
-      return stream().map(matcher -> {
-        Map<String,String> match = matcher.match(input);
-        return match != null ? new RecogMatch(matcher, match) : null;
-      }).filter(Objects::nonNull).collect(toList());
+
+    Scan scan = new Scan(input);
+    List<RecogMatch> matches = new ArrayList<>();
+    scan.matchAll(0, size(), matches, () -> false);
+    return matches;
+  }
+
+  /**
+   * Finds matches for an input against all matchers, like {@link #getMatches(CharSequence)}, until a
+   * condition holds. The condition is checked before each candidate matcher is evaluated.
+   *
+   * @param input Input to check against a set of recog fingerprints. Must not be {@code null}.
+   * @param stopped The condition to stop at. Must not be {@code null}.
+   * @return The matches found before the condition held.
+   */
+  List<RecogMatch> getMatchesUntil(CharSequence input, BooleanSupplier stopped) {
+    Scan scan = new Scan(input);
+    List<RecogMatch> matches = new ArrayList<>();
+    scan.matchAll(0, size(), matches, stopped);
+    return matches;
+  }
+
+  /**
+   * Finds matches for an input against all matchers, evaluating them in parallel if the input is
+   * at least {@link #getParallelThreshold() parallel threshold} characters long. The candidate
+   * matchers are split into contiguous chunks evaluated by the executor; the matches are the same,
+   * and in the same order, as with {@link #getMatches(CharSequence)}.
+   *
+   * @param input Input to check against a set of recog fingerprints. May be {@code null}.
+   * @param executor The executor that evaluates chunks of matchers, such as a
+   *     {@link ForkJoinPool}. Must not be {@code null}.
+   * @return List of {@link RecogMatch}es containing matches parameters for any matches.
+   */
+  public List<RecogMatch> getMatches(CharSequence input, Executor executor) {
+    requireNonNull(executor);
+    if (input == null)
+      return Collections.emptyList();
+
+    Scan scan = new Scan(input);
+    int chunks = chunks(scan, executor);
+    List<RecogMatch> matches = new ArrayList<>();
+    if (chunks == 1) {
+      scan.matchAll(0, size(), matches, () -> false);
+      return matches;
+    }
+
+    List<CompletableFuture<List<RecogMatch>>> futures = new ArrayList<>(chunks);
+    for (int chunk = 0; chunk < chunks; chunk++) {
+      int from = start(chunk, chunks);
+      int to = start(chunk + 1, chunks);
+      futures.add(CompletableFuture.supplyAsync(() -> {
+        List<RecogMatch> found = new ArrayList<>();
+        scan.matchAll(from, to, found, () -> false);
+        return found;
+      }, executor));
+    }
+    for (CompletableFuture<List<RecogMatch>> future : futures)
+      matches.addAll(join(future));
+    return matches;
+  }
+
+  /**
+   * Finds matches for each of a batch of inputs against all matchers. Identical {@link String}
+   * inputs, such as the same banner returned by many hosts, are matched once and share their
+   * results.
+   *
+   * @param inputs The inputs. Must not be {@code null}, but may contain {@code null} inputs, which
+   *     have no matches.
+   * @return The read-only matches of each input, by input position. Will not be {@code null}.
+   */
+  public List<List<RecogMatch>> getBatchMatches(List<? extends CharSequence> inputs) {
+    Batch batch = new Batch(inputs);
+    batch.match(0, batch.unique.size());
+    return batch.results();
+  }
+
+  /**
+   * Finds matches for each of a batch of inputs against all matchers, evaluating the inputs in
+   * parallel. The distinct inputs are split into contiguous chunks evaluated by the executor; the
+   * matches are the same as with {@link #getBatchMatches(List)}.
+   *
+   * @param inputs The inputs. Must not be {@code null}, but may contain {@code null} inputs, which
+   *     have no matches.
+   * @param executor The executor that evaluates chunks of inputs, such as a {@link ForkJoinPool}.
+   *     Must not be {@code null}.
+   * @return The read-only matches of each input, by input position. Will not be {@code null}.
+   */
+  public List<List<RecogMatch>> getBatchMatches(List<? extends CharSequence> inputs, Executor executor) {
+    requireNonNull(executor);
+    Batch batch = new Batch(inputs);
+    int count = batch.unique.size();
+    int chunks = Math.max(1, Math.min(parallelism(executor), count / MIN_BATCH_CHUNK_SIZE));
+    if (chunks == 1) {
+      batch.match(0, count);
+      return batch.results();
+    }
+
+    List<CompletableFuture<Void>> futures = new ArrayList<>(chunks);
+    for (int chunk = 0; chunk < chunks; chunk++) {
+      int from = (int) ((long) count * chunk / chunks);
+      int to = (int) ((long) count * (chunk + 1) / chunks);
+      futures.add(CompletableFuture.runAsync(() -> batch.match(from, to), executor));
+    }
+    for (CompletableFuture<Void> future : futures)
+      join(future);
+    return batch.results();
   }
 
   /**
@@ -78,17 +604,209 @@ public class RecogMatchers extends ArrayList<RecogMatcher> {
    * this method will return. If no match is discovered, this method will return {@code null}
    *
    * @param input Input to check against. Must not be {@code null}
-   * @return A match, or {@code null} if none is found.
+   * @return A match, or {@code null} if none is found. The parameters of the match are extracted
+   *     when first requested.
    */
   public RecogMatch getFirstMatch(String input) {
+    return getFirstMatch((CharSequence) input);
+  }
+
+  /**
+   * Finds the first match for an input which need not be a {@link String}. See
+   * {@link #getFirstMatch(String)} and {@link #getMatches(CharSequence)}.
+   *
+   * @param input Input to check against. Must not be {@code null}
+   * @return A match, or {@code null} if none is found.
+   */
+  public RecogMatch getFirstMatch(CharSequence input) {
+    requireNonNull(input);
+
+    Scan scan = new Scan(input);
+    return scan.matchFirst(0, size(), () -> false);
+  }
+
+  /**
+   * Finds the first match for an input, evaluating matchers in parallel if the input is at least
+   * {@link #getParallelThreshold() parallel threshold} characters long. The candidate matchers are
+   * split into contiguous chunks evaluated by the executor. Once a chunk finds a match, later
+   * chunks stop; the match is the same as with {@link #getFirstMatch(CharSequence)}.
+   *
+   * @param input Input to check against. Must not be {@code null}
+   * @param executor The executor that evaluates chunks of matchers, such as a
+   *     {@link ForkJoinPool}. Must not be {@code null}.
+   * @return A match, or {@code null} if none is found.
+   */
+  public RecogMatch getFirstMatch(CharSequence input, Executor executor) {
     requireNonNull(input);
+    requireNonNull(executor);
 
-    for (RecogMatcher matcher : this) {
-      Map<String, String> match = matcher.match(input);
-      if (match != null)
-        return new RecogMatch(matcher, match);
+    Scan scan = new Scan(input);
+    int chunks = chunks(scan, executor);
+    if (chunks == 1)
+      return scan.matchFirst(0, size(), () -> false);
+
+    // the lowest chunk that found a match; chunks after it stop
+    AtomicInteger winner = new AtomicInteger(chunks);
+    List<CompletableFuture<RecogMatch>> futures = new ArrayList<>(chunks);
+    for (int chunk = 0; chunk < chunks; chunk++) {
+      int index = chunk;
+      int from = start(chunk, chunks);
+      int to = start(chunk + 1, chunks);
+      futures.add(CompletableFuture.supplyAsync(() -> {
+        RecogMatch match = scan.matchFirst(from, to, () -> winner.get() < index);
+        if (match != null)
+          winner.accumulateAndGet(index, Math::min);
+        return match;
+      }, executor));
     }
 
+    for (int chunk = 0; chunk < chunks; chunk++) {
+      RecogMatch match = join(futures.get(chunk));
+      if (match != null) {
+        // chunks that have not started yet need not run at all
+        for (int later = chunk + 1; later < chunks; later++)
+          futures.get(later).cancel(false);
+        return match;
+      }
+    }
     return null;
   }
+
+  @Override
+  public RecogMatcher set(int index, RecogMatcher element) {
+    // replacing an element is not a structural modification, so invalidate the index explicitly
+    RecogMatcher previous = super.set(index, element);
+    this.index = null;
+    return previous;
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /** The number of chunks to split the candidates of a scan into for an executor. */
+  private int chunks(Scan scan, Executor executor) {
+    if (scan.window.length() < parallelThreshold)
+      return 1;
+    return Math.max(1, Math.min(parallelism(executor), scan.candidateCount() / MIN_CHUNK_SIZE));
+  }
+
+  /** Returns the number of tasks an executor can run at once. */
+  private static int parallelism(Executor executor) {
+    return executor instanceof ForkJoinPool
+        ? ((ForkJoinPool) executor).getParallelism() : Runtime.getRuntime().availableProcessors();
+  }
+
+  /** Returns the index of the first matcher of a chunk; chunks split the matchers evenly. */
+  private int start(int chunk, int chunks) {
+    return (int) ((long) size() * chunk / chunks);
+  }
+
+  /** Waits for a chunk, rethrowing what it threw. */
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException exception) {
+      if (exception.getCause() instanceof RuntimeException)
+        throw (RuntimeException) exception.getCause();
+      if (exception.getCause() instanceof Error)
+        throw (Error) exception.getCause();
+      throw exception;
+    }
+  }
+
+  /** Returns the part of an input within the scan window, and counts the scan. */
+  private CharSequence window(CharSequence input) {
+    scanCount.increment();
+    if (maxScanLength == 0 || input.length() <= maxScanLength)
+      return input;
+    truncatedScanCount.increment();
+    return input.subSequence(0, maxScanLength);
+  }
+
+  /**
+   * Returns the first line of the scan window, or the window itself if there is no window or no
+   * line break within it.
+   */
+  private CharSequence firstLine(CharSequence window) {
+    if (maxScanLength == 0)
+      return window;
+    int end = 0;
+    if (window instanceof String)
+      end = ((String) window).indexOf('\n');
+    else
+      while (end < window.length() && window.charAt(end) != '\n')
+        end++;
+    return end < 0 || end == window.length() ? window : window.subSequence(0, end);
+  }
+
+  /** Returns the part of the window a matcher is evaluated against. */
+  private static CharSequence scope(RecogMatcher matcher, CharSequence window, CharSequence firstLine) {
+    return firstLine != window && matcher.isFirstLineAnchored() ? firstLine : window;
+  }
+
+  /**
+   * Returns the match of a matcher that matches the input, without extracting parameters if
+   * possible.
+   */
+  private static RecogMatch newMatch(RecogMatcher matcher, CharSequence input) {
+    RecogMatcher safeMatcher = matcher.isQuarantined() ? matcher.getSafeMatcher() : null;
+    if (safeMatcher != null) {
+      // the pattern may go over budget again when extracting parameters, so use the safe matcher
+      Map<String, String> parameters = safeMatcher.match(input);
+      return new RecogMatch(matcher, parameters != null ? parameters : Collections.emptyMap());
+    }
+    // a string cannot change, so its parameters can be extracted when first needed
+    if (input instanceof String)
+      return RecogMatch.deferred(matcher, (String) input);
+    Map<String, String> parameters = matcher.match(input);
+    return new RecogMatch(matcher, parameters != null ? parameters : Collections.emptyMap());
+  }
+
+  /**
+   * Returns whether a matcher matches the input, counting and recording budget overruns.
+   *
+   * @param chars The characters of the input, or {@code null} if quick-reject is disabled.
+   */
+  private boolean matches(RecogMatcher matcher, CharBitmap chars, CharSequence input) {
+    if (chars != null && matcher.getQuickReject().rejects(chars, input.length()))
+      return false;
+
+    RecogMatcher evaluated = matcher;
+    if (matcher.isQuarantined()) {
+      // the automata of the safe matcher leave a few inputs to java.util.regex, within the budget
+      evaluated = matcher.getSafeMatcher();
+      if (evaluated == null)
+        return false;
+    }
+
+    try {
+      return evaluated.matches(input, matchBudget);
+    } catch (MatchBudgetExceededException exception) {
+      budgetExceededCount.increment();
+      if (matcher.recordBudgetOverrun(quarantineThreshold)) {
+        quarantinedCount.increment();
+        LOGGER.warn("Quarantined pattern '{}' of {} after {} budget overruns; {}.", matcher.getPattern(), key,
+            matcher.getBudgetOverruns(), matcher.getSafeMatcher() != null ? "evaluating it with finite automata" : "skipping it");
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Returns the index for the current list of matchers, building it if required.
+   *
+   * @return The index, or {@code null} if no {@link IndexFeature}s are enabled.
+   */
+  private MatcherIndex getIndex() {
+    if (indexFeatures.isEmpty())
+      return null;
+
+    IndexSnapshot snapshot = index;
+    if (snapshot == null || snapshot.modCount != modCount) {
+      snapshot = new IndexSnapshot(MatcherIndex.build(this, indexFeatures), modCount);
+      index = snapshot;
+    }
+    return snapshot.index;
+  }
 }
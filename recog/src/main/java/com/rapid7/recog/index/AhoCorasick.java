@@ -0,0 +1,172 @@
+package com.rapid7.recog.index;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An Aho-Corasick automaton that finds all occurrences of a fixed set of keywords in a single pass
+ * over the input. Matching ignores ASCII case: keywords are expected in lower case and input
+ * characters are folded before lookup, so callers needing case-sensitive matches must verify hits.
+ *
+ * <p>The automaton is compiled into a dense transition table over a compressed alphabet (the
+ * distinct characters occurring in the keywords), so a scan performs one table lookup per input
+ * character. Instances are immutable and safe for concurrent use.
+ */
+final class AhoCorasick {
+
+  /** Receives keyword occurrences found during a scan. */
+  interface Hits {
+    /**
+     * Called for each keyword occurrence.
+     *
+     * @param keyword The index of the keyword, in the order the keywords were supplied.
+     * @param end The offset just past the end of the occurrence in the input.
+     */
+    void hit(int keyword, int end);
+  }
+
+  /** Alphabet class of each ASCII character; zero for characters not used by any keyword. */
+  private final int[] asciiClasses;
+
+  /** Sorted non-ASCII characters used by keywords, and their alphabet classes. */
+  private final char[] otherChars;
+  private final int[] otherClasses;
+
+  /** Number of alphabet classes, including the class of unused characters. */
+  private final int width;
+
+  /** Transition table, indexed by {@code state * width + class}. */
+  private final int[] transitions;
+
+  /** Keywords ending at each state (including via suffix links), or {@code null} for none. */
+  private final int[][] outputs;
+
+  /**
+   * Builds an automaton.
+   *
+   * @param keywords The lower-cased keywords to search for. Must not be {@code null}; empty
+   *     keywords are ignored.
+   */
+  AhoCorasick(List<String> keywords) {
+    // compress the alphabet to the characters in use
+    TreeSet<Character> alphabet = new TreeSet<>();
+    for (String keyword : keywords)
+      for (int i = 0; i < keyword.length(); i++)
+        alphabet.add(keyword.charAt(i));
+
+    asciiClasses = new int[128];
+    List<Character> other = new ArrayList<>();
+    int classes = 1;
+    for (char ch : alphabet) {
+      if (ch < 128)
+        asciiClasses[ch] = classes++;
+      else
+        other.add(ch);
+    }
+    otherChars = new char[other.size()];
+    otherClasses = new int[other.size()];
+    for (int i = 0; i < other.size(); i++) {
+      otherChars[i] = other.get(i);
+      otherClasses[i] = classes++;
+    }
+    width = classes;
+
+    // build the keyword trie
+    List<Map<Integer, Integer>> trie = new ArrayList<>();
+    List<List<Integer>> terminals = new ArrayList<>();
+    trie.add(new HashMap<>());
+    terminals.add(new ArrayList<>());
+    for (int keyword = 0; keyword < keywords.size(); keyword++) {
+      String text = keywords.get(keyword);
+      if (text.isEmpty())
+        continue;
+
+      int state = 0;
+      for (int i = 0; i < text.length(); i++) {
+        int charClass = classOf(text.charAt(i));
+        Integer next = trie.get(state).get(charClass);
+        if (next == null) {
+          next = trie.size();
+          trie.add(new HashMap<>());
+          terminals.add(new ArrayList<>());
+          trie.get(state).put(charClass, next);
+        }
+        state = next;
+      }
+      terminals.get(state).add(keyword);
+    }
+
+    // breadth-first construction of failure links, the full transition table and outputs
+    int states = trie.size();
+    transitions = new int[states * width];
+    outputs = new int[states][];
+    int[] failure = new int[states];
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    for (Map.Entry<Integer, Integer> edge : trie.get(0).entrySet()) {
+      transitions[edge.getKey()] = edge.getValue();
+      queue.add(edge.getValue());
+    }
+    outputs[0] = null;
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      int fail = failure[state];
+
+      List<Integer> terminal = terminals.get(state);
+      int[] inherited = outputs[fail];
+      if (!terminal.isEmpty() || inherited != null) {
+        int[] output = new int[terminal.size() + (inherited == null ? 0 : inherited.length)];
+        for (int i = 0; i < terminal.size(); i++)
+          output[i] = terminal.get(i);
+        if (inherited != null)
+          System.arraycopy(inherited, 0, output, terminal.size(), inherited.length);
+        outputs[state] = output;
+      }
+
+      Map<Integer, Integer> edges = trie.get(state);
+      for (int charClass = 0; charClass < width; charClass++) {
+        Integer next = edges.get(charClass);
+        if (next == null) {
+          transitions[state * width + charClass] = transitions[fail * width + charClass];
+        } else {
+          transitions[state * width + charClass] = next;
+          failure[next] = transitions[fail * width + charClass];
+          queue.add(next);
+        }
+      }
+    }
+  }
+
+  /** Returns the number of states in the automaton. */
+  int stateCount() {
+    return outputs.length;
+  }
+
+  /**
+   * Scans the input, reporting every keyword occurrence.
+   *
+   * @param input The input to scan. Must not be {@code null}.
+   * @param hits Receives the occurrences, in order of their end offset.
+   */
+  void scan(CharSequence input, Hits hits) {
+    int state = 0;
+    for (int i = 0, length = input.length(); i < length; i++) {
+      state = transitions[state * width + classOf(input.charAt(i))];
+      int[] output = outputs[state];
+      if (output != null)
+        for (int keyword : output)
+          hits.hit(keyword, i + 1);
+    }
+  }
+
+  private int classOf(char ch) {
+    if (ch < 128)
+      return asciiClasses[ch >= 'A' && ch <= 'Z' ? ch + ('a' - 'A') : ch];
+    int index = Arrays.binarySearch(otherChars, ch);
+    return index < 0 ? 0 : otherClasses[index];
+  }
+}
@@ -0,0 +1,18 @@
+package com.rapid7.recog.index;
+
+import java.util.BitSet;
+
+/**
+ * Selects the positions of the matchers that may match an input. Implementations must never leave
+ * out a matcher that matches the input, and must be safe for concurrent use.
+ */
+interface CandidateFilter {
+
+  /**
+   * Returns the positions of the matchers that may match the input.
+   *
+   * @param input The input. Must not be {@code null}.
+   * @return A new {@link BitSet} of candidate matcher positions.
+   */
+  BitSet candidates(CharSequence input);
+}
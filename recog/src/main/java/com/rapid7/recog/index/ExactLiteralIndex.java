@@ -0,0 +1,88 @@
+package com.rapid7.recog.index;
+
+import com.rapid7.recog.regex.ExactLiteral;
+import com.rapid7.recog.regex.RequiredLiterals;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects candidate matchers whose patterns match a fixed text only (see {@link ExactLiteral}) with
+ * hash table lookups of the whole input: such a matcher is a candidate only if the input is one of
+ * the inputs its pattern matches. One lookup covers all case-sensitive literals, and one lookup of
+ * the lower-cased input covers all case-insensitive literals, however many there are. Each entry
+ * holds the positions of its matchers, so candidates are still evaluated in position order.
+ */
+final class ExactLiteralIndex implements CandidateFilter {
+
+  /** Matcher positions by exact input, for case-sensitive literals. */
+  private final Map<String, int[]> exact;
+
+  /** Matcher positions by lower-cased input, for case-insensitive literals. */
+  private final Map<String, int[]> folded;
+
+  /** Matcher positions whose pattern is not an exact literal; these are always candidates. */
+  private final BitSet unfiltered;
+
+  /** The length of the longest input in the index; longer inputs are not looked up. */
+  private final int maxLength;
+
+  /**
+   * Builds an index.
+   *
+   * @param literals The exact literal of each matcher, by matcher position. A {@code null} element
+   *     means the matcher is always a candidate.
+   */
+  ExactLiteralIndex(List<ExactLiteral> literals) {
+    Map<String, List<Integer>> exact = new HashMap<>();
+    Map<String, List<Integer>> folded = new HashMap<>();
+    unfiltered = new BitSet(literals.size());
+    int maxLength = 0;
+    for (int position = 0; position < literals.size(); position++) {
+      ExactLiteral literal = literals.get(position);
+      if (literal == null) {
+        unfiltered.set(position);
+        continue;
+      }
+
+      for (String input : literal.getInputs()) {
+        maxLength = Math.max(maxLength, input.length());
+        if (literal.isCaseInsensitive())
+          folded.computeIfAbsent(RequiredLiterals.toLowerAscii(input), key -> new ArrayList<>()).add(position);
+        else
+          exact.computeIfAbsent(input, key -> new ArrayList<>()).add(position);
+      }
+    }
+    this.exact = toArrays(exact);
+    this.folded = toArrays(folded);
+    this.maxLength = maxLength;
+  }
+
+  @Override
+  public BitSet candidates(CharSequence input) {
+    BitSet candidates = (BitSet) unfiltered.clone();
+    if (input.length() > maxLength)
+      return candidates;
+
+    String text = input.toString();
+    set(candidates, exact.get(text));
+    if (!folded.isEmpty())
+      set(candidates, folded.get(RequiredLiterals.toLowerAscii(text)));
+    return candidates;
+  }
+
+  private static void set(BitSet candidates, int[] positions) {
+    if (positions != null)
+      for (int position : positions)
+        candidates.set(position);
+  }
+
+  private static Map<String, int[]> toArrays(Map<String, List<Integer>> positions) {
+    Map<String, int[]> arrays = new HashMap<>();
+    for (Map.Entry<String, List<Integer>> entry : positions.entrySet())
+      arrays.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).distinct().toArray());
+    return arrays;
+  }
+}
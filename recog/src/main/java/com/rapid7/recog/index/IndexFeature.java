@@ -0,0 +1,37 @@
+package com.rapid7.recog.index;
+
+/**
+ * Optional acceleration structures a {@link MatcherIndex} can build over a set of matchers. Each
+ * feature only narrows down which matchers are evaluated against an input; match results are
+ * identical with or without them.
+ */
+public enum IndexFeature {
+
+  /**
+   * Looks up the whole input in a hash table of the texts matched by patterns that match a fixed
+   * text only, such as {@code ^Apache$}, and only evaluates those matchers when the input is one of
+   * their texts. Other matchers are always evaluated.
+   */
+  EXACT_LITERAL,
+
+  /**
+   * Sorts patterns anchored at the start of the input and beginning with a literal, such as
+   * {@code ^SSH-2\.0-OpenSSH_}, into a character trie, and only evaluates the anchored matchers
+   * whose literal the input begins with. Unanchored matchers are always evaluated.
+   */
+  ANCHORED_PREFIX,
+
+  /**
+   * Searches the input for the literals each pattern requires in a single Aho-Corasick pass, and
+   * only evaluates matchers whose required literals occur in the input.
+   */
+  LITERAL_PREFILTER,
+
+  /**
+   * Compiles the patterns of all matchers into one automaton (see
+   * {@link com.rapid7.recog.pattern.RecogPatternSet}) that finds every matching matcher in a single
+   * pass over the input; only those matchers, and matchers whose pattern the automaton cannot
+   * evaluate, are evaluated.
+   */
+  PATTERN_SET
+}
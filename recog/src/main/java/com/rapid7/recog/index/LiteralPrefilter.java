@@ -0,0 +1,86 @@
+package com.rapid7.recog.index;
+
+import com.rapid7.recog.regex.RequiredLiterals;
+import com.rapid7.recog.regex.RequiredLiterals.Literal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects candidate matchers by the literals their patterns require (see {@link RequiredLiterals}).
+ * All literals of a database are searched for in one pass of an {@link AhoCorasick} automaton; a
+ * matcher is a candidate if any of its required literals occurs in the input, or if no requirement
+ * could be derived for its pattern.
+ */
+final class LiteralPrefilter implements CandidateFilter {
+
+  private final AhoCorasick automaton;
+
+  /** Literal texts, for verifying case-sensitive hits; {@code null} for case-insensitive literals. */
+  private final String[] exactTexts;
+
+  /** Matcher positions requiring each literal. */
+  private final int[][] matchersByLiteral;
+
+  /** Matcher positions without a literal requirement; these are always candidates. */
+  private final BitSet unfiltered;
+
+  /**
+   * Builds a prefilter.
+   *
+   * @param requirements The required literals of each matcher, by matcher position. An empty list
+   *     means the matcher is always a candidate.
+   */
+  LiteralPrefilter(List<List<Literal>> requirements) {
+    Map<Literal, List<Integer>> matchersByLiteral = new LinkedHashMap<>();
+    unfiltered = new BitSet(requirements.size());
+    for (int position = 0; position < requirements.size(); position++) {
+      List<Literal> literals = requirements.get(position);
+      if (literals.isEmpty())
+        unfiltered.set(position);
+      for (Literal literal : literals)
+        matchersByLiteral.computeIfAbsent(literal, key -> new ArrayList<>()).add(position);
+    }
+
+    List<String> keywords = new ArrayList<>(matchersByLiteral.size());
+    exactTexts = new String[matchersByLiteral.size()];
+    this.matchersByLiteral = new int[matchersByLiteral.size()][];
+    int index = 0;
+    for (Map.Entry<Literal, List<Integer>> entry : matchersByLiteral.entrySet()) {
+      Literal literal = entry.getKey();
+      keywords.add(RequiredLiterals.toLowerAscii(literal.getText()));
+      exactTexts[index] = literal.isCaseInsensitive() ? null : literal.getText();
+      this.matchersByLiteral[index] = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+      index++;
+    }
+    automaton = new AhoCorasick(keywords);
+  }
+
+  @Override
+  public BitSet candidates(CharSequence input) {
+    BitSet candidates = (BitSet) unfiltered.clone();
+    boolean[] found = new boolean[exactTexts.length];
+    automaton.scan(input, (literal, end) -> {
+      if (found[literal])
+        return;
+
+      String exact = exactTexts[literal];
+      if (exact != null && !regionMatches(input, end - exact.length(), exact))
+        return;
+
+      found[literal] = true;
+      for (int position : matchersByLiteral[literal])
+        candidates.set(position);
+    });
+    return candidates;
+  }
+
+  private static boolean regionMatches(CharSequence input, int offset, String text) {
+    for (int i = 0; i < text.length(); i++)
+      if (input.charAt(offset + i) != text.charAt(i))
+        return false;
+    return true;
+  }
+}
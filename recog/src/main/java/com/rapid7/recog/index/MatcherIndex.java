@@ -0,0 +1,123 @@
+package com.rapid7.recog.index;
+
+import com.rapid7.recog.RecogMatcher;
+import com.rapid7.recog.pattern.RecogPatternSet;
+import com.rapid7.recog.regex.AnchoredPrefix;
+import com.rapid7.recog.regex.ExactLiteral;
+import com.rapid7.recog.regex.RegexParser;
+import com.rapid7.recog.regex.RegexTree;
+import com.rapid7.recog.regex.RequiredLiterals;
+import com.rapid7.recog.regex.RequiredLiterals.Literal;
+import com.rapid7.recog.regex.UnsupportedRegexException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * An immutable index over an ordered list of {@link RecogMatcher}s that selects, for a given input,
+ * the positions of the matchers that can possibly match it. Matchers outside the candidate set are
+ * guaranteed not to match, so evaluating only the candidates, in position order, yields exactly the
+ * same results as evaluating every matcher.
+ *
+ * <p>Patterns are analyzed as {@link java.util.regex.Pattern} expressions; matchers whose pattern
+ * cannot be analyzed are always candidates. When several {@link IndexFeature}s are enabled, the
+ * candidates are those selected by all of them.
+ */
+public final class MatcherIndex {
+
+  private final int size;
+  private final Set<IndexFeature> features;
+
+  /** The filters of the enabled features, cheapest first. */
+  private final List<CandidateFilter> filters;
+
+  private MatcherIndex(int size, Set<IndexFeature> features, List<CandidateFilter> filters) {
+    this.size = size;
+    this.features = Collections.unmodifiableSet(features);
+    this.filters = filters;
+  }
+
+  /**
+   * Builds an index.
+   *
+   * @param matchers The matchers to index, in evaluation order. Must not be {@code null}.
+   * @param features The features to build. Must not be {@code null}.
+   * @return The index. Will not be {@code null}.
+   */
+  public static MatcherIndex build(List<RecogMatcher> matchers, Set<IndexFeature> features) {
+    EnumSet<IndexFeature> enabled = features.isEmpty() ? EnumSet.noneOf(IndexFeature.class) : EnumSet.copyOf(features);
+    List<RegexTree> trees = matchers.stream().map(MatcherIndex::parse).collect(toList());
+
+    List<CandidateFilter> filters = new ArrayList<>();
+    if (enabled.contains(IndexFeature.EXACT_LITERAL))
+      filters.add(new ExactLiteralIndex(trees.stream().map(tree -> tree == null ? null : ExactLiteral.of(tree)).collect(toList())));
+
+    if (enabled.contains(IndexFeature.ANCHORED_PREFIX))
+      filters.add(new PrefixTrie(trees.stream().map(tree -> tree == null ? "" : AnchoredPrefix.of(tree)).collect(toList())));
+
+    if (enabled.contains(IndexFeature.LITERAL_PREFILTER)) {
+      List<List<Literal>> requirements = trees.stream()
+          .map(tree -> tree == null ? Collections.<Literal>emptyList() : RequiredLiterals.of(tree))
+          .collect(toList());
+      filters.add(new LiteralPrefilter(requirements));
+    }
+
+    if (enabled.contains(IndexFeature.PATTERN_SET))
+      filters.add(RecogPatternSet.compile(matchers.stream().map(RecogMatcher::getPatternMatcher).collect(toList()))::candidates);
+
+    return new MatcherIndex(matchers.size(), enabled, filters);
+  }
+
+  /** Returns the number of matchers indexed. */
+  public int size() {
+    return size;
+  }
+
+  public Set<IndexFeature> getFeatures() {
+    return features;
+  }
+
+  /**
+   * Returns the positions of the matchers that may match the input.
+   *
+   * @param input The input. Must not be {@code null}.
+   * @return A new {@link BitSet} of candidate positions. Will not be {@code null}.
+   */
+  public BitSet candidates(CharSequence input) {
+    if (filters.isEmpty()) {
+      BitSet candidates = new BitSet(size);
+      candidates.set(0, size);
+      return candidates;
+    }
+
+    BitSet candidates = filters.get(0).candidates(input);
+    for (int i = 1; i < filters.size() && !candidates.isEmpty(); i++)
+      candidates.and(filters.get(i).candidates(input));
+    return candidates;
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Parses the pattern of a matcher, or returns {@code null} if it has no java.util.regex semantics,
+   * in which case it is a candidate for every input.
+   */
+  private static RegexTree parse(RecogMatcher matcher) {
+    String pattern = matcher.getPattern();
+    if (pattern == null || !matcher.getPatternMatcher().hasRegexSemantics())
+      return null;
+
+    try {
+      return RegexParser.parse(pattern, matcher.getFlags());
+    } catch (PatternSyntaxException | UnsupportedRegexException exception) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.rapid7.recog.index;
+
+import com.rapid7.recog.regex.AnchoredPrefix;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Selects candidate matchers by the literal prefix their anchored patterns require (see
+ * {@link AnchoredPrefix}). Prefixes are stored in a character trie, so the matchers whose prefix the
+ * input begins with are found by following the input down the trie once. Characters are compared
+ * ignoring ASCII case; case-sensitive patterns are left to reject inputs that differ in case.
+ */
+final class PrefixTrie implements CandidateFilter {
+
+  private static final class Node {
+    private final char[] labels;
+    private final Node[] children;
+    private final int[] matchers;
+
+    Node(char[] labels, Node[] children, int[] matchers) {
+      this.labels = labels;
+      this.children = children;
+      this.matchers = matchers;
+    }
+
+    Node child(char ch) {
+      int index = Arrays.binarySearch(labels, ch);
+      return index < 0 ? null : children[index];
+    }
+  }
+
+  private static final class Builder {
+    private final Map<Character, Builder> children = new TreeMap<>();
+    private final List<Integer> matchers = new ArrayList<>();
+
+    Node build() {
+      char[] labels = new char[children.size()];
+      Node[] nodes = new Node[children.size()];
+      int index = 0;
+      for (Map.Entry<Character, Builder> entry : children.entrySet()) {
+        labels[index] = entry.getKey();
+        nodes[index++] = entry.getValue().build();
+      }
+      return new Node(labels, nodes, matchers.stream().mapToInt(Integer::intValue).toArray());
+    }
+  }
+
+  private final Node root;
+
+  /** Matcher positions without a prefix; these are always candidates. */
+  private final BitSet unfiltered;
+
+  /**
+   * Builds a trie.
+   *
+   * @param prefixes The lower-cased prefix of each matcher, by matcher position. An empty prefix
+   *     means the matcher is always a candidate.
+   */
+  PrefixTrie(List<String> prefixes) {
+    Builder root = new Builder();
+    unfiltered = new BitSet(prefixes.size());
+    for (int position = 0; position < prefixes.size(); position++) {
+      String prefix = prefixes.get(position);
+      if (prefix.isEmpty()) {
+        unfiltered.set(position);
+        continue;
+      }
+
+      Builder node = root;
+      for (int i = 0; i < prefix.length(); i++)
+        node = node.children.computeIfAbsent(prefix.charAt(i), key -> new Builder());
+      node.matchers.add(position);
+    }
+    this.root = root.build();
+  }
+
+  @Override
+  public BitSet candidates(CharSequence input) {
+    BitSet candidates = (BitSet) unfiltered.clone();
+    Node node = root;
+    for (int i = 0, length = input.length(); i < length && node.labels.length > 0; i++) {
+      char ch = input.charAt(i);
+      node = node.child(ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch);
+      if (node == null)
+        break;
+      for (int position : node.matchers)
+        candidates.set(position);
+    }
+    return candidates;
+  }
+}
@@ -4,6 +4,7 @@ import com.rapid7.recog.FingerprintExample;
 import com.rapid7.recog.RecogMatcher;
 import com.rapid7.recog.RecogMatchers;
 import com.rapid7.recog.parser.RecogParser.PatternMatcherFactory;
+import com.rapid7.recog.pattern.LazyRecogPatternMatcher;
 import com.rapid7.recog.pattern.RecogPatternMatcher;
 import java.io.IOException;
 import java.io.Reader;
@@ -11,6 +12,8 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.StringTokenizer;
 import java.util.regex.Pattern;
@@ -31,10 +34,17 @@ public class FingerprintsHandler extends DefaultHandler {
   private static final String EXAMPLE = "example";
   private static final String PARAM = "param";
   private static final String FILENAME_KEY = "_filename";
+
+  /**
+   * Separates the tokens of the source data in the digest of a fingerprint. U+FFFF is not allowed
+   * in XML documents, so it cannot occur in names, attribute values or text.
+   */
+  private static final char DIGEST_DELIMITER = '\uffff';
   private static final Logger LOGGER = LoggerFactory.getLogger(FingerprintsHandler.class);
 
   private final PatternMatcherFactory patternMatcherFactory;
   private final boolean strictMode;
+  private final boolean optimizePatterns;
   private final String path;
   private final String name;
 
@@ -44,6 +54,16 @@ public class FingerprintsHandler extends DefaultHandler {
   private final StringBuilder elementValue;
   private HashMap<String, String> exampleAttributeMap;
 
+  /** The digest of the source data of fingerprints, or {@code null} if not recorded. */
+  private final MessageDigest fingerprintDigest;
+
+  /** The bytes to add to the digest next, so that the digest is not updated for every character. */
+  private final byte[] digestBuffer;
+  private int digestLength;
+
+  /** Whether the handler is in a {@code <fingerprint>} element whose digest is recorded. */
+  private boolean digesting;
+
   /**
    * Constructs a FingerprintsHandler.
    *
@@ -54,12 +74,45 @@ public class FingerprintsHandler extends DefaultHandler {
    * @param name Value used for {@link RecogMatchers} key if parsed value is null or empty.
    */
   public FingerprintsHandler(PatternMatcherFactory patternMatcherFactory, boolean strictMode, String path, String name) {
+    this(patternMatcherFactory, strictMode, false, path, name);
+  }
+
+  /**
+   * Constructs a FingerprintsHandler that optionally rewrites patterns to be cheaper to evaluate.
+   *
+   * @param patternMatcherFactory Factory used to create the underlying {@link RecogPatternMatcher}.
+   * @param strictMode {@code true} if the parser should throw exceptions when any error is
+   *        encountered, {@code false} otherwise.
+   * @param optimizePatterns {@code true} to rewrite patterns (see {@link RecogMatcher#optimize}).
+   * @param path Optional XML content file path.
+   * @param name Value used for {@link RecogMatchers} key if parsed value is null or empty.
+   */
+  public FingerprintsHandler(PatternMatcherFactory patternMatcherFactory, boolean strictMode, boolean optimizePatterns, String path, String name) {
+    this(patternMatcherFactory, strictMode, optimizePatterns, false, path, name);
+  }
+
+  /**
+   * Constructs a FingerprintsHandler that optionally records the digest of the source data of each
+   * matcher (see {@link RecogMatcher#getContentHash()}).
+   *
+   * @param patternMatcherFactory Factory used to create the underlying {@link RecogPatternMatcher}.
+   * @param strictMode {@code true} if the parser should throw exceptions when any error is
+   *        encountered, {@code false} otherwise.
+   * @param optimizePatterns {@code true} to rewrite patterns (see {@link RecogMatcher#optimize}).
+   * @param hashContent {@code true} to record the digest of the source data of each matcher.
+   * @param path Optional XML content file path.
+   * @param name Value used for {@link RecogMatchers} key if parsed value is null or empty.
+   */
+  public FingerprintsHandler(PatternMatcherFactory patternMatcherFactory, boolean strictMode, boolean optimizePatterns, boolean hashContent, String path, String name) {
     super();
     this.patternMatcherFactory = patternMatcherFactory;
     this.strictMode = strictMode;
+    this.optimizePatterns = optimizePatterns;
     this.path = path;
     this.name = name;
     this.elementValue = new StringBuilder();
+    this.fingerprintDigest = hashContent ? sha1() : null;
+    this.digestBuffer = hashContent ? new byte[1024] : null;
   }
 
   /**
@@ -78,13 +131,31 @@ public class FingerprintsHandler extends DefaultHandler {
   @Override
   public void characters(char[] ch, int start, int length) throws SAXException {
     elementValue.append(ch, start, length);
+    if (digesting)
+      for (int i = start; i < start + length; i++)
+        digest(ch[i]);
   }
 
   @Override
   public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
     elementValue.setLength(0);
+    String element = element(qName);
+    if (element == FINGERPRINT && fingerprintDigest != null) {
+      fingerprintDigest.reset();
+      digestLength = 0;
+      digesting = true;
+    }
+    if (digesting) {
+      digestToken('<', qName);
+      for (int i = 0; i < attributes.getLength(); i++) {
+        digestToken('=', attributes.getQName(i));
+        digestToken('"', attributes.getValue(i));
+      }
+      digest(DIGEST_DELIMITER);
+      digest('>');
+    }
     try {
-      switch (qName.toLowerCase()) {
+      switch (element) {
         case FINGERPRINTS:
           String preferenceValue = getAttribute(attributes, "preference");
           float preference = 0;
@@ -102,6 +173,15 @@ public class FingerprintsHandler extends DefaultHandler {
           }
 
           matchers = new RecogMatchers(path, recogKey, getAttribute(attributes, "protocol"), getAttribute(attributes, "database_type"), preference);
+
+          String maxScanLength = getAttribute(attributes, "max_scan_length");
+          try {
+            if (!maxScanLength.isEmpty())
+              matchers.setMaxScanLength(Integer.parseInt(maxScanLength));
+          } catch (IllegalArgumentException exception) {
+            // ignore - scan inputs whole
+            LOGGER.debug("Invalid maximum scan length \"" + maxScanLength + "\". File Name: " + name);
+          }
           break;
         case FINGERPRINT:
           // the pattern is required
@@ -110,8 +190,11 @@ public class FingerprintsHandler extends DefaultHandler {
           // parse the flags for the regular expression
           int regexFlags = parseFlags(getAttribute(attributes,"flags"));
 
-          // construct a pattern
-          fingerprintPattern = new RecogMatcher(patternMatcherFactory.create(pattern, regexFlags));
+          // construct a pattern; in strict mode, lazy patterns are compiled now to report invalid ones
+          RecogPatternMatcher patternMatcher = patternMatcherFactory.create(pattern, regexFlags);
+          if (strictMode && patternMatcher instanceof LazyRecogPatternMatcher)
+            ((LazyRecogPatternMatcher) patternMatcher).compile();
+          fingerprintPattern = new RecogMatcher(patternMatcher);
           fingerprintPattern.setLine(locator.getLineNumber());
           break;
         case DESCRIPTION:
@@ -160,22 +243,34 @@ public class FingerprintsHandler extends DefaultHandler {
 
   @Override
   public void endElement(String uri, String localName, String qName) throws SAXException {
+    if (digesting)
+      digestToken('/', qName);
     try {
-      switch (qName.toLowerCase()) {
+      switch (element(qName)) {
         case FINGERPRINTS:
         case PARAM:
           // NOP
           break;
         case FINGERPRINT:
+          String contentHash = digesting ? contentHash() : null;
+          digesting = false;
           if (fingerprintPattern == null) {
             break;
           }
+          if (optimizePatterns) {
+            RecogMatcher optimized = fingerprintPattern.optimize(patternMatcherFactory::create);
+            if (optimized != fingerprintPattern) {
+              LOGGER.debug("Rewrote pattern '{}' as '{}'", fingerprintPattern.getPattern(), optimized.getPattern());
+              fingerprintPattern = optimized;
+            }
+          }
+          fingerprintPattern.setContentHash(contentHash);
           matchers.add(fingerprintPattern);
           break;
         case DESCRIPTION:
           // description (optional)
           if (fingerprintPattern != null && elementValue.length() > 0) {
-            fingerprintPattern.setDescription(elementValue.toString().replaceAll("\\s+", " ").trim());
+            fingerprintPattern.setDescription(normalizeWhitespace(elementValue));
           }
           break;
         case EXAMPLE:
@@ -188,6 +283,9 @@ public class FingerprintsHandler extends DefaultHandler {
             // process external example file
             String filename = exampleAttributeMap.get(FILENAME_KEY);
             exampleText = getExternalExampleText(path, name, filename);
+            // the example file is part of the content of the fingerprint
+            if (digesting)
+              digestToken('f', exampleText);
           } else {
             exampleText = elementValue.toString();
           }
@@ -208,6 +306,93 @@ public class FingerprintsHandler extends DefaultHandler {
   // Non-public methods
   /////////////////////////////////////////////////////////////////////////
 
+  /**
+   * Returns the element constant for a qualified name, compared without regard to case (and without
+   * allocating, or depending on the default locale), or the name itself if it is not a known element.
+   */
+  private static String element(String name) {
+    if (FINGERPRINT.equalsIgnoreCase(name))
+      return FINGERPRINT;
+    else if (PARAM.equalsIgnoreCase(name))
+      return PARAM;
+    else if (EXAMPLE.equalsIgnoreCase(name))
+      return EXAMPLE;
+    else if (DESCRIPTION.equalsIgnoreCase(name))
+      return DESCRIPTION;
+    else if (FINGERPRINTS.equalsIgnoreCase(name))
+      return FINGERPRINTS;
+    else
+      return name;
+  }
+
+  /**
+   * Replaces each run of whitespace with a single space, and trims the result; the same as
+   * {@code text.toString().replaceAll("\\s+", " ").trim()}, without a regular expression.
+   */
+  static String normalizeWhitespace(CharSequence text) {
+    StringBuilder normalized = new StringBuilder(text.length());
+    boolean whitespace = false;
+    for (int i = 0; i < text.length(); i++) {
+      char ch = text.charAt(i);
+      if (ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r') {
+        whitespace = true;
+      } else {
+        if (whitespace)
+          normalized.append(' ');
+        whitespace = false;
+        normalized.append(ch);
+      }
+    }
+    if (whitespace)
+      normalized.append(' ');
+    return normalized.toString().trim();
+  }
+
+  /**
+   * Adds a token of source data to the digest of the current fingerprint: a delimiter, a character
+   * telling the kind of token, then its text. Text between tokens is added as is, so that it does
+   * not matter how the parser splits it into {@link #characters} calls.
+   */
+  private void digestToken(char kind, String text) {
+    digest(DIGEST_DELIMITER);
+    digest(kind);
+    for (int i = 0; i < text.length(); i++)
+      digest(text.charAt(i));
+  }
+
+  /** Adds a character to the digest of the current fingerprint, as UTF-16. */
+  private void digest(char ch) {
+    if (digestLength + 2 > digestBuffer.length) {
+      fingerprintDigest.update(digestBuffer, 0, digestLength);
+      digestLength = 0;
+    }
+    digestBuffer[digestLength++] = (byte) (ch >> 8);
+    digestBuffer[digestLength++] = (byte) ch;
+  }
+
+  /** Completes the digest of the current fingerprint. */
+  private String contentHash() {
+    fingerprintDigest.update(digestBuffer, 0, digestLength);
+    digestLength = 0;
+    return hex(fingerprintDigest.digest());
+  }
+
+  private static MessageDigest sha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException exception) {
+      // every Java platform is required to support SHA-1
+      throw new IllegalStateException(exception);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte value : bytes)
+      hex.append(Character.forDigit((value >> 4) & 0xf, 16)).append(Character.forDigit(value & 0xf, 16));
+    return hex.toString();
+  }
+
   private int parseFlags(String flags) {
     int cflags = Pattern.UNIX_LINES;
     if (flags != null && flags.length() != 0) {
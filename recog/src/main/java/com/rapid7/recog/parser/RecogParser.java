@@ -2,7 +2,9 @@ package com.rapid7.recog.parser;
 
 import com.rapid7.recog.RecogMatcher;
 import com.rapid7.recog.RecogMatchers;
+import com.rapid7.recog.pattern.AutomatonRecogPatternMatcher;
 import com.rapid7.recog.pattern.JavaRegexRecogPatternMatcher;
+import com.rapid7.recog.pattern.LazyRecogPatternMatcher;
 import com.rapid7.recog.pattern.RecogPatternMatcher;
 import java.io.File;
 import java.io.FileReader;
@@ -16,6 +18,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import static java.util.Objects.requireNonNull;
 
 
 /**
@@ -42,11 +45,54 @@ public class RecogParser {
    * regular expressions.
    */
   public static final PatternMatcherFactory DEFAULT_PATTERN_MATCHER_FACTORY =
-      (pattern, flags) -> new JavaRegexRecogPatternMatcher(Pattern.compile(pattern, flags));
+      (pattern, flags) -> new JavaRegexRecogPatternMatcher(Pattern.compile(pattern, flags), flags, false);
+
+  /**
+   * A {@link PatternMatcherFactory} that uses java.regex.* packages like the default one, but keeps
+   * one {@link java.util.regex.Matcher} per pattern and thread rather than allocate one per match.
+   * Match results are only valid until the next match of the same pattern on the same thread; see
+   * {@link JavaRegexRecogPatternMatcher#JavaRegexRecogPatternMatcher(Pattern, boolean)}.
+   */
+  public static final PatternMatcherFactory REUSING_PATTERN_MATCHER_FACTORY =
+      (pattern, flags) -> new JavaRegexRecogPatternMatcher(Pattern.compile(pattern, flags), flags, true);
+
+  /**
+   * A {@link PatternMatcherFactory} that evaluates regular expressions with finite automata, in time
+   * linear in the length of the input. Patterns that require backtracking fall back to java.regex.*
+   * packages individually; see {@link AutomatonRecogPatternMatcher}.
+   */
+  public static final PatternMatcherFactory AUTOMATON_PATTERN_MATCHER_FACTORY = AutomatonRecogPatternMatcher::create;
+
+  /**
+   * Returns a {@link PatternMatcherFactory} that defers to another factory when each pattern is first
+   * used, rather than as it is parsed (see {@link LazyRecogPatternMatcher}). Invalid patterns are
+   * then not reported by parsing; use
+   * {@link RecogMatchers#compilePatterns(java.util.concurrent.Executor)} to find them up front. In
+   * strict mode, which must report them, the parser compiles each pattern as it parses it.
+   *
+   * @param factory The factory to create the matchers with. Must not be {@code null}.
+   * @return The factory. Will not be {@code null}.
+   */
+  public static PatternMatcherFactory lazy(PatternMatcherFactory factory) {
+    requireNonNull(factory);
+    return (pattern, flags) -> new LazyRecogPatternMatcher(pattern, flags, factory::create);
+  }
 
   private static final Logger LOGGER = LoggerFactory.getLogger(RecogParser.class);
+
+  /**
+   * The SAX parser of each thread, when it is not in use. Parsers are created once per thread from
+   * a shared, configured factory, and reset before each use.
+   */
+  private static final ThreadLocal<SAXParser> SAX_PARSERS = new ThreadLocal<>();
+
+  /** The configured factory, created on first use. */
+  private static SAXParserFactory saxParserFactory;
+
   private final boolean strictMode;
   private final PatternMatcherFactory patternMatcherFactory;
+  private final boolean optimizePatterns;
+  private final boolean hashContent;
 
   /**
    * Constructs a parser to parser with non-strict (lenient) parsing mode.
@@ -73,8 +119,56 @@ public class RecogParser {
    * @param patternMatcherFactory The {@link PatternMatcherFactory} to be used during parsing.
    */
   public RecogParser(boolean strictMode, PatternMatcherFactory patternMatcherFactory) {
+    this(strictMode, patternMatcherFactory, false);
+  }
+
+  /**
+   * Constructs a parser with the specified strictness mode and {@link PatternMatcherFactory}, which
+   * optionally rewrites patterns to be cheaper to evaluate (see {@link RecogMatcher#optimize}).
+   *
+   * @param strictMode {@code true} if the parser should throw exceptions when any error is
+   *        encountered, {@code false} otherwise.
+   * @param patternMatcherFactory The {@link PatternMatcherFactory} to be used during parsing.
+   * @param optimizePatterns {@code true} to rewrite patterns, checking each rewrite against the
+   *        examples of the fingerprint, {@code false} to use patterns as written.
+   */
+  public RecogParser(boolean strictMode, PatternMatcherFactory patternMatcherFactory, boolean optimizePatterns) {
+    this(strictMode, patternMatcherFactory, optimizePatterns, false);
+  }
+
+  /**
+   * Constructs a parser that optionally records a digest of the source data of each matcher (see
+   * {@link RecogMatcher#getContentHash()}), so that reloaded content can tell unchanged matchers
+   * from changed ones. Digests cost time to compute, so they are only worth recording for content
+   * that is reloaded.
+   *
+   * @param strictMode {@code true} if the parser should throw exceptions when any error is
+   *        encountered, {@code false} otherwise.
+   * @param patternMatcherFactory The {@link PatternMatcherFactory} to be used during parsing.
+   * @param optimizePatterns {@code true} to rewrite patterns, {@code false} to use patterns as written.
+   * @param hashContent {@code true} to record the digest of the source data of each matcher.
+   */
+  public RecogParser(boolean strictMode, PatternMatcherFactory patternMatcherFactory, boolean optimizePatterns, boolean hashContent) {
     this.strictMode = strictMode;
     this.patternMatcherFactory = patternMatcherFactory;
+    this.optimizePatterns = optimizePatterns;
+    this.hashContent = hashContent;
+  }
+
+  public boolean isStrictMode() {
+    return strictMode;
+  }
+
+  public PatternMatcherFactory getPatternMatcherFactory() {
+    return patternMatcherFactory;
+  }
+
+  public boolean isOptimizePatterns() {
+    return optimizePatterns;
+  }
+
+  public boolean isHashContent() {
+    return hashContent;
   }
 
   /**
@@ -120,14 +214,10 @@ public class RecogParser {
    */
   public RecogMatchers parse(Reader reader, String path, String name) throws ParseException {
     RecogMatchers matchers = null;
+    SAXParser saxParser = null;
     try {
-      SAXParserFactory factory = SAXParserFactory.newInstance();
-      factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-      factory.setFeature("http://xml.org/sax/features/validation", false);
-      factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
-      factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-      SAXParser saxParser = factory.newSAXParser();
-      FingerprintsHandler handler = new FingerprintsHandler(this.patternMatcherFactory, this.strictMode, path, name);
+      saxParser = acquireSaxParser();
+      FingerprintsHandler handler = new FingerprintsHandler(this.patternMatcherFactory, this.strictMode, this.optimizePatterns, this.hashContent, path, name);
       saxParser.parse(new InputSource(reader), handler);
       matchers = handler.getMatchers();
     } catch (ParseException exception) {
@@ -137,10 +227,57 @@ public class RecogParser {
       System.out.printf("parse(): exception.getMessage(): %s\n", exception.getMessage());
 
       throw new ParseException("Unable to parse fingerprints from Document", exception);
+    } finally {
+      if (saxParser != null)
+        releaseSaxParser(saxParser);
     }
     if (matchers == null) {
       throw new ParseException("Failed to parse file: " + name);
     }
     return matchers;
   }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Takes the SAX parser of the current thread, or creates one if the thread has none, or its
+   * parser is in use by an enclosing parse.
+   */
+  private static SAXParser acquireSaxParser() throws ParserConfigurationException, SAXException {
+    SAXParser saxParser = SAX_PARSERS.get();
+    if (saxParser != null) {
+      SAX_PARSERS.remove();
+      return saxParser;
+    }
+
+    SAXParserFactory factory = saxParserFactory();
+    // factories are not required to be thread-safe
+    synchronized (factory) {
+      return factory.newSAXParser();
+    }
+  }
+
+  /** Returns a SAX parser to the current thread, for the next parse to use. */
+  private static void releaseSaxParser(SAXParser saxParser) {
+    try {
+      saxParser.reset();
+      SAX_PARSERS.set(saxParser);
+    } catch (UnsupportedOperationException exception) {
+      // the parser cannot be reused
+    }
+  }
+
+  private static synchronized SAXParserFactory saxParserFactory() throws ParserConfigurationException, SAXException {
+    if (saxParserFactory == null) {
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+      factory.setFeature("http://xml.org/sax/features/validation", false);
+      factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+      factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+      saxParserFactory = factory;
+    }
+    return saxParserFactory;
+  }
 }
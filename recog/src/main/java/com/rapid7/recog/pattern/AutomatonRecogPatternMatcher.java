@@ -0,0 +1,188 @@
+package com.rapid7.recog.pattern;
+
+import com.rapid7.recog.regex.Automaton;
+import com.rapid7.recog.regex.RegexParser;
+import com.rapid7.recog.regex.UnsupportedRegexException;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An implementation of {@link RecogPatternMatcher} that evaluates patterns with finite automata (see
+ * {@link Automaton}) rather than a backtracking engine, so that matching takes time linear in the
+ * length of the input regardless of the pattern. Matches and captured groups are the same as those of
+ * {@link JavaRegexRecogPatternMatcher}.
+ *
+ * <p>Use {@link #create(String, int)} to construct matchers: patterns the automaton cannot evaluate
+ * (back references, lookaround, atomic groups, possessive quantifiers) are given a
+ * {@link JavaRegexRecogPatternMatcher} instead. {@link RecogPatternMatcher#getEngine()} reports the
+ * outcome. The few inputs the automaton cannot evaluate exactly, non-ASCII input to patterns with
+ * word boundaries (see {@link Automaton#supports(CharSequence)}), are matched with java.util.regex
+ * as well; {@link #evaluatesInLinearTime(CharSequence)} tells them apart, so that
+ * {@link com.rapid7.recog.RecogMatchers} evaluates them under its match budget.
+ */
+public class AutomatonRecogPatternMatcher implements RecogPatternMatcher {
+
+  /** The name reported by {@link #getEngine()}. */
+  public static final String ENGINE = "automaton";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AutomatonRecogPatternMatcher.class);
+
+  private static class AutomatonRecogPatternMatchResult implements RecogPatternMatchResult {
+    private final Automaton automaton;
+    private final CharSequence input;
+    private final int[] slots;
+
+    AutomatonRecogPatternMatchResult(Automaton automaton, CharSequence input, int[] slots) {
+      this.automaton = automaton;
+      this.input = input;
+      this.slots = slots;
+    }
+
+    @Override
+    public int groupCount() {
+      return automaton.getGroupCount();
+    }
+
+    @Override
+    public String group(int group) {
+      if (group < 0 || group > groupCount())
+        throw new IndexOutOfBoundsException("No group " + group);
+      int start = slots[2 * group];
+      return start < 0 ? null : input.subSequence(start, slots[2 * group + 1]).toString();
+    }
+
+    @Override
+    public String group(String group) {
+      Integer index = automaton.getGroupNames().get(group);
+      if (index == null)
+        throw new IllegalArgumentException("No group with name <" + group + ">");
+      return group(index);
+    }
+  }
+
+  /**
+   * The pattern compiled by java.util.regex, used for inputs the automaton does not support.
+   */
+  private final Pattern pattern;
+
+  /** The flags the pattern was compiled with; unlike {@link Pattern#flags()}, without inline flags. */
+  private final int flags;
+  private final Automaton automaton;
+
+  AutomatonRecogPatternMatcher(Pattern pattern, int flags, Automaton automaton) {
+    this.pattern = requireNonNull(pattern);
+    this.flags = flags;
+    this.automaton = requireNonNull(automaton);
+  }
+
+  /**
+   * Creates a matcher for a pattern, using an automaton if possible and java.util.regex otherwise.
+   * This method can be used as a {@link com.rapid7.recog.parser.RecogParser.PatternMatcherFactory}.
+   *
+   * @param regex The pattern. Must not be {@code null}.
+   * @param flags The {@link Pattern} flags of the pattern.
+   * @return A matcher. Will not be {@code null}.
+   * @throws PatternSyntaxException If the pattern is not valid.
+   */
+  public static RecogPatternMatcher create(String regex, int flags) {
+    // compiling with java.util.regex validates the pattern exactly as the default factory does
+    Pattern pattern = Pattern.compile(regex, flags);
+    try {
+      return new AutomatonRecogPatternMatcher(pattern, flags, Automaton.compile(RegexParser.parse(regex, flags)));
+    } catch (UnsupportedRegexException | PatternSyntaxException exception) {
+      LOGGER.debug("Using {} for pattern '{}': {}", JavaRegexRecogPatternMatcher.ENGINE, regex, exception.getMessage());
+      return new JavaRegexRecogPatternMatcher(pattern, flags, false);
+    }
+  }
+
+  @Override
+  public String getPattern() {
+    return pattern.pattern();
+  }
+
+  @Override
+  public int getFlags() {
+    return flags;
+  }
+
+  @Override
+  public String getEngine() {
+    return ENGINE;
+  }
+
+  /** Returns {@code true}; subclasses are not assumed to evaluate the pattern as java.util.regex does. */
+  @Override
+  public boolean hasRegexSemantics() {
+    return getClass() == AutomatonRecogPatternMatcher.class;
+  }
+
+  /** Returns whether the automaton, rather than java.util.regex, evaluates the input. */
+  @Override
+  public boolean evaluatesInLinearTime(CharSequence input) {
+    return automaton.supports(input);
+  }
+
+  @Override
+  public boolean matches(String input) {
+    return matches((CharSequence) input);
+  }
+
+  @Override
+  public boolean matches(CharSequence input) {
+    if (input == null)
+      return false;
+    else if (automaton.supports(input))
+      return automaton.find(input);
+    else
+      return pattern.matcher(input).find();
+  }
+
+  @Override
+  public RecogPatternMatchResult match(String input) {
+    return match((CharSequence) input);
+  }
+
+  @Override
+  public RecogPatternMatchResult match(CharSequence input) {
+    if (input == null)
+      return null;
+
+    if (!automaton.supports(input)) {
+      Matcher matcher = pattern.matcher(input);
+      if (!matcher.find())
+        return null;
+      int[] slots = new int[2 * (matcher.groupCount() + 1)];
+      for (int group = 0; group <= matcher.groupCount(); group++) {
+        slots[2 * group] = matcher.start(group);
+        slots[2 * group + 1] = matcher.end(group);
+      }
+      return new AutomatonRecogPatternMatchResult(automaton, input, slots);
+    }
+
+    int[] slots = automaton.match(input);
+    return slots == null ? null : new AutomatonRecogPatternMatchResult(automaton, input, slots);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    } else if (!(other instanceof AutomatonRecogPatternMatcher)) {
+      return false;
+    } else {
+      AutomatonRecogPatternMatcher that = (AutomatonRecogPatternMatcher) other;
+      return Objects.equals(getPattern(), that.getPattern())
+          && Objects.equals(getFlags(), that.getFlags());
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(pattern);
+  }
+}
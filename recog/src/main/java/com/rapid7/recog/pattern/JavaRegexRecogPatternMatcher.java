@@ -1,8 +1,12 @@
 package com.rapid7.recog.pattern;
 
+import com.rapid7.recog.regex.CaptureFreePattern;
+import com.rapid7.recog.regex.RegexParser;
+import com.rapid7.recog.regex.UnsupportedRegexException;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -10,14 +14,51 @@ import static java.util.Objects.requireNonNull;
  * packages to match fingerprint values against fingerprint patterns.
  * Matching of the patterns specified is performed using a sub-sequence or "partial"
  * match. See {@link Matcher#find()} vs {@link Matcher#matches()}.
+ *
+ * <p>{@link #matches(String)} only needs the match decision, so it evaluates a variant of the pattern
+ * without capturing groups (see {@link CaptureFreePattern}), compiled on first use. Patterns with
+ * back references are evaluated as is.
+ *
+ * <p>By default each match allocates a new {@link Matcher}. In reuse mode (see
+ * {@link #JavaRegexRecogPatternMatcher(Pattern, boolean)}) each thread keeps one {@link Matcher} per
+ * pattern and resets it for every input. Results returned by {@link #match(String)} are then views
+ * that are only valid until the next match of this matcher on the same thread; use
+ * {@link RecogPatternMatchResult#copy()} to keep a result for longer. The reused {@link Matcher}s
+ * let go of each input once it is evaluated, or once its result is
+ * {@linkplain RecogPatternMatchResult#release() released}, so they do not keep inputs such as pooled
+ * buffers reachable.
  */
 public class JavaRegexRecogPatternMatcher implements RecogPatternMatcher {
 
+  /** The name reported by {@link #getEngine()}. */
+  public static final String ENGINE = "java.util.regex";
+
+  /** Finds groups such as {@code (?i)} or {@code (?-i)}, which change the flags of the rest of the pattern. */
+  private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?[idmsuxU-]*[idmsuxU][idmsuxU-]*\\)");
+
   private static class JavaRegexRecogPatternMatchResult implements RecogPatternMatchResult {
-    private final Matcher matcher;
+    private Matcher matcher;
+
+    /** Whether this result is reused for the next match on the thread. */
+    private final boolean reused;
+
+    /** Whether the matcher is also referenced by a copy, and must not be reset. */
+    private boolean copied;
 
-    JavaRegexRecogPatternMatchResult(Matcher matcher) {
+    JavaRegexRecogPatternMatchResult(Matcher matcher, boolean reused) {
       this.matcher = matcher;
+      this.reused = reused;
+    }
+
+    /** Resets this reused result for a new input; returns the matcher to search with. */
+    Matcher reset(Pattern pattern, CharSequence input) {
+      if (copied) {
+        matcher = pattern.matcher(input);
+        copied = false;
+      } else {
+        matcher.reset(input);
+      }
+      return matcher;
     }
 
     @Override
@@ -34,6 +75,23 @@ public class JavaRegexRecogPatternMatcher implements RecogPatternMatcher {
     public String group(String group) {
       return matcher.group(group);
     }
+
+    @Override
+    public RecogPatternMatchResult copy() {
+      if (!reused) {
+        return this;
+      }
+      // hand the matcher over to the copy; the next match on this thread creates a new one
+      copied = true;
+      return new JavaRegexRecogPatternMatchResult(matcher, false);
+    }
+
+    @Override
+    public void release() {
+      if (reused && !copied) {
+        matcher.reset("");
+      }
+    }
   }
 
   /**
@@ -41,8 +99,58 @@ public class JavaRegexRecogPatternMatcher implements RecogPatternMatcher {
    */
   private final Pattern pattern;
 
+  /**
+   * The flags the pattern was compiled with, or -1 if they are not known. {@link Pattern#flags()}
+   * also includes inline flags such as {@code (?i)} at the top level of the pattern, so it cannot be
+   * used to compile or analyze the pattern again.
+   */
+  private final int flags;
+
+  /** The pattern without capturing groups, compiled on first use by {@link #matches(String)}. */
+  private volatile Pattern decisionPattern;
+
+  /** The matchers of the decision pattern, by thread, or {@code null} if not in reuse mode. */
+  private final ThreadLocal<Matcher> decisionMatchers;
+
+  /** The reused results, by thread, or {@code null} if not in reuse mode. */
+  private final ThreadLocal<JavaRegexRecogPatternMatchResult> results;
+
   public JavaRegexRecogPatternMatcher(Pattern pattern) {
+    this(pattern, false);
+  }
+
+  /**
+   * Creates a matcher, optionally in reuse mode.
+   *
+   * @param pattern The pattern to match. Must not be {@code null}.
+   * @param reuseMatchers {@code true} to keep a {@link Matcher} per thread and reset it for each
+   *     input, rather than allocate a new one for each match. Results are then only valid until the
+   *     next match on the same thread.
+   */
+  public JavaRegexRecogPatternMatcher(Pattern pattern, boolean reuseMatchers) {
+    this(pattern, compileFlags(pattern), reuseMatchers);
+  }
+
+  /**
+   * Creates a matcher for a pattern compiled with known flags, optionally in reuse mode. Patterns
+   * created with the other constructors whose flags cannot be told from their inline flags are
+   * evaluated as they are, and not analyzed.
+   *
+   * @param pattern The pattern to match. Must not be {@code null}.
+   * @param flags The flags passed to {@link Pattern#compile(String, int)} for the pattern.
+   * @param reuseMatchers {@code true} to keep a {@link Matcher} per thread and reset it for each
+   *     input, rather than allocate a new one for each match.
+   */
+  public JavaRegexRecogPatternMatcher(Pattern pattern, int flags, boolean reuseMatchers) {
     this.pattern = requireNonNull(pattern);
+    this.flags = flags;
+    if (reuseMatchers) {
+      decisionMatchers = ThreadLocal.withInitial(() -> getDecisionPattern().matcher(""));
+      results = ThreadLocal.withInitial(() -> new JavaRegexRecogPatternMatchResult(pattern.matcher(""), true));
+    } else {
+      decisionMatchers = null;
+      results = null;
+    }
   }
 
   @Override
@@ -52,21 +160,73 @@ public class JavaRegexRecogPatternMatcher implements RecogPatternMatcher {
 
   @Override
   public int getFlags() {
-    return pattern.flags();
+    return flags >= 0 ? flags : pattern.flags();
+  }
+
+  @Override
+  public String getEngine() {
+    return ENGINE;
+  }
+
+  /**
+   * Returns {@code true} if the flags the pattern was compiled with are known. Subclasses are not
+   * assumed to evaluate the pattern as java.util.regex does.
+   */
+  @Override
+  public boolean hasRegexSemantics() {
+    return flags >= 0 && getClass() == JavaRegexRecogPatternMatcher.class;
+  }
+
+  /** Returns whether this matcher keeps a {@link Matcher} per thread, rather than one per match. */
+  public boolean isReusingMatchers() {
+    return results != null;
   }
 
   @Override
   public boolean matches(String input) {
-    return input != null && pattern.matcher(input).find();
+    return matches((CharSequence) input);
+  }
+
+  @Override
+  public boolean matches(CharSequence input) {
+    if (input == null) {
+      return false;
+    } else if (decisionMatchers != null) {
+      Matcher matcher = decisionMatchers.get();
+      try {
+        return matcher.reset(input).find();
+      } finally {
+        matcher.reset("");
+      }
+    } else {
+      return getDecisionPattern().matcher(input).find();
+    }
   }
 
   @Override
   public RecogPatternMatchResult match(String input) {
+    return match((CharSequence) input);
+  }
+
+  @Override
+  public RecogPatternMatchResult match(CharSequence input) {
     if (input == null) {
       return null;
     }
+    if (results != null) {
+      JavaRegexRecogPatternMatchResult result = results.get();
+      boolean found = false;
+      try {
+        found = result.reset(pattern, input).find();
+        return found ? result : null;
+      } finally {
+        if (!found) {
+          result.release();
+        }
+      }
+    }
     Matcher matcher = pattern.matcher(input);
-    return matcher.find() ? new JavaRegexRecogPatternMatchResult(matcher) : null;
+    return matcher.find() ? new JavaRegexRecogPatternMatchResult(matcher, false) : null;
   }
 
   @Override
@@ -86,4 +246,40 @@ public class JavaRegexRecogPatternMatcher implements RecogPatternMatcher {
   public int hashCode() {
     return Objects.hash(pattern);
   }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private Pattern getDecisionPattern() {
+    Pattern decisionPattern = this.decisionPattern;
+    if (decisionPattern == null) {
+      decisionPattern = compileDecisionPattern(pattern, flags);
+      this.decisionPattern = decisionPattern;
+    }
+    return decisionPattern;
+  }
+
+  private static Pattern compileDecisionPattern(Pattern pattern, int flags) {
+    if (flags < 0) {
+      return pattern;
+    }
+    try {
+      String captureFree = CaptureFreePattern.of(RegexParser.parse(pattern.pattern(), flags));
+      if (captureFree == null || captureFree.equals(pattern.pattern())) {
+        return pattern;
+      }
+      return Pattern.compile(captureFree, flags);
+    } catch (PatternSyntaxException | UnsupportedRegexException exception) {
+      return pattern;
+    }
+  }
+
+  /**
+   * Returns the flags a pattern was compiled with, or -1 if its inline flags make them ambiguous:
+   * {@code (?i)x} compiled with and without {@link Pattern#CASE_INSENSITIVE} both report it.
+   */
+  private static int compileFlags(Pattern pattern) {
+    return INLINE_FLAGS.matcher(pattern.pattern()).find() ? -1 : pattern.flags();
+  }
 }
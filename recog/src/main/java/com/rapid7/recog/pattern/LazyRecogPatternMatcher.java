@@ -0,0 +1,174 @@
+package com.rapid7.recog.pattern;
+
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link RecogPatternMatcher} that keeps the source and flags of its pattern, and creates the
+ * matcher that evaluates it only when it is first used. Databases that are never used then never
+ * have their patterns compiled. Compilation is thread-safe, and happens once.
+ *
+ * <p>Since the pattern is not compiled up front, an invalid pattern is only detected when it is
+ * compiled. {@link #compile()} throws the {@link PatternSyntaxException}; when the pattern is first
+ * used for matching instead, the error is logged and the pattern matches nothing. To validate
+ * patterns up front, or to compile them in the background, see
+ * {@link com.rapid7.recog.RecogMatchers#compilePatterns(java.util.concurrent.Executor)}.
+ */
+public class LazyRecogPatternMatcher implements RecogPatternMatcher {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LazyRecogPatternMatcher.class);
+
+  private final String pattern;
+  private final int flags;
+  private final BiFunction<String, Integer, RecogPatternMatcher> factory;
+
+  /** The matcher the pattern compiled to, once compiled. */
+  private volatile RecogPatternMatcher compiled;
+
+  /** The error compiling the pattern, if it is invalid. */
+  private volatile PatternSyntaxException failure;
+
+  /**
+   * Creates a matcher that compiles a pattern on first use.
+   *
+   * @param pattern The pattern. Must not be {@code null}.
+   * @param flags The {@link Pattern} flags of the pattern.
+   * @param factory Creates the matcher that evaluates the pattern, from the pattern and its flags.
+   *     Must not be {@code null}.
+   */
+  public LazyRecogPatternMatcher(String pattern, int flags, BiFunction<String, Integer, RecogPatternMatcher> factory) {
+    this.pattern = requireNonNull(pattern);
+    this.flags = flags;
+    this.factory = requireNonNull(factory);
+  }
+
+  @Override
+  public String getPattern() {
+    return pattern;
+  }
+
+  @Override
+  public int getFlags() {
+    return flags;
+  }
+
+  /** Returns the engine of the compiled matcher, compiling the pattern if required. */
+  @Override
+  public String getEngine() {
+    RecogPatternMatcher matcher = delegate();
+    return matcher != null ? matcher.getEngine() : RecogPatternMatcher.super.getEngine();
+  }
+
+  /**
+   * Returns whether the compiled matcher has java.util.regex semantics, compiling the pattern if
+   * required. An invalid pattern does not.
+   */
+  @Override
+  public boolean hasRegexSemantics() {
+    RecogPatternMatcher matcher = delegate();
+    return matcher != null && matcher.hasRegexSemantics();
+  }
+
+  /**
+   * Returns whether the compiled matcher evaluates the input in linear time, compiling the pattern
+   * if required. An invalid pattern, which matches nothing, does.
+   */
+  @Override
+  public boolean evaluatesInLinearTime(CharSequence input) {
+    RecogPatternMatcher matcher = delegate();
+    return matcher == null || matcher.evaluatesInLinearTime(input);
+  }
+
+  /** Returns whether the pattern has been compiled, or found to be invalid. */
+  public boolean isCompiled() {
+    return compiled != null || failure != null;
+  }
+
+  /**
+   * Compiles the pattern, if it is not compiled yet.
+   *
+   * @return The matcher that evaluates the pattern. Will not be {@code null}.
+   * @throws PatternSyntaxException If the pattern is not valid.
+   */
+  public RecogPatternMatcher compile() {
+    RecogPatternMatcher matcher = compiled;
+    if (matcher != null)
+      return matcher;
+
+    synchronized (this) {
+      if (failure != null)
+        throw failure;
+      if (compiled == null) {
+        try {
+          compiled = requireNonNull(factory.apply(pattern, flags));
+        } catch (PatternSyntaxException exception) {
+          failure = exception;
+          throw exception;
+        }
+      }
+      return compiled;
+    }
+  }
+
+  @Override
+  public boolean matches(String input) {
+    return matches((CharSequence) input);
+  }
+
+  @Override
+  public boolean matches(CharSequence input) {
+    RecogPatternMatcher matcher = delegate();
+    return matcher != null && matcher.matches(input);
+  }
+
+  @Override
+  public RecogPatternMatchResult match(String input) {
+    return match((CharSequence) input);
+  }
+
+  @Override
+  public RecogPatternMatchResult match(CharSequence input) {
+    RecogPatternMatcher matcher = delegate();
+    return matcher != null ? matcher.match(input) : null;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    } else if (!(other instanceof LazyRecogPatternMatcher)) {
+      return false;
+    } else {
+      LazyRecogPatternMatcher that = (LazyRecogPatternMatcher) other;
+      return Objects.equals(pattern, that.pattern) && flags == that.flags;
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(pattern, flags);
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /** Returns the compiled matcher, compiling the pattern if required, or {@code null} if it is invalid. */
+  private RecogPatternMatcher delegate() {
+    RecogPatternMatcher matcher = compiled;
+    if (matcher != null || failure != null)
+      return matcher;
+
+    try {
+      return compile();
+    } catch (PatternSyntaxException exception) {
+      LOGGER.warn("Invalid pattern '{}' will not match anything.", pattern, exception);
+      return null;
+    }
+  }
+}
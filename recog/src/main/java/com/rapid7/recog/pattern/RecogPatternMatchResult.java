@@ -31,4 +31,23 @@ public interface RecogPatternMatchResult {
    */
   String group(String name);
 
+  /**
+   * Returns a result that stays valid after further matches. Matchers that reuse state between
+   * matches, such as a {@link JavaRegexRecogPatternMatcher} in reuse mode, return results that are
+   * only valid until the next match on the same thread; callers that keep a result beyond that must
+   * copy it.
+   *
+   * @return A result independent of further matches. May be this result if it already is.
+   */
+  default RecogPatternMatchResult copy() {
+    return this;
+  }
+
+  /**
+   * Releases the input this result holds on to, if it is reused between matches. The result must
+   * not be used afterwards; copies are not affected.
+   */
+  default void release() {
+  }
+
 }
@@ -11,6 +11,35 @@ public interface RecogPatternMatcher {
 
   int getFlags();
 
+  /**
+   * Returns whether the pattern has java.util.regex syntax and semantics under the flags of
+   * {@link #getFlags()}, so that it can be analyzed without being evaluated: to find the literals
+   * every match must contain, for example. Engines with other pattern syntax or semantics must
+   * return {@code false}, the default, and are then always evaluated.
+   */
+  default boolean hasRegexSemantics() {
+    return false;
+  }
+
+  /**
+   * Returns whether evaluating the pattern against an input takes time linear in the length of the
+   * input, whatever the pattern, so that it need not be bounded by a
+   * {@link com.rapid7.recog.MatchBudget}. The default is {@code false}.
+   *
+   * @param input The input. Must not be {@code null}.
+   */
+  default boolean evaluatesInLinearTime(CharSequence input) {
+    return false;
+  }
+
+  /**
+   * Returns a short name of the engine that evaluates the pattern, for diagnostics. Factories that
+   * choose an engine per pattern can be inspected through this method.
+   */
+  default String getEngine() {
+    return getClass().getSimpleName();
+  }
+
   /**
    * Returns whether this matcher matches the specified input fingerprint value.
    *
@@ -29,4 +58,31 @@ public interface RecogPatternMatcher {
    */
   RecogPatternMatchResult match(String input);
 
+  /**
+   * Returns whether this matcher matches the specified input, which need not be a {@link String}: a
+   * view over a network buffer, for example (see {@link com.rapid7.recog.Latin1CharSequence}). The
+   * default implementation converts the input to a {@link String}; implementations that can match
+   * a {@link CharSequence} directly should override it.
+   *
+   * @param input The fingerprint to test this matcher against. May be {@code null}.
+   * @return {@code true} if the input is non-{@code null} and matches the fingerprint matcher
+   *     pattern.
+   */
+  default boolean matches(CharSequence input) {
+    return input != null && matches(input.toString());
+  }
+
+  /**
+   * Matches the regular expression against the specified input, which need not be a
+   * {@link String}. The result may refer to the input, and is only valid as long as the input does
+   * not change. The default implementation converts the input to a {@link String}.
+   *
+   * @param input The fingerprint to match. May be {@code null}.
+   * @return {@code null} if the input does not match the pattern, otherwise a non-{@code null}
+   *     {@link RecogPatternMatchResult}
+   */
+  default RecogPatternMatchResult match(CharSequence input) {
+    return input == null ? null : match(input.toString());
+  }
+
 }
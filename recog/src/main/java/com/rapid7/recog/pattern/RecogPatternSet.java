@@ -0,0 +1,105 @@
+package com.rapid7.recog.pattern;
+
+import com.rapid7.recog.regex.AutomatonSet;
+import com.rapid7.recog.regex.RegexParser;
+import com.rapid7.recog.regex.RegexTree;
+import com.rapid7.recog.regex.UnsupportedRegexException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * An ordered set of {@link RecogPatternMatcher}s whose patterns are compiled into one combined
+ * automaton, so that all matchers matching an input are found in a single pass over the input
+ * rather than one pass per matcher. Only the match decision is made; groups are extracted by the
+ * matchers themselves, for the matchers that matched.
+ *
+ * <p>Patterns the automaton cannot evaluate (see {@link AutomatonRecogPatternMatcher}), and matchers
+ * without a pattern, are left out of the combined automaton. {@link #matches(CharSequence)} evaluates
+ * them individually, with the same results as evaluating each matcher with
+ * {@link RecogPatternMatcher#matches(CharSequence)}; {@link #candidates(CharSequence)} leaves them to
+ * the caller. Instances are thread-safe if the matchers are.
+ */
+public final class RecogPatternSet {
+
+  private final List<RecogPatternMatcher> matchers;
+  private final AutomatonSet automaton;
+
+  private RecogPatternSet(List<RecogPatternMatcher> matchers, AutomatonSet automaton) {
+    this.matchers = matchers;
+    this.automaton = automaton;
+  }
+
+  /**
+   * Compiles a list of matchers into a set.
+   *
+   * @param matchers The matchers. Must not be {@code null}.
+   * @return The set. Will not be {@code null}.
+   */
+  public static RecogPatternSet compile(List<? extends RecogPatternMatcher> matchers) {
+    List<RegexTree> trees = new ArrayList<>(matchers.size());
+    for (RecogPatternMatcher matcher : matchers)
+      trees.add(parse(matcher));
+    return new RecogPatternSet(new ArrayList<>(matchers), AutomatonSet.compile(trees));
+  }
+
+  /** Returns the number of matchers in the set. */
+  public int size() {
+    return matchers.size();
+  }
+
+  /** Returns the number of matchers evaluated by the combined automaton. */
+  public int getAutomatonCount() {
+    int count = 0;
+    for (int index = 0; index < size(); index++)
+      if (automaton.contains(index))
+        count++;
+    return count;
+  }
+
+  /**
+   * Returns the positions of the matchers that match the input.
+   *
+   * @param input The input. Must not be {@code null}.
+   * @return A new {@link BitSet} of positions. Will not be {@code null}.
+   */
+  public BitSet matches(CharSequence input) {
+    BitSet unresolved = new BitSet(size());
+    BitSet matches = automaton.find(input, unresolved);
+    for (int index = unresolved.nextSetBit(0); index >= 0; index = unresolved.nextSetBit(index + 1))
+      if (matchers.get(index).matches(input))
+        matches.set(index);
+    return matches;
+  }
+
+  /**
+   * Returns the positions of the matchers that may match the input: those the combined automaton
+   * found to match, and those it does not evaluate, which are left for the caller to evaluate.
+   *
+   * @param input The input. Must not be {@code null}.
+   * @return A new {@link BitSet} of positions. Will not be {@code null}.
+   */
+  public BitSet candidates(CharSequence input) {
+    BitSet unresolved = new BitSet(size());
+    BitSet candidates = automaton.find(input, unresolved);
+    candidates.or(unresolved);
+    return candidates;
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private static RegexTree parse(RecogPatternMatcher matcher) {
+    // only patterns with java.util.regex semantics can be evaluated by the automaton
+    if (matcher.getPattern() == null || !matcher.hasRegexSemantics())
+      return null;
+
+    try {
+      return RegexParser.parse(matcher.getPattern(), matcher.getFlags());
+    } catch (PatternSyntaxException | UnsupportedRegexException exception) {
+      return null;
+    }
+  }
+}
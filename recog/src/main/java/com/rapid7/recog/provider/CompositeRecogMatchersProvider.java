@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toList;
@@ -14,7 +15,9 @@ import static java.util.stream.Collectors.toList;
 /**
  * An implementation of {@link IRecogMatchersProvider} that composes multiple, sequentially ordered,
  * underlying {@link IRecogMatchersProvider}s. During the {@link #getMatchers(String, RecogType)}
- * call, the first provider in this composite to match will return its {@link RecogMatchers}.
+ * call, the first provider in this composite to match will return its {@link RecogMatchers}, or if
+ * several match, their union. {@link #getMatchers(RecogType)} returns the databases of all
+ * providers, uniting those with the same key the same way.
  */
 public class CompositeRecogMatchersProvider implements IRecogMatchersProvider {
 
@@ -41,11 +44,54 @@ public class CompositeRecogMatchersProvider implements IRecogMatchersProvider {
     return this;
   }
 
+  /**
+   * Returns the {@link RecogMatchers} of the specified type of all providers in this composite.
+   * Databases with the same key are consolidated like in {@link #getMatchers(String, RecogType)},
+   * and keep the properties of the database of the first provider that has the key.
+   */
   @Override
   public Collection<RecogMatchers> getMatchers(RecogType type) {
-    // TODO: how to implement ... grab all matchers... then map them by name, resolve union, return
-    // collection
-    return null;
+    // group the databases of all providers by key, in the order of the providers
+    Map<String, List<RecogMatchers>> matchersByKey = new LinkedHashMap<>();
+    List<RecogMatchers> unkeyed = new ArrayList<>();
+    for (IRecogMatchersProvider provider : providers) {
+      Collection<RecogMatchers> matchers = provider.getMatchers(type);
+      if (matchers != null)
+        for (RecogMatchers potentialMatchers : matchers)
+          if (potentialMatchers.getKey() == null)
+            unkeyed.add(potentialMatchers);
+          else
+            matchersByKey.computeIfAbsent(potentialMatchers.getKey(), key -> new ArrayList<>()).add(potentialMatchers);
+    }
+
+    if (matchersByKey.isEmpty() && unkeyed.isEmpty())
+      return null;
+
+    List<RecogMatchers> union = new ArrayList<>(matchersByKey.size() + unkeyed.size());
+    for (List<RecogMatchers> matchers : matchersByKey.values()) {
+      if (matchers.size() == 1)
+        union.add(matchers.get(0));
+      else {
+        RecogMatchers first = matchers.get(0);
+        RecogMatchers unionedMatchers = new RecogMatchers(first.getPath(), first.getKey(), first.getProtocol(), first.getType(), first.getPreference());
+        unionedMatchers.addAll(unique(matchers));
+        union.add(unionedMatchers);
+      }
+    }
+    union.addAll(unkeyed);
+    return union;
+  }
+
+  /**
+   * Returns the sum of the generations of the providers in this composite, and of the number of
+   * providers, so that it changes whenever the content of a provider does or a provider is added.
+   */
+  @Override
+  public long getContentGeneration() {
+    long generation = providers.size();
+    for (IRecogMatchersProvider provider : providers)
+      generation += provider.getContentGeneration();
+    return generation;
   }
 
   @Override
@@ -61,16 +107,25 @@ public class CompositeRecogMatchersProvider implements IRecogMatchersProvider {
       return matchers.get(0);
     // if there are multiple matches
     else {
-      // the matchers need to be consolidated together; iterate over each list of matchers and keep
-      // only unique matchers by their pattern; as the providers are ordered based on priority, first one wins;
-      // insertion order is maintained through this process
-      LinkedHashMap<String, RecogMatcher> uniqueMatchers = new LinkedHashMap<>();
-      matchers.forEach(potentialMatchers -> potentialMatchers.forEach(potentialMatcher -> uniqueMatchers.putIfAbsent(potentialMatcher.getPattern(), potentialMatcher)));
-
       // return a new list of matchers based on the unique, ordered matcher patterns
       RecogMatchers unionedMatchers = new RecogMatchers();
-      unionedMatchers.addAll(uniqueMatchers.values());
+      unionedMatchers.addAll(unique(matchers));
       return unionedMatchers;
     }
   }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Consolidates lists of matchers together. Iterates over each list of matchers and keeps only
+   * unique matchers by their pattern; as the providers are ordered based on priority, first one
+   * wins. Insertion order is maintained through this process.
+   */
+  private static Collection<RecogMatcher> unique(List<RecogMatchers> matchers) {
+    LinkedHashMap<String, RecogMatcher> uniqueMatchers = new LinkedHashMap<>();
+    matchers.forEach(potentialMatchers -> potentialMatchers.forEach(potentialMatcher -> uniqueMatchers.putIfAbsent(potentialMatcher.getPattern(), potentialMatcher)));
+    return uniqueMatchers.values();
+  }
 }
@@ -30,4 +30,15 @@ public interface IRecogMatchersProvider {
    *         are found.
    */
   public Collection<RecogMatchers> getMatchers(RecogType type);
+
+  /**
+   * Returns a number that changes whenever the {@link RecogMatchers} this provider returns do, so
+   * that callers indexing them know when to read them again. Content that never changes, which the
+   * default implementation assumes, always has the same generation.
+   *
+   * @return The generation of the content.
+   */
+  public default long getContentGeneration() {
+    return 0;
+  }
 }
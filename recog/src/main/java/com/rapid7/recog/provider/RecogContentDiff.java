@@ -0,0 +1,121 @@
+package com.rapid7.recog.provider;
+
+import com.rapid7.recog.RecogMatcher;
+import com.rapid7.recog.RecogMatchers;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+
+/**
+ * The changes between two loads of fingerprint content. A matcher is changed if a matcher with the
+ * same pattern in the same file had different source data, such as other parameters or examples;
+ * otherwise it is added or removed. Matchers with unchanged source data are not listed.
+ */
+public final class RecogContentDiff {
+
+  private final Set<String> changedFiles = new TreeSet<>();
+  private final List<RecogMatcher> added = new ArrayList<>();
+  private final List<RecogMatcher> removed = new ArrayList<>();
+  private final List<RecogMatcher> changed = new ArrayList<>();
+
+  /**
+   * Returns the names of the files that were added, removed or changed.
+   *
+   * @return A non-null, immutable, sorted set of file names.
+   */
+  public Set<String> getChangedFiles() {
+    return Collections.unmodifiableSet(changedFiles);
+  }
+
+  /** Returns the matchers that were added. */
+  public List<RecogMatcher> getAdded() {
+    return Collections.unmodifiableList(added);
+  }
+
+  /** Returns the matchers that were removed, as they were before. */
+  public List<RecogMatcher> getRemoved() {
+    return Collections.unmodifiableList(removed);
+  }
+
+  /** Returns the matchers that were changed, as they are now. */
+  public List<RecogMatcher> getChanged() {
+    return Collections.unmodifiableList(changed);
+  }
+
+  /** Returns whether no file changed. */
+  public boolean isEmpty() {
+    return changedFiles.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", RecogContentDiff.class.getSimpleName() + "[", "]")
+        .add("Changed Files=" + changedFiles.size())
+        .add("Added=" + added.size())
+        .add("Removed=" + removed.size())
+        .add("Changed=" + changed.size())
+        .toString();
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Records the changes to the matchers of a file.
+   *
+   * @param before The matchers of the file before, or {@code null} if the file was added.
+   * @param after The matchers of the file now, or {@code null} if the file was removed.
+   */
+  void add(String fileName, RecogMatchers before, RecogMatchers after) {
+    changedFiles.add(fileName);
+    // matchers reused from before, or copied from before to another line, are unchanged
+    Set<RecogMatcher> reused = Collections.newSetFromMap(new IdentityHashMap<>());
+    Set<RecogMatcher> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+    if (before != null && after != null) {
+      Set<RecogMatcher> existing = Collections.newSetFromMap(new IdentityHashMap<>());
+      existing.addAll(before);
+      for (RecogMatcher matcher : after)
+        if (existing.contains(matcher)) {
+          reused.add(matcher);
+          kept.add(matcher);
+        }
+
+      Map<String, Deque<RecogMatcher>> moved = new HashMap<>();
+      for (RecogMatcher matcher : before)
+        if (!kept.contains(matcher) && matcher.getContentHash() != null)
+          moved.computeIfAbsent(matcher.getContentHash(), ignored -> new ArrayDeque<>()).add(matcher);
+      for (RecogMatcher matcher : after) {
+        Deque<RecogMatcher> same = reused.contains(matcher) || matcher.getContentHash() == null ? null : moved.get(matcher.getContentHash());
+        if (same != null && !same.isEmpty()) {
+          reused.add(matcher);
+          kept.add(same.poll());
+        }
+      }
+    }
+
+    Map<String, RecogMatcher> previous = new HashMap<>();
+    if (before != null)
+      for (RecogMatcher matcher : before)
+        if (!kept.contains(matcher))
+          previous.putIfAbsent(matcher.getPattern(), matcher);
+
+    if (after != null)
+      for (RecogMatcher matcher : after)
+        if (!reused.contains(matcher)) {
+          if (previous.remove(matcher.getPattern()) != null)
+            changed.add(matcher);
+          else
+            added.add(matcher);
+        }
+    removed.addAll(previous.values());
+  }
+}
@@ -1,21 +1,45 @@
 package com.rapid7.recog.provider;
 
+import com.rapid7.recog.RecogMatcher;
 import com.rapid7.recog.RecogMatchers;
 import com.rapid7.recog.RecogType;
+import com.rapid7.recog.RecogVersion;
 import com.rapid7.recog.parser.ParseException;
 import com.rapid7.recog.parser.RecogParser;
+import com.rapid7.recog.parser.RecogParser.PatternMatcherFactory;
+import com.rapid7.recog.pattern.RecogPatternMatcher;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Serializable;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,15 +48,52 @@ import static java.util.Objects.requireNonNull;
 /**
  * Default provider implementation that retrieves {@link RecogMatchers} from files in a specified
  * directory on the file system.
+ *
+ * <p>Files are read and parsed on the constructing thread, or concurrently on an {@link Executor}
+ * (see {@link #RecogMatchersProvider(RecogType, Path, Executor)}). Either way, the databases are
+ * assembled in the order of the file names, so the content loaded is the same.
  */
 public class RecogMatchersProvider implements IRecogMatchersProvider, Serializable {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(RecogMatchersProvider.class);
 
+  /** Matches the name of a recog release directory or archive, such as {@code recog-3.1.2}. */
+  private static final Pattern RELEASE_NAME = Pattern.compile("^recog-(v?\\d[\\w.\\-]*?)(?:\\.zip|\\.tar|\\.gem)?$");
+
   private final Map<String, RecogMatchers> matchersByFileName;
   private final Map<String, RecogMatchers> matchersByKey;
   private final RecogType type;
   private final transient RecogParser parser;
+  private final transient Executor executor;
+  private final transient MessageDigest digest;
+  private transient String tag;
+  private transient Instant date;
+  private transient RecogVersion version;
+  /** The SHA-1 digest of the content of each file, by file name. */
+  private final transient Map<String, String> fileHashes;
+  /** The names of the files that could not be read or parsed. */
+  private final transient Set<String> failedFileNames;
+  private final transient RecogContentDiff diff;
+
+  /** A fingerprint file read by a parsing task. */
+  private static final class ParsedFile {
+    private final String name;
+    private final byte[] content;
+    private final Instant modified;
+    private final String hash;
+    /** The matchers of the file in the previous load, if any. */
+    private final RecogMatchers before;
+    private final RecogMatchers matchers;
+
+    ParsedFile(String name, byte[] content, Instant modified, String hash, RecogMatchers before, RecogMatchers matchers) {
+      this.name = name;
+      this.content = content;
+      this.modified = modified;
+      this.hash = hash;
+      this.before = before;
+      this.matchers = matchers;
+    }
+  }
 
   public RecogMatchersProvider(RecogType type, Path path) {
     this(type, path, new RecogParser());
@@ -42,6 +103,20 @@ public class RecogMatchersProvider implements IRecogMatchersProvider, Serializab
     this(type, directory.toPath());
   }
 
+  /**
+   * Creates a provider that reads and parses the fingerprint files concurrently. Each file is read,
+   * parsed and has its patterns compiled by a task on the executor; for a zip file, the tasks read
+   * their entries concurrently. The constructor returns once all tasks are complete.
+   *
+   * @param type The type of the content. Must not be {@code null}.
+   * @param path The directory or zip file to read fingerprint files from. Must not be {@code null}.
+   * @param executor The executor to parse files on, such as a {@link java.util.concurrent.ForkJoinPool}.
+   *     Must not be {@code null}.
+   */
+  public RecogMatchersProvider(RecogType type, Path path, Executor executor) {
+    this(type, path, new RecogParser(), executor, false, null);
+  }
+
   @Override
   public Collection<RecogMatchers> getMatchers(RecogType type) {
     if (this.type == type)
@@ -63,16 +138,72 @@ public class RecogMatchersProvider implements IRecogMatchersProvider, Serializab
       return null;
   }
 
+  /**
+   * Returns the version of the content loaded. The tag is taken from the name of a recog release
+   * directory or archive, such as {@code recog-3.1.2}, if the content is in one. Since the files
+   * carry no commit, the SHA-1 is a digest of the content of the fingerprint files, so that it
+   * changes exactly when they do. The date is the latest modification time of those files.
+   *
+   * @return The version, or {@code null} if this provider was deserialized. Its properties may be
+   *     {@code null}.
+   */
+  public RecogVersion getVersion() {
+    return version;
+  }
+
   /**
    * Constructor that allows injection of the parser, for testability.
    */
   RecogMatchersProvider(RecogType type, Path path, RecogParser parser) {
+    this(type, path, parser, Runnable::run, false, null);
+  }
+
+  /**
+   * Constructor that reads content incrementally, reusing what is unchanged since a previous load.
+   * Files with the same content reuse the previous {@link RecogMatchers}. In changed files, matchers
+   * with the same source data reuse the previous {@link RecogMatcher}, and patterns compiled before
+   * are not compiled again.
+   *
+   * @param executor The executor to parse files on.
+   * @param hashContent {@code true} to record the digest of the source data of each matcher, so that
+   *     a later load can reuse unchanged matchers of changed files.
+   * @param previous The provider of the previous load, or {@code null} to read everything.
+   */
+  RecogMatchersProvider(RecogType type, Path path, RecogParser parser, Executor executor, boolean hashContent, RecogMatchersProvider previous) {
     this.type = requireNonNull(type);
-    this.parser = requireNonNull(parser);
+    this.parser = hashContent && !parser.isHashContent()
+        ? new RecogParser(parser.isStrictMode(), parser.getPatternMatcherFactory(), parser.isOptimizePatterns(), true)
+        : requireNonNull(parser);
+    this.executor = requireNonNull(executor);
     matchersByFileName = new HashMap<>();
     matchersByKey = new HashMap<>();
+    fileHashes = new HashMap<>();
+    failedFileNames = new HashSet<>();
+    diff = new RecogContentDiff();
+    digest = sha1();
 
-    parseFiles(requireNonNull(path));
+    parseFiles(requireNonNull(path), previous != null && previous.fileHashes != null ? previous : null);
+    String sha1 = matchersByFileName.isEmpty() ? null : hex(digest.digest());
+    version = new RecogVersion("recog", tag != null ? "recog-" + tag : null, null, null, null, null, tag, sha1, date);
+  }
+
+  /**
+   * Returns the changes to the content since the previous load, or, if there was none, all of the
+   * content as added.
+   */
+  RecogContentDiff getDiff() {
+    return diff;
+  }
+
+  /**
+   * Returns whether a file the previous load had matchers for could not be read or parsed, in which
+   * case the content loaded lacks them.
+   */
+  boolean isMissingFilesOf(RecogMatchersProvider previous) {
+    for (String fileName : failedFileNames)
+      if (previous.matchersByFileName.containsKey(fileName))
+        return true;
+    return false;
   }
 
   /**
@@ -80,14 +211,20 @@ public class RecogMatchersProvider implements IRecogMatchersProvider, Serializab
    * given set of file extension supported. Currently xml.
    *
    * @param path The location of the file, directory or zip to load.
+   * @param previous The provider of the previous load, or {@code null}.
    */
-  private void parseFiles(Path path) {
-    FileSystem fileSystem = null;
+  private void parseFiles(Path path, RecogMatchersProvider previous) {
+    for (Path name : path)
+      tag(name.toString());
     if (Files.isDirectory(path)) {
-      parseFromWalkablePath(path);
+      parseFromWalkablePath(path, previous);
     } else if (Files.isRegularFile(path) && path.getFileName().toString().endsWith(".zip")) {
       try (FileSystem fs = FileSystems.newFileSystem(path, (java.lang.ClassLoader)null)) {
-        parseFromWalkablePath(fs.getRootDirectories().iterator().next());
+        Path root = fs.getRootDirectories().iterator().next();
+        try (Stream<Path> entries = Files.list(root)) {
+          entries.forEach(entry -> tag(entry.getFileName().toString().replace("/", "")));
+        }
+        parseFromWalkablePath(root, previous);
       } catch (IOException exception) {
         LOGGER.warn("Failed to open zip file {}.", path, exception);
       }
@@ -95,6 +232,11 @@ public class RecogMatchersProvider implements IRecogMatchersProvider, Serializab
       LOGGER.warn("Path {} does not exist or is not walkable; fingerprinting may be inaccurate.", path);
     }
 
+    if (previous != null)
+      for (Map.Entry<String, RecogMatchers> removed : previous.matchersByFileName.entrySet())
+        if (!matchersByFileName.containsKey(removed.getKey()))
+          diff.add(removed.getKey(), removed.getValue(), null);
+
     // Only count matchers loaded by file name since total matcher count will be higher than file count
     LOGGER.info("Loaded {} fingerprint files from {}.", matchersByFileName.size(), path);
   }
@@ -103,25 +245,160 @@ public class RecogMatchersProvider implements IRecogMatchersProvider, Serializab
    * Parse a path that represents some walkable location (zip file, directory, etc.).
    *
    * @param path The walkable path to parse.
+   * @param previous The provider of the previous load, or {@code null}.
    */
-  private void parseFromWalkablePath(Path path) {
+  private void parseFromWalkablePath(Path path, RecogMatchersProvider previous) {
     final PathMatcher filter = path.getFileSystem().getPathMatcher("glob:**/*.xml");
+    // files are read in a stable order, so that the digest of their content is too
+    List<Path> paths;
     try (Stream<Path> files = Files.walk(path)) {
-      files.filter(filter::matches).forEach(file -> {
-        try {
-          final String fileName = file.getFileName().toString();
-          try (Reader reader = Files.newBufferedReader(file)) {
-            int extIndex = fileName.lastIndexOf(".xml");
-            RecogMatchers matchers = parser.parse(reader, extIndex > 0 ? fileName.substring(0, extIndex) : fileName);
-            matchersByFileName.put(fileName, matchers);
-            matchersByKey.put(matchers.getKey(), matchers);
-          }
-        } catch (IOException | ParseException exception) {
-          LOGGER.warn("Failed to parse document {}.", file, exception);
-        }
-      });
+      paths = files.filter(filter::matches).sorted().collect(Collectors.toList());
     } catch (IOException exception) {
       LOGGER.warn("I/O error while attempting to list {}.", path, exception);
+      return;
     }
+
+    // patterns compiled by the previous load are reused, if the parser allows it
+    final RecogParser parser = previous != null && this.parser.getPatternMatcherFactory() != null
+        ? new RecogParser(this.parser.isStrictMode(), previous.compiledPatterns(this.parser.getPatternMatcherFactory()),
+            this.parser.isOptimizePatterns(), this.parser.isHashContent())
+        : this.parser;
+
+    // files are parsed concurrently, then assembled in order
+    List<CompletableFuture<ParsedFile>> parsed = new ArrayList<>(paths.size());
+    for (Path file : paths)
+      parsed.add(CompletableFuture.supplyAsync(() -> parseFile(file, parser, previous), executor));
+
+    // every task completes before a failure propagates, since the file system of a zip file is
+    // closed once it does
+    try {
+      CompletableFuture.allOf(parsed.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException exception) {
+      // propagated below, from the first file that failed
+    }
+
+    for (int index = 0; index < parsed.size(); index++) {
+      ParsedFile file;
+      try {
+        file = parsed.get(index).join();
+      } catch (CompletionException exception) {
+        // runtime failures propagate as they would have from the constructing thread
+        if (exception.getCause() instanceof RuntimeException)
+          throw (RuntimeException) exception.getCause();
+        if (exception.getCause() instanceof Error)
+          throw (Error) exception.getCause();
+        throw exception;
+      }
+      if (file == null) {
+        failedFileNames.add(paths.get(index).getFileName().toString());
+        continue;
+      }
+
+      if (file.matchers != file.before)
+        diff.add(file.name, file.before, file.matchers);
+      matchersByFileName.put(file.name, file.matchers);
+      matchersByKey.put(file.matchers.getKey(), file.matchers);
+      fileHashes.put(file.name, file.hash);
+      digest.update(file.name.getBytes(StandardCharsets.UTF_8));
+      digest.update(file.content);
+      if (date == null || file.modified.isAfter(date))
+        date = file.modified;
+    }
+  }
+
+  /**
+   * Reads and parses a fingerprint file, unless its content is the same as in the previous load.
+   *
+   * @return The file, or {@code null} if it could not be read or parsed.
+   */
+  private static ParsedFile parseFile(Path file, RecogParser parser, RecogMatchersProvider previous) {
+    try {
+      final String fileName = file.getFileName().toString();
+      byte[] content = Files.readAllBytes(file);
+      Instant modified = Files.getLastModifiedTime(file).toInstant();
+      String hash = hex(sha1().digest(content));
+      RecogMatchers before = previous != null ? previous.matchersByFileName.get(fileName) : null;
+      RecogMatchers matchers;
+      if (before != null && hash.equals(previous.fileHashes.get(fileName))) {
+        matchers = before;
+      } else {
+        // malformed content fails the file, like it does when read with Files.newBufferedReader
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(content), decoder)) {
+          int extIndex = fileName.lastIndexOf(".xml");
+          matchers = parser.parse(reader, extIndex > 0 ? fileName.substring(0, extIndex) : fileName);
+        }
+        if (before != null)
+          reuseMatchers(before, matchers);
+      }
+      return new ParsedFile(fileName, content, modified, hash, before, matchers);
+    } catch (IOException | ParseException exception) {
+      LOGGER.warn("Failed to parse document {}.", file, exception);
+      return null;
+    }
+  }
+
+  /**
+   * Replaces the matchers of a changed file that have the same source data as a matcher of the file
+   * before with that matcher, so that the state it computed is kept. Matchers still served with the
+   * content before are not changed: a matcher whose source data moved is replaced with a copy at its
+   * new line.
+   */
+  private static void reuseMatchers(RecogMatchers before, RecogMatchers after) {
+    Map<String, Deque<RecogMatcher>> previous = new HashMap<>();
+    for (RecogMatcher matcher : before)
+      if (matcher.getContentHash() != null)
+        previous.computeIfAbsent(matcher.getContentHash(), ignored -> new ArrayDeque<>()).add(matcher);
+
+    for (int index = 0; index < after.size(); index++) {
+      RecogMatcher matcher = after.get(index);
+      Deque<RecogMatcher> same = matcher.getContentHash() != null ? previous.get(matcher.getContentHash()) : null;
+      if (same != null && !same.isEmpty()) {
+        RecogMatcher reused = same.poll();
+        after.set(index, reused.getLine() == matcher.getLine() ? reused : reused.withLine(matcher.getLine()));
+      }
+    }
+  }
+
+  /**
+   * Returns a factory that returns the pattern matchers of this provider for the patterns they were
+   * compiled from, and creates others with a given factory. Pattern matchers are looked up by the
+   * flags their pattern was compiled with, which, unlike {@link Pattern#flags()}, do not include
+   * inline flags such as {@code (?i)}.
+   */
+  private PatternMatcherFactory compiledPatterns(PatternMatcherFactory factory) {
+    Map<String, RecogPatternMatcher> compiled = new HashMap<>();
+    for (RecogMatchers matchers : matchersByFileName.values())
+      for (RecogMatcher matcher : matchers)
+        compiled.putIfAbsent(matcher.getFlags() + "/" + matcher.getPattern(), matcher.getPatternMatcher());
+    return (pattern, flags) -> {
+      RecogPatternMatcher matcher = compiled.get(flags + "/" + pattern);
+      return matcher != null ? matcher : factory.create(pattern, flags);
+    };
+  }
+
+  /** Takes the release tag from a file name, if it names a recog release. */
+  private void tag(String name) {
+    Matcher matcher = RELEASE_NAME.matcher(name);
+    if (matcher.matches())
+      tag = matcher.group(1);
+  }
+
+  private static MessageDigest sha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException exception) {
+      // every Java platform is required to support SHA-1
+      throw new IllegalStateException(exception);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte value : bytes)
+      hex.append(Character.forDigit((value >> 4) & 0xf, 16)).append(Character.forDigit(value & 0xf, 16));
+    return hex.toString();
   }
 }
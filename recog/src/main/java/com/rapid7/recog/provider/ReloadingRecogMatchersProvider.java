@@ -0,0 +1,302 @@
+package com.rapid7.recog.provider;
+
+import com.rapid7.recog.FingerprintExample;
+import com.rapid7.recog.RecogMatcher;
+import com.rapid7.recog.RecogMatchers;
+import com.rapid7.recog.RecogType;
+import com.rapid7.recog.RecogVersion;
+import com.rapid7.recog.parser.RecogParser;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A provider that reads {@link RecogMatchers} from a directory or zip file, like
+ * {@link RecogMatchersProvider}, and can read them again when the content changes, without a
+ * restart.
+ *
+ * <p>A reload parses the content into a complete new {@link RecogMatchersProvider}, warms it up by
+ * evaluating each fingerprint against its examples, and then swaps it in by replacing a single
+ * volatile reference. Readers never block, and always see either the previous content or the new
+ * content as a whole. A reload in which a file that is served fails to read or parse, or that loads
+ * no fingerprints, for example because the files are being replaced, keeps the previous content. New
+ * files that fail are skipped, as they are by the first load.
+ *
+ * <p>Reloads are incremental. Only files whose content changed are parsed again; the others keep
+ * their {@link RecogMatchers}, along with any index built for them. Within a changed file, each
+ * {@code <fingerprint>} whose source data is unchanged keeps its {@link RecogMatcher}, and only new
+ * patterns are compiled. {@link #refresh()} reports which matchers were added, removed and changed.
+ *
+ * <p>{@link #watch(Duration)} reloads the content automatically whenever the files change. It is
+ * stopped by {@link #close()}.
+ */
+public class ReloadingRecogMatchersProvider implements IRecogMatchersProvider, Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReloadingRecogMatchersProvider.class);
+
+  private final RecogType type;
+  private final Path path;
+  private final RecogParser parser;
+  private final Executor executor;
+
+  /** The content currently served. */
+  private volatile RecogMatchersProvider current;
+
+  /** The number of times the content served was replaced; written after {@link #current}. */
+  private volatile long generation;
+
+  // guarded by this
+  private WatchService watchService;
+
+  public ReloadingRecogMatchersProvider(RecogType type, Path path) {
+    this(type, path, new RecogParser());
+  }
+
+  /**
+   * Creates a provider, and loads the content.
+   *
+   * @param type The type of the content. Must not be {@code null}.
+   * @param path The directory or zip file to read fingerprint files from. Must not be {@code null}.
+   * @param parser The parser for the fingerprint files. Must not be {@code null}.
+   */
+  public ReloadingRecogMatchersProvider(RecogType type, Path path, RecogParser parser) {
+    this(type, path, parser, Runnable::run);
+  }
+
+  /**
+   * Creates a provider that parses the fingerprint files concurrently, and loads the content.
+   *
+   * @param type The type of the content. Must not be {@code null}.
+   * @param path The directory or zip file to read fingerprint files from. Must not be {@code null}.
+   * @param parser The parser for the fingerprint files. Must not be {@code null}.
+   * @param executor The executor to parse files on (see
+   *     {@link RecogMatchersProvider#RecogMatchersProvider(RecogType, Path, Executor)}). Must not be
+   *     {@code null}.
+   */
+  public ReloadingRecogMatchersProvider(RecogType type, Path path, RecogParser parser, Executor executor) {
+    this.type = requireNonNull(type);
+    this.path = requireNonNull(path);
+    this.parser = requireNonNull(parser);
+    this.executor = requireNonNull(executor);
+    this.current = load(null);
+  }
+
+  @Override
+  public Collection<RecogMatchers> getMatchers(RecogType type) {
+    return current.getMatchers(type);
+  }
+
+  @Override
+  public RecogMatchers getMatchers(String name, RecogType type) {
+    return current.getMatchers(name, type);
+  }
+
+  /**
+   * Returns the number of times the content served was replaced by a reload. A reload that keeps
+   * the previous content does not change it.
+   */
+  @Override
+  public long getContentGeneration() {
+    return generation;
+  }
+
+  /**
+   * Returns the version of the content currently served.
+   *
+   * @see RecogMatchersProvider#getVersion()
+   */
+  public RecogVersion getVersion() {
+    return current.getVersion();
+  }
+
+  /**
+   * Reads the content again, and serves it once it is completely loaded. Concurrent reloads are
+   * serialized.
+   *
+   * @return The version of the content served after the reload.
+   */
+  public synchronized RecogVersion reload() {
+    refresh();
+    return current.getVersion();
+  }
+
+  /**
+   * Reads the content again, like {@link #reload()}, and reports what changed.
+   *
+   * @return The changes to the content served. Empty if nothing changed, or if the previous content
+   *     is kept because a file served failed to load or nothing loaded.
+   */
+  public synchronized RecogContentDiff refresh() {
+    RecogMatchersProvider loaded = load(current);
+    Collection<RecogMatchers> matchers = loaded.getMatchers(type);
+    if (loaded.isMissingFilesOf(current)) {
+      LOGGER.warn("Failed to load some fingerprint files from {}; keeping the content loaded before.", path);
+      return new RecogContentDiff();
+    }
+    if (matchers.isEmpty() && !current.getMatchers(type).isEmpty()) {
+      LOGGER.warn("No fingerprints found in {}; keeping the content loaded before.", path);
+      return new RecogContentDiff();
+    }
+
+    RecogVersion previous = current.getVersion();
+    current = loaded;
+    generation++;
+    LOGGER.info("Reloaded {} fingerprint databases from {} (SHA-1 {}, previously {}): {}.", matchers.size(), path,
+        loaded.getVersion().getSha1(), previous.getSha1(), loaded.getDiff());
+    return loaded.getDiff();
+  }
+
+  /**
+   * Reads the content again on an executor, so that the caller does not wait for it.
+   *
+   * @param executor The executor to load the content on. Must not be {@code null}.
+   * @return A future of the version of the content served after the reload.
+   */
+  public CompletableFuture<RecogVersion> reloadAsync(Executor executor) {
+    return CompletableFuture.supplyAsync(this::reload, executor);
+  }
+
+  /**
+   * Starts watching the content for changes, and reloads it once the files have not changed for a
+   * while. The directories of the content are watched, including those created while it is; for a
+   * zip file, the directory it is in is. Does nothing if the content is already watched.
+   *
+   * @param quietPeriod How long the files must remain unchanged before they are reloaded, so that a
+   *     content update being copied in is only loaded once complete. Must not be {@code null}.
+   * @throws IOException If the content cannot be watched.
+   */
+  public synchronized void watch(Duration quietPeriod) throws IOException {
+    requireNonNull(quietPeriod);
+    if (watchService != null)
+      return;
+
+    WatchService service = FileSystems.getDefault().newWatchService();
+    try {
+      if (Files.isDirectory(path)) {
+        registerTree(service, path);
+      } else {
+        register(service, path.toAbsolutePath().getParent());
+      }
+    } catch (IOException exception) {
+      service.close();
+      throw exception;
+    }
+
+    watchService = service;
+    Thread thread = new Thread(() -> watch(service, quietPeriod), "recog-reload-" + path.getFileName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Stops watching the content, if it is watched. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (watchService != null)
+      watchService.close();
+    watchService = null;
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Loads the content, reusing what is unchanged since a previous load, and prepares what is not to
+   * serve: builds the index of each new database, and evaluates each new matcher against its
+   * examples, which computes the state each matcher derives lazily from its pattern.
+   */
+  private RecogMatchersProvider load(RecogMatchersProvider previous) {
+    RecogMatchersProvider loaded = new RecogMatchersProvider(type, path, parser, executor, true, previous);
+    Set<RecogMatchers> reused = Collections.newSetFromMap(new IdentityHashMap<>());
+    if (previous != null)
+      reused.addAll(previous.getMatchers(type));
+    for (RecogMatchers matchers : loaded.getMatchers(type))
+      if (!reused.contains(matchers) && !matchers.getIndexFeatures().isEmpty())
+        matchers.buildIndex();
+
+    RecogContentDiff diff = loaded.getDiff();
+    diff.getAdded().forEach(ReloadingRecogMatchersProvider::warm);
+    diff.getChanged().forEach(ReloadingRecogMatchersProvider::warm);
+    return loaded;
+  }
+
+  private static void warm(RecogMatcher matcher) {
+    matcher.getQuickReject();
+    matcher.isFirstLineAnchored();
+    for (FingerprintExample example : matcher.getExamples())
+      matcher.matches(example.getText());
+  }
+
+  private static void register(WatchService service, Path directory) throws IOException {
+    directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+        StandardWatchEventKinds.ENTRY_DELETE);
+  }
+
+  /** Registers a directory and the directories under it. */
+  private static void registerTree(WatchService service, Path directory) throws IOException {
+    try (Stream<Path> directories = Files.walk(directory)) {
+      for (Path subdirectory : (Iterable<Path>) directories.filter(Files::isDirectory)::iterator)
+        register(service, subdirectory);
+    }
+  }
+
+  /** Registers the directories created in a directory of the content, so that files in them are watched. */
+  private void registerCreated(WatchService service, WatchKey key, List<WatchEvent<?>> events) {
+    if (!Files.isDirectory(path))
+      return;
+    for (WatchEvent<?> event : events) {
+      if (event.kind() != StandardWatchEventKinds.ENTRY_CREATE)
+        continue;
+      Path created = ((Path) key.watchable()).resolve((Path) event.context());
+      if (Files.isDirectory(created)) {
+        try {
+          registerTree(service, created);
+        } catch (IOException exception) {
+          LOGGER.warn("Failed to watch {}.", created, exception);
+        }
+      }
+    }
+  }
+
+  /** Waits for changes, and reloads the content once they stop for the quiet period. */
+  private void watch(WatchService service, Duration quietPeriod) {
+    try {
+      while (true) {
+        WatchKey key = service.take();
+        // drain the changes until the files have been quiet for the period
+        while (key != null) {
+          registerCreated(service, key, key.pollEvents());
+          key.reset();
+          key = service.poll(quietPeriod.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        try {
+          reload();
+        } catch (RuntimeException exception) {
+          LOGGER.warn("Failed to reload fingerprints from {}.", path, exception);
+        }
+      }
+    } catch (ClosedWatchServiceException | InterruptedException exception) {
+      LOGGER.debug("Stopped watching {}.", path);
+    }
+  }
+}
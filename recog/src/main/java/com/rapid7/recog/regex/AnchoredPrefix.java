@@ -0,0 +1,40 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RegexNode.Assertion;
+import com.rapid7.recog.regex.RegexNode.AssertionKind;
+import com.rapid7.recog.regex.RegexNode.Concat;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Derives the literal text an expression anchored at the start of the input, such as
+ * {@code ^SSH-2\.0-OpenSSH_}, requires its input to begin with. Since the prefix is compared
+ * ignoring ASCII case, an input whose lower-cased beginning differs from the prefix cannot match.
+ */
+public final class AnchoredPrefix {
+
+  /** Maximum length of a derived prefix. */
+  static final int MAX_LENGTH = 64;
+
+  private AnchoredPrefix() {
+  }
+
+  /**
+   * Returns the prefix required by the expression.
+   *
+   * @param tree The parsed expression. Must not be {@code null}.
+   * @return The prefix, lower-cased (ASCII only), or an empty string if the expression is not
+   *     anchored or does not start with a literal. Will not be {@code null}.
+   */
+  public static String of(RegexTree tree) {
+    RegexNode root = tree.getRoot();
+    List<RegexNode> sequence = root instanceof Concat ? ((Concat) root).getChildren() : Collections.singletonList(root);
+    if (sequence.isEmpty() || !(sequence.get(0) instanceof Assertion)
+        || ((Assertion) sequence.get(0)).getKind() != AssertionKind.BEGIN_INPUT)
+      return "";
+
+    LiteralText prefix = new LiteralText(MAX_LENGTH);
+    prefix.append(sequence.subList(1, sequence.size()));
+    return RequiredLiterals.toLowerAscii(prefix.getText());
+  }
+}
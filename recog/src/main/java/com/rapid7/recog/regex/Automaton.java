@@ -0,0 +1,100 @@
+package com.rapid7.recog.regex;
+
+import java.util.Map;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A regular expression evaluated by finite automata, in time linear in the length of the input. The
+ * match decision is made by a lazily built DFA; capturing groups are resolved by a Pike VM only for
+ * inputs that match. Matches and submatches are the leftmost-first ones
+ * {@link java.util.regex.Matcher#find()} reports.
+ *
+ * <p>Expressions that require backtracking are rejected by {@link #compile(RegexTree)}. Some inputs
+ * cannot be evaluated exactly either (see {@link #supports(CharSequence)}); callers are expected to
+ * use {@link java.util.regex.Pattern} for those. Instances are thread-safe.
+ */
+public final class Automaton {
+
+  private final RegexTree tree;
+  private final Program program;
+  private final LazyDfa dfa;
+
+  private Automaton(RegexTree tree, Program program, LazyDfa dfa) {
+    this.tree = tree;
+    this.program = program;
+    this.dfa = dfa;
+  }
+
+  /**
+   * Compiles a parsed expression.
+   *
+   * @param tree The expression. Must not be {@code null}.
+   * @return The automaton. Will not be {@code null}.
+   * @throws UnsupportedRegexException If the expression requires backtracking (back references,
+   *     lookaround, atomic groups, possessive quantifiers or unbounded repetition of an expression
+   *     that matches the empty string) or is too large.
+   */
+  public static Automaton compile(RegexTree tree) {
+    Program program = Program.compile(requireNonNull(tree));
+    return new Automaton(tree, program, program.hasLegacyLineAssertion ? null : new LazyDfa(program));
+  }
+
+  public String getPattern() {
+    return tree.getPattern();
+  }
+
+  public int getFlags() {
+    return tree.getFlags();
+  }
+
+  /** Returns the number of capturing groups in the expression. */
+  public int getGroupCount() {
+    return tree.getGroupCount();
+  }
+
+  /** Returns the one-based indexes of the named capturing groups, keyed by name. */
+  public Map<String, Integer> getGroupNames() {
+    return tree.getGroupNames();
+  }
+
+  /**
+   * Returns whether this automaton evaluates the input exactly like {@link java.util.regex.Pattern}.
+   * This is not the case for input containing non-ASCII characters when the expression has word
+   * boundaries, whose definition varies between Java versions.
+   */
+  public boolean supports(CharSequence input) {
+    if (!program.hasWordBoundary)
+      return true;
+    for (int i = 0, length = input.length(); i < length; i++) {
+      if (input.charAt(i) >= 128)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns whether the expression matches anywhere in the input.
+   *
+   * @param input The input. Must not be {@code null} and must be {@link #supports(CharSequence)
+   *     supported}.
+   */
+  public boolean find(CharSequence input) {
+    if (dfa != null)
+      return dfa.find(input);
+    return new PikeVm(program).search(input) != null;
+  }
+
+  /**
+   * Finds the leftmost-first match of the expression in the input.
+   *
+   * @param input The input. Must not be {@code null} and must be {@link #supports(CharSequence)
+   *     supported}.
+   * @return The start and end index of the match followed by those of each capturing group (-1 for
+   *     groups that did not participate), or {@code null} if there is no match.
+   */
+  public int[] match(CharSequence input) {
+    if (dfa != null && !dfa.find(input))
+      return null;
+    return new PikeVm(program).search(input);
+  }
+}
@@ -0,0 +1,80 @@
+package com.rapid7.recog.regex;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A set of regular expressions compiled into one automaton, which determines all expressions that
+ * match an input in a single pass over it. Only the match decision is made; use an {@link Automaton}
+ * or {@link java.util.regex.Pattern} of a matching expression to find its groups.
+ *
+ * <p>Expressions that cannot be evaluated by an automaton (see {@link Automaton#compile(RegexTree)})
+ * are left out of the set, and some inputs cannot be evaluated exactly for some expressions (see
+ * {@link Automaton#supports(CharSequence)}). {@link #find(CharSequence, BitSet)} reports both as
+ * unresolved, for the caller to evaluate otherwise. Instances are thread-safe.
+ */
+public final class AutomatonSet {
+
+  private final Program program;
+  private final LazyDfa dfa;
+  private final BitSet excluded;
+  private final BitSet wordBoundaries;
+
+  private AutomatonSet(Program program) {
+    this.program = program;
+    this.dfa = new LazyDfa(program);
+    this.excluded = new BitSet(program.starts.length);
+    this.wordBoundaries = new BitSet(program.starts.length);
+    for (int index = 0; index < program.starts.length; index++) {
+      if (program.starts[index] < 0)
+        excluded.set(index);
+      if (program.wordBoundaries[index])
+        wordBoundaries.set(index);
+    }
+  }
+
+  /**
+   * Compiles a list of expressions.
+   *
+   * @param trees The expressions. Must not be {@code null}; elements may be {@code null} for
+   *     expressions that must be left out of the set.
+   * @return The set. Will not be {@code null}.
+   */
+  public static AutomatonSet compile(List<RegexTree> trees) {
+    return new AutomatonSet(Program.compile(trees));
+  }
+
+  /** Returns the number of expressions in the list the set was compiled from. */
+  public int size() {
+    return program.starts.length;
+  }
+
+  /** Returns whether the expression at the specified index was compiled into the set. */
+  public boolean contains(int index) {
+    return !excluded.get(index);
+  }
+
+  /**
+   * Finds the expressions that match anywhere in the input.
+   *
+   * @param input The input. Must not be {@code null}.
+   * @param unresolved A set to which the indexes of the expressions this set could not evaluate
+   *     against the input are added. Must not be {@code null}.
+   * @return The indexes of the matching expressions among those evaluated. Will not be {@code null}.
+   */
+  public BitSet find(CharSequence input, BitSet unresolved) {
+    BitSet matches = new BitSet(size());
+    unresolved.or(excluded);
+
+    boolean ascii = true;
+    for (int i = 0, length = input.length(); i < length && ascii; i++)
+      ascii = input.charAt(i) < 128;
+
+    dfa.findAll(input, matches);
+    if (!ascii) {
+      matches.andNot(wordBoundaries);
+      unresolved.or(wordBoundaries);
+    }
+    return matches;
+  }
+}
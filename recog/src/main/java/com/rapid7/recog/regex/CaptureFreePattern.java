@@ -0,0 +1,82 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RegexNode.Alternation;
+import com.rapid7.recog.regex.RegexNode.Atomic;
+import com.rapid7.recog.regex.RegexNode.Backreference;
+import com.rapid7.recog.regex.RegexNode.Concat;
+import com.rapid7.recog.regex.RegexNode.Group;
+import com.rapid7.recog.regex.RegexNode.Lookaround;
+import com.rapid7.recog.regex.RegexNode.Repeat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites an expression so that its capturing groups, such as {@code (\d+)} or
+ * {@code (?<version>\d+)}, become non-capturing groups. The rewritten expression matches exactly the
+ * same inputs, but a {@link java.util.regex.Matcher} evaluating it does not track group positions,
+ * which makes it cheaper when only the match decision is needed.
+ */
+public final class CaptureFreePattern {
+
+  private CaptureFreePattern() {
+  }
+
+  /**
+   * Returns the expression with its capturing groups made non-capturing.
+   *
+   * @param tree The parsed expression. Must not be {@code null}.
+   * @return The rewritten expression, the original expression if it has no capturing groups, or
+   *     {@code null} if it cannot be rewritten because it has back references.
+   */
+  public static String of(RegexTree tree) {
+    List<Group> groups = new ArrayList<>();
+    if (!collect(tree.getRoot(), groups))
+      return null;
+
+    String pattern = tree.getPattern();
+    StringBuilder rewritten = new StringBuilder(pattern.length() + 2 * groups.size());
+    int position = 0;
+    for (Group group : groups) {
+      // the group opens with "(" or "(?<name>"; the parser visits groups in pattern order
+      int start = group.getStart();
+      int end = start + (group.getName() == null ? 1 : group.getName().length() + 4);
+      rewritten.append(pattern, position, start).append("(?:");
+      position = end;
+    }
+    return rewritten.append(pattern, position, pattern.length()).toString();
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /** Adds the capturing groups of a node in pattern order; returns false on a back reference. */
+  private static boolean collect(RegexNode node, List<Group> groups) {
+    if (node instanceof Backreference) {
+      return false;
+    } else if (node instanceof Concat) {
+      for (RegexNode child : ((Concat) node).getChildren())
+        if (!collect(child, groups))
+          return false;
+      return true;
+    } else if (node instanceof Alternation) {
+      for (RegexNode alternative : ((Alternation) node).getAlternatives())
+        if (!collect(alternative, groups))
+          return false;
+      return true;
+    } else if (node instanceof Group) {
+      Group group = (Group) node;
+      if (group.isCapturing())
+        groups.add(group);
+      return collect(group.getChild(), groups);
+    } else if (node instanceof Repeat) {
+      return collect(((Repeat) node).getChild(), groups);
+    } else if (node instanceof Lookaround) {
+      return collect(((Lookaround) node).getChild(), groups);
+    } else if (node instanceof Atomic) {
+      return collect(((Atomic) node).getChild(), groups);
+    } else {
+      return true;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package com.rapid7.recog.regex;
+
+/**
+ * An immutable set of ASCII characters, ignoring case, stored as a 128-bit bitmap. Upper-case
+ * letters are folded to lower case; other characters are not represented.
+ */
+public final class CharBitmap {
+
+  public static final CharBitmap EMPTY = new CharBitmap(0, 0);
+
+  private final long low;
+  private final long high;
+
+  private CharBitmap(long low, long high) {
+    this.low = low;
+    this.high = high;
+  }
+
+  /**
+   * Returns the set of ASCII characters occurring in the input.
+   *
+   * @param input The input. Must not be {@code null}.
+   * @return The set. Will not be {@code null}.
+   */
+  public static CharBitmap of(CharSequence input) {
+    long low = 0;
+    long high = 0;
+    for (int i = 0, length = input.length(); i < length; i++) {
+      char ch = input.charAt(i);
+      if (ch < 64)
+        low |= 1L << ch;
+      else if (ch < 128)
+        high |= 1L << (fold(ch) - 64);
+    }
+    return new CharBitmap(low, high);
+  }
+
+  /** Returns a set containing a single character, or an empty set if it is not ASCII. */
+  static CharBitmap of(int ch) {
+    if (ch < 64)
+      return new CharBitmap(1L << ch, 0);
+    else if (ch < 128)
+      return new CharBitmap(0, 1L << (fold(ch) - 64));
+    else
+      return EMPTY;
+  }
+
+  public boolean isEmpty() {
+    return low == 0 && high == 0;
+  }
+
+  public boolean contains(char ch) {
+    return ch < 128 && containsAll(of((int) ch));
+  }
+
+  /** Returns whether every character of the other set is in this set. */
+  public boolean containsAll(CharBitmap other) {
+    return (other.low & ~low) == 0 && (other.high & ~high) == 0;
+  }
+
+  public CharBitmap union(CharBitmap other) {
+    return new CharBitmap(low | other.low, high | other.high);
+  }
+
+  public CharBitmap intersect(CharBitmap other) {
+    return new CharBitmap(low & other.low, high & other.high);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other)
+      return true;
+    else if (!(other instanceof CharBitmap))
+      return false;
+    else
+      return low == ((CharBitmap) other).low && high == ((CharBitmap) other).high;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(low) * 31 + Long.hashCode(high);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder("[");
+    for (char ch = 0; ch < 128; ch++)
+      if ((ch < 'A' || ch > 'Z') && contains(ch))
+        text.append(ch < ' ' || ch == 127 ? String.format("\\x%02X", (int) ch) : String.valueOf(ch));
+    return text.append(']').toString();
+  }
+
+  private static int fold(int ch) {
+    return ch >= 'A' && ch <= 'Z' ? ch + ('a' - 'A') : ch;
+  }
+}
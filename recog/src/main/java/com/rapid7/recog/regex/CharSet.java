@@ -0,0 +1,220 @@
+package com.rapid7.recog.regex;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of code points, stored as sorted, non-overlapping, non-adjacent inclusive
+ * ranges. Used to represent character classes, the dot and case-folded literals of a parsed
+ * regular expression.
+ */
+public final class CharSet {
+
+  /** The largest valid code point. */
+  public static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+
+  public static final CharSet EMPTY = new CharSet(new int[0]);
+  public static final CharSet ANY = new CharSet(new int[] {0, MAX_CODE_POINT});
+
+  /** Predefined ASCII character classes (see {@link java.util.regex.Pattern}). */
+  public static final CharSet DIGIT = ranges('0', '9');
+  public static final CharSet WORD = ranges('0', '9', 'A', 'Z', '_', '_', 'a', 'z');
+  public static final CharSet SPACE = ranges('\t', '\r', ' ', ' ');
+  public static final CharSet HORIZONTAL_SPACE = ranges('\t', '\t', ' ', ' ', 0xA0, 0xA0, 0x1680, 0x1680, 0x180E, 0x180E,
+      0x2000, 0x200A, 0x202F, 0x202F, 0x205F, 0x205F, 0x3000, 0x3000);
+  public static final CharSet VERTICAL_SPACE = ranges('\n', '\r', 0x85, 0x85, 0x2028, 0x2029);
+
+  /** The dot when {@link java.util.regex.Pattern#UNIX_LINES} is set and DOTALL is not. */
+  public static final CharSet UNIX_DOT = ranges(0, '\n' - 1, '\n' + 1, MAX_CODE_POINT);
+
+  /** The dot when neither {@link java.util.regex.Pattern#UNIX_LINES} nor DOTALL is set. */
+  public static final CharSet DOT = ranges(0, '\n' - 1, '\n' + 1, '\r' - 1, '\r' + 1, 0x84, 0x86, 0x2027, 0x202A, MAX_CODE_POINT);
+
+  /**
+   * Sorted inclusive ranges; element {@code 2n} is the low bound and {@code 2n + 1} the high bound
+   * of the n-th range.
+   */
+  private final int[] ranges;
+
+  private CharSet(int[] ranges) {
+    this.ranges = ranges;
+  }
+
+  /**
+   * Creates a set from inclusive low/high range pairs. The pairs may be given in any order and may
+   * overlap.
+   *
+   * @param bounds Pairs of inclusive low and high bounds. Must not be {@code null}.
+   * @return The normalized set. Will not be {@code null}.
+   */
+  public static CharSet ranges(int... bounds) {
+    if (bounds.length % 2 != 0)
+      throw new IllegalArgumentException("Ranges must be specified as low/high pairs.");
+
+    long[] pairs = new long[bounds.length / 2];
+    for (int i = 0; i < pairs.length; i++) {
+      int low = bounds[2 * i];
+      int high = bounds[2 * i + 1];
+      if (low > high || low < 0 || high > MAX_CODE_POINT)
+        throw new IllegalArgumentException("Invalid range " + low + "-" + high);
+      pairs[i] = ((long) low << 32) | high;
+    }
+    Arrays.sort(pairs);
+
+    int[] merged = new int[bounds.length];
+    int size = 0;
+    for (long pair : pairs) {
+      int low = (int) (pair >>> 32);
+      int high = (int) pair;
+      if (size > 0 && low <= merged[size - 1] + 1) {
+        merged[size - 1] = Math.max(merged[size - 1], high);
+      } else {
+        merged[size++] = low;
+        merged[size++] = high;
+      }
+    }
+
+    return new CharSet(Arrays.copyOf(merged, size));
+  }
+
+  /**
+   * Creates a set containing a single code point.
+   *
+   * @param codePoint The code point.
+   * @return The set. Will not be {@code null}.
+   */
+  public static CharSet of(int codePoint) {
+    return new CharSet(new int[] {codePoint, codePoint});
+  }
+
+  public boolean contains(int codePoint) {
+    // find the first range whose high bound is >= the code point
+    int low = 0;
+    int high = ranges.length / 2 - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (ranges[2 * mid + 1] < codePoint)
+        low = mid + 1;
+      else if (ranges[2 * mid] > codePoint)
+        high = mid - 1;
+      else
+        return true;
+    }
+    return false;
+  }
+
+  public boolean isEmpty() {
+    return ranges.length == 0;
+  }
+
+  /** Returns the number of disjoint ranges in this set. */
+  public int rangeCount() {
+    return ranges.length / 2;
+  }
+
+  public int rangeLow(int index) {
+    return ranges[2 * index];
+  }
+
+  public int rangeHigh(int index) {
+    return ranges[2 * index + 1];
+  }
+
+  /** Returns the number of code points in this set. */
+  public long size() {
+    long size = 0;
+    for (int i = 0; i < ranges.length; i += 2)
+      size += ranges[i + 1] - ranges[i] + 1;
+    return size;
+  }
+
+  /**
+   * Returns the code points in this set, or {@code null} if the set contains more than the
+   * specified number of code points.
+   *
+   * @param limit The maximum number of code points to return.
+   * @return The code points in ascending order, or {@code null}.
+   */
+  public int[] toArray(int limit) {
+    if (size() > limit)
+      return null;
+
+    int[] codePoints = new int[(int) size()];
+    int index = 0;
+    for (int i = 0; i < ranges.length; i += 2)
+      for (int codePoint = ranges[i]; codePoint <= ranges[i + 1]; codePoint++)
+        codePoints[index++] = codePoint;
+    return codePoints;
+  }
+
+  public CharSet union(CharSet other) {
+    if (other.isEmpty())
+      return this;
+    if (isEmpty())
+      return other;
+
+    int[] bounds = Arrays.copyOf(ranges, ranges.length + other.ranges.length);
+    System.arraycopy(other.ranges, 0, bounds, ranges.length, other.ranges.length);
+    return ranges(bounds);
+  }
+
+  public CharSet complement() {
+    int[] bounds = new int[ranges.length + 2];
+    int size = 0;
+    int next = 0;
+    for (int i = 0; i < ranges.length; i += 2) {
+      if (ranges[i] > next) {
+        bounds[size++] = next;
+        bounds[size++] = ranges[i] - 1;
+      }
+      next = ranges[i + 1] + 1;
+    }
+    if (next <= MAX_CODE_POINT) {
+      bounds[size++] = next;
+      bounds[size++] = MAX_CODE_POINT;
+    }
+    return new CharSet(Arrays.copyOf(bounds, size));
+  }
+
+  public CharSet intersect(CharSet other) {
+    return complement().union(other.complement()).complement();
+  }
+
+  /**
+   * Returns this set closed under ASCII case mapping, i.e. the set of characters matched by this
+   * set when {@link java.util.regex.Pattern#CASE_INSENSITIVE} is set without UNICODE_CASE.
+   */
+  public CharSet foldAsciiCase() {
+    CharSet upper = intersect(ranges('A', 'Z'));
+    CharSet lower = intersect(ranges('a', 'z'));
+    if (upper.isEmpty() && lower.isEmpty())
+      return this;
+
+    int[] bounds = new int[upper.ranges.length + lower.ranges.length];
+    for (int i = 0; i < upper.ranges.length; i++)
+      bounds[i] = upper.ranges[i] + ('a' - 'A');
+    for (int i = 0; i < lower.ranges.length; i++)
+      bounds[upper.ranges.length + i] = lower.ranges[i] - ('a' - 'A');
+    return union(ranges(bounds));
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return this == other || (other instanceof CharSet && Arrays.equals(ranges, ((CharSet) other).ranges));
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(ranges);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("[");
+    for (int i = 0; i < ranges.length; i += 2) {
+      builder.append(String.format("\\x{%x}", ranges[i]));
+      if (ranges[i + 1] != ranges[i])
+        builder.append(String.format("-\\x{%x}", ranges[i + 1]));
+    }
+    return builder.append(']').toString();
+  }
+}
@@ -0,0 +1,95 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RegexNode.Assertion;
+import com.rapid7.recog.regex.RegexNode.AssertionKind;
+import com.rapid7.recog.regex.RegexNode.Concat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An expression that matches a fixed text only, such as {@code ^Apache$}: anchored at both ends, with
+ * nothing but literal characters (optionally ignoring ASCII case) in between. The inputs such an
+ * expression matches can be enumerated, so they can be looked up in a hash table instead of
+ * evaluating the expression.
+ */
+public final class ExactLiteral {
+
+  /** Maximum length of an exact literal. */
+  static final int MAX_LENGTH = 1024;
+
+  private static final String[] LINE_TERMINATORS = {"\n", "\r\n", "\r", "\u0085", "\u2028", "\u2029"};
+
+  private final String text;
+  private final boolean caseInsensitive;
+  private final List<String> inputs;
+
+  private ExactLiteral(String text, boolean caseInsensitive, List<String> inputs) {
+    this.text = text;
+    this.caseInsensitive = caseInsensitive;
+    this.inputs = Collections.unmodifiableList(inputs);
+  }
+
+  /**
+   * Returns the exact literal an expression matches.
+   *
+   * @param tree The parsed expression. Must not be {@code null}.
+   * @return The literal, or {@code null} if the expression does not match a fixed text only.
+   */
+  public static ExactLiteral of(RegexTree tree) {
+    RegexNode root = tree.getRoot();
+    if (!(root instanceof Concat))
+      return null;
+    List<RegexNode> sequence = ((Concat) root).getChildren();
+    if (sequence.size() < 2 || !isAssertion(sequence.get(0), AssertionKind.BEGIN_INPUT))
+      return null;
+
+    RegexNode last = sequence.get(sequence.size() - 1);
+    boolean finalTerminator = isAssertion(last, AssertionKind.END_INPUT_OR_FINAL_TERMINATOR);
+    if (!finalTerminator && !isAssertion(last, AssertionKind.END_INPUT))
+      return null;
+
+    LiteralText literal = new LiteralText(MAX_LENGTH);
+    if (!literal.append(sequence.subList(1, sequence.size() - 1)))
+      return null;
+
+    // without MULTILINE, $ also matches before a line terminator at the end of input
+    String text = literal.isCaseInsensitive() ? RequiredLiterals.toLowerAscii(literal.getText()) : literal.getText();
+    List<String> inputs = new ArrayList<>();
+    inputs.add(text);
+    if (finalTerminator) {
+      if (((Assertion) last).isUnixLines())
+        inputs.add(text + "\n");
+      else
+        for (String terminator : LINE_TERMINATORS)
+          inputs.add(text + terminator);
+    }
+    return new ExactLiteral(text, literal.isCaseInsensitive(), inputs);
+  }
+
+  /** Returns the literal text; lower-cased (ASCII only) when case-insensitive. */
+  public String getText() {
+    return text;
+  }
+
+  /** Returns whether the literal is matched ignoring ASCII case. */
+  public boolean isCaseInsensitive() {
+    return caseInsensitive;
+  }
+
+  /**
+   * Returns every input the expression matches: the text, and the text followed by a line
+   * terminator if the expression ends with {@code $}. Lower-cased (ASCII only) when case-insensitive.
+   */
+  public List<String> getInputs() {
+    return inputs;
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private static boolean isAssertion(RegexNode node, AssertionKind kind) {
+    return node instanceof Assertion && ((Assertion) node).getKind() == kind;
+  }
+}
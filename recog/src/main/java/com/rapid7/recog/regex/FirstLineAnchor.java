@@ -0,0 +1,82 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RegexNode.Alternation;
+import com.rapid7.recog.regex.RegexNode.Assertion;
+import com.rapid7.recog.regex.RegexNode.AssertionKind;
+import com.rapid7.recog.regex.RegexNode.Atomic;
+import com.rapid7.recog.regex.RegexNode.Char;
+import com.rapid7.recog.regex.RegexNode.CharClass;
+import com.rapid7.recog.regex.RegexNode.Concat;
+import com.rapid7.recog.regex.RegexNode.Group;
+import com.rapid7.recog.regex.RegexNode.Lookaround;
+import com.rapid7.recog.regex.RegexNode.Repeat;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Determines whether an expression anchored at the start of the input, such as
+ * {@code ^Server: (\S+)}, can only match within the first line of the input. This is the case when
+ * no part of the expression matches a {@code '\n'} character and the expression does not assert
+ * anything about line or input ends: the expression then cannot tell the first {@code '\n'} from
+ * the end of the input, and matches the input exactly when it matches the text before that
+ * character. MULTILINE anchors, DOTALL dots and classes such as {@code \s} or {@code [^;]} rule
+ * this out.
+ */
+public final class FirstLineAnchor {
+
+  private FirstLineAnchor() {
+  }
+
+  /**
+   * Returns whether the expression only matches within the first line of an input.
+   *
+   * @param tree The parsed expression. Must not be {@code null}.
+   * @return {@code true} if the expression matches an input exactly when it matches the input up to
+   *     its first {@code '\n'}, {@code false} if that cannot be determined.
+   */
+  public static boolean of(RegexTree tree) {
+    RegexNode root = tree.getRoot();
+    List<RegexNode> sequence = root instanceof Concat ? ((Concat) root).getChildren() : Collections.singletonList(root);
+    if (sequence.isEmpty() || !(sequence.get(0) instanceof Assertion)
+        || ((Assertion) sequence.get(0)).getKind() != AssertionKind.BEGIN_INPUT)
+      return false;
+    return isWithinLine(root);
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private static boolean isWithinLine(RegexNode node) {
+    if (node instanceof Char) {
+      return ((Char) node).getCodePoint() != '\n';
+    } else if (node instanceof CharClass) {
+      return !((CharClass) node).getSet().contains('\n');
+    } else if (node instanceof Assertion) {
+      AssertionKind kind = ((Assertion) node).getKind();
+      return kind != AssertionKind.BEGIN_LINE && kind != AssertionKind.END_LINE
+          && kind != AssertionKind.END_INPUT && kind != AssertionKind.END_INPUT_OR_FINAL_TERMINATOR;
+    } else if (node instanceof Concat) {
+      for (RegexNode child : ((Concat) node).getChildren())
+        if (!isWithinLine(child))
+          return false;
+      return true;
+    } else if (node instanceof Alternation) {
+      for (RegexNode alternative : ((Alternation) node).getAlternatives())
+        if (!isWithinLine(alternative))
+          return false;
+      return true;
+    } else if (node instanceof Repeat) {
+      return isWithinLine(((Repeat) node).getChild());
+    } else if (node instanceof Group) {
+      return isWithinLine(((Group) node).getChild());
+    } else if (node instanceof Lookaround) {
+      return isWithinLine(((Lookaround) node).getChild());
+    } else if (node instanceof Atomic) {
+      return isWithinLine(((Atomic) node).getChild());
+    } else {
+      // empty nodes and back references, which repeat text matched within the line
+      return true;
+    }
+  }
+}
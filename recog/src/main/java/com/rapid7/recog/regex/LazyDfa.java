@@ -0,0 +1,316 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RegexNode.AssertionKind;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides which expressions of a {@link Program} match an input with a deterministic automaton
+ * whose states are built on demand and cached. Each input code point costs one table lookup once the
+ * states it visits exist, independently of the size and number of expressions. Surrogate pairs are
+ * consumed as one code point, so matches only start at code point boundaries, like they do in
+ * {@link java.util.regex.Pattern}.
+ *
+ * <p>A state is the set of program threads waiting to consume the next code point, plus what is
+ * known about the previous one (start of input, line terminator, word character), plus the
+ * expressions that matched just before it. Zero-width assertions are evaluated when a transition is
+ * computed, since the next character is known then. {@code \Z} before a final {@code \n} needs one
+ * more character of lookahead; threads that passed it that way are marked and survive only if the
+ * input ends right after the {@code \n}.
+ *
+ * <p>Programs with line assertions recognizing terminators other than {@code \n} are not supported.
+ * The cache is bounded; when it is full, it is discarded and states are built again as needed, so
+ * the cost per character is bounded by the size of the program. Instances are thread-safe.
+ */
+final class LazyDfa {
+
+  /** Default maximum number of cached states. */
+  static final int MAX_STATES = 4_096;
+
+  private static final int AT_START = 1;
+  private static final int AFTER_NEWLINE = 2;
+  private static final int AFTER_WORD = 4;
+
+  /** Marks a thread that must see the end of input next; pcs are stored shifted left by one. */
+  private static final int CONDITIONAL = 1;
+
+  private static final int EOF = -1;
+
+  private static final int[] NONE = new int[0];
+
+  private final Program program;
+  private final int maxStates;
+  private final int[] initialThreads;
+  private final int[] restartThreads;
+  private volatile Cache cache;
+
+  private static final class Cache {
+    private final Map<State, State> states = new ConcurrentHashMap<>();
+    private final AtomicInteger count = new AtomicInteger();
+    private final State start;
+
+    Cache(int[] initialThreads) {
+      start = new State(initialThreads, AT_START, NONE);
+    }
+  }
+
+  private static final class State {
+    private final int[] threads;
+    private final int flags;
+    private final int[] matches;
+    private final int hash;
+    private final State[] ascii = new State[128];
+    private volatile Map<Integer, State> other;
+    private volatile State end;
+
+    State(int[] threads, int flags, int[] matches) {
+      this.threads = threads;
+      this.flags = flags;
+      this.matches = matches;
+      this.hash = 31 * (31 * Arrays.hashCode(threads) + Arrays.hashCode(matches)) + flags;
+    }
+
+    /** Returns whether no expression can match after this state. */
+    boolean isDead() {
+      return threads.length == 0;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other)
+        return true;
+      else if (!(other instanceof State))
+        return false;
+      else {
+        State that = (State) other;
+        return flags == that.flags && Arrays.equals(threads, that.threads) && Arrays.equals(matches, that.matches);
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  LazyDfa(Program program) {
+    this(program, MAX_STATES);
+  }
+
+  LazyDfa(Program program, int maxStates) {
+    if (program.hasLegacyLineAssertion)
+      throw new UnsupportedRegexException("Line terminators other than \\n are not supported");
+    this.program = program;
+    this.maxStates = maxStates;
+
+    BitSet initial = new BitSet();
+    BitSet restart = new BitSet();
+    for (int pattern = 0; pattern < program.starts.length; pattern++) {
+      int start = program.starts[pattern];
+      if (start >= 0) {
+        initial.set(start << 1);
+        if (!program.anchoredStarts[pattern])
+          restart.set(start << 1);
+      }
+    }
+    this.initialThreads = initial.stream().toArray();
+    this.restartThreads = restart.stream().toArray();
+    this.cache = new Cache(initialThreads);
+  }
+
+  /**
+   * Returns whether any expression of the program matches anywhere in the input.
+   */
+  boolean find(CharSequence input) {
+    State state = cache.start;
+    for (int i = 0, length = input.length(); i < length; ) {
+      int codePoint = Character.codePointAt(input, i);
+      i += Character.charCount(codePoint);
+      state = next(state, codePoint);
+      if (state.matches.length > 0)
+        return true;
+      else if (state.isDead())
+        return false;
+    }
+    return end(state).matches.length > 0;
+  }
+
+  /**
+   * Adds the index of every expression of the program that matches anywhere in the input to a set.
+   */
+  void findAll(CharSequence input, BitSet matches) {
+    State state = cache.start;
+    for (int i = 0, length = input.length(); i < length; ) {
+      int codePoint = Character.codePointAt(input, i);
+      i += Character.charCount(codePoint);
+      state = next(state, codePoint);
+      for (int match : state.matches)
+        matches.set(match);
+      if (state.isDead())
+        return;
+    }
+    for (int match : end(state).matches)
+      matches.set(match);
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private State next(State state, int codePoint) {
+    State next;
+    if (codePoint < 128) {
+      next = state.ascii[codePoint];
+      if (next == null)
+        state.ascii[codePoint] = next = transition(state, codePoint);
+    } else {
+      Map<Integer, State> other = state.other;
+      next = other == null ? null : other.get(codePoint);
+      if (next == null) {
+        next = transition(state, codePoint);
+        if (other == null)
+          state.other = other = new ConcurrentHashMap<>();
+        other.put(codePoint, next);
+      }
+    }
+    return next;
+  }
+
+  private State end(State state) {
+    State end = state.end;
+    if (end == null)
+      state.end = end = transition(state, EOF);
+    return end;
+  }
+
+  /**
+   * Computes the state reached from a state on a code point, or at the end of input, recording the
+   * expressions that match before the code point.
+   */
+  private State transition(State state, int ch) {
+    BitSet visited = new BitSet(program.size);
+    BitSet visitedConditional = new BitSet(program.size);
+    int[] stack = new int[program.size * 3 + 2];
+    int[] pending = new int[program.size + 1];
+    int pendingCount = 0;
+    BitSet next = new BitSet(program.size * 2 + 2);
+    BitSet matches = new BitSet();
+
+    // threads that passed \Z before a \n only survive at the end of input
+    int top = 0;
+    for (int thread : state.threads) {
+      if ((thread & CONDITIONAL) == 0 || ch == EOF)
+        stack[top++] = thread >>> 1;
+    }
+
+    boolean conditional = false;
+    while (true) {
+      while (top > 0) {
+        int pc = stack[--top];
+        while (true) {
+          if (conditional) {
+            if (visited.get(pc) || visitedConditional.get(pc))
+              break;
+            visitedConditional.set(pc);
+          } else {
+            if (visited.get(pc))
+              break;
+            visited.set(pc);
+          }
+
+          int op = program.ops[pc];
+          if (op == Program.JUMP) {
+            pc = program.targets[pc];
+          } else if (op == Program.SPLIT) {
+            stack[top++] = program.alternates[pc];
+            pc = program.targets[pc];
+          } else if (op == Program.SAVE) {
+            pc++;
+          } else if (op == Program.ASSERT) {
+            AssertionKind kind = program.assertions[pc];
+            if (kind == AssertionKind.END_INPUT_OR_FINAL_TERMINATOR && ch == '\n') {
+              if (!conditional) {
+                pending[pendingCount++] = pc + 1;
+                break;
+              }
+            } else if (!test(kind, state.flags, ch)) {
+              break;
+            }
+            pc++;
+          } else if (op == Program.MATCH) {
+            if (conditional)
+              next.set(pc << 1 | CONDITIONAL);
+            else
+              matches.set(program.targets[pc]);
+            break;
+          } else {
+            if (ch != EOF && program.matches(pc, ch))
+              next.set((pc + 1) << 1 | (conditional ? CONDITIONAL : 0));
+            break;
+          }
+        }
+      }
+
+      if (conditional || pendingCount == 0)
+        break;
+      conditional = true;
+      System.arraycopy(pending, 0, stack, 0, pendingCount);
+      top = pendingCount;
+    }
+
+    int flags = 0;
+    if (ch != EOF) {
+      for (int thread : restartThreads)
+        next.set(thread);
+      if (ch == '\n' && program.hasBeginLine)
+        flags |= AFTER_NEWLINE;
+      if (program.hasWordBoundary && Program.isWord(ch))
+        flags |= AFTER_WORD;
+    } else {
+      next.clear();
+    }
+
+    // an unconditional thread makes the conditional one for the same pc redundant
+    int[] threads = next.stream().filter(thread -> (thread & CONDITIONAL) == 0 || !next.get(thread ^ CONDITIONAL)).toArray();
+    return intern(new State(threads, flags, matches.isEmpty() ? NONE : matches.stream().toArray()));
+  }
+
+  private State intern(State candidate) {
+    Cache current = cache;
+    State existing = current.states.get(candidate);
+    if (existing != null)
+      return existing;
+    if (current.count.incrementAndGet() > maxStates) {
+      // start over; states of the discarded cache remain valid for searches still using them
+      current = new Cache(initialThreads);
+      cache = current;
+      current.count.incrementAndGet();
+    }
+    existing = current.states.putIfAbsent(candidate, candidate);
+    return existing != null ? existing : candidate;
+  }
+
+  private static boolean test(AssertionKind kind, int flags, int ch) {
+    switch (kind) {
+      case BEGIN_INPUT:
+        return (flags & AT_START) != 0;
+      case BEGIN_LINE:
+        return ch != EOF && (flags & (AT_START | AFTER_NEWLINE)) != 0;
+      case END_INPUT:
+      case END_INPUT_OR_FINAL_TERMINATOR:
+        return ch == EOF;
+      case END_LINE:
+        return ch == EOF || ch == '\n';
+      case WORD_BOUNDARY:
+      case NOT_WORD_BOUNDARY:
+        boolean left = (flags & AFTER_WORD) != 0;
+        boolean right = ch != EOF && Program.isWord(ch);
+        return (left != right) == (kind == AssertionKind.WORD_BOUNDARY);
+      default:
+        throw new IllegalStateException("Unknown assertion " + kind);
+    }
+  }
+}
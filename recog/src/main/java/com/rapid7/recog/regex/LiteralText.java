@@ -0,0 +1,75 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RegexNode.Char;
+import com.rapid7.recog.regex.RegexNode.CharClass;
+import com.rapid7.recog.regex.RegexNode.Concat;
+import com.rapid7.recog.regex.RegexNode.Group;
+import java.util.List;
+
+/**
+ * Accumulates the literal text matched by a sequence of nodes, up to the first node that does not
+ * match a single fixed character (ignoring ASCII case).
+ */
+final class LiteralText {
+
+  private final StringBuilder text = new StringBuilder();
+  private final int maxLength;
+  private boolean caseInsensitive;
+
+  LiteralText(int maxLength) {
+    this.maxLength = maxLength;
+  }
+
+  /** Returns the text accumulated so far; letters matched ignoring case are in lower case. */
+  String getText() {
+    return text.toString();
+  }
+
+  /** Returns whether any character of the text is matched ignoring ASCII case. */
+  boolean isCaseInsensitive() {
+    return caseInsensitive;
+  }
+
+  /** Appends the literal beginning of a sequence; returns whether the whole sequence was literal. */
+  boolean append(List<RegexNode> sequence) {
+    for (RegexNode node : sequence)
+      if (!append(node))
+        return false;
+    return true;
+  }
+
+  /** Appends the literal text of a node; returns whether the whole node was literal. */
+  boolean append(RegexNode node) {
+    if (text.length() >= maxLength)
+      return false;
+
+    if (node instanceof Char) {
+      Char ch = (Char) node;
+      caseInsensitive |= ch.isCaseInsensitive();
+      text.appendCodePoint(ch.isCaseInsensitive() ? lower(ch.getCodePoint()) : ch.getCodePoint());
+      return true;
+    } else if (node instanceof CharClass) {
+      // a class like [Ee] is a single letter when case is ignored
+      int[] codePoints = ((CharClass) node).getSet().toArray(2);
+      if (codePoints == null || codePoints.length == 0)
+        return false;
+      if (codePoints.length == 2) {
+        if (!(codePoints[0] >= 'A' && codePoints[0] <= 'Z' && codePoints[1] == lower(codePoints[0])))
+          return false;
+        caseInsensitive = true;
+      }
+      text.appendCodePoint(codePoints[codePoints.length - 1]);
+      return true;
+    } else if (node instanceof Concat) {
+      return append(((Concat) node).getChildren());
+    } else if (node instanceof Group) {
+      return append(((Group) node).getChild());
+    } else {
+      return false;
+    }
+  }
+
+  private static int lower(int codePoint) {
+    return codePoint >= 'A' && codePoint <= 'Z' ? codePoint + ('a' - 'A') : codePoint;
+  }
+}
@@ -0,0 +1,340 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RegexNode.Alternation;
+import com.rapid7.recog.regex.RegexNode.Atomic;
+import com.rapid7.recog.regex.RegexNode.Backreference;
+import com.rapid7.recog.regex.RegexNode.Char;
+import com.rapid7.recog.regex.RegexNode.CharClass;
+import com.rapid7.recog.regex.RegexNode.Concat;
+import com.rapid7.recog.regex.RegexNode.Group;
+import com.rapid7.recog.regex.RegexNode.Lookaround;
+import com.rapid7.recog.regex.RegexNode.Quantifier;
+import com.rapid7.recog.regex.RegexNode.Repeat;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rewrites an expression into an equivalent one that is cheaper for a backtracking engine such as
+ * {@link java.util.regex} to evaluate. Each {@link Rewrite} is applied on its own, so that callers
+ * can check the result of each before applying the next.
+ *
+ * <p>The rewritten expression is rendered from the source of the original one, so the parts that
+ * are not rewritten keep their exact spelling.
+ */
+public final class PatternRewriter {
+
+  /** The rewrites. */
+  public enum Rewrite {
+    /**
+     * Turns capturing groups that are not used, such as the first group of
+     * {@code ^(Apache|nginx)/([\d.]+)} when only the version is extracted, into non-capturing groups.
+     * The remaining groups are renumbered (see {@link Result#getGroup(int)}). Expressions with back
+     * references are not rewritten.
+     */
+    UNUSED_GROUPS,
+
+    /**
+     * Makes greedy repetitions of a single character possessive, such as {@code [^;]*;} into
+     * {@code [^;]*+;}, when what follows must start with a character the repetition cannot match.
+     * Giving characters back to what follows can then never succeed, so the engine does not try.
+     */
+    POSSESSIVE_QUANTIFIERS,
+
+    /**
+     * Factors literal text common to the start of all the alternatives of an alternation out of it,
+     * such as {@code (?:Apache|Apple)} into {@code (?:Ap(?:ache|ple))}, so that the text is matched
+     * once rather than once per alternative.
+     */
+    COMMON_PREFIXES
+  }
+
+  /** A rewritten expression. */
+  public static final class Result {
+    private final String pattern;
+    private final int[] groups;
+
+    Result(String pattern, int[] groups) {
+      this.pattern = pattern;
+      this.groups = groups;
+    }
+
+    /** Returns the rewritten expression. */
+    public String getPattern() {
+      return pattern;
+    }
+
+    /**
+     * Returns the index of a group of the original expression in the rewritten one.
+     *
+     * @param group The one-based index of the group in the original expression.
+     * @return The index of the group in the rewritten expression, or 0 if it is no longer capturing.
+     *     Indexes beyond the groups of the original expression are shifted so that they remain
+     *     beyond the groups of the rewritten one.
+     */
+    public int getGroup(int group) {
+      if (group < groups.length)
+        return groups[group];
+      return group - (groups.length - 1) + groups[0];
+    }
+  }
+
+  private final String source;
+  private final Rewrite rewrite;
+  private final Set<Integer> usedGroups;
+  private final Set<String> usedNames;
+
+  /** The new index of each group, by original index; element 0 holds the new number of groups. */
+  private final int[] groups;
+
+  /** The number of lookarounds being rendered, within which only groups are rewritten. */
+  private int lookarounds;
+
+  private PatternRewriter(RegexTree tree, Rewrite rewrite, Set<Integer> usedGroups, Set<String> usedNames) {
+    this.source = tree.getPattern();
+    this.rewrite = rewrite;
+    this.usedGroups = usedGroups;
+    this.usedNames = usedNames;
+    this.groups = new int[tree.getGroupCount() + 1];
+  }
+
+  /**
+   * Applies a rewrite to an expression.
+   *
+   * @param tree The parsed expression. Must not be {@code null}.
+   * @param rewrite The rewrite to apply. Must not be {@code null}.
+   * @return The rewritten expression, which may be the same as the original. Will not be
+   *     {@code null}.
+   */
+  public static Result rewrite(RegexTree tree, Rewrite rewrite) {
+    return rewrite(tree, rewrite, Collections.emptySet(), Collections.emptySet());
+  }
+
+  /**
+   * Applies a rewrite to an expression.
+   *
+   * @param tree The parsed expression. Must not be {@code null}.
+   * @param rewrite The rewrite to apply. Must not be {@code null}.
+   * @param usedGroups The indexes of the groups whose values are used. Must not be {@code null}.
+   * @param usedNames The names of the groups whose values are used. Must not be {@code null}.
+   * @return The rewritten expression, which may be the same as the original. Will not be
+   *     {@code null}.
+   */
+  public static Result rewrite(RegexTree tree, Rewrite rewrite, Set<Integer> usedGroups, Set<String> usedNames) {
+    Rewrite applied = rewrite == Rewrite.UNUSED_GROUPS && hasBackreference(tree.getRoot()) ? null : rewrite;
+    PatternRewriter rewriter = new PatternRewriter(tree, applied, usedGroups, usedNames);
+    RegexNode root = tree.getRoot();
+    StringBuilder pattern = new StringBuilder(rewriter.source.length() + 8).append(rewriter.source, 0, root.getStart());
+    rewriter.render(root, null, pattern);
+    pattern.append(rewriter.source, root.getEnd(), rewriter.source.length());
+    return new Result(pattern.toString(), rewriter.groups);
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Renders a node, rewritten.
+   *
+   * @param follow The characters one of which what follows the node must start with, or
+   *     {@code null} if unknown.
+   */
+  private void render(RegexNode node, CharSet follow, StringBuilder out) {
+    if (node instanceof Concat) {
+      List<RegexNode> children = ((Concat) node).getChildren();
+      renderSequence(node.getStart(), children, 0, node.getEnd(), follow, out);
+    } else if (node instanceof Alternation) {
+      renderAlternation((Alternation) node, follow, out);
+    } else if (node instanceof Group) {
+      renderGroup((Group) node, follow, out);
+    } else if (node instanceof Repeat) {
+      Repeat repeat = (Repeat) node;
+      renderChild(repeat, repeat.getChild(), null, out);
+      if (rewrite == Rewrite.POSSESSIVE_QUANTIFIERS && lookarounds == 0 && isPossessive(repeat, follow))
+        out.append('+');
+    } else if (node instanceof Atomic) {
+      renderChild(node, ((Atomic) node).getChild(), follow, out);
+    } else if (node instanceof Lookaround) {
+      lookarounds++;
+      renderChild(node, ((Lookaround) node).getChild(), null, out);
+      lookarounds--;
+    } else {
+      out.append(source, node.getStart(), node.getEnd());
+    }
+  }
+
+  /** Renders a node with a single child, copying the source around the child. */
+  private void renderChild(RegexNode node, RegexNode child, CharSet follow, StringBuilder out) {
+    out.append(source, node.getStart(), child.getStart());
+    render(child, follow, out);
+    out.append(source, child.getEnd(), node.getEnd());
+  }
+
+  /** Renders the source from {@code start} to {@code end}, made of children from {@code from}. */
+  private void renderSequence(int start, List<RegexNode> children, int from, int end, CharSet follow, StringBuilder out) {
+    int position = start;
+    for (int i = from; i < children.size(); i++) {
+      RegexNode child = children.get(i);
+      out.append(source, position, child.getStart());
+      render(child, i + 1 < children.size() ? first(children.get(i + 1)) : follow, out);
+      position = child.getEnd();
+    }
+    out.append(source, position, end);
+  }
+
+  private void renderGroup(Group group, CharSet follow, StringBuilder out) {
+    if (group.isCapturing()) {
+      boolean used = rewrite != Rewrite.UNUSED_GROUPS || usedGroups.contains(group.getIndex())
+          || (group.getName() != null && usedNames.contains(group.getName()));
+      if (used) {
+        groups[group.getIndex()] = ++groups[0];
+      } else {
+        // the group opens with "(" or "(?<name>"
+        int open = group.getStart() + (group.getName() == null ? 1 : group.getName().length() + 4);
+        out.append("(?:").append(source, open, group.getChild().getStart());
+        render(group.getChild(), follow, out);
+        out.append(source, group.getChild().getEnd(), group.getEnd());
+        return;
+      }
+    }
+    renderChild(group, group.getChild(), follow, out);
+  }
+
+  private void renderAlternation(Alternation alternation, CharSet follow, StringBuilder out) {
+    List<RegexNode> alternatives = alternation.getAlternatives();
+    int prefix = rewrite == Rewrite.COMMON_PREFIXES && lookarounds == 0 ? commonPrefix(alternation) : 0;
+    if (prefix == 0) {
+      int position = alternation.getStart();
+      for (RegexNode alternative : alternatives) {
+        out.append(source, position, alternative.getStart());
+        render(alternative, follow, out);
+        position = alternative.getEnd();
+      }
+      out.append(source, position, alternation.getEnd());
+      return;
+    }
+
+    RegexNode first = alternatives.get(0);
+    out.append(source, first.getStart(), sequence(first).get(prefix - 1).getEnd()).append("(?:");
+    for (int i = 0; i < alternatives.size(); i++) {
+      if (i > 0)
+        out.append('|');
+      RegexNode alternative = alternatives.get(i);
+      List<RegexNode> children = sequence(alternative);
+      renderSequence(children.get(prefix - 1).getEnd(), children, prefix, alternative.getEnd(), follow, out);
+    }
+    out.append(')');
+  }
+
+  /**
+   * Returns the number of literal characters at the start of all alternatives, written out in the
+   * source one after another. Inline flags, such as {@code (?i)}, end the prefix.
+   */
+  private static int commonPrefix(Alternation alternation) {
+    List<RegexNode> alternatives = alternation.getAlternatives();
+    int prefix = 0;
+    while (true) {
+      Char common = null;
+      for (int i = 0; i < alternatives.size(); i++) {
+        List<RegexNode> children = sequence(alternatives.get(i));
+        if (children.size() <= prefix || !(children.get(prefix) instanceof Char))
+          return prefix;
+        Char ch = (Char) children.get(prefix);
+        // each alternative starts right after the previous one and a '|'
+        int expected = prefix > 0 ? children.get(prefix - 1).getEnd()
+            : i == 0 ? alternation.getStart() : alternatives.get(i - 1).getEnd() + 1;
+        if (ch.getStart() != expected || ch.getStart() == ch.getEnd())
+          return prefix;
+        if (common == null)
+          common = ch;
+        else if (common.getCodePoint() != ch.getCodePoint() || common.isCaseInsensitive() != ch.isCaseInsensitive())
+          return prefix;
+      }
+      prefix++;
+    }
+  }
+
+  private static List<RegexNode> sequence(RegexNode node) {
+    return node instanceof Concat ? ((Concat) node).getChildren() : Collections.singletonList(node);
+  }
+
+  /**
+   * Returns whether a greedy repetition of a single character can be made possessive: when what
+   * follows must start with a character the repetition cannot match, backtracking into the
+   * repetition cannot lead to a match.
+   */
+  private static boolean isPossessive(Repeat repeat, CharSet follow) {
+    if (repeat.getQuantifier() != Quantifier.GREEDY || repeat.getMin() == repeat.getMax() || follow == null)
+      return false;
+    CharSet set = chars(repeat.getChild());
+    return set != null && set.intersect(follow).isEmpty();
+  }
+
+  /** Returns the characters a node matches if it matches a single character, otherwise {@code null}. */
+  private static CharSet chars(RegexNode node) {
+    if (node instanceof Char)
+      return ((Char) node).toCharSet();
+    else if (node instanceof CharClass)
+      return ((CharClass) node).getSet();
+    else
+      return null;
+  }
+
+  /**
+   * Returns the characters one of which any match of a node starts with, or {@code null} if the
+   * node may match the empty string or starts with an assertion.
+   */
+  private static CharSet first(RegexNode node) {
+    if (node instanceof Char || node instanceof CharClass) {
+      return chars(node);
+    } else if (node instanceof Concat) {
+      List<RegexNode> children = ((Concat) node).getChildren();
+      return children.isEmpty() ? null : first(children.get(0));
+    } else if (node instanceof Alternation) {
+      CharSet union = CharSet.EMPTY;
+      for (RegexNode alternative : ((Alternation) node).getAlternatives()) {
+        CharSet set = first(alternative);
+        if (set == null)
+          return null;
+        union = union.union(set);
+      }
+      return union;
+    } else if (node instanceof Group) {
+      return first(((Group) node).getChild());
+    } else if (node instanceof Atomic) {
+      return first(((Atomic) node).getChild());
+    } else if (node instanceof Repeat) {
+      Repeat repeat = (Repeat) node;
+      return repeat.getMin() > 0 ? first(repeat.getChild()) : null;
+    } else {
+      return null;
+    }
+  }
+
+  private static boolean hasBackreference(RegexNode node) {
+    if (node instanceof Backreference) {
+      return true;
+    } else if (node instanceof Concat) {
+      for (RegexNode child : ((Concat) node).getChildren())
+        if (hasBackreference(child))
+          return true;
+      return false;
+    } else if (node instanceof Alternation) {
+      for (RegexNode alternative : ((Alternation) node).getAlternatives())
+        if (hasBackreference(alternative))
+          return true;
+      return false;
+    } else if (node instanceof Group) {
+      return hasBackreference(((Group) node).getChild());
+    } else if (node instanceof Repeat) {
+      return hasBackreference(((Repeat) node).getChild());
+    } else if (node instanceof Lookaround) {
+      return hasBackreference(((Lookaround) node).getChild());
+    } else if (node instanceof Atomic) {
+      return hasBackreference(((Atomic) node).getChild());
+    } else {
+      return false;
+    }
+  }
+}
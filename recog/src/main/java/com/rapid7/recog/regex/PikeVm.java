@@ -0,0 +1,154 @@
+package com.rapid7.recog.regex;
+
+import java.util.Arrays;
+
+/**
+ * Simulates a {@link Program} over an input, advancing all threads in lock step (Pike's VM). Threads
+ * are kept in priority order and a thread reaching a state already visited at the same position is
+ * discarded, which yields the leftmost-first match and submatches of a backtracking matcher without
+ * its exponential worst case. Like {@link java.util.regex.Pattern}, threads consume a surrogate pair as
+ * one code point, and matches only start at code point boundaries.
+ *
+ * <p>Instances hold per-search state and are not thread-safe.
+ */
+final class PikeVm {
+
+  /** Stack entries at or above this value restore a capture slot rather than visit a pc. */
+  private static final int RESTORE = 1 << 30;
+
+  private final Program program;
+  private final int slotCount;
+  private Threads current;
+  private Threads next;
+  private final int[] slots;
+  private int[] stack;
+
+  /** A sparse set of pcs, in insertion (priority) order, with the capture slots of each thread. */
+  private static final class Threads {
+    private final int[] dense;
+    private final int[] sparse;
+    private final int[] slots;
+    private int size;
+
+    Threads(int size, int slotCount) {
+      dense = new int[size];
+      sparse = new int[size];
+      slots = new int[size * slotCount];
+    }
+
+    boolean contains(int pc) {
+      int index = sparse[pc];
+      return index < size && dense[index] == pc;
+    }
+
+    void add(int pc) {
+      sparse[pc] = size;
+      dense[size++] = pc;
+    }
+
+    void clear() {
+      size = 0;
+    }
+  }
+
+  PikeVm(Program program) {
+    this.program = program;
+    this.slotCount = program.slotCount;
+    this.current = new Threads(program.size, slotCount);
+    this.next = new Threads(program.size, slotCount);
+    this.slots = new int[slotCount];
+    this.stack = new int[16];
+  }
+
+  /**
+   * Finds the leftmost-first match in the input.
+   *
+   * @return The capture slots of the match (start and end position of each group, or -1), or
+   *     {@code null} if there is no match.
+   */
+  int[] search(CharSequence input) {
+    int length = input.length();
+    int[] match = null;
+    current.clear();
+    for (int position = 0, width; ; position += width) {
+      if (match == null && (position == 0 || !program.anchored)) {
+        // a new thread starting here has the lowest priority
+        Arrays.fill(slots, -1);
+        addThread(current, program.starts[0], position, input, slots);
+      }
+      if (current.size == 0)
+        break;
+
+      next.clear();
+      int codePoint = position < length ? Character.codePointAt(input, position) : 0;
+      width = Character.charCount(codePoint);
+      for (int i = 0; i < current.size; i++) {
+        int pc = current.dense[i];
+        int op = program.ops[pc];
+        if (op == Program.MATCH) {
+          if (match == null)
+            match = new int[slotCount];
+          System.arraycopy(current.slots, pc * slotCount, match, 0, slotCount);
+          // threads after this one have lower priority than the match
+          break;
+        } else if (op == Program.CHAR && position < length && program.matches(pc, codePoint)) {
+          System.arraycopy(current.slots, pc * slotCount, slots, 0, slotCount);
+          addThread(next, pc + 1, position + width, input, slots);
+        }
+      }
+
+      Threads swap = current;
+      current = next;
+      next = swap;
+      if (position == length)
+        break;
+    }
+    return match;
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  /** Adds the thread at {@code start} and every thread reachable from it without consuming input. */
+  private void addThread(Threads threads, int start, int position, CharSequence input, int[] slots) {
+    int top = 0;
+    stack[top++] = start;
+    while (top > 0) {
+      int entry = stack[--top];
+      if (entry >= RESTORE) {
+        slots[entry - RESTORE] = stack[--top];
+        continue;
+      }
+
+      int pc = entry;
+      while (!threads.contains(pc)) {
+        threads.add(pc);
+        int op = program.ops[pc];
+        if (op == Program.JUMP) {
+          pc = program.targets[pc];
+        } else if (op == Program.SPLIT) {
+          if (top == stack.length)
+            stack = Arrays.copyOf(stack, top * 2);
+          stack[top++] = program.alternates[pc];
+          pc = program.targets[pc];
+        } else if (op == Program.SAVE) {
+          int slot = program.targets[pc];
+          if (top + 2 > stack.length)
+            stack = Arrays.copyOf(stack, stack.length * 2);
+          stack[top++] = slots[slot];
+          stack[top++] = RESTORE + slot;
+          slots[slot] = position;
+          pc++;
+        } else if (op == Program.ASSERT) {
+          if (!Program.test(program.assertions[pc], program.unixLines[pc], input, position))
+            break;
+          pc++;
+        } else {
+          System.arraycopy(slots, 0, threads.slots, pc * slotCount, slotCount);
+          break;
+        }
+      }
+    }
+  }
+}
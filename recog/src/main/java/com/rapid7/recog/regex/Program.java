@@ -0,0 +1,442 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RegexNode.Alternation;
+import com.rapid7.recog.regex.RegexNode.Assertion;
+import com.rapid7.recog.regex.RegexNode.AssertionKind;
+import com.rapid7.recog.regex.RegexNode.Char;
+import com.rapid7.recog.regex.RegexNode.CharClass;
+import com.rapid7.recog.regex.RegexNode.Concat;
+import com.rapid7.recog.regex.RegexNode.Group;
+import com.rapid7.recog.regex.RegexNode.Quantifier;
+import com.rapid7.recog.regex.RegexNode.Repeat;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A regular expression compiled into a Thompson NFA: a flat list of instructions in which
+ * {@link #SPLIT} encodes prioritized choice. The instruction set deliberately has no construct that
+ * requires backtracking, so every program can be simulated in time linear in the input length.
+ */
+final class Program {
+
+  /** Consumes one code point contained in the instruction's set. */
+  static final int CHAR = 0;
+  /** Continues at both targets; the first has priority. */
+  static final int SPLIT = 1;
+  /** Continues at the target. */
+  static final int JUMP = 2;
+  /** Records the current position in a capture slot. */
+  static final int SAVE = 3;
+  /** Continues only if a zero-width assertion holds at the current position. */
+  static final int ASSERT = 4;
+  /** The expression matched. */
+  static final int MATCH = 5;
+
+  /** Maximum number of instructions per expression, bounding the cost of expanding counted repetition. */
+  static final int MAX_SIZE = 20_000;
+
+  final int[] ops;
+  final int[] targets;
+  final int[] alternates;
+  final long[] asciiLow;
+  final long[] asciiHigh;
+  final CharSet[] sets;
+  final AssertionKind[] assertions;
+  final boolean[] unixLines;
+  final int size;
+  final int slotCount;
+
+  /** The first instruction of each expression, or -1 for expressions that could not be compiled. */
+  final int[] starts;
+
+  /** Whether every match of each expression must begin at the start of the input. */
+  final boolean[] anchoredStarts;
+
+  /** Whether every compiled expression is anchored at the start of the input. */
+  final boolean anchored;
+
+  /** Whether the program contains {@code \b} or {@code \B}. */
+  final boolean hasWordBoundary;
+
+  /** Whether each expression contains {@code \b} or {@code \B}. */
+  final boolean[] wordBoundaries;
+
+  /** Whether the program contains line assertions that recognize terminators other than {@code \n}. */
+  final boolean hasLegacyLineAssertion;
+
+  /** Whether the program contains multi-line {@code ^}. */
+  final boolean hasBeginLine;
+
+  private Program(Builder builder, int groupCount, int[] starts, boolean[] anchoredStarts) {
+    this.size = builder.size;
+    this.ops = Arrays.copyOf(builder.ops, size);
+    this.targets = Arrays.copyOf(builder.targets, size);
+    this.alternates = Arrays.copyOf(builder.alternates, size);
+    this.sets = Arrays.copyOf(builder.sets, size);
+    this.assertions = Arrays.copyOf(builder.assertions, size);
+    this.unixLines = Arrays.copyOf(builder.unixLines, size);
+    this.slotCount = 2 * (groupCount + 1);
+    this.starts = starts;
+    this.anchoredStarts = anchoredStarts;
+
+    boolean allAnchored = true;
+    for (int pattern = 0; pattern < starts.length; pattern++)
+      allAnchored &= starts[pattern] < 0 || anchoredStarts[pattern];
+    this.anchored = allAnchored;
+
+    asciiLow = new long[size];
+    asciiHigh = new long[size];
+    wordBoundaries = new boolean[starts.length];
+    boolean legacyLines = false;
+    boolean beginLine = false;
+    for (int pc = 0; pc < size; pc++) {
+      if (ops[pc] == CHAR) {
+        for (int ch = 0; ch < 128; ch++) {
+          if (sets[pc].contains(ch)) {
+            if (ch < 64)
+              asciiLow[pc] |= 1L << ch;
+            else
+              asciiHigh[pc] |= 1L << (ch - 64);
+          }
+        }
+      } else if (ops[pc] == ASSERT) {
+        beginLine |= assertions[pc] == AssertionKind.BEGIN_LINE;
+        legacyLines |= isLegacyLineAssertion(pc);
+      }
+    }
+    boolean wordBoundary = false;
+    for (int pattern = 0; pattern < starts.length; pattern++) {
+      for (int pc = starts[pattern]; pc >= 0 && ops[pc] != MATCH; pc++) {
+        wordBoundaries[pattern] |= ops[pc] == ASSERT
+            && (assertions[pc] == AssertionKind.WORD_BOUNDARY || assertions[pc] == AssertionKind.NOT_WORD_BOUNDARY);
+      }
+      wordBoundary |= wordBoundaries[pattern];
+    }
+    hasWordBoundary = wordBoundary;
+    hasLegacyLineAssertion = legacyLines;
+    hasBeginLine = beginLine;
+  }
+
+  /**
+   * Compiles a parsed expression.
+   *
+   * @param tree The expression. Must not be {@code null}.
+   * @return The program. Will not be {@code null}.
+   * @throws UnsupportedRegexException If the expression requires backtracking (back references,
+   *     lookaround, atomic groups, possessive quantifiers, or unbounded repetition of an expression
+   *     that can match the empty string) or is too large.
+   */
+  static Program compile(RegexTree tree) {
+    Builder builder = new Builder();
+    builder.compile(tree, 0);
+    return new Program(builder, tree.getGroupCount(), new int[] {0}, new boolean[] {anchoredStart(tree.getRoot())});
+  }
+
+  /**
+   * Compiles several expressions into one program, in which the {@link #MATCH} instruction of each
+   * expression targets its index. Expressions that cannot be compiled, or that have line assertions
+   * recognizing terminators other than {@code \n}, are left out and have a start of -1.
+   *
+   * @param trees The expressions; {@code null} elements are left out. Must not be {@code null}.
+   * @return The program. Will not be {@code null}.
+   */
+  static Program compile(List<RegexTree> trees) {
+    Builder builder = new Builder();
+    int[] starts = new int[trees.size()];
+    boolean[] anchoredStarts = new boolean[trees.size()];
+    for (int pattern = 0; pattern < trees.size(); pattern++) {
+      RegexTree tree = trees.get(pattern);
+      starts[pattern] = -1;
+      if (tree == null)
+        continue;
+
+      int start = builder.size;
+      try {
+        builder.compile(tree, pattern);
+        starts[pattern] = start;
+        anchoredStarts[pattern] = anchoredStart(tree.getRoot());
+        for (int pc = start; pc < builder.size; pc++) {
+          if (builder.ops[pc] == ASSERT && !builder.unixLines[pc] && isLineAssertion(builder.assertions[pc]))
+            throw new UnsupportedRegexException("Line terminators other than \\n are not supported");
+        }
+      } catch (UnsupportedRegexException exception) {
+        builder.size = start;
+        builder.repeated = 0;
+        starts[pattern] = -1;
+      }
+    }
+    return new Program(builder, 0, starts, anchoredStarts);
+  }
+
+  boolean matches(int pc, int codePoint) {
+    if (codePoint < 64)
+      return (asciiLow[pc] & (1L << codePoint)) != 0;
+    else if (codePoint < 128)
+      return (asciiHigh[pc] & (1L << (codePoint - 64))) != 0;
+    else
+      return sets[pc].contains(codePoint);
+  }
+
+  static boolean isWord(int ch) {
+    return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '_';
+  }
+
+  /**
+   * Evaluates a zero-width assertion with the semantics of {@link java.util.regex.Pattern}. Word
+   * boundaries only consider ASCII word characters; callers must not evaluate them against input
+   * containing other characters.
+   */
+  static boolean test(AssertionKind kind, boolean unixLines, CharSequence input, int position) {
+    int length = input.length();
+    switch (kind) {
+      case BEGIN_INPUT:
+        return position == 0;
+      case END_INPUT:
+        return position == length;
+      case BEGIN_LINE:
+        // like Perl, ^ never matches at the end of input, even after a line terminator
+        if (position == length)
+          return false;
+        if (position == 0)
+          return true;
+        char previous = input.charAt(position - 1);
+        if (unixLines)
+          return previous == '\n';
+        if (previous != '\n' && previous != '\r' && (previous | 1) != '\u2029' && previous != '\u0085')
+          return false;
+        return !(previous == '\r' && input.charAt(position) == '\n');
+      case END_LINE:
+      case END_INPUT_OR_FINAL_TERMINATOR:
+        return testEnd(kind == AssertionKind.END_LINE, unixLines, input, position);
+      case WORD_BOUNDARY:
+      case NOT_WORD_BOUNDARY:
+        boolean left = position > 0 && isWord(input.charAt(position - 1));
+        boolean right = position < length && isWord(input.charAt(position));
+        return (left != right) == (kind == AssertionKind.WORD_BOUNDARY);
+      default:
+        throw new IllegalStateException("Unknown assertion " + kind);
+    }
+  }
+
+  private static boolean testEnd(boolean multiline, boolean unixLines, CharSequence input, int position) {
+    int length = input.length();
+    if (unixLines) {
+      if (position < length) {
+        if (input.charAt(position) != '\n')
+          return false;
+        return multiline || position == length - 1;
+      }
+      return true;
+    }
+
+    if (!multiline) {
+      if (position < length - 2)
+        return false;
+      if (position == length - 2)
+        return input.charAt(position) == '\r' && input.charAt(position + 1) == '\n';
+    }
+    if (position < length) {
+      char ch = input.charAt(position);
+      if (ch == '\n') {
+        // no match between \r and \n
+        if (position > 0 && input.charAt(position - 1) == '\r')
+          return false;
+        return multiline || position == length - 1;
+      } else if (ch == '\r' || ch == '\u0085' || (ch | 1) == '\u2029') {
+        return multiline || position == length - 1;
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private boolean isLegacyLineAssertion(int pc) {
+    return !unixLines[pc] && isLineAssertion(assertions[pc]);
+  }
+
+  private static boolean isLineAssertion(AssertionKind kind) {
+    return kind == AssertionKind.BEGIN_LINE || kind == AssertionKind.END_LINE || kind == AssertionKind.END_INPUT_OR_FINAL_TERMINATOR;
+  }
+
+  private static boolean anchoredStart(RegexNode node) {
+    if (node instanceof Assertion)
+      return ((Assertion) node).getKind() == AssertionKind.BEGIN_INPUT;
+    else if (node instanceof Concat)
+      return !((Concat) node).getChildren().isEmpty() && anchoredStart(((Concat) node).getChildren().get(0));
+    else if (node instanceof Group)
+      return anchoredStart(((Group) node).getChild());
+    else if (node instanceof Alternation)
+      return ((Alternation) node).getAlternatives().stream().allMatch(Program::anchoredStart);
+    else if (node instanceof Repeat)
+      return ((Repeat) node).getMin() > 0 && anchoredStart(((Repeat) node).getChild());
+    else
+      return false;
+  }
+
+  private static boolean nullable(RegexNode node) {
+    if (node instanceof Char || node instanceof CharClass)
+      return false;
+    else if (node instanceof Concat)
+      return ((Concat) node).getChildren().stream().allMatch(Program::nullable);
+    else if (node instanceof Alternation)
+      return ((Alternation) node).getAlternatives().stream().anyMatch(Program::nullable);
+    else if (node instanceof Repeat)
+      return ((Repeat) node).getMin() == 0 || nullable(((Repeat) node).getChild());
+    else if (node instanceof Group)
+      return nullable(((Group) node).getChild());
+    else
+      return true;
+  }
+
+  private static final class Builder {
+    private int[] ops = new int[16];
+    private int[] targets = new int[16];
+    private int[] alternates = new int[16];
+    private CharSet[] sets = new CharSet[16];
+    private AssertionKind[] assertions = new AssertionKind[16];
+    private boolean[] unixLines = new boolean[16];
+    private int size;
+
+    /** Number of enclosing repetitions that can match more than once. */
+    private int repeated;
+
+    /** Index of the first instruction of the expression being compiled. */
+    private int start;
+
+    void compile(RegexTree tree, int pattern) {
+      start = size;
+      emit(SAVE, 0, 0);
+      compile(tree.getRoot());
+      emit(SAVE, 1, 0);
+      emit(MATCH, pattern, 0);
+    }
+
+    int emit(int op, int target, int alternate) {
+      if (size - start == MAX_SIZE)
+        throw new UnsupportedRegexException("Expression is too large");
+      if (size == ops.length) {
+        int capacity = size * 2;
+        ops = Arrays.copyOf(ops, capacity);
+        targets = Arrays.copyOf(targets, capacity);
+        alternates = Arrays.copyOf(alternates, capacity);
+        sets = Arrays.copyOf(sets, capacity);
+        assertions = Arrays.copyOf(assertions, capacity);
+        unixLines = Arrays.copyOf(unixLines, capacity);
+      }
+      ops[size] = op;
+      targets[size] = target;
+      alternates[size] = alternate;
+      return size++;
+    }
+
+    void compile(RegexNode node) {
+      if (node instanceof Char) {
+        int pc = emit(CHAR, 0, 0);
+        sets[pc] = ((Char) node).toCharSet();
+      } else if (node instanceof CharClass) {
+        int pc = emit(CHAR, 0, 0);
+        sets[pc] = ((CharClass) node).getSet();
+      } else if (node instanceof Concat) {
+        for (RegexNode child : ((Concat) node).getChildren())
+          compile(child);
+      } else if (node instanceof Alternation) {
+        alternation(((Alternation) node));
+      } else if (node instanceof Repeat) {
+        repeat((Repeat) node);
+      } else if (node instanceof Group) {
+        Group group = (Group) node;
+        if (group.isCapturing() && repeated > 0) {
+          // java.util.regex may report captures from abandoned iterations, which cannot be reproduced
+          throw new UnsupportedRegexException("Capturing groups in repeated expressions are not supported");
+        }
+        if (group.isCapturing())
+          emit(SAVE, 2 * group.getIndex(), 0);
+        compile(group.getChild());
+        if (group.isCapturing())
+          emit(SAVE, 2 * group.getIndex() + 1, 0);
+      } else if (node instanceof Assertion) {
+        Assertion assertion = (Assertion) node;
+        int pc = emit(ASSERT, 0, 0);
+        assertions[pc] = assertion.getKind();
+        unixLines[pc] = assertion.isUnixLines();
+      } else if (node instanceof RegexNode.Empty) {
+        // nothing to match
+      } else {
+        throw new UnsupportedRegexException(node.getClass().getSimpleName() + " requires backtracking");
+      }
+    }
+
+    private void alternation(Alternation alternation) {
+      int count = alternation.getAlternatives().size();
+      int[] jumps = new int[count - 1];
+      for (int i = 0; i < count; i++) {
+        RegexNode alternative = alternation.getAlternatives().get(i);
+        if (i < count - 1) {
+          int split = emit(SPLIT, 0, 0);
+          targets[split] = size;
+          compile(alternative);
+          jumps[i] = emit(JUMP, 0, 0);
+          alternates[split] = size;
+        } else {
+          compile(alternative);
+        }
+      }
+      for (int jump : jumps)
+        targets[jump] = size;
+    }
+
+    private void repeat(Repeat repeat) {
+      RegexNode child = repeat.getChild();
+      if (repeat.getQuantifier() == Quantifier.POSSESSIVE)
+        throw new UnsupportedRegexException("Possessive quantifiers require backtracking");
+      if (repeat.getMax() != 1 && nullable(child))
+        throw new UnsupportedRegexException("Repetition of an expression matching the empty string is not supported");
+
+      boolean greedy = repeat.getQuantifier() == Quantifier.GREEDY;
+      if (repeat.getMax() != 1)
+        repeated++;
+      for (int i = 0; i < repeat.getMin(); i++)
+        compile(child);
+
+      if (repeat.getMax() == Repeat.UNBOUNDED) {
+        if (repeat.getMin() > 0) {
+          // x+ : x followed by a loop back to a second copy of x
+          int loop = size;
+          int split = emit(SPLIT, 0, 0);
+          int body = size;
+          compile(child);
+          emit(JUMP, loop, 0);
+          branch(split, body, size, greedy);
+        } else {
+          int split = emit(SPLIT, 0, 0);
+          int body = size;
+          compile(child);
+          emit(JUMP, split, 0);
+          branch(split, body, size, greedy);
+        }
+      } else {
+        // each optional occurrence is nested in the previous one: x{0,2} is (?:x(?:x)?)?
+        int optional = repeat.getMax() - repeat.getMin();
+        int[] splits = new int[optional];
+        for (int i = 0; i < optional; i++) {
+          splits[i] = emit(SPLIT, 0, 0);
+          targets[splits[i]] = size;
+          compile(child);
+        }
+        for (int split : splits)
+          branch(split, targets[split], size, greedy);
+      }
+      if (repeat.getMax() != 1)
+        repeated--;
+    }
+
+    private void branch(int split, int body, int exit, boolean greedy) {
+      targets[split] = greedy ? body : exit;
+      alternates[split] = greedy ? exit : body;
+    }
+  }
+}
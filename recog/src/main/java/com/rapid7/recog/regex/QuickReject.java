@@ -0,0 +1,136 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RegexNode.Alternation;
+import com.rapid7.recog.regex.RegexNode.Atomic;
+import com.rapid7.recog.regex.RegexNode.Char;
+import com.rapid7.recog.regex.RegexNode.CharClass;
+import com.rapid7.recog.regex.RegexNode.Concat;
+import com.rapid7.recog.regex.RegexNode.Group;
+import com.rapid7.recog.regex.RegexNode.Repeat;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A cheap test that rules out inputs an expression cannot match: the ASCII characters every match
+ * contains (ignoring case) and the minimum length of a match. An input lacking one of the required
+ * characters, or shorter than the minimum length, is rejected without evaluating the expression.
+ *
+ * <p>Like {@link RequiredLiterals}, the analysis is conservative; constructs it cannot reason about
+ * contribute no requirement. Instances are immutable.
+ */
+public final class QuickReject {
+
+  /** A test that rejects no input. */
+  public static final QuickReject NONE = new QuickReject(CharBitmap.EMPTY, 0);
+
+  private final CharBitmap requiredChars;
+  private final int minLength;
+
+  private QuickReject(CharBitmap requiredChars, int minLength) {
+    this.requiredChars = requiredChars;
+    this.minLength = minLength;
+  }
+
+  /**
+   * Derives the test for an expression.
+   *
+   * @param tree The parsed expression. Must not be {@code null}.
+   * @return The test. Will not be {@code null}.
+   */
+  public static QuickReject of(RegexTree tree) {
+    RegexNode root = requireNonNull(tree).getRoot();
+    CharBitmap requiredChars = requiredChars(root);
+    int minLength = (int) Math.min(minLength(root), Integer.MAX_VALUE);
+    return requiredChars.isEmpty() && minLength == 0 ? NONE : new QuickReject(requiredChars, minLength);
+  }
+
+  /** Returns the ASCII characters, lower-cased, that every match contains. */
+  public CharBitmap getRequiredChars() {
+    return requiredChars;
+  }
+
+  /** Returns the minimum length of a match, in UTF-16 code units. */
+  public int getMinLength() {
+    return minLength;
+  }
+
+  /**
+   * Returns whether the expression cannot match an input.
+   *
+   * @param inputChars The characters of the input, as returned by {@link CharBitmap#of(CharSequence)}.
+   *     Must not be {@code null}.
+   * @param inputLength The length of the input.
+   * @return {@code true} if the expression cannot match the input, {@code false} if it may.
+   */
+  public boolean rejects(CharBitmap inputChars, int inputLength) {
+    return inputLength < minLength || !inputChars.containsAll(requiredChars);
+  }
+
+  @Override
+  public String toString() {
+    return "QuickReject[requiredChars=" + requiredChars + ", minLength=" + minLength + "]";
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private static CharBitmap requiredChars(RegexNode node) {
+    if (node instanceof Char) {
+      return CharBitmap.of(((Char) node).getCodePoint());
+    } else if (node instanceof CharClass) {
+      // a class like [Ee] requires a single character when case is ignored
+      int[] codePoints = ((CharClass) node).getSet().toArray(2);
+      if (codePoints == null || codePoints.length == 0)
+        return CharBitmap.EMPTY;
+      CharBitmap required = CharBitmap.of(codePoints[0]);
+      return codePoints.length == 1 || required.equals(CharBitmap.of(codePoints[1])) ? required : CharBitmap.EMPTY;
+    } else if (node instanceof Concat) {
+      CharBitmap required = CharBitmap.EMPTY;
+      for (RegexNode child : ((Concat) node).getChildren())
+        required = required.union(requiredChars(child));
+      return required;
+    } else if (node instanceof Alternation) {
+      CharBitmap required = null;
+      for (RegexNode alternative : ((Alternation) node).getAlternatives())
+        required = required == null ? requiredChars(alternative) : required.intersect(requiredChars(alternative));
+      return required == null ? CharBitmap.EMPTY : required;
+    } else if (node instanceof Repeat) {
+      Repeat repeat = (Repeat) node;
+      return repeat.getMin() > 0 ? requiredChars(repeat.getChild()) : CharBitmap.EMPTY;
+    } else if (node instanceof Group) {
+      return requiredChars(((Group) node).getChild());
+    } else if (node instanceof Atomic) {
+      return requiredChars(((Atomic) node).getChild());
+    } else {
+      // assertions, lookaround and back references consume nothing that is known in advance
+      return CharBitmap.EMPTY;
+    }
+  }
+
+  private static long minLength(RegexNode node) {
+    if (node instanceof Char) {
+      return Character.charCount(((Char) node).getCodePoint());
+    } else if (node instanceof CharClass) {
+      return ((CharClass) node).getSet().isEmpty() ? 0 : 1;
+    } else if (node instanceof Concat) {
+      long length = 0;
+      for (RegexNode child : ((Concat) node).getChildren())
+        length = Math.min(length + minLength(child), Integer.MAX_VALUE);
+      return length;
+    } else if (node instanceof Alternation) {
+      long length = Long.MAX_VALUE;
+      for (RegexNode alternative : ((Alternation) node).getAlternatives())
+        length = Math.min(length, minLength(alternative));
+      return length == Long.MAX_VALUE ? 0 : length;
+    } else if (node instanceof Repeat) {
+      Repeat repeat = (Repeat) node;
+      return Math.min(repeat.getMin() * minLength(repeat.getChild()), Integer.MAX_VALUE);
+    } else if (node instanceof Group) {
+      return minLength(((Group) node).getChild());
+    } else if (node instanceof Atomic) {
+      return minLength(((Atomic) node).getChild());
+    } else {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,285 @@
+package com.rapid7.recog.regex;
+
+import java.util.Collections;
+import java.util.List;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A node of the syntax tree produced by {@link RegexParser}. Every node records the span of the
+ * pattern source it was parsed from, so analyses can refer back to (or rewrite) the original
+ * expression text.
+ */
+public abstract class RegexNode {
+
+  /** Start offset (inclusive) of this node in the pattern source. */
+  private final int start;
+
+  /** End offset (exclusive) of this node in the pattern source. */
+  private final int end;
+
+  RegexNode(int start, int end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  public int getStart() {
+    return start;
+  }
+
+  public int getEnd() {
+    return end;
+  }
+
+  /**
+   * Matches the empty string, e.g. an empty alternative or an inline flag group such as
+   * {@code (?i)}.
+   */
+  public static final class Empty extends RegexNode {
+    Empty(int start, int end) {
+      super(start, end);
+    }
+  }
+
+  /**
+   * Matches a single code point. When {@link #isCaseInsensitive()} is {@code true} the code point is
+   * an ASCII letter that also matches its other-case counterpart.
+   */
+  public static final class Char extends RegexNode {
+    private final int codePoint;
+    private final boolean caseInsensitive;
+
+    Char(int start, int end, int codePoint, boolean caseInsensitive) {
+      super(start, end);
+      this.codePoint = codePoint;
+      this.caseInsensitive = caseInsensitive;
+    }
+
+    public int getCodePoint() {
+      return codePoint;
+    }
+
+    public boolean isCaseInsensitive() {
+      return caseInsensitive;
+    }
+
+    /** Returns the set of code points matched by this node. */
+    public CharSet toCharSet() {
+      CharSet set = CharSet.of(codePoint);
+      return caseInsensitive ? set.foldAsciiCase() : set;
+    }
+  }
+
+  /** Matches a single code point from a set, e.g. a bracketed class, a predefined class or a dot. */
+  public static final class CharClass extends RegexNode {
+    private final CharSet set;
+
+    CharClass(int start, int end, CharSet set) {
+      super(start, end);
+      this.set = requireNonNull(set);
+    }
+
+    public CharSet getSet() {
+      return set;
+    }
+  }
+
+  /** A sequence of nodes matched one after another. */
+  public static final class Concat extends RegexNode {
+    private final List<RegexNode> children;
+
+    Concat(int start, int end, List<RegexNode> children) {
+      super(start, end);
+      this.children = Collections.unmodifiableList(children);
+    }
+
+    public List<RegexNode> getChildren() {
+      return children;
+    }
+  }
+
+  /** A list of alternatives, tried in order. */
+  public static final class Alternation extends RegexNode {
+    private final List<RegexNode> alternatives;
+
+    Alternation(int start, int end, List<RegexNode> alternatives) {
+      super(start, end);
+      this.alternatives = Collections.unmodifiableList(alternatives);
+    }
+
+    public List<RegexNode> getAlternatives() {
+      return alternatives;
+    }
+  }
+
+  /** The kinds of quantifier. */
+  public enum Quantifier {
+    GREEDY, RELUCTANT, POSSESSIVE
+  }
+
+  /** A quantified node, e.g. {@code x*}, {@code x+?} or {@code x{2,5}}. */
+  public static final class Repeat extends RegexNode {
+    /** Value of {@link #getMax()} for unbounded repetition. */
+    public static final int UNBOUNDED = -1;
+
+    private final RegexNode child;
+    private final int min;
+    private final int max;
+    private final Quantifier quantifier;
+
+    Repeat(int start, int end, RegexNode child, int min, int max, Quantifier quantifier) {
+      super(start, end);
+      this.child = requireNonNull(child);
+      this.min = min;
+      this.max = max;
+      this.quantifier = requireNonNull(quantifier);
+    }
+
+    public RegexNode getChild() {
+      return child;
+    }
+
+    public int getMin() {
+      return min;
+    }
+
+    /** Returns the maximum repetition count, or {@link #UNBOUNDED}. */
+    public int getMax() {
+      return max;
+    }
+
+    public Quantifier getQuantifier() {
+      return quantifier;
+    }
+  }
+
+  /** A parenthesized group; capturing groups have a positive index and optionally a name. */
+  public static final class Group extends RegexNode {
+    private final RegexNode child;
+    private final int index;
+    private final String name;
+
+    Group(int start, int end, RegexNode child, int index, String name) {
+      super(start, end);
+      this.child = requireNonNull(child);
+      this.index = index;
+      this.name = name;
+    }
+
+    public RegexNode getChild() {
+      return child;
+    }
+
+    /** Returns the one-based group index, or zero for non-capturing groups. */
+    public int getIndex() {
+      return index;
+    }
+
+    /** Returns the group name, or {@code null} if the group is unnamed. */
+    public String getName() {
+      return name;
+    }
+
+    public boolean isCapturing() {
+      return index > 0;
+    }
+  }
+
+  /** The kinds of zero-width assertion. */
+  public enum AssertionKind {
+    /** {@code ^} without MULTILINE, or {@code \A}. */
+    BEGIN_INPUT,
+    /** {@code ^} with MULTILINE. */
+    BEGIN_LINE,
+    /** {@code $} without MULTILINE, or {@code \Z}. */
+    END_INPUT_OR_FINAL_TERMINATOR,
+    /** {@code $} with MULTILINE. */
+    END_LINE,
+    /** {@code \z}. */
+    END_INPUT,
+    /** {@code \b}. */
+    WORD_BOUNDARY,
+    /** {@code \B}. */
+    NOT_WORD_BOUNDARY
+  }
+
+  /** A zero-width assertion. Line related assertions honour the flags in effect when parsed. */
+  public static final class Assertion extends RegexNode {
+    private final AssertionKind kind;
+    private final boolean unixLines;
+
+    Assertion(int start, int end, AssertionKind kind, boolean unixLines) {
+      super(start, end);
+      this.kind = requireNonNull(kind);
+      this.unixLines = unixLines;
+    }
+
+    public AssertionKind getKind() {
+      return kind;
+    }
+
+    /** Returns whether only {@code \n} is recognized as a line terminator by this assertion. */
+    public boolean isUnixLines() {
+      return unixLines;
+    }
+  }
+
+  /** A lookahead or lookbehind, e.g. {@code (?=x)} or {@code (?<!x)}. */
+  public static final class Lookaround extends RegexNode {
+    private final RegexNode child;
+    private final boolean behind;
+    private final boolean negative;
+
+    Lookaround(int start, int end, RegexNode child, boolean behind, boolean negative) {
+      super(start, end);
+      this.child = requireNonNull(child);
+      this.behind = behind;
+      this.negative = negative;
+    }
+
+    public RegexNode getChild() {
+      return child;
+    }
+
+    public boolean isBehind() {
+      return behind;
+    }
+
+    public boolean isNegative() {
+      return negative;
+    }
+  }
+
+  /** An independent (atomic) group, {@code (?>x)}. */
+  public static final class Atomic extends RegexNode {
+    private final RegexNode child;
+
+    Atomic(int start, int end, RegexNode child) {
+      super(start, end);
+      this.child = requireNonNull(child);
+    }
+
+    public RegexNode getChild() {
+      return child;
+    }
+  }
+
+  /** A back reference to a capturing group, e.g. {@code \1} or {@code \k<name>}. */
+  public static final class Backreference extends RegexNode {
+    private final int index;
+    private final boolean caseInsensitive;
+
+    Backreference(int start, int end, int index, boolean caseInsensitive) {
+      super(start, end);
+      this.index = index;
+      this.caseInsensitive = caseInsensitive;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public boolean isCaseInsensitive() {
+      return caseInsensitive;
+    }
+  }
+}
@@ -0,0 +1,701 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RegexNode.Alternation;
+import com.rapid7.recog.regex.RegexNode.AssertionKind;
+import com.rapid7.recog.regex.RegexNode.Quantifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parses regular expressions written in the {@link Pattern} dialect into a {@link RegexTree}. The
+ * parser follows the semantics of {@link Pattern} for every construct it accepts (including the
+ * scoping of inline flags and ASCII-only case folding); constructs it does not model, such as
+ * Unicode properties, class intersection or the COMMENTS flag, cause an
+ * {@link UnsupportedRegexException} so that callers never act on a misread expression.
+ */
+public final class RegexParser {
+
+  private static final int SUPPORTED_FLAGS = Pattern.UNIX_LINES | Pattern.CASE_INSENSITIVE | Pattern.MULTILINE
+      | Pattern.DOTALL | Pattern.UNICODE_CASE;
+
+  private final String pattern;
+  private int cursor;
+  private int flags;
+  private int groupCount;
+  private final Map<String, Integer> groupNames;
+
+  private RegexParser(String pattern, int flags) {
+    this.pattern = pattern;
+    this.flags = flags;
+    this.groupNames = new LinkedHashMap<>();
+  }
+
+  /**
+   * Parses a regular expression.
+   *
+   * @param pattern The expression. Must not be {@code null}.
+   * @param flags The {@link Pattern} flags the expression is compiled with.
+   * @return The parsed expression. Will not be {@code null}.
+   * @throws PatternSyntaxException If the expression is not valid.
+   * @throws UnsupportedRegexException If the expression uses a construct this parser does not model.
+   */
+  public static RegexTree parse(String pattern, int flags) {
+    if ((flags & ~SUPPORTED_FLAGS) != 0)
+      throw new UnsupportedRegexException("Unsupported pattern flags " + flags);
+
+    RegexParser parser = new RegexParser(pattern, flags);
+    RegexNode root = parser.expression();
+    if (parser.cursor < pattern.length())
+      throw parser.error("Unmatched closing ')'");
+    return new RegexTree(pattern, flags, root, parser.groupCount, parser.groupNames);
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private boolean has(int flag) {
+    return (flags & flag) != 0;
+  }
+
+  private boolean atEnd() {
+    return cursor >= pattern.length();
+  }
+
+  private int peek() {
+    return atEnd() ? -1 : pattern.charAt(cursor);
+  }
+
+  private PatternSyntaxException error(String description) {
+    return new PatternSyntaxException(description, pattern, cursor);
+  }
+
+  private RegexNode expression() {
+    int start = cursor;
+    List<RegexNode> alternatives = new ArrayList<>();
+    alternatives.add(sequence());
+    while (peek() == '|') {
+      cursor++;
+      alternatives.add(sequence());
+    }
+    return alternatives.size() == 1 ? alternatives.get(0) : new Alternation(start, cursor, alternatives);
+  }
+
+  private RegexNode sequence() {
+    int start = cursor;
+    List<RegexNode> children = new ArrayList<>();
+    while (!atEnd() && peek() != '|' && peek() != ')') {
+      int atomStart = cursor;
+      if (pattern.startsWith("\\Q", cursor)) {
+        quoted(children);
+        continue;
+      }
+
+      RegexNode atom = atom();
+      if (atom == null)
+        continue;
+      children.add(quantified(atomStart, atom));
+    }
+
+    if (children.size() == 1)
+      return children.get(0);
+    else if (children.isEmpty())
+      return new RegexNode.Empty(start, cursor);
+    else
+      return new RegexNode.Concat(start, cursor, children);
+  }
+
+  /**
+   * Parses a {@code \Q...\E} quoted section into literal characters. Like {@link Pattern}, a
+   * quantifier following the section applies to its last character only.
+   */
+  private void quoted(List<RegexNode> children) {
+    cursor += 2;
+    int end = pattern.indexOf("\\E", cursor);
+    int stop = end < 0 ? pattern.length() : end;
+    RegexNode last = null;
+    int lastStart = cursor;
+    while (cursor < stop) {
+      if (last != null)
+        children.add(last);
+      lastStart = cursor;
+      int codePoint = pattern.codePointAt(cursor);
+      cursor += Character.charCount(codePoint);
+      last = literal(lastStart, codePoint);
+    }
+    cursor = end < 0 ? stop : stop + 2;
+    if (last != null)
+      children.add(quantified(lastStart, last));
+  }
+
+  private RegexNode literal(int start, int codePoint) {
+    boolean foldable = has(Pattern.CASE_INSENSITIVE) && codePoint < 128 && Character.isLetter(codePoint);
+    if (has(Pattern.CASE_INSENSITIVE) && has(Pattern.UNICODE_CASE) && Character.isLetter(codePoint))
+      throw new UnsupportedRegexException("Unicode case folding is not supported");
+    return new RegexNode.Char(start, cursor, codePoint, foldable);
+  }
+
+  private RegexNode atom() {
+    int start = cursor;
+    int ch = peek();
+    switch (ch) {
+      case '(':
+        return group();
+      case '[':
+        cursor++;
+        CharSet set = characterClass(start);
+        return new RegexNode.CharClass(start, cursor, set);
+      case '.':
+        cursor++;
+        CharSet dot = has(Pattern.DOTALL) ? CharSet.ANY : has(Pattern.UNIX_LINES) ? CharSet.UNIX_DOT : CharSet.DOT;
+        return new RegexNode.CharClass(start, cursor, dot);
+      case '^':
+        cursor++;
+        return new RegexNode.Assertion(start, cursor, has(Pattern.MULTILINE) ? AssertionKind.BEGIN_LINE : AssertionKind.BEGIN_INPUT,
+            has(Pattern.UNIX_LINES));
+      case '$':
+        cursor++;
+        return new RegexNode.Assertion(start, cursor,
+            has(Pattern.MULTILINE) ? AssertionKind.END_LINE : AssertionKind.END_INPUT_OR_FINAL_TERMINATOR, has(Pattern.UNIX_LINES));
+      case '*':
+      case '+':
+      case '?':
+      case '{':
+        throw error("Dangling meta character '" + (char) ch + "'");
+      case '\\':
+        return escape(start);
+      default:
+        int codePoint = pattern.codePointAt(cursor);
+        cursor += Character.charCount(codePoint);
+        return literal(start, codePoint);
+    }
+  }
+
+  private RegexNode escape(int start) {
+    cursor++;
+    if (atEnd())
+      throw error("Unexpected internal error");
+
+    int ch = pattern.charAt(cursor++);
+    switch (ch) {
+      case 'b':
+        return new RegexNode.Assertion(start, cursor, AssertionKind.WORD_BOUNDARY, has(Pattern.UNIX_LINES));
+      case 'B':
+        return new RegexNode.Assertion(start, cursor, AssertionKind.NOT_WORD_BOUNDARY, has(Pattern.UNIX_LINES));
+      case 'A':
+        return new RegexNode.Assertion(start, cursor, AssertionKind.BEGIN_INPUT, has(Pattern.UNIX_LINES));
+      case 'Z':
+        return new RegexNode.Assertion(start, cursor, AssertionKind.END_INPUT_OR_FINAL_TERMINATOR, has(Pattern.UNIX_LINES));
+      case 'z':
+        return new RegexNode.Assertion(start, cursor, AssertionKind.END_INPUT, has(Pattern.UNIX_LINES));
+      case 'k':
+        return namedBackreference(start);
+      case '1':
+      case '2':
+      case '3':
+      case '4':
+      case '5':
+      case '6':
+      case '7':
+      case '8':
+      case '9':
+        int index = ch - '0';
+        while (!atEnd() && Character.isDigit(peek()) && peek() < 128) {
+          int next = index * 10 + (peek() - '0');
+          if (next > groupCount)
+            break;
+          index = next;
+          cursor++;
+        }
+        return new RegexNode.Backreference(start, cursor, index, has(Pattern.CASE_INSENSITIVE));
+      default:
+        cursor--;
+        CharSet set = classEscape();
+        if (set != null)
+          return new RegexNode.CharClass(start, cursor, set);
+        return literal(start, literalEscape());
+    }
+  }
+
+  private RegexNode namedBackreference(int start) {
+    if (peek() != '<')
+      throw error("\\k is not followed by '<' for named capturing group");
+    cursor++;
+    String name = groupName();
+    Integer index = groupNames.get(name);
+    if (index == null)
+      throw error("named capturing group <" + name + "> does not exist");
+    return new RegexNode.Backreference(start, cursor, index, has(Pattern.CASE_INSENSITIVE));
+  }
+
+  /**
+   * Parses a predefined class escape at the cursor (positioned after the backslash).
+   *
+   * @return The class, or {@code null} (with the cursor unchanged) if the escape is not a class.
+   */
+  private CharSet classEscape() {
+    int ch = peek();
+    CharSet set;
+    switch (ch) {
+      case 'd':
+      case 'D':
+        set = CharSet.DIGIT;
+        break;
+      case 'w':
+      case 'W':
+        set = CharSet.WORD;
+        break;
+      case 's':
+      case 'S':
+        set = CharSet.SPACE;
+        break;
+      case 'h':
+      case 'H':
+        set = CharSet.HORIZONTAL_SPACE;
+        break;
+      case 'v':
+      case 'V':
+        set = CharSet.VERTICAL_SPACE;
+        break;
+      case 'p':
+      case 'P':
+        cursor++;
+        set = property();
+        return ch == 'P' ? set.complement() : set;
+      default:
+        return null;
+    }
+    cursor++;
+    return Character.isUpperCase(ch) ? set.complement() : set;
+  }
+
+  private CharSet property() {
+    String name;
+    if (peek() == '{') {
+      int close = pattern.indexOf('}', cursor);
+      if (close < 0)
+        throw error("Unclosed character family");
+      name = pattern.substring(cursor + 1, close);
+      cursor = close + 1;
+    } else if (!atEnd()) {
+      name = String.valueOf(pattern.charAt(cursor++));
+    } else {
+      throw error("Illegal character family");
+    }
+
+    if (has(Pattern.CASE_INSENSITIVE) && (name.equals("Lower") || name.equals("Upper")))
+      throw new UnsupportedRegexException("Case-insensitive \\p{" + name + "} is not supported");
+
+    switch (name) {
+      case "Lower":
+        return CharSet.ranges('a', 'z');
+      case "Upper":
+        return CharSet.ranges('A', 'Z');
+      case "ASCII":
+        return CharSet.ranges(0, 0x7F);
+      case "Alpha":
+        return CharSet.ranges('A', 'Z', 'a', 'z');
+      case "Digit":
+        return CharSet.DIGIT;
+      case "Alnum":
+        return CharSet.ranges('0', '9', 'A', 'Z', 'a', 'z');
+      case "Punct":
+        return CharSet.ranges('!', '/', ':', '@', '[', '`', '{', '~');
+      case "Graph":
+        return CharSet.ranges('!', '~');
+      case "Print":
+        return CharSet.ranges(' ', '~');
+      case "Blank":
+        return CharSet.ranges(' ', ' ', '\t', '\t');
+      case "Cntrl":
+        return CharSet.ranges(0, 0x1F, 0x7F, 0x7F);
+      case "XDigit":
+        return CharSet.ranges('0', '9', 'A', 'F', 'a', 'f');
+      case "Space":
+        return CharSet.SPACE;
+      default:
+        throw new UnsupportedRegexException("Unsupported character family \\p{" + name + "}");
+    }
+  }
+
+  /**
+   * Parses an escape that denotes a single character, positioned after the backslash.
+   *
+   * @return The code point of the escaped character.
+   */
+  private int literalEscape() {
+    int ch = pattern.charAt(cursor++);
+    switch (ch) {
+      case '0':
+        return octal();
+      case 'a':
+        return 0x07;
+      case 'e':
+        return 0x1B;
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'c':
+        if (atEnd())
+          throw error("Illegal control escape sequence");
+        return pattern.charAt(cursor++) ^ 64;
+      case 'x':
+        return hexEscape();
+      case 'u':
+        int high = hex(4);
+        if (Character.isHighSurrogate((char) high) && pattern.startsWith("\\u", cursor)) {
+          int save = cursor;
+          cursor += 2;
+          int low = hex(4);
+          if (Character.isLowSurrogate((char) low))
+            return Character.toCodePoint((char) high, (char) low);
+          cursor = save;
+        }
+        return high;
+      default:
+        if (ch < 128 && Character.isLetterOrDigit(ch))
+          throw new UnsupportedRegexException("Unsupported escape sequence \\" + (char) ch);
+        if (Character.isHighSurrogate((char) ch) && !atEnd() && Character.isLowSurrogate(pattern.charAt(cursor)))
+          return Character.toCodePoint((char) ch, pattern.charAt(cursor++));
+        return ch;
+    }
+  }
+
+  private int octal() {
+    int value = 0;
+    int digits = 0;
+    int maxDigits = 3;
+    while (digits < maxDigits && !atEnd() && peek() >= '0' && peek() <= '7') {
+      if (digits == 0 && peek() > '3')
+        maxDigits = 2;
+      value = value * 8 + (peek() - '0');
+      cursor++;
+      digits++;
+    }
+    if (digits == 0)
+      throw error("Illegal octal escape sequence");
+    return value;
+  }
+
+  private int hexEscape() {
+    if (peek() == '{') {
+      int close = pattern.indexOf('}', cursor);
+      if (close < 0 || close == cursor + 1)
+        throw error("Unclosed hexadecimal escape sequence");
+      int value;
+      try {
+        value = Integer.parseInt(pattern.substring(cursor + 1, close), 16);
+      } catch (NumberFormatException exception) {
+        throw error("Illegal hexadecimal escape sequence");
+      }
+      if (value < 0 || value > CharSet.MAX_CODE_POINT)
+        throw error("Hexadecimal codepoint is too big");
+      cursor = close + 1;
+      return value;
+    }
+    return hex(2);
+  }
+
+  private int hex(int digits) {
+    if (cursor + digits > pattern.length())
+      throw error("Illegal hexadecimal escape sequence");
+    int value = 0;
+    for (int i = 0; i < digits; i++) {
+      int digit = Character.digit(pattern.charAt(cursor + i), 16);
+      if (digit < 0 || pattern.charAt(cursor + i) > 127)
+        throw error("Illegal hexadecimal escape sequence");
+      value = value * 16 + digit;
+    }
+    cursor += digits;
+    return value;
+  }
+
+  /**
+   * Parses a bracketed character class, positioned after the opening bracket.
+   */
+  private CharSet characterClass(int start) {
+    boolean negated = false;
+    if (peek() == '^') {
+      negated = true;
+      cursor++;
+    }
+
+    CharSet set = CharSet.EMPTY;
+    boolean first = true;
+    while (true) {
+      if (atEnd())
+        throw new PatternSyntaxException("Unclosed character class", pattern, start);
+
+      int ch = peek();
+      if (ch == ']' && !first) {
+        cursor++;
+        break;
+      } else if (ch == '[') {
+        if (negated)
+          throw new UnsupportedRegexException("Nested classes within a negated class are not supported");
+        int nestedStart = cursor++;
+        set = set.union(characterClass(nestedStart));
+      } else if (ch == '&' && pattern.startsWith("&&", cursor)) {
+        throw new UnsupportedRegexException("Character class intersection is not supported");
+      } else if (ch == '\\' && pattern.startsWith("\\Q", cursor)) {
+        throw new UnsupportedRegexException("Quoting within a character class is not supported");
+      } else {
+        set = set.union(classRange());
+      }
+      first = false;
+    }
+
+    if (has(Pattern.CASE_INSENSITIVE)) {
+      if (has(Pattern.UNICODE_CASE))
+        throw new UnsupportedRegexException("Unicode case folding is not supported");
+      set = set.foldAsciiCase();
+    }
+    return negated ? set.complement() : set;
+  }
+
+  private CharSet classRange() {
+    int low;
+    if (peek() == '\\') {
+      cursor++;
+      if (atEnd())
+        throw error("Unclosed character class");
+      CharSet set = classEscape();
+      if (set != null)
+        return set;
+      int escaped = peek();
+      if (escaped == 'b' || escaped == 'B' || escaped == 'A' || escaped == 'z' || escaped == 'Z' || escaped == 'k'
+          || (escaped >= '1' && escaped <= '9'))
+        throw error("Illegal/unsupported escape sequence");
+      low = literalEscape();
+    } else {
+      low = pattern.codePointAt(cursor);
+      cursor += Character.charCount(low);
+    }
+
+    if (peek() == '-' && cursor + 1 < pattern.length() && pattern.charAt(cursor + 1) != ']' && pattern.charAt(cursor + 1) != '[') {
+      cursor++;
+      int high;
+      if (peek() == '\\') {
+        cursor++;
+        if (atEnd())
+          throw error("Unclosed character class");
+        if (classEscape() != null)
+          throw error("Illegal character range");
+        high = literalEscape();
+      } else {
+        high = pattern.codePointAt(cursor);
+        cursor += Character.charCount(high);
+      }
+      if (high < low)
+        throw error("Illegal character range");
+      return CharSet.ranges(low, high);
+    }
+    return CharSet.of(low);
+  }
+
+  private RegexNode group() {
+    int start = cursor;
+    int savedFlags = flags;
+    cursor++;
+
+    RegexNode node;
+    if (peek() != '?') {
+      int index = ++groupCount;
+      RegexNode child = expression();
+      close();
+      node = new RegexNode.Group(start, cursor, child, index, null);
+    } else {
+      cursor++;
+      int ch = peek();
+      switch (ch) {
+        case ':': {
+          cursor++;
+          RegexNode child = expression();
+          close();
+          node = new RegexNode.Group(start, cursor, child, 0, null);
+          break;
+        }
+        case '=':
+        case '!': {
+          cursor++;
+          RegexNode child = expression();
+          close();
+          node = new RegexNode.Lookaround(start, cursor, child, false, ch == '!');
+          break;
+        }
+        case '>': {
+          cursor++;
+          RegexNode child = expression();
+          close();
+          node = new RegexNode.Atomic(start, cursor, child);
+          break;
+        }
+        case '<': {
+          cursor++;
+          if (peek() == '=' || peek() == '!') {
+            boolean negative = peek() == '!';
+            cursor++;
+            RegexNode child = expression();
+            close();
+            node = new RegexNode.Lookaround(start, cursor, child, true, negative);
+          } else {
+            String name = groupName();
+            if (groupNames.containsKey(name))
+              throw error("Named capturing group <" + name + "> is already defined");
+            int index = ++groupCount;
+            groupNames.put(name, index);
+            RegexNode child = expression();
+            close();
+            node = new RegexNode.Group(start, cursor, child, index, name);
+          }
+          break;
+        }
+        default:
+          inlineFlags();
+          if (peek() == ')') {
+            // a flag-only group, e.g. (?i), applies to the remainder of the enclosing group and,
+            // like in Pattern, cannot be quantified
+            cursor++;
+            return null;
+          }
+          if (peek() != ':')
+            throw error("Unknown inline modifier");
+          cursor++;
+          RegexNode child = expression();
+          close();
+          node = new RegexNode.Group(start, cursor, child, 0, null);
+          break;
+      }
+    }
+
+    flags = savedFlags;
+    return node;
+  }
+
+  private void close() {
+    if (peek() != ')')
+      throw error("Unclosed group");
+    cursor++;
+  }
+
+  private String groupName() {
+    int nameStart = cursor;
+    while (!atEnd() && peek() < 128 && Character.isLetterOrDigit(peek()))
+      cursor++;
+    if (cursor == nameStart || !Character.isLetter(pattern.charAt(nameStart)))
+      throw error("capturing group name does not start with a Latin letter");
+    if (peek() != '>')
+      throw error("named capturing group is missing trailing '>'");
+    return pattern.substring(nameStart, cursor++);
+  }
+
+  private void inlineFlags() {
+    boolean enable = true;
+    while (!atEnd()) {
+      int flag;
+      switch (peek()) {
+        case 'i':
+          flag = Pattern.CASE_INSENSITIVE;
+          break;
+        case 'm':
+          flag = Pattern.MULTILINE;
+          break;
+        case 's':
+          flag = Pattern.DOTALL;
+          break;
+        case 'd':
+          flag = Pattern.UNIX_LINES;
+          break;
+        case 'u':
+          flag = Pattern.UNICODE_CASE;
+          break;
+        case 'x':
+        case 'U':
+        case 'c':
+          throw new UnsupportedRegexException("Unsupported inline flag '" + (char) peek() + "'");
+        case '-':
+          if (!enable)
+            throw error("Unknown inline modifier");
+          enable = false;
+          cursor++;
+          continue;
+        default:
+          return;
+      }
+      flags = enable ? flags | flag : flags & ~flag;
+      cursor++;
+    }
+  }
+
+  private RegexNode quantified(int start, RegexNode atom) {
+    int min;
+    int max;
+    switch (peek()) {
+      case '*':
+        min = 0;
+        max = RegexNode.Repeat.UNBOUNDED;
+        cursor++;
+        break;
+      case '+':
+        min = 1;
+        max = RegexNode.Repeat.UNBOUNDED;
+        cursor++;
+        break;
+      case '?':
+        min = 0;
+        max = 1;
+        cursor++;
+        break;
+      case '{':
+        cursor++;
+        min = number();
+        if (peek() == ',') {
+          cursor++;
+          max = peek() == '}' ? RegexNode.Repeat.UNBOUNDED : number();
+        } else {
+          max = min;
+        }
+        if (peek() != '}')
+          throw error("Unclosed counted closure");
+        cursor++;
+        if (max != RegexNode.Repeat.UNBOUNDED && max < min)
+          throw error("Illegal repetition range");
+        break;
+      default:
+        return atom;
+    }
+
+    Quantifier quantifier = Quantifier.GREEDY;
+    if (peek() == '?') {
+      quantifier = Quantifier.RELUCTANT;
+      cursor++;
+    } else if (peek() == '+') {
+      quantifier = Quantifier.POSSESSIVE;
+      cursor++;
+    }
+    return new RegexNode.Repeat(start, cursor, atom, min, max, quantifier);
+  }
+
+  private int number() {
+    int numberStart = cursor;
+    long value = 0;
+    while (!atEnd() && peek() >= '0' && peek() <= '9') {
+      value = value * 10 + (peek() - '0');
+      if (value > Integer.MAX_VALUE)
+        throw new UnsupportedRegexException("Repetition count is too large");
+      cursor++;
+    }
+    if (cursor == numberStart)
+      throw error("Illegal repetition");
+    return (int) value;
+  }
+}
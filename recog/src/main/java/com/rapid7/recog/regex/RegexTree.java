@@ -0,0 +1,50 @@
+package com.rapid7.recog.regex;
+
+import java.util.Collections;
+import java.util.Map;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The result of parsing a regular expression with {@link RegexParser}: the syntax tree along with
+ * the capturing group layout of the expression.
+ */
+public final class RegexTree {
+
+  private final String pattern;
+  private final int flags;
+  private final RegexNode root;
+  private final int groupCount;
+  private final Map<String, Integer> groupNames;
+
+  RegexTree(String pattern, int flags, RegexNode root, int groupCount, Map<String, Integer> groupNames) {
+    this.pattern = requireNonNull(pattern);
+    this.flags = flags;
+    this.root = requireNonNull(root);
+    this.groupCount = groupCount;
+    this.groupNames = Collections.unmodifiableMap(groupNames);
+  }
+
+  /** The source of the parsed expression. */
+  public String getPattern() {
+    return pattern;
+  }
+
+  /** The {@link java.util.regex.Pattern} flags the expression was parsed with. */
+  public int getFlags() {
+    return flags;
+  }
+
+  public RegexNode getRoot() {
+    return root;
+  }
+
+  /** Returns the number of capturing groups in the expression. */
+  public int getGroupCount() {
+    return groupCount;
+  }
+
+  /** Returns the one-based indexes of the named capturing groups, keyed by name. */
+  public Map<String, Integer> getGroupNames() {
+    return groupNames;
+  }
+}
@@ -0,0 +1,309 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RegexNode.Alternation;
+import com.rapid7.recog.regex.RegexNode.Atomic;
+import com.rapid7.recog.regex.RegexNode.Char;
+import com.rapid7.recog.regex.RegexNode.CharClass;
+import com.rapid7.recog.regex.RegexNode.Concat;
+import com.rapid7.recog.regex.RegexNode.Group;
+import com.rapid7.recog.regex.RegexNode.Repeat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Derives the literal strings a regular expression requires. The result is a disjunction: any
+ * input matched by the expression contains at least one of the returned literals. This allows a
+ * cheap substring search to rule out inputs before running the expression itself.
+ *
+ * <p>The analysis is conservative. Constructs it cannot reason about (back references, large
+ * classes, optional parts) contribute no requirement, and an expression for which no useful
+ * requirement exists yields an empty list.
+ */
+public final class RequiredLiterals {
+
+  /** Maximum size of an exact string set before it is abandoned. */
+  private static final int MAX_EXACT = 16;
+
+  /** Maximum number of alternatives in a required literal disjunction. */
+  private static final int MAX_REQUIRED = 64;
+
+  /** Maximum size of a character class enumerated into single character literals. */
+  private static final int MAX_CLASS = 8;
+
+  /** A literal string, optionally matched ignoring ASCII case. */
+  public static final class Literal {
+    private final String text;
+    private final boolean caseInsensitive;
+
+    public Literal(String text, boolean caseInsensitive) {
+      this.text = caseInsensitive ? toLowerAscii(requireNonNull(text)) : requireNonNull(text);
+      this.caseInsensitive = caseInsensitive;
+    }
+
+    /** Returns the literal text; lower-cased (ASCII only) when case-insensitive. */
+    public String getText() {
+      return text;
+    }
+
+    public boolean isCaseInsensitive() {
+      return caseInsensitive;
+    }
+
+    Literal concat(Literal other) {
+      return new Literal(text + other.text, caseInsensitive || other.caseInsensitive);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other)
+        return true;
+      else if (!(other instanceof Literal))
+        return false;
+      else {
+        Literal that = (Literal) other;
+        return caseInsensitive == that.caseInsensitive && text.equals(that.text);
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(text, caseInsensitive);
+    }
+
+    @Override
+    public String toString() {
+      return caseInsensitive ? "(?i)" + text : text;
+    }
+  }
+
+  /**
+   * Analysis result for a node. {@code exact} is the set of strings the node matches, or
+   * {@code null} if unknown; {@code required} is a disjunction of literals found in any match of
+   * the node, or {@code null} if there is no requirement.
+   */
+  private static final class Info {
+    private final Set<Literal> exact;
+    private final Set<Literal> required;
+
+    Info(Set<Literal> exact, Set<Literal> required) {
+      this.exact = exact;
+      this.required = required;
+    }
+
+    Set<Literal> best() {
+      return better(requirement(exact), required);
+    }
+  }
+
+  private static final Info EMPTY = new Info(Collections.singleton(new Literal("", false)), null);
+  private static final Info UNKNOWN = new Info(null, null);
+
+  private RequiredLiterals() {
+  }
+
+  /**
+   * Returns the literals required by the expression.
+   *
+   * @param tree The parsed expression. Must not be {@code null}.
+   * @return A list of literals, at least one of which occurs in any input the expression matches.
+   *     Empty if no requirement could be derived. Will not be {@code null}.
+   */
+  public static List<Literal> of(RegexTree tree) {
+    Set<Literal> best = analyze(tree.getRoot()).best();
+    return best == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(best));
+  }
+
+  /** Lower-cases ASCII letters only, matching the case folding of {@link java.util.regex.Pattern}. */
+  public static String toLowerAscii(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char ch = text.charAt(i);
+      if (ch >= 'A' && ch <= 'Z') {
+        char[] chars = text.toCharArray();
+        for (int j = i; j < chars.length; j++)
+          if (chars[j] >= 'A' && chars[j] <= 'Z')
+            chars[j] += 'a' - 'A';
+        return new String(chars);
+      }
+    }
+    return text;
+  }
+
+  /////////////////////////////////////////////////////////////////////////
+  // Non-public methods
+  /////////////////////////////////////////////////////////////////////////
+
+  private static Info analyze(RegexNode node) {
+    if (node instanceof Char) {
+      Char ch = (Char) node;
+      return new Info(Collections.singleton(literal(ch.getCodePoint(), ch.isCaseInsensitive())), null);
+    } else if (node instanceof CharClass) {
+      Set<Literal> exact = classLiterals(((CharClass) node).getSet());
+      return exact == null ? UNKNOWN : new Info(exact, null);
+    } else if (node instanceof Concat) {
+      return concat(((Concat) node).getChildren());
+    } else if (node instanceof Alternation) {
+      return alternation(((Alternation) node).getAlternatives());
+    } else if (node instanceof Repeat) {
+      return repeat((Repeat) node);
+    } else if (node instanceof Group) {
+      return analyze(((Group) node).getChild());
+    } else if (node instanceof Atomic) {
+      return analyze(((Atomic) node).getChild());
+    } else if (node instanceof RegexNode.Backreference) {
+      return UNKNOWN;
+    } else {
+      // empty, assertions and lookaround consume no input
+      return EMPTY;
+    }
+  }
+
+  private static Info concat(List<RegexNode> children) {
+    Set<Literal> run = EMPTY.exact;
+    Set<Literal> required = null;
+    boolean complete = true;
+    for (RegexNode child : children) {
+      Info info = analyze(child);
+      required = better(required, info.required);
+      if (run != null && info.exact != null && (long) run.size() * info.exact.size() <= MAX_EXACT) {
+        run = product(run, info.exact);
+      } else {
+        // the exact run is broken; keep what was gathered so far as a candidate requirement
+        complete = false;
+        if (run != null)
+          required = better(required, requirement(run));
+        run = info.exact;
+      }
+    }
+
+    if (run != null)
+      required = better(required, requirement(run));
+    return new Info(complete ? run : null, required);
+  }
+
+  private static Info alternation(List<RegexNode> alternatives) {
+    Set<Literal> exact = new LinkedHashSet<>();
+    Set<Literal> required = new LinkedHashSet<>();
+    for (RegexNode alternative : alternatives) {
+      Info info = analyze(alternative);
+      if (exact != null && info.exact != null && exact.size() + info.exact.size() <= MAX_EXACT)
+        exact.addAll(info.exact);
+      else
+        exact = null;
+
+      Set<Literal> best = info.best();
+      if (required != null && best != null && required.size() + best.size() <= MAX_REQUIRED)
+        required.addAll(best);
+      else
+        required = null;
+    }
+    return new Info(exact, required == null ? null : simplify(required));
+  }
+
+  private static Info repeat(Repeat repeat) {
+    Info info = analyze(repeat.getChild());
+    if (repeat.getMin() == 0) {
+      if (repeat.getMax() == 1 && info.exact != null && info.exact.size() < MAX_EXACT) {
+        Set<Literal> exact = new LinkedHashSet<>(info.exact);
+        exact.addAll(EMPTY.exact);
+        return new Info(exact, null);
+      }
+      return UNKNOWN;
+    } else if (repeat.getMin() == 1 && repeat.getMax() == 1) {
+      return info;
+    } else {
+      return new Info(null, info.best());
+    }
+  }
+
+  private static Set<Literal> classLiterals(CharSet set) {
+    int[] codePoints = set.toArray(MAX_CLASS);
+    if (codePoints == null)
+      return null;
+
+    Set<Literal> literals = new LinkedHashSet<>();
+    for (int codePoint : codePoints) {
+      boolean upper = codePoint >= 'A' && codePoint <= 'Z';
+      boolean lower = codePoint >= 'a' && codePoint <= 'z';
+      if (upper && set.contains(codePoint + ('a' - 'A')))
+        continue; // represented by its lower-case counterpart
+      literals.add(literal(codePoint, lower && set.contains(codePoint - ('a' - 'A'))));
+    }
+    return literals;
+  }
+
+  private static Literal literal(int codePoint, boolean caseInsensitive) {
+    return new Literal(new String(Character.toChars(codePoint)), caseInsensitive);
+  }
+
+  private static Set<Literal> product(Set<Literal> prefixes, Set<Literal> suffixes) {
+    Set<Literal> product = new LinkedHashSet<>();
+    for (Literal prefix : prefixes)
+      for (Literal suffix : suffixes)
+        product.add(prefix.concat(suffix));
+    return product;
+  }
+
+  /** Converts an exact set into a requirement; a set containing the empty string requires nothing. */
+  private static Set<Literal> requirement(Set<Literal> exact) {
+    if (exact == null)
+      return null;
+    for (Literal literal : exact)
+      if (literal.getText().isEmpty())
+        return null;
+    return simplify(exact);
+  }
+
+  /**
+   * Removes literals that are implied by another literal of a disjunction, e.g. "Apache-Coyote"
+   * when "Apache" is also present.
+   */
+  private static Set<Literal> simplify(Set<Literal> literals) {
+    Set<Literal> simplified = new LinkedHashSet<>();
+    for (Literal literal : literals) {
+      boolean implied = false;
+      for (Literal other : literals) {
+        if (other != literal && other.getText().length() <= literal.getText().length() && implies(literal, other)
+            && (other.getText().length() < literal.getText().length() || !literal.isCaseInsensitive())) {
+          implied = true;
+          break;
+        }
+      }
+      if (!implied)
+        simplified.add(literal);
+    }
+    return simplified;
+  }
+
+  /** Returns whether an occurrence of the first literal is always an occurrence of the second. */
+  private static boolean implies(Literal literal, Literal other) {
+    if (other.isCaseInsensitive())
+      return toLowerAscii(literal.getText()).contains(other.getText());
+    return !literal.isCaseInsensitive() && literal.getText().contains(other.getText());
+  }
+
+  /** Picks the more selective of two requirements: longest shortest literal, then fewest literals. */
+  private static Set<Literal> better(Set<Literal> first, Set<Literal> second) {
+    if (first == null)
+      return second;
+    if (second == null)
+      return first;
+
+    int firstLength = shortest(first);
+    int secondLength = shortest(second);
+    if (firstLength != secondLength)
+      return firstLength > secondLength ? first : second;
+    return first.size() <= second.size() ? first : second;
+  }
+
+  private static int shortest(Set<Literal> literals) {
+    int shortest = Integer.MAX_VALUE;
+    for (Literal literal : literals)
+      shortest = Math.min(shortest, literal.getText().length());
+    return shortest;
+  }
+}
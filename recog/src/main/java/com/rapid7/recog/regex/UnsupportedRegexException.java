@@ -0,0 +1,13 @@
+package com.rapid7.recog.regex;
+
+/**
+ * Thrown when a regular expression is valid for {@link java.util.regex.Pattern} but uses a
+ * construct or flag that {@link RegexParser} does not model. Callers are expected to fall back to
+ * treating the expression as opaque.
+ */
+public class UnsupportedRegexException extends RuntimeException {
+
+  public UnsupportedRegexException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,92 @@
+package com.rapid7.recog;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Adapts a {@link FingerprintProcessor} to {@link Flow.Processor}, so that it can be connected to
+ * {@link java.util.concurrent.SubmissionPublisher} and other {@link Flow} publishers and
+ * subscribers, or to Reactive Streams libraries through {@code org.reactivestreams.FlowAdapters}.
+ * The adapted processor must not be used directly.
+ *
+ * <p>This class requires Java 9, and is only included in the versioned part of the multi-release
+ * jar.
+ *
+ * @param <T> The type of record.
+ */
+public class FlowFingerprintProcessor<T> implements Flow.Processor<T, FingerprintResult<T>> {
+
+  private static final Flow.Subscription CANCELLED = new Flow.Subscription() {
+    @Override
+    public void request(long count) {
+    }
+
+    @Override
+    public void cancel() {
+    }
+  };
+
+  private final FingerprintProcessor<T> processor;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  /**
+   * Creates an adapter.
+   *
+   * @param processor The processor. Must not be {@code null}.
+   */
+  public FlowFingerprintProcessor(FingerprintProcessor<T> processor) {
+    this.processor = requireNonNull(processor);
+  }
+
+  /**
+   * Subscribes the downstream subscriber. Only one subscriber is supported; others are given a
+   * subscription that does nothing, and an {@link IllegalStateException}.
+   *
+   * @param subscriber The subscriber. Must not be {@code null}.
+   */
+  @Override
+  public void subscribe(Flow.Subscriber<? super FingerprintResult<T>> subscriber) {
+    requireNonNull(subscriber);
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(CANCELLED);
+      subscriber.onError(new IllegalStateException("A subscriber is already subscribed."));
+      return;
+    }
+
+    // onSubscribe must come first; demand it signals is kept until the subscriber is registered
+    subscriber.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long count) {
+        processor.request(count);
+      }
+
+      @Override
+      public void cancel() {
+        processor.cancel();
+      }
+    });
+    processor.subscribe(subscriber::onNext, subscriber::onError, subscriber::onComplete);
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    requireNonNull(subscription);
+    processor.onSubscribe(subscription::request, subscription::cancel);
+  }
+
+  @Override
+  public void onNext(T record) {
+    processor.onNext(record);
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    processor.onError(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    processor.onComplete();
+  }
+}
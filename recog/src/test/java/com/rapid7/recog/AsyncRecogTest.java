@@ -0,0 +1,163 @@
+package com.rapid7.recog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import static com.rapid7.recog.RecogMatcher.pattern;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AsyncRecogTest {
+
+  @Test
+  public void fingerprintAsyncMatchesAllMatchers() {
+    // given
+    RecogMatchers first = TestFingerprints.matchers();
+    RecogMatchers second = new RecogMatchers();
+    second.add(new RecogMatcher(pattern("^(\\w+)")).addParam(1, "word"));
+    List<String> banners = new ArrayList<>(TestFingerprints.banners());
+    banners.add(null);
+
+    try (AsyncRecog recog = new AsyncRecog(Arrays.asList(first, second))) {
+      for (String banner : banners) {
+        // when
+        List<RecogMatch> matches = recog.fingerprintAsync(banner).join();
+
+        // then
+        List<RecogMatch> expected = new ArrayList<>(first.getMatches(banner));
+        expected.addAll(second.getMatches(banner));
+        assertThat("Matches for '" + banner + "'", summarize(matches), is(summarize(expected)));
+      }
+    }
+  }
+
+  @Test
+  public void cancellationStopsEvaluationWithinAPattern() throws Exception {
+    // given
+    RecogMatchers matchers = new RecogMatchers();
+    matchers.add(new RecogMatcher(pattern("^(a+)+\\1$")));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    CountDownLatch started = new CountDownLatch(1);
+    AsyncRecog recog = new AsyncRecog(Collections.singletonList(matchers), task -> executor.execute(() -> {
+      started.countDown();
+      task.run();
+    }), 10);
+
+    // when
+    CompletableFuture<List<RecogMatch>> future = recog.fingerprintAsync(new StringBuilder("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!"));
+    started.await();
+    future.cancel(true);
+    executor.shutdown();
+
+    // then
+    assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+    assertThrows(CancellationException.class, future::join);
+    assertThat(recog.getCancelledCount(), is(1L));
+    assertThat(recog.getPendingCount(), is(0));
+  }
+
+  @Test
+  public void cancellationStopsStringsBeforeTheNextMatcher() {
+    // given
+    AtomicReference<CompletableFuture<List<RecogMatch>>> future = new AtomicReference<>();
+    List<CharSequence> evaluated = new ArrayList<>();
+    RecogMatchers matchers = new RecogMatchers();
+    for (int index = 0; index < 3; index++)
+      matchers.add(new RecogMatcher(pattern("^a")) {
+        @Override
+        public boolean matches(CharSequence input, MatchBudget budget) {
+          evaluated.add(input);
+          future.get().cancel(true);
+          return true;
+        }
+      });
+    List<Runnable> queued = new ArrayList<>();
+    AsyncRecog recog = new AsyncRecog(Collections.singletonList(matchers), queued::add, 1);
+
+    // when
+    future.set(recog.fingerprintAsync("abc"));
+    queued.forEach(Runnable::run);
+
+    // then
+    assertThat(evaluated, hasSize(1));
+    assertThat(evaluated.get(0), instanceOf(String.class));
+    assertThrows(CancellationException.class, future.get()::join);
+    assertThat(recog.getCancelledCount(), is(1L));
+    assertThat(recog.getPendingCount(), is(0));
+  }
+
+  @Test
+  public void cancellationReleasesQueuedInputs() throws Exception {
+    // given
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    CountDownLatch blocked = new CountDownLatch(1);
+    executor.execute(() -> {
+      try {
+        blocked.await();
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    AsyncRecog recog = new AsyncRecog(Collections.singletonList(TestFingerprints.matchers()), executor, 1);
+
+    try {
+      // when
+      CompletableFuture<List<RecogMatch>> first = recog.fingerprintAsync("first");
+      first.cancel(true);
+      CompletableFuture<List<RecogMatch>> second = recog.fingerprintAsync("second");
+      int queued = executor.getQueue().size();
+      blocked.countDown();
+
+      // then
+      assertThat(queued, is(1));
+      assertThat(summarize(second.get(10, TimeUnit.SECONDS)), is(summarize(TestFingerprints.matchers().getMatches("second"))));
+      assertThat(recog.getRejectedCount(), is(0L));
+      assertThat(recog.getCancelledCount(), is(1L));
+      assertThat(recog.getPendingCount(), is(0));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void inputsOverMaxPendingAreRejected() {
+    // given
+    List<Runnable> queued = new ArrayList<>();
+    AsyncRecog recog = new AsyncRecog(Collections.singletonList(TestFingerprints.matchers()), queued::add, 2);
+
+    // when
+    CompletableFuture<List<RecogMatch>> first = recog.fingerprintAsync("first");
+    CompletableFuture<List<RecogMatch>> second = recog.fingerprintAsync("second");
+    CompletableFuture<List<RecogMatch>> third = recog.fingerprintAsync("third");
+
+    // then
+    CompletionException exception = assertThrows(CompletionException.class, third::join);
+    assertThat(exception.getCause(), instanceOf(RejectedExecutionException.class));
+    assertThat(recog.getRejectedCount(), is(1L));
+    assertThat(recog.getPendingCount(), is(2));
+    queued.forEach(Runnable::run);
+    assertThat(first.isDone() && second.isDone(), is(true));
+    assertThat(recog.getPendingCount(), is(0));
+  }
+
+  private static List<String> summarize(List<RecogMatch> matches) {
+    return matches.stream().map(match -> match.getMatcher().getPattern() + " => " + match.getParameters()).collect(toList());
+  }
+}
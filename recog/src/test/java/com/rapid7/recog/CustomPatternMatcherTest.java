@@ -3,8 +3,10 @@ package com.rapid7.recog;
 import com.rapid7.recog.pattern.RecogPatternMatchResult;
 import com.rapid7.recog.pattern.RecogPatternMatcher;
 import java.util.AbstractMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasSize;
@@ -13,6 +15,8 @@ public class CustomPatternMatcherTest {
 
   private static class EchoPatternMatcher implements RecogPatternMatcher {
 
+    private int matchCount;
+
     @Override
     public String getPattern() {
       return null;
@@ -30,6 +34,7 @@ public class CustomPatternMatcherTest {
 
     @Override
     public RecogPatternMatchResult match(String input) {
+      matchCount++;
       return new RecogPatternMatchResult() {
         @Override
         public int groupCount() {
@@ -69,4 +74,22 @@ public class CustomPatternMatcherTest {
         new AbstractMap.SimpleEntry<>("name", "group: name")
     ));
   }
+
+  @Test
+  public void parametersAreExtractedOnFirstAccess() {
+    // given
+    EchoPatternMatcher patternMatcher = new EchoPatternMatcher();
+    RecogMatchers matchers = new RecogMatchers();
+    matchers.add(new RecogMatcher(patternMatcher).addParam(1, "1"));
+
+    // when
+    List<RecogMatch> matches = matchers.getMatches("arbitrary text input");
+
+    // then
+    assertThat(matches, hasSize(1));
+    assertThat(patternMatcher.matchCount, is(0));
+    assertThat(matches.get(0).getParameters().get("1"), is("group: 1"));
+    assertThat(matches.get(0).getParameters().get("1"), is("group: 1"));
+    assertThat(patternMatcher.matchCount, is(1));
+  }
 }
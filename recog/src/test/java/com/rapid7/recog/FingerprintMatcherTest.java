@@ -1,6 +1,10 @@
 package com.rapid7.recog;
 
+import com.rapid7.recog.parser.RecogParser;
+import com.rapid7.recog.pattern.JavaRegexRecogPatternMatcher;
+import java.time.Duration;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 import org.junit.jupiter.api.Test;
@@ -11,6 +15,7 @@ import static org.apache.commons.lang3.RandomStringUtils.randomAlphabetic;
 import static org.apache.commons.lang3.RandomUtils.nextInt;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
@@ -196,6 +201,168 @@ public class FingerprintMatcherTest {
     assertThat(parameters.entrySet(), containsInAnyOrder(new SimpleEntry<>(valueName, value)));
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void matchInterpolatesValueTemplates() {
+    // given
+    RecogMatcher matcher = new RecogMatcher(pattern("^Apache HTTPD (\\d+)(?: \\((\\w+)\\))?$"))
+        .addParam(1, "service.version")
+        .addParam(2, "os.family")
+        .addValue("service.vendor", "Apache")
+        .addValue("service.cpe23", "cpe:/a:{service.vendor}:http_server:{service.version}")
+        .addValue("service.cpe", "{service.cpe23}:{os.family}:{unknown}");
+
+    // when
+    Map<String, String> parameters = matcher.match("Apache HTTPD 6");
+
+    // then
+    assertThat(parameters.entrySet(), containsInAnyOrder(
+        new SimpleEntry<>("service.vendor", "Apache"),
+        new SimpleEntry<>("service.version", "6"),
+        new SimpleEntry<>("os.family", null),
+        new SimpleEntry<>("service.cpe23", "cpe:/a:Apache:http_server:6"),
+        new SimpleEntry<>("service.cpe", "cpe:/a:Apache:http_server:6:-:{unknown}")));
+  }
+
+  @Test
+  public void matchDoesNotInterpolateCapturedValues() {
+    // given
+    RecogMatcher matcher = new RecogMatcher(pattern("^Server: (.*)$"))
+        .addParam(1, "service.product")
+        .addValue("service.vendor", "Acme");
+
+    // when
+    Map<String, String> parameters = matcher.match("Server: {service.vendor}");
+
+    // then
+    assertThat(parameters.get("service.product"), is("{service.vendor}"));
+  }
+
+  @Test
+  public void matchReusesInterpolationForSameParameters() {
+    // given
+    RecogMatcher matcher = new RecogMatcher(pattern("^Apache HTTPD (\\d+)"))
+        .addParam(1, "service.version")
+        .addValue("service.cpe23", "cpe:/a:apache:http_server:{service.version}");
+
+    // when
+    String first = matcher.match("Apache HTTPD 2 (Unix)").get("service.cpe23");
+    String second = matcher.match("Apache HTTPD 2 (Win64)").get("service.cpe23");
+    String third = matcher.match("Apache HTTPD 3").get("service.cpe23");
+
+    // then
+    assertThat(first, is("cpe:/a:apache:http_server:2"));
+    assertThat(second, is(sameInstance(first)));
+    assertThat(third, is("cpe:/a:apache:http_server:3"));
+  }
+
+  @Test
+  public void matchReturnsReadOnlyParameters() {
+    // given
+    RecogMatcher matcher = new RecogMatcher(pattern("^Apache HTTPD (\\d+)"))
+        .addParam(1, "service.version")
+        .addParam(2, "service.edition")
+        .addParam("os.family")
+        .addValue("service.vendor", "Apache")
+        .addValue("service.family", null);
+
+    // when
+    Map<String, String> parameters = matcher.match("Apache HTTPD 2");
+
+    // then
+    Map<String, String> expected = new HashMap<>();
+    expected.put("service.version", "2");
+    expected.put("service.vendor", "Apache");
+    expected.put("service.family", null);
+    assertThat(parameters, is(expected));
+    assertThat(expected, is(parameters));
+    assertThat(parameters.hashCode(), is(expected.hashCode()));
+    assertThat(parameters.containsKey("service.edition"), is(false));
+    assertThat(parameters.containsKey("service.family"), is(true));
+    assertThrows(UnsupportedOperationException.class, () -> parameters.put("service.version", "3"));
+    assertThrows(UnsupportedOperationException.class, () -> parameters.entrySet().iterator().remove());
+  }
+
+  @Test
+  public void matchSharesConstantValues() {
+    // given
+    RecogMatcher matcher = new RecogMatcher(pattern("^Apache HTTPD (\\d+)"))
+        .addParam(1, "service.version")
+        .addValue("service.vendor", new String("Apache"));
+
+    // when
+    Map<String, String> first = matcher.match("Apache HTTPD 2");
+    Map<String, String> second = matcher.match("Apache HTTPD 3");
+    matcher.addValue("service.product", "HTTPD");
+    Map<String, String> third = matcher.match("Apache HTTPD 4");
+
+    // then
+    assertThat(second.get("service.vendor"), is(sameInstance(first.get("service.vendor"))));
+    assertThat(second.get("service.version"), is("3"));
+    assertThat(first.containsKey("service.product"), is(false));
+    assertThat(third.get("service.product"), is("HTTPD"));
+  }
+
+  @Test
+  public void matchesAbandonsEvaluationOverBudget() {
+    // given
+    RecogMatcher matcher = new RecogMatcher(pattern("^(a+)+\\1$"));
+    String input = "aaaaaaaaaaaaaaaaaaaaaaaaaaaa!";
+
+    // then
+    assertThat(matcher.matches("aaaa", new MatchBudget(1000, null)), is(true));
+    assertThrows(MatchBudgetExceededException.class, () -> matcher.matches(input, new MatchBudget(100_000, null)));
+    assertThrows(MatchBudgetExceededException.class, () -> matcher.matches(input, new MatchBudget(0, Duration.ofMillis(20))));
+  }
+
+  @Test
+  public void optimizeRewritesPatternCheckedAgainstExamples() {
+    // given
+    RecogMatcher matcher = new RecogMatcher(pattern("^(Microsoft-IIS|Microsoft-HTTPAPI)/([^ ]*) (\\w+)"))
+        .addParam(2, "service.version").addParam(3, "service.extra")
+        .addExample(new FingerprintExample("Microsoft-IIS/10.0 extra", new HashMap<>()));
+
+    // when
+    RecogMatcher optimized = matcher.optimize(RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY::create);
+
+    // then
+    assertThat(optimized.getPattern(), is("^(?:Microsoft-(?:IIS|HTTPAPI))/([^ ]*+) (\\w+)"));
+    assertThat(optimized.match("Microsoft-HTTPAPI/2.0 x"), is(matcher.match("Microsoft-HTTPAPI/2.0 x")));
+    assertThat(optimized.getExamples(), is(matcher.getExamples()));
+  }
+
+  @Test
+  public void optimizeKeepsTheScopeOfInlineFlags() {
+    // given
+    RecogMatcher matcher = new RecogMatcher(RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY.create("^Server: (?i)(apache|nginx)/(\\S+)", Pattern.UNIX_LINES))
+        .addParam(2, "service.version")
+        .addExample(new FingerprintExample("Server: Apache/2.4", new HashMap<>()));
+
+    // when
+    RecogMatcher optimized = matcher.optimize(RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY::create);
+
+    // then
+    assertThat(optimized.getPattern(), is("^Server: (?i)(?:apache|nginx)/(\\S+)"));
+    assertThat(optimized.getFlags(), is(Pattern.UNIX_LINES));
+    assertThat(optimized.match("Server: NGINX/1.18"), is(matcher.match("Server: NGINX/1.18")));
+    assertThat(optimized.match("SERVER: nginx/1.18"), is(nullValue()));
+  }
+
+  @Test
+  public void optimizeKeepsPatternFailingExamples() {
+    // given
+    RecogMatcher matcher = new RecogMatcher(pattern("^(nginx|openresty)/([\\d.]+)")).addParam(2, "service.version")
+        .addExample(new FingerprintExample("nginx/1.2.3", new HashMap<>()));
+    RecogMatcher unexampled = new RecogMatcher(pattern("^(nginx)/([\\d.]+)")).addParam(2, "service.version");
+
+    // when
+    RecogMatcher optimized = matcher.optimize((regex, flags) -> new JavaRegexRecogPatternMatcher(Pattern.compile(regex.replace("nginx", "apache"), flags)));
+
+    // then
+    assertThat(optimized, is(sameInstance(matcher)));
+    assertThat(unexampled.optimize(RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY::create), is(sameInstance(unexampled)));
+  }
+
   /////////////////////////////////////////////////////////////////////////
   // Non-public methods
   /////////////////////////////////////////////////////////////////////////
@@ -1,17 +1,36 @@
 package com.rapid7.recog;
 
+import com.rapid7.recog.index.IndexFeature;
+import com.rapid7.recog.parser.RecogParser;
+import com.rapid7.recog.regex.CharBitmap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 import org.junit.jupiter.api.Test;
 import static com.rapid7.recog.RecogMatcher.pattern;
 import static com.rapid7.recog.TestGenerators.anyUTF8String;
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.Matchers.hasSize;
 
 public class FingerprintMatchersTest {
@@ -243,4 +262,374 @@ public class FingerprintMatchersTest {
     assertThat(map.get("bar"), is("test"));
     assertThat(map.get("foo"), is("test"));
   }
+
+  @Test
+  public void quickRejectSkipsMatchersMissingRequiredCharacters() {
+    // given
+    RecogMatchers matchers = new RecogMatchers();
+    matchers.add(new RecogMatcher(pattern("^Apache/([\\d.]+)")).addParam(1, "service.version"));
+    matchers.add(new RecogMatcher(pattern("^nginx$")));
+
+    // when
+    List<RecogMatch> matches = matchers.getMatches("Apache/2.4.1");
+
+    // then
+    assertThat(matchers.isQuickRejectEnabled(), is(true));
+    assertThat(matchers.get(0).getQuickReject().rejects(CharBitmap.of("Apache/2.4.1"), 12), is(false));
+    assertThat(matchers.get(1).getQuickReject().rejects(CharBitmap.of("Apache/2.4.1"), 12), is(true));
+    assertThat(matches, hasSize(1));
+    assertThat(matches.get(0).getParameters().get("service.version"), is("2.4.1"));
+  }
+
+  @Test
+  public void quickRejectMatchesAreIdentical() {
+    // given
+    RecogMatchers quickReject = TestFingerprints.matchers();
+    RecogMatchers plain = TestFingerprints.matchers().setQuickRejectEnabled(false);
+
+    for (String banner : TestFingerprints.banners()) {
+      // when
+      List<RecogMatch> expected = plain.getMatches(banner);
+      List<RecogMatch> actual = quickReject.getMatches(banner);
+
+      // then
+      assertThat("Matches for '" + banner + "'", summarize(actual), is(summarize(expected)));
+      assertThat("First match for '" + banner + "'",
+          summarize(quickReject.getFirstMatch(banner)), is(summarize(plain.getFirstMatch(banner))));
+    }
+  }
+
+  @Test
+  public void charSequenceMatchesAreIdentical() {
+    for (RecogMatchers matchers : Arrays.asList(
+        TestFingerprints.matchers(),
+        TestFingerprints.matchers(RecogParser.AUTOMATON_PATTERN_MATCHER_FACTORY),
+        TestFingerprints.matchers().setIndexFeatures(EnumSet.allOf(IndexFeature.class)))) {
+      for (String banner : TestFingerprints.banners()) {
+        if (!StandardCharsets.ISO_8859_1.newEncoder().canEncode(banner))
+          continue;
+
+        // when
+        CharSequence view = Latin1CharSequence.of(banner.getBytes(StandardCharsets.ISO_8859_1));
+
+        // then
+        assertThat("Matches for '" + banner + "'", summarize(matchers.getMatches(view)), is(summarize(matchers.getMatches(banner))));
+        assertThat("First match for '" + banner + "'",
+            summarize(matchers.getFirstMatch(view)), is(summarize(matchers.getFirstMatch(banner))));
+      }
+    }
+  }
+
+  @Test
+  public void scanWindowTruncatesLongInputs() {
+    // given
+    RecogMatchers matchers = new RecogMatchers().setMaxScanLength(16);
+    matchers.add(new RecogMatcher(pattern("^Server: (.*)$")).addParam(1, "service.product"));
+    matchers.add(new RecogMatcher(pattern("OpenSSL")));
+
+    // when
+    RecogMatch first = matchers.getFirstMatch("Server: Apache/2.4.41 OpenSSL/1.1.1");
+    List<RecogMatch> matches = matchers.getMatches("Server: nginx");
+
+    // then
+    assertThat(matchers.getMaxScanLength(), is(16));
+    assertThat(first.getParameters().get("service.product"), is("Apache/2"));
+    assertThat(matches, hasSize(1));
+    assertThat(matchers.getScanCount(), is(2L));
+    assertThat(matchers.getTruncatedScanCount(), is(1L));
+  }
+
+  @Test
+  public void scanWindowMatchesWithinTheWindowAreIdentical() {
+    // given
+    RecogMatchers windowed = TestFingerprints.matchers().setMaxScanLength(Integer.MAX_VALUE);
+    RecogMatchers plain = TestFingerprints.matchers();
+
+    for (String banner : TestFingerprints.banners()) {
+      for (String input : Arrays.asList(banner, banner + "\nVia: " + banner, "\n" + banner)) {
+        // when
+        List<RecogMatch> expected = plain.getMatches(input);
+        List<RecogMatch> actual = windowed.getMatches(input);
+
+        // then
+        assertThat("Matches for '" + input + "'", summarize(actual), is(summarize(expected)));
+        assertThat("First match for '" + input + "'",
+            summarize(windowed.getFirstMatch(input)), is(summarize(plain.getFirstMatch(input))));
+      }
+    }
+    assertThat(windowed.getTruncatedScanCount(), is(0L));
+  }
+
+  @Test
+  public void runawayMatchersAreQuarantined() {
+    // given
+    RecogMatchers matchers = new RecogMatchers().setMatchBudget(new MatchBudget(100_000, null)).setQuarantineThreshold(2);
+    matchers.add(new RecogMatcher(pattern("^(a+)+\\1$")).addParam(1, "skipped"));
+    matchers.add(new RecogMatcher(pattern("^(?:.*a){12}(b?)$")).addParam(1, "demoted"));
+    String runaway = "aaaaaaaaaaaaaaaaaaaaaaaaaaaa!";
+
+    // when
+    List<RecogMatch> overBudget = matchers.getMatches(runaway);
+    matchers.getMatches(runaway);
+    List<RecogMatch> quarantined = matchers.getMatches("aaaaaaaaaaaaab");
+
+    // then
+    assertThat(overBudget, is(empty()));
+    assertThat(matchers.getBudgetExceededCount(), is(4L));
+    assertThat(matchers.getQuarantinedCount(), is(2L));
+    assertThat(matchers.get(0).isQuarantined(), is(true));
+    assertThat(matchers.get(0).getSafeMatcher(), is(nullValue()));
+    assertThat(matchers.get(1).getSafeMatcher().getEngine(), is("automaton"));
+    assertThat(quarantined, hasSize(1));
+    assertThat(quarantined.get(0).getMatcher(), is(matchers.get(1)));
+    assertThat(quarantined.get(0).getParameters().get("demoted"), is("b"));
+    assertThat(matchers.getMatches(runaway), is(empty()));
+    assertThat(matchers.getBudgetExceededCount(), is(4L));
+  }
+
+  @Test
+  public void patternSetLeavesPatternsItCannotEvaluateToTheBudget() {
+    // given
+    RecogMatchers matchers = new RecogMatchers().setMatchBudget(new MatchBudget(100_000, null)).setQuarantineThreshold(1)
+        .setIndexFeatures(EnumSet.of(IndexFeature.PATTERN_SET));
+    matchers.add(new RecogMatcher(RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY.create("^(a+)+\\1$", Pattern.UNIX_LINES)));
+
+    // when
+    List<RecogMatch> matches = matchers.getMatches("aaaaaaaaaaaaaaaaaaaaaa!");
+
+    // then
+    assertThat(matches, is(empty()));
+    assertThat(matchers.getBudgetExceededCount(), is(1L));
+    assertThat(matchers.get(0).isQuarantined(), is(true));
+  }
+
+  @Test
+  public void quarantinedMatchersKeepTheScopeOfInlineFlags() {
+    // given
+    RecogMatchers matchers = new RecogMatchers().setMatchBudget(new MatchBudget(100_000, null)).setQuarantineThreshold(1);
+    matchers.add(new RecogMatcher(RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY.create("^(?:.*a){12}(?i)(b)$", Pattern.UNIX_LINES))
+        .addParam(1, "demoted"));
+    matchers.getMatches("aaaaaaaaaaaaaaaaaaaaaaaaaaab!");
+
+    // when
+    List<RecogMatch> insensitive = matchers.getMatches("aaaaaaaaaaaaaB");
+    List<RecogMatch> sensitive = matchers.getMatches("AAAAAAAAAAAAAb");
+
+    // then
+    assertThat(matchers.get(0).getSafeMatcher().getEngine(), is("automaton"));
+    assertThat(insensitive, hasSize(1));
+    assertThat(insensitive.get(0).getParameters().get("demoted"), is("B"));
+    assertThat(sensitive, is(empty()));
+  }
+
+  @Test
+  public void automatonFallbackIsEvaluatedWithinTheBudget() {
+    // given
+    RecogMatchers matchers = new RecogMatchers().setMatchBudget(new MatchBudget(100_000, null)).setQuarantineThreshold(0);
+    matchers.add(new RecogMatcher(RecogParser.AUTOMATON_PATTERN_MATCHER_FACTORY.create("\\b(?:.*a){12}c$", 0)));
+
+    // when
+    List<RecogMatch> linear = matchers.getMatches("aaaaaaaaaaaaaaaaaaaaaaaaaaaa!c");
+    List<RecogMatch> fallback = matchers.getMatches("\u00e9aaaaaaaaaaaaaaaaaaaaaaaaaaaa!c");
+
+    // then
+    assertThat(matchers.get(0).getEngine(), is("automaton"));
+    assertThat(linear, is(empty()));
+    assertThat(fallback, is(empty()));
+    assertThat(matchers.getBudgetExceededCount(), is(1L));
+  }
+
+  @Test
+  public void quarantinedMatchersAreEvaluatedWithinTheBudget() {
+    // given
+    RecogMatchers matchers = new RecogMatchers().setMatchBudget(new MatchBudget(100_000, null)).setQuarantineThreshold(1);
+    matchers.add(new RecogMatcher(pattern("\\b(?:.*a){12}(b?)$")).addParam(1, "demoted"));
+    matchers.getMatches("aaaaaaaaaaaaaaaaaaaaaaaaaaaa!");
+
+    // when
+    List<RecogMatch> linear = matchers.getMatches("aaaaaaaaaaaaaaaaaaaaaaaaaaaa!");
+    List<RecogMatch> fallback = matchers.getMatches("\u00e9aaaaaaaaaaaaaaaaaaaaaaaaaaaa!");
+
+    // then
+    assertThat(matchers.get(0).getSafeMatcher().getEngine(), is("automaton"));
+    assertThat(linear, is(empty()));
+    assertThat(fallback, is(empty()));
+    assertThat(matchers.getBudgetExceededCount(), is(2L));
+  }
+
+  @Test
+  public void deferredParametersAreExtractedOnce() throws Exception {
+    // given
+    AtomicInteger extractions = new AtomicInteger();
+    RecogMatcher matcher = new RecogMatcher(pattern("^Apache/(\\S+)")) {
+      @Override
+      public Map<String, String> match(String input) {
+        extractions.incrementAndGet();
+        try {
+          // give concurrent readers time to get here too
+          Thread.sleep(1);
+        } catch (InterruptedException exception) {
+          Thread.currentThread().interrupt();
+        }
+        return super.match(input);
+      }
+    }.addParam(1, "version");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      for (int i = 0; i < 100; i++) {
+        RecogMatch match = RecogMatch.deferred(matcher, "Apache/2.4.1");
+        CyclicBarrier start = new CyclicBarrier(4);
+        List<Future<Map<String, String>>> parameters = new ArrayList<>();
+
+        // when
+        for (int reader = 0; reader < 4; reader++) {
+          parameters.add(executor.submit(() -> {
+            start.await();
+            return match.getParameters();
+          }));
+        }
+
+        // then
+        for (Future<Map<String, String>> future : parameters)
+          assertThat(future.get(), is(Collections.singletonMap("version", "2.4.1")));
+      }
+      assertThat(extractions.get(), is(100));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void parallelMatchesAreIdentical() {
+    // given
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for (RecogMatchers matchers : Arrays.asList(new RecogMatchers(),
+        new RecogMatchers().setIndexFeatures(EnumSet.of(IndexFeature.LITERAL_PREFILTER)))) {
+      for (int copy = 0; copy < 8; copy++)
+        matchers.addAll(TestFingerprints.matchers());
+      matchers.setParallelThreshold(0);
+
+      for (String banner : TestFingerprints.banners()) {
+        // when
+        List<RecogMatch> expected = matchers.getMatches(banner);
+        List<RecogMatch> actual = matchers.getMatches(banner, pool);
+
+        // then
+        assertThat("Matches for '" + banner + "'", summarize(actual), is(summarize(expected)));
+        assertThat("Matchers for '" + banner + "'", identities(actual), is(identities(expected)));
+        assertThat("First match for '" + banner + "'",
+            identities(Collections.singletonList(matchers.getFirstMatch(banner, pool))),
+            is(identities(Collections.singletonList(matchers.getFirstMatch(banner)))));
+      }
+    }
+    pool.shutdown();
+  }
+
+  @Test
+  public void batchMatchesAreIdentical() {
+    // given
+    RecogMatchers matchers = TestFingerprints.matchers();
+    List<String> banners = new ArrayList<>(TestFingerprints.banners());
+    banners.addAll(TestFingerprints.banners());
+    banners.add(null);
+    ForkJoinPool pool = new ForkJoinPool(4);
+
+    // when
+    List<List<RecogMatch>> batch = matchers.getBatchMatches(banners);
+    List<List<RecogMatch>> parallel = matchers.getBatchMatches(banners, pool);
+    pool.shutdown();
+
+    // then
+    assertThat(batch, hasSize(banners.size()));
+    for (int i = 0; i < banners.size(); i++) {
+      String banner = banners.get(i);
+      assertThat("Matches for '" + banner + "'", summarize(batch.get(i)), is(summarize(matchers.getMatches(banner))));
+      assertThat("Parallel matches for '" + banner + "'", summarize(parallel.get(i)), is(summarize(batch.get(i))));
+    }
+    int half = TestFingerprints.banners().size();
+    assertThat(batch.get(half), is(sameInstance(batch.get(0))));
+  }
+
+  @Test
+  public void patternMajorBatchMatchesAreIdentical() {
+    // given
+    RecogMatchers matchers = TestFingerprints.matchers();
+    List<CharSequence> inputs = new ArrayList<>();
+    // string builders are not deduplicated, so the batch spans several tiles
+    while (inputs.size() < 600)
+      for (String banner : TestFingerprints.banners())
+        inputs.add(new StringBuilder(banner));
+    inputs.add(null);
+    ForkJoinPool pool = new ForkJoinPool(4);
+
+    // when
+    List<List<RecogMatch>> inputMajor = matchers.getBatchMatches(inputs);
+    matchers.setPatternMajorBatches(true);
+    List<List<RecogMatch>> patternMajor = matchers.getBatchMatches(inputs);
+    List<List<RecogMatch>> parallel = matchers.getBatchMatches(inputs, pool);
+    pool.shutdown();
+
+    // then
+    assertThat(patternMajor, hasSize(inputs.size()));
+    for (int i = 0; i < inputs.size(); i++) {
+      String message = "Matches for '" + inputs.get(i) + "'";
+      assertThat(message, summarize(patternMajor.get(i)), is(summarize(inputMajor.get(i))));
+      assertThat(message, summarize(parallel.get(i)), is(summarize(inputMajor.get(i))));
+    }
+  }
+
+  private static List<String> summarize(List<RecogMatch> matches) {
+    return matches.stream().map(FingerprintMatchersTest::summarize).collect(toList());
+  }
+
+  private static List<Integer> identities(List<RecogMatch> matches) {
+    return matches.stream().map(match -> match == null ? 0 : System.identityHashCode(match.getMatcher())).collect(toList());
+  }
+
+  private static String summarize(RecogMatch match) {
+    return match == null ? null : match.getMatcher().getPattern() + " => " + new TreeMap<>(match.getParameters());
+  }
+
+  @Test
+  public void midPatternInlineFlagsDoNotChangeTheMatchDecision() {
+    // given
+    RecogMatchers caseSensitivePrefix = new RecogMatchers();
+    caseSensitivePrefix.add(new RecogMatcher(Pattern.compile("^Server: (?i)apache/(\\S+)", Pattern.UNIX_LINES)));
+    RecogMatchers parsedCaseSensitivePrefix = new RecogMatchers();
+    parsedCaseSensitivePrefix.add(new RecogMatcher(RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY.create("^Server: (?i)apache/(\\S+)", Pattern.UNIX_LINES)));
+
+    // when
+    List<RecogMatch> matches = caseSensitivePrefix.getMatches("SERVER: apache/2.4");
+    List<RecogMatch> parsedMatches = parsedCaseSensitivePrefix.getMatches("SERVER: apache/2.4");
+    List<RecogMatch> exactMatches = parsedCaseSensitivePrefix.getMatches("Server: APACHE/2.4");
+
+    // then
+    assertThat(matches, is(empty()));
+    assertThat(parsedMatches, is(empty()));
+    assertThat(exactMatches, hasSize(1));
+  }
+
+  @Test
+  public void midPatternInlineFlagsDoNotHideMatches() {
+    // given
+    int flags = Pattern.CASE_INSENSITIVE | Pattern.UNIX_LINES;
+    RecogMatchers caseInsensitivePrefix = new RecogMatchers();
+    caseInsensitivePrefix.add(new RecogMatcher(Pattern.compile("^apache(?-i)/(X)", flags)).addParam(1, "v"));
+    RecogMatchers parsedCaseInsensitivePrefix = new RecogMatchers();
+    parsedCaseInsensitivePrefix.add(new RecogMatcher(RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY.create("^apache(?-i)/(X)", flags)).addParam(1, "v"));
+
+    // when
+    List<RecogMatch> matches = caseInsensitivePrefix.getMatches("APACHE/X");
+    RecogMatch firstMatch = caseInsensitivePrefix.getFirstMatch("APACHE/X");
+    List<RecogMatch> parsedMatches = parsedCaseInsensitivePrefix.getMatches("APACHE/X");
+
+    // then
+    assertThat(matches, hasSize(1));
+    assertThat(matches.get(0).getParameters().get("v"), is("X"));
+    assertThat(firstMatch, is(notNullValue()));
+    assertThat(parsedMatches, hasSize(1));
+    assertThat(parsedCaseInsensitivePrefix.get(0).getFlags(), is(flags));
+    assertThat(parsedCaseInsensitivePrefix.getMatches("APACHE/x"), is(empty()));
+  }
 }
@@ -0,0 +1,152 @@
+package com.rapid7.recog;
+
+import com.rapid7.recog.provider.IRecogMatchersProvider;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class FingerprintProcessorTest {
+
+  private static final RecogMatchers MATCHERS = TestFingerprints.matchers();
+
+  private static final IRecogMatchersProvider PROVIDER = new IRecogMatchersProvider() {
+    @Override
+    public RecogMatchers getMatchers(String name, RecogType type) {
+      return "test".equals(name) ? MATCHERS : null;
+    }
+
+    @Override
+    public Collection<RecogMatchers> getMatchers(RecogType type) {
+      return Collections.singletonList(MATCHERS);
+    }
+  };
+
+  @Test
+  public void orderedResultsFollowInputOrderAndDemand() throws Exception {
+    // given
+    List<Entry<String, String>> records = records();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    FingerprintProcessor<Entry<String, String>> processor = new FingerprintProcessor<>(PROVIDER, RecogType.BUILTIN,
+        Entry::getKey, Entry::getValue, pool, 4, true);
+    Source source = new Source(records, processor);
+    List<FingerprintResult<Entry<String, String>>> results = new CopyOnWriteArrayList<>();
+    List<Throwable> errors = new CopyOnWriteArrayList<>();
+    CountDownLatch completed = new CountDownLatch(1);
+    processor.subscribe(results::add, errors::add, completed::countDown);
+
+    // when
+    processor.onSubscribe(source::request, () -> { });
+    processor.request(3);
+    Thread.sleep(100);
+    int early = results.size();
+    long requested = source.requested.get();
+    processor.request(Long.MAX_VALUE);
+
+    // then
+    assertThat(completed.await(10, TimeUnit.SECONDS), is(true));
+    pool.shutdown();
+    assertThat(early, is(lessThanOrEqualTo(3)));
+    assertThat(requested, is(lessThanOrEqualTo(3L + 4)));
+    assertThat(errors, is(empty()));
+    assertThat(results, hasSize(records.size()));
+    for (int i = 0; i < records.size(); i++) {
+      Entry<String, String> record = records.get(i);
+      assertThat(results.get(i).getRecord(), is(record));
+      List<RecogMatch> expected = "test".equals(record.getKey()) ? MATCHERS.getMatches(record.getValue()) : Collections.emptyList();
+      assertThat(summarize(results.get(i).getMatches()), is(summarize(expected)));
+    }
+  }
+
+  @Test
+  public void unorderedResultsIncludeEveryRecord() throws Exception {
+    // given
+    List<Entry<String, String>> records = records();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    FingerprintProcessor<Entry<String, String>> processor = new FingerprintProcessor<>(PROVIDER, RecogType.BUILTIN,
+        Entry::getKey, Entry::getValue, pool, 8, false);
+    List<FingerprintResult<Entry<String, String>>> results = new CopyOnWriteArrayList<>();
+    CountDownLatch completed = new CountDownLatch(1);
+    processor.subscribe(results::add, error -> { }, completed::countDown);
+
+    // when
+    processor.request(Long.MAX_VALUE);
+    processor.onSubscribe(new Source(records, processor)::request, () -> { });
+
+    // then
+    assertThat(completed.await(10, TimeUnit.SECONDS), is(true));
+    pool.shutdown();
+    assertThat(results.stream().map(FingerprintResult::getRecord).collect(toList()), containsInAnyOrder(records.toArray()));
+  }
+
+  @Test
+  public void invalidRequestTerminatesWithError() {
+    // given
+    FingerprintProcessor<Entry<String, String>> processor = new FingerprintProcessor<>(PROVIDER, RecogType.BUILTIN,
+        Entry::getKey, Entry::getValue, Runnable::run, 2, true);
+    List<Throwable> errors = new ArrayList<>();
+    AtomicLong cancelled = new AtomicLong();
+    processor.subscribe(result -> { }, errors::add, () -> { });
+    processor.onSubscribe(count -> { }, cancelled::incrementAndGet);
+
+    // when
+    processor.request(0);
+
+    // then
+    assertThat(errors, hasSize(1));
+    assertThat(errors.get(0), is(instanceOf(IllegalArgumentException.class)));
+    assertThat(cancelled.get(), is(1L));
+  }
+
+  private static List<Entry<String, String>> records() {
+    List<Entry<String, String>> records = new ArrayList<>();
+    for (String banner : TestFingerprints.banners()) {
+      records.add(new SimpleEntry<>("test", banner));
+      records.add(new SimpleEntry<>("missing", banner));
+    }
+    return records;
+  }
+
+  private static List<String> summarize(List<RecogMatch> matches) {
+    return matches.stream().map(match -> match.getMatcher().getPattern() + " => " + match.getParameters()).collect(toList());
+  }
+
+  /** A source that emits records synchronously on request, and completes once they run out. */
+  private static final class Source {
+    private final List<Entry<String, String>> records;
+    private final FingerprintProcessor<Entry<String, String>> processor;
+    private final AtomicLong requested = new AtomicLong();
+    private int next;
+
+    Source(List<Entry<String, String>> records, FingerprintProcessor<Entry<String, String>> processor) {
+      this.records = records;
+      this.processor = processor;
+    }
+
+    synchronized void request(long count) {
+      requested.addAndGet(count);
+      for (long i = 0; i < count && next < records.size(); i++)
+        processor.onNext(records.get(next++));
+      if (next == records.size()) {
+        next++;
+        processor.onComplete();
+      }
+    }
+  }
+}
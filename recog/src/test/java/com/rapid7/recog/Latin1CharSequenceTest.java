@@ -0,0 +1,66 @@
+package com.rapid7.recog;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class Latin1CharSequenceTest {
+
+  private static final byte[] BANNER = "xSSH-2.0-OpenSSH_8.9 été\n".getBytes(StandardCharsets.ISO_8859_1);
+
+  @Test
+  public void viewOfArrayRange() {
+    // when
+    Latin1CharSequence view = Latin1CharSequence.of(BANNER, 1, BANNER.length - 1);
+
+    // then
+    assertThat(view.length(), is(BANNER.length - 1));
+    assertThat(view.charAt(0), is('S'));
+    assertThat(view.charAt(20), is('é'));
+    assertThat(view.toString(), is("SSH-2.0-OpenSSH_8.9 été\n"));
+    assertThat(view.subSequence(8, 15).toString(), is("OpenSSH"));
+    assertThrows(IndexOutOfBoundsException.class, () -> view.charAt(view.length()));
+    assertThrows(IndexOutOfBoundsException.class, () -> Latin1CharSequence.of(BANNER, 2, BANNER.length));
+  }
+
+  @Test
+  public void viewOfRemainingBufferBytes() {
+    // given
+    ByteBuffer heap = ByteBuffer.wrap(BANNER);
+    ByteBuffer direct = ByteBuffer.allocateDirect(BANNER.length).put(BANNER);
+    heap.position(1);
+    direct.position(1);
+
+    // when
+    Latin1CharSequence heapView = Latin1CharSequence.of(heap);
+    Latin1CharSequence directView = Latin1CharSequence.of(direct);
+    Latin1CharSequence readOnlyView = Latin1CharSequence.of(heap.asReadOnlyBuffer());
+
+    // then
+    assertThat(heapView.toString(), is("SSH-2.0-OpenSSH_8.9 été\n"));
+    assertThat(directView.toString(), is(heapView.toString()));
+    assertThat(directView.subSequence(8, 15).toString(), is("OpenSSH"));
+    assertThat(readOnlyView.subSequence(20, 23).toString(), is("été"));
+    assertThat(heap.position(), is(1));
+  }
+
+  @Test
+  public void matchesBufferWithoutDecoding() {
+    // given
+    RecogMatchers matchers = new RecogMatchers();
+    matchers.add(new RecogMatcher(RecogMatcher.pattern("^SSH-([\\d.]+)-OpenSSH_(\\S+)")).addParam(1, "version").addParam(2, "service.version"));
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BANNER.length).put(BANNER);
+    buffer.flip().position(1);
+
+    // when
+    RecogMatch match = matchers.getFirstMatch(Latin1CharSequence.of(buffer));
+    buffer.clear().put(new byte[BANNER.length]);
+
+    // then
+    assertThat(match.getParameters().get("version"), is("2.0"));
+    assertThat(match.getParameters().get("service.version"), is("8.9"));
+  }
+}
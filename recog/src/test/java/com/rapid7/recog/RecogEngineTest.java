@@ -0,0 +1,150 @@
+package com.rapid7.recog;
+
+import com.rapid7.recog.provider.CompositeRecogMatchersProvider;
+import com.rapid7.recog.provider.IRecogMatchersProvider;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static com.rapid7.recog.RecogMatcher.pattern;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class RecogEngineTest {
+
+  @Test
+  public void fingerprintOrdersResultsByPreference() {
+    // given
+    RecogEngine engine = new RecogEngine(provider(generic(), ssh(), http()), RecogType.BUILTIN);
+
+    // when
+    List<RecogMatchResult> results = engine.fingerprint("SSH-2.0-OpenSSH_8.9");
+
+    // then
+    assertThat(results.stream().map(RecogMatchResult::getKey).collect(toList()), contains("ssh.banner", "generic"));
+    assertThat(results.get(0).getProtocol(), is("ssh"));
+    assertThat(results.get(0).getDescription(), is("OpenSSH"));
+    assertThat(results.get(0).getMatches().get("service.version"), is("8.9"));
+    assertThat(results.get(0).getExamples(), contains("SSH-2.0-OpenSSH_7.4"));
+    assertThat(results.get(1).getExamples(), is(empty()));
+  }
+
+  @Test
+  public void fingerprintRoutesByKeyProtocolAndType() {
+    // given
+    RecogEngine engine = new RecogEngine(provider(generic(), ssh(), http()), RecogType.BUILTIN);
+    String input = "SSH-2.0-OpenSSH_8.9";
+
+    // when
+    List<RecogMatchResult> byKey = engine.fingerprintByKey(input, "ssh.banner");
+    List<RecogMatchResult> byProtocol = engine.fingerprintByProtocol(input, "http");
+    List<RecogMatchResult> byType = engine.fingerprintByType(input, "service");
+    List<RecogMatchResult> unknown = engine.fingerprintByKey(input, "ftp.banner");
+
+    // then
+    assertThat(byKey.stream().map(RecogMatchResult::getKey).collect(toList()), contains("ssh.banner"));
+    assertThat(byProtocol, is(empty()));
+    assertThat(byType.stream().map(RecogMatchResult::getKey).collect(toList()), contains("ssh.banner"));
+    assertThat(unknown, is(empty()));
+  }
+
+  @Test
+  public void routesFollowProviderContentGeneration() {
+    // given
+    IRecogMatchersProvider provider = provider(http());
+    RecogEngine engine = new RecogEngine(provider, RecogType.BUILTIN);
+    List<RecogMatchResult> before = engine.fingerprintByKey("SSH-2.0-OpenSSH_8.9", "ssh.banner");
+
+    // when
+    given(provider.getMatchers(RecogType.BUILTIN)).willReturn(Arrays.asList(http(), ssh()));
+    List<RecogMatchResult> unchanged = engine.fingerprintByKey("SSH-2.0-OpenSSH_8.9", "ssh.banner");
+    given(provider.getContentGeneration()).willReturn(1L);
+    List<RecogMatchResult> after = engine.fingerprintByKey("SSH-2.0-OpenSSH_8.9", "ssh.banner");
+    RecogVersion version = engine.refreshContent();
+
+    // then
+    assertThat(before, is(empty()));
+    assertThat(unchanged, is(empty()));
+    assertThat(after.stream().map(RecogMatchResult::getKey).collect(toList()), contains("ssh.banner"));
+    assertThat(version, is(nullValue()));
+    assertThat(engine.getMatchers(), hasSize(2));
+  }
+
+  @Test
+  public void routesAreNotRebuiltWhileContentGenerationIsUnchanged() {
+    // given
+    IRecogMatchersProvider provider = mock(IRecogMatchersProvider.class);
+    given(provider.getMatchers(RecogType.BUILTIN)).willAnswer(invocation -> Arrays.asList(http(), ssh()));
+    RecogEngine engine = new RecogEngine(provider, RecogType.BUILTIN);
+
+    // when
+    List<RecogMatchers> first = engine.getMatchers();
+    engine.fingerprint("SSH-2.0-OpenSSH_8.9");
+    List<RecogMatchers> second = engine.getMatchers();
+
+    // then
+    assertThat(second, is(sameInstance(first)));
+    verify(provider, times(1)).getMatchers(RecogType.BUILTIN);
+  }
+
+  @Test
+  public void fingerprintOverCompositeProvider() {
+    // given
+    CompositeRecogMatchersProvider provider = new CompositeRecogMatchersProvider(provider(http()), provider(ssh()));
+    RecogEngine engine = new RecogEngine(provider);
+
+    // when
+    List<RecogMatchResult> results = engine.fingerprint("SSH-2.0-OpenSSH_8.9");
+
+    // then
+    assertThat(results.stream().map(RecogMatchResult::getKey).collect(toList()), contains("ssh.banner"));
+    assertThat(engine.getMatchers(), hasSize(2));
+  }
+
+  @Test
+  public void resultRequiresDatabaseAndMatch() {
+    // given
+    RecogMatchers matchers = ssh();
+    RecogMatch match = matchers.getMatches("SSH-2.0-OpenSSH_8.9").get(0);
+
+    // when / then
+    assertThrows(NullPointerException.class, () -> new RecogMatchResult(null, match));
+    assertThrows(NullPointerException.class, () -> new RecogMatchResult(matchers, null));
+  }
+
+  private static IRecogMatchersProvider provider(RecogMatchers... databases) {
+    IRecogMatchersProvider provider = mock(IRecogMatchersProvider.class);
+    given(provider.getMatchers(RecogType.BUILTIN)).willReturn(Arrays.asList(databases));
+    return provider;
+  }
+
+  private static RecogMatchers ssh() {
+    RecogMatchers matchers = new RecogMatchers("ssh.banner", "ssh", "service", 0.9f);
+    matchers.add(new RecogMatcher(pattern("^SSH-2\\.0-OpenSSH_(\\S+)")).setDescription("OpenSSH").addParam(1, "service.version")
+        .addExample(new FingerprintExample("SSH-2.0-OpenSSH_7.4", Collections.emptyMap())));
+    return matchers;
+  }
+
+  private static RecogMatchers http() {
+    RecogMatchers matchers = new RecogMatchers("http_header.server", "http", "service", 0.5f);
+    matchers.add(new RecogMatcher(pattern("^Apache/(\\S+)")).setDescription("Apache").addParam(1, "service.version"));
+    return matchers;
+  }
+
+  private static RecogMatchers generic() {
+    RecogMatchers matchers = new RecogMatchers("generic", null, null, 0.1f);
+    matchers.add(new RecogMatcher(pattern("OpenSSH")).setDescription("Anything OpenSSH"));
+    return matchers;
+  }
+}
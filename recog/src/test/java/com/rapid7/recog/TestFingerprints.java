@@ -0,0 +1,166 @@
+package com.rapid7.recog;
+
+import com.rapid7.recog.parser.RecogParser;
+import com.rapid7.recog.parser.RecogParser.PatternMatcherFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * A small database of recog-like fingerprints and banners, used to check that optimized matching
+ * paths produce the same results as plain, sequential matching.
+ */
+public class TestFingerprints {
+
+  private static final String[][] FINGERPRINTS = {
+      {"^Apache$", ""},
+      {"^Apache(?:-AdvancedExtranetServer)?(?:/([012][\\d.]*)\\s*(.*))?$", ""},
+      {"^Apache/(\\d+\\.\\d+\\.\\d+) \\((?:Unix|Win32)\\)", ""},
+      {"^Apache-Coyote/1\\.1$", ""},
+      {"^Microsoft-IIS/([\\d.]+)$", "i"},
+      {"^Microsoft-HTTPAPI/2\\.0$", ""},
+      {"^nginx$", "i"},
+      {"^nginx/([\\d.]+)(?: \\(Ubuntu\\))?$", "i"},
+      {"^(?:openresty|nginx)/([\\d.]+)", ""},
+      {"^lighttpd(?:/([\\d.]+))?$", "i"},
+      {"^Jetty\\((\\d+\\.[\\d.]+)[^)]*\\)$", ""},
+      {"^SSH-2\\.0-OpenSSH_([\\w.]+)(?:\\s+(.+))?$", ""},
+      {"^SSH-([\\d.]+)-dropbear_([\\d.]+)", ""},
+      {"^SSH-2\\.0-Cisco-1\\.25$", ""},
+      {"^220 ([\\w.-]+) FTP server \\(Version ([\\w.]+)\\) ready\\.?$", "m"},
+      {"^220[ -]ProFTPD (\\d\\S+) Server", "i"},
+      {"^220 \\(vsFTPd ([\\d.]+)\\)", ""},
+      {"^220.*Microsoft FTP Service", ""},
+      {"(?i)^.*FileZilla Server (?:version )?(\\d[\\w. ]+)", ""},
+      {"^(?<product>Boa)/(?<version>[\\d.]+\\w*)", ""},
+      {"^Server: (.*)$", "m"},
+      {"\\bOpenSSL/([\\d.]+[a-z]?)\\b", ""},
+      {"PHP/(\\d+\\.\\d+\\.\\d+)", ""},
+      {"^[Ee]xim ([\\d.]+)", ""},
+      {"^\\s*$", ""},
+      {"^.*$", ""},
+      {"^(?:Hello|Welcome)[,!]? .* (\\d+)$", "i"},
+      {"^$", ""},
+      {"^.+\\.example\\.com ESMTP Postfix", ""},
+      {"^(?!Apache).*Server", ""},
+      {"(\\w+)-\\1", ""},
+      {"^\\p{Upper}{3,}\\d*$", ""},
+      {"^[A-F0-9]{8}-[A-F0-9]{4}$", "i"},
+      {"^Ubuntu|Debian$", ""},
+      {"^WebLogic (?:Server )?(\\d+\\.\\d+)", "s"},
+      {"^\\x{41}pache\\u0020\\QHTTPD\\E", ""},
+      {"^[^/]+/(\\d+)$", ""},
+      {"(?s)^HTTP/1\\.[01] \\d{3}.*\\r?\\nServer: ([^\\r\\n]+)", ""},
+      {"^Server: (?i)apache/(\\S+)", ""},
+      {"^apache(?-i)/(X)", "i"},
+      {"^Cisco(?i)-IOS (\\S+)(?-i) Software", ""},
+  };
+
+  private static final String[] BANNERS = {
+      "Apache",
+      "apache",
+      "Apache/2.2.3",
+      "Apache/2.4.41 (Unix)",
+      "Apache/2.4.41 (Unix) OpenSSL/1.1.1d PHP/7.4.3",
+      "Apache-AdvancedExtranetServer/2.0.50",
+      "Apache-Coyote/1.1",
+      "Microsoft-IIS/10.0",
+      "microsoft-iis/7.5",
+      "Microsoft-HTTPAPI/2.0",
+      "nginx",
+      "NGINX/1.18.0 (Ubuntu)",
+      "openresty/1.19.3.1",
+      "lighttpd/1.4.55",
+      "Jetty(9.4.z-SNAPSHOT)",
+      "SSH-2.0-OpenSSH_8.2p1 Ubuntu-4ubuntu0.5",
+      "SSH-2.0-OpenSSH_7.4",
+      "SSH-2.0-dropbear_2019.78",
+      "SSH-2.0-Cisco-1.25",
+      "220 ftp.example.com FTP server (Version 6.00LS) ready.",
+      "220 ProFTPD 1.3.5e Server (Debian)",
+      "220-proftpd 1.3.6 server",
+      "220 (vsFTPd 3.0.3)",
+      "220 Microsoft FTP Service",
+      "220-FileZilla Server version 0.9.60 beta",
+      "Boa/0.94.14rc21",
+      "HTTP/1.1 200 OK\nServer: Apache\n",
+      "HTTP/1.0 404 Not Found\r\nServer: nginx/1.14.0\r\n",
+      "Exim 4.92",
+      "exim 4.92",
+      "   ",
+      "",
+      "Hello, world 42",
+      "welcome! to the 7",
+      "mail.example.com ESMTP Postfix (Ubuntu)",
+      "Some Other Server",
+      "Apache Server",
+      "foo-foo",
+      "ABCD123",
+      "deadbeef-CAFE",
+      "Ubuntu 20.04",
+      "Linux Debian",
+      "WebLogic Server 12.2\n",
+      "Apache HTTPD 6.5",
+      "gws/2",
+      "\u00e9t\u00e9 Server\n",
+      "Server: apache/2.4",
+      "Server: APACHE/2.4",
+      "apache/X",
+      "Apache/x",
+      "Cisco-ios 15.1 Software",
+      "CISCO-IOS 15.1 Software",
+  };
+
+  /** Returns a new list of the test fingerprints, in database order. */
+  public static RecogMatchers matchers() {
+    return matchers(RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY);
+  }
+
+  /** Returns a new list of the test fingerprints, with patterns created by the specified factory. */
+  public static RecogMatchers matchers(PatternMatcherFactory factory) {
+    RecogMatchers matchers = new RecogMatchers("test", null, null, 0);
+    for (String[] fingerprint : FINGERPRINTS) {
+      int flags = 0;
+      for (char flag : fingerprint[1].toCharArray()) {
+        switch (flag) {
+          case 'i':
+            flags |= Pattern.CASE_INSENSITIVE;
+            break;
+          case 'm':
+            flags |= Pattern.MULTILINE | Pattern.DOTALL;
+            break;
+          case 's':
+            flags |= Pattern.DOTALL;
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown flag " + flag);
+        }
+      }
+      RecogMatcher matcher = new RecogMatcher(factory.create(fingerprint[0], flags));
+      int groups = Pattern.compile(fingerprint[0]).matcher("").groupCount();
+      for (int group = 1; group <= groups; group++)
+        matcher.addParam(group, "param." + group);
+      matchers.add(matcher.addValue("service.cpe23", "cpe:/a:test:{param.1}"));
+    }
+    return matchers;
+  }
+
+  /** Returns the test banners along with random variations of them. */
+  public static List<String> banners() {
+    Random random = new Random(42);
+    List<String> banners = new ArrayList<>(Arrays.asList(BANNERS));
+    for (String banner : BANNERS) {
+      banners.add(banner.toUpperCase());
+      banners.add("x" + banner + "\n");
+      banners.add(banner + banner);
+      if (!banner.isEmpty()) {
+        StringBuilder mutated = new StringBuilder(banner);
+        mutated.setCharAt(random.nextInt(banner.length()), (char) (' ' + random.nextInt(95)));
+        banners.add(mutated.toString());
+      }
+    }
+    return banners;
+  }
+}
@@ -0,0 +1,253 @@
+package com.rapid7.recog.index;
+
+import com.rapid7.recog.RecogMatch;
+import com.rapid7.recog.RecogMatcher;
+import com.rapid7.recog.RecogMatchers;
+import com.rapid7.recog.TestFingerprints;
+import com.rapid7.recog.pattern.RecogPatternMatchResult;
+import com.rapid7.recog.pattern.RecogPatternMatcher;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import static com.rapid7.recog.RecogMatcher.pattern;
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MatcherIndexTest {
+
+  @Test
+  public void literalPrefilterSkipsMatchersWithoutRequiredLiterals() {
+    // given
+    RecogMatchers matchers = new RecogMatchers();
+    matchers.add(new RecogMatcher(pattern("^Apache/([\\d.]+)")));
+    matchers.add(new RecogMatcher(pattern("^Microsoft-IIS/([\\d.]+)", CASE_INSENSITIVE)));
+    matchers.add(new RecogMatcher(pattern("^SSH-2\\.0-OpenSSH_")));
+    matchers.add(new RecogMatcher(pattern("^.*$")));
+    MatcherIndex index = MatcherIndex.build(matchers, EnumSet.of(IndexFeature.LITERAL_PREFILTER));
+
+    // when
+    BitSet candidates = index.candidates("MICROSOFT-IIS/10.0");
+
+    // then
+    assertThat(candidates, is(bitSet(1, 3)));
+  }
+
+  @Test
+  public void literalPrefilterVerifiesCaseSensitiveLiterals() {
+    // given
+    RecogMatchers matchers = new RecogMatchers();
+    matchers.add(new RecogMatcher(pattern("Apache")));
+    matchers.add(new RecogMatcher(pattern("apache")));
+    MatcherIndex index = MatcherIndex.build(matchers, EnumSet.of(IndexFeature.LITERAL_PREFILTER));
+
+    // when
+    BitSet candidates = index.candidates("xAPACHE apache");
+
+    // then
+    assertThat(candidates, is(bitSet(1)));
+  }
+
+  @Test
+  public void literalPrefilterMatchesAreIdentical() {
+    // given
+    RecogMatchers plain = TestFingerprints.matchers();
+    RecogMatchers indexed = TestFingerprints.matchers().setIndexFeatures(EnumSet.of(IndexFeature.LITERAL_PREFILTER));
+
+    for (String banner : TestFingerprints.banners()) {
+      // when
+      List<RecogMatch> expected = plain.getMatches(banner);
+      List<RecogMatch> actual = indexed.getMatches(banner);
+
+      // then
+      assertThat("Matches for '" + banner + "'", summarize(actual), is(summarize(expected)));
+      assertThat("First match for '" + banner + "'", summarize(indexed.getFirstMatch(banner)), is(summarize(plain.getFirstMatch(banner))));
+    }
+  }
+
+  @Test
+  public void anchoredPrefixSelectsMatchersOnTheInputPath() {
+    // given
+    RecogMatchers matchers = new RecogMatchers();
+    matchers.add(new RecogMatcher(pattern("^SSH-2\\.0-OpenSSH_([\\w.]+)")));
+    matchers.add(new RecogMatcher(pattern("^SSH-([\\d.]+)-dropbear")));
+    matchers.add(new RecogMatcher(pattern("^220 ")));
+    matchers.add(new RecogMatcher(pattern("OpenSSH")));
+    matchers.add(new RecogMatcher(pattern("^ssh-", CASE_INSENSITIVE)));
+    MatcherIndex index = MatcherIndex.build(matchers, EnumSet.of(IndexFeature.ANCHORED_PREFIX));
+
+    // when
+    BitSet candidates = index.candidates("SSH-2.0-OpenSSH_8.2p1");
+
+    // then
+    assertThat(candidates, is(bitSet(0, 1, 3, 4)));
+  }
+
+  @Test
+  public void anchoredPrefixMatchesAreIdentical() {
+    // given
+    RecogMatchers plain = TestFingerprints.matchers();
+    RecogMatchers indexed = TestFingerprints.matchers().setIndexFeatures(EnumSet.of(IndexFeature.ANCHORED_PREFIX));
+
+    for (String banner : TestFingerprints.banners()) {
+      // when
+      List<RecogMatch> expected = plain.getMatches(banner);
+      List<RecogMatch> actual = indexed.getMatches(banner);
+
+      // then
+      assertThat("Matches for '" + banner + "'", summarize(actual), is(summarize(expected)));
+      assertThat("First match for '" + banner + "'", summarize(indexed.getFirstMatch(banner)), is(summarize(plain.getFirstMatch(banner))));
+    }
+  }
+
+  @Test
+  public void exactLiteralLooksUpTheWholeInput() {
+    // given
+    RecogMatchers matchers = new RecogMatchers();
+    matchers.add(new RecogMatcher(pattern("^nginx$", CASE_INSENSITIVE)));
+    matchers.add(new RecogMatcher(pattern("^Apache$")));
+    matchers.add(new RecogMatcher(pattern("^NGINX$")));
+    matchers.add(new RecogMatcher(pattern("^nginx")));
+    MatcherIndex index = MatcherIndex.build(matchers, EnumSet.of(IndexFeature.EXACT_LITERAL));
+
+    // then
+    assertThat(index.candidates("NGINX\n"), is(bitSet(0, 2, 3)));
+    assertThat(index.candidates("Apache"), is(bitSet(1, 3)));
+    assertThat(index.candidates("nginx/1.18.0"), is(bitSet(3)));
+  }
+
+  @Test
+  public void exactLiteralMatchesAreIdentical() {
+    // given
+    RecogMatchers plain = TestFingerprints.matchers();
+    RecogMatchers indexed = TestFingerprints.matchers().setIndexFeatures(EnumSet.of(IndexFeature.EXACT_LITERAL));
+
+    for (String banner : TestFingerprints.banners()) {
+      // when
+      List<RecogMatch> expected = plain.getMatches(banner);
+      List<RecogMatch> actual = indexed.getMatches(banner);
+
+      // then
+      assertThat("Matches for '" + banner + "'", summarize(actual), is(summarize(expected)));
+      assertThat("First match for '" + banner + "'", summarize(indexed.getFirstMatch(banner)), is(summarize(plain.getFirstMatch(banner))));
+    }
+  }
+
+  @Test
+  public void patternSetMatchesAreIdentical() {
+    // given
+    RecogMatchers plain = TestFingerprints.matchers();
+    RecogMatchers patternSet = TestFingerprints.matchers().setIndexFeatures(EnumSet.of(IndexFeature.PATTERN_SET));
+    RecogMatchers combined = TestFingerprints.matchers().setIndexFeatures(EnumSet.allOf(IndexFeature.class));
+
+    for (String banner : TestFingerprints.banners()) {
+      // when
+      List<RecogMatch> expected = plain.getMatches(banner);
+
+      // then
+      assertThat("Matches for '" + banner + "'", summarize(patternSet.getMatches(banner)), is(summarize(expected)));
+      assertThat("Matches for '" + banner + "'", summarize(combined.getMatches(banner)), is(summarize(expected)));
+      assertThat("First match for '" + banner + "'", summarize(patternSet.getFirstMatch(banner)), is(summarize(plain.getFirstMatch(banner))));
+    }
+  }
+
+  @Test
+  public void indexIsRebuiltWhenMatchersChange() {
+    // given
+    RecogMatchers matchers = new RecogMatchers().setIndexFeatures(EnumSet.of(IndexFeature.LITERAL_PREFILTER));
+    matchers.add(new RecogMatcher(pattern("^Apache")));
+    assertThat(matchers.getMatches("nginx").size(), is(0));
+
+    // when
+    matchers.add(new RecogMatcher(pattern("^nginx")));
+    matchers.set(0, new RecogMatcher(pattern("-x$")));
+
+    // then
+    assertThat(matchers.getMatches("nginx").size(), is(1));
+    assertThat(matchers.getMatches("nginx-x").size(), is(2));
+  }
+
+  static List<String> summarize(List<RecogMatch> matches) {
+    return matches.stream().map(MatcherIndexTest::summarize).collect(toList());
+  }
+
+  static String summarize(RecogMatch match) {
+    if (match == null)
+      return null;
+    Map<String, String> parameters = match.getParameters();
+    return match.getMatcher().getPattern() + " => " + new java.util.TreeMap<>(parameters);
+  }
+
+  @Test
+  public void candidatesIncludeEveryMatchOfJavaRegex() {
+    // given
+    RecogMatchers matchers = TestFingerprints.matchers();
+    MatcherIndex index = MatcherIndex.build(matchers, EnumSet.allOf(IndexFeature.class));
+    List<Pattern> patterns = matchers.stream().map(matcher -> Pattern.compile(matcher.getPattern(), matcher.getFlags())).collect(toList());
+
+    for (String banner : TestFingerprints.banners()) {
+      // when
+      BitSet candidates = index.candidates(banner);
+
+      // then
+      for (int position = 0; position < patterns.size(); position++)
+        if (patterns.get(position).matcher(banner).find())
+          assertThat("Candidate " + patterns.get(position) + " for '" + banner + "'", candidates.get(position), is(true));
+    }
+  }
+
+  @Test
+  public void patternsOfOtherEnginesAreAlwaysCandidates() {
+    // given
+    RecogMatchers matchers = new RecogMatchers();
+    matchers.add(new RecogMatcher(pattern("^Apache/([\\d.]+)")));
+    matchers.add(new RecogMatcher(new CaseInsensitivePrefixMatcher("NGINX")));
+    MatcherIndex index = MatcherIndex.build(matchers, EnumSet.allOf(IndexFeature.class));
+
+    // when
+    BitSet candidates = index.candidates("nginx/1.18.0");
+
+    // then
+    assertThat(candidates, is(bitSet(1)));
+  }
+
+  /** A pattern matcher whose patterns are not regular expressions, but prefixes of any case. */
+  private static final class CaseInsensitivePrefixMatcher implements RecogPatternMatcher {
+    private final String prefix;
+
+    CaseInsensitivePrefixMatcher(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public String getPattern() {
+      return prefix;
+    }
+
+    @Override
+    public int getFlags() {
+      return 0;
+    }
+
+    @Override
+    public boolean matches(String input) {
+      return input != null && input.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    @Override
+    public RecogPatternMatchResult match(String input) {
+      return null;
+    }
+  }
+
+  private static BitSet bitSet(int... positions) {
+    BitSet bitSet = new BitSet();
+    for (int position : positions)
+      bitSet.set(position);
+    return bitSet;
+  }
+}
@@ -18,6 +18,7 @@ import static java.util.regex.Pattern.DOTALL;
 import static java.util.regex.Pattern.MULTILINE;
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.beans.HasPropertyWithValue.hasProperty;
@@ -51,6 +52,42 @@ public class FingerprintMatcherParserTest {
     // then - throws exception
   }
 
+  @Test
+  public void maxScanLengthIsReadFromFingerprints() throws ParseException {
+    // given
+    String xml = "<?xml version=\"1.0\"?><fingerprints matches=\"http_header.server\" max_scan_length=\"256\"/>";
+
+    // when
+    RecogMatchers patterns = new RecogParser().parse(new StringReader(xml), anyUTF8String());
+
+    // then
+    assertThat(patterns.getMaxScanLength(), is(256));
+    assertThat(new RecogParser().parse(new StringReader("<fingerprints max_scan_length=\"-1\"/>"), anyUTF8String()).getMaxScanLength(), is(0));
+  }
+
+  @Test
+  public void patternsAreOptimizedWhenEnabled() throws ParseException {
+    // given
+    String xml = "<?xml version=\"1.0\"?>\n"
+        + "<fingerprints matches=\"http_header.server\">"
+        + "    <fingerprint pattern=\"^(Apache)/([^ ]*) \\((\\w+)\\)$\">\n"
+        + "        <example service.version=\"2.4.41\" os.family=\"Unix\">Apache/2.4.41 (Unix)</example>\n"
+        + "        <param pos=\"2\" name=\"service.version\"/>\n"
+        + "        <param pos=\"3\" name=\"os.family\"/>\n"
+        + "    </fingerprint>\n"
+        + "</fingerprints>";
+
+    // when
+    RecogMatcher plain = new RecogParser().parse(new StringReader(xml), anyUTF8String()).get(0);
+    RecogMatcher optimized = new RecogParser(true, RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY, true)
+        .parse(new StringReader(xml), anyUTF8String()).get(0);
+
+    // then
+    assertThat(plain.getPattern(), is("^(Apache)/([^ ]*) \\((\\w+)\\)$"));
+    assertThat(optimized.getPattern(), is("^(?:Apache)/([^ ]*+) \\((\\w++)\\)$"));
+    assertThat(optimized.match("Apache/2.4.41 (Unix)"), is(plain.match("Apache/2.4.41 (Unix)")));
+  }
+
   @Test
   public void validFingerprint() throws ParseException {
     // given
@@ -408,4 +445,79 @@ public class FingerprintMatcherParserTest {
     // then
     assertEquals(expectedMessage, exception.getMessage());
   }
+
+  @Test
+  public void contentHashDependsOnlyOnFingerprintSource() throws ParseException {
+    // given
+    String fingerprint = "  <fingerprint pattern=\"^Apache/(\\S+)\">\n"
+        + "    <param pos=\"1\" name=\"service.version\"/>\n"
+        + "  </fingerprint>\n";
+    String changed = fingerprint.replace("service.version", "service.product");
+    String xml = "<?xml version=\"1.0\"?>\n<fingerprints matches=\"http_header.server\">\n" + fingerprint + "</fingerprints>";
+    String moved = "<?xml version=\"1.0\"?>\n<fingerprints matches=\"http_header.server\">\n" + changed + "\n\n" + fingerprint + "</fingerprints>";
+
+    RecogParser parser = new RecogParser(false, RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY, false, true);
+
+    // when
+    RecogMatchers original = parser.parse(new StringReader(xml), anyUTF8String());
+    RecogMatchers edited = parser.parse(new StringReader(moved), anyUTF8String());
+
+    // then
+    assertThat(original.get(0).getContentHash().length(), is(40));
+    assertThat(edited.get(1).getContentHash(), is(original.get(0).getContentHash()));
+    assertThat(edited.get(0).getContentHash().equals(original.get(0).getContentHash()), is(false));
+    assertThat(new RecogParser().parse(new StringReader(xml), anyUTF8String()).get(0).getContentHash(), is(nullValue()));
+  }
+
+  @Test
+  public void contentHashTellsAttributesApart() throws ParseException {
+    // given
+    String joined = "<fingerprints><fingerprint pattern=\"^Apache\"><example a=\"b c=d\">Apache</example></fingerprint></fingerprints>";
+    String split = "<fingerprints><fingerprint pattern=\"^Apache\"><example a=\"b\" c=\"d\">Apache</example></fingerprint></fingerprints>";
+    RecogParser parser = new RecogParser(false, RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY, false, true);
+
+    // when
+    String joinedHash = parser.parse(new StringReader(joined), anyUTF8String()).get(0).getContentHash();
+    String splitHash = parser.parse(new StringReader(split), anyUTF8String()).get(0).getContentHash();
+
+    // then
+    assertThat(joinedHash.equals(splitHash), is(false));
+  }
+
+  @Test
+  public void descriptionWhitespaceIsNormalizedLikeTheRegex() {
+    // given
+    String[] descriptions = {"", " ", "Apache", "  Apache\t\tHTTPD \r\n 2.4\n", "\u000B\fApache\u0001", "\u0001 Apache  \u0001"};
+
+    for (String description : descriptions) {
+      // when
+      String normalized = FingerprintsHandler.normalizeWhitespace(new StringBuilder(description));
+
+      // then
+      assertThat(normalized, is(description.replaceAll("\\s+", " ").trim()));
+    }
+  }
+
+  @Test
+  public void parserIsReusableAfterFailedParse() throws ParseException {
+    // given
+    String invalid = "<?xml version=\"1.0\"?><fingerprints><fingerprint";
+    String xml = "<?xml version=\"1.0\"?>\n"
+        + "<FINGERPRINTS matches=\"http_header.server\">\n"
+        + "  <Fingerprint pattern=\"^Apache$\">\n"
+        + "    <Description>\n      Apache\n      HTTPD\n    </Description>\n"
+        + "  </Fingerprint>\n"
+        + "</FINGERPRINTS>";
+    RecogParser parser = new RecogParser();
+
+    // when
+    assertThrows(ParseException.class, () -> parser.parse(new StringReader(invalid), anyUTF8String()));
+    RecogMatchers matchers = parser.parse(new StringReader(xml), anyUTF8String());
+    RecogMatchers again = parser.parse(new StringReader(xml), anyUTF8String());
+
+    // then
+    assertThat(matchers.getKey(), is("http_header.server"));
+    assertThat(matchers.get(0).getDescription(), is("Apache HTTPD"));
+    assertThat(again.get(0).getContentHash(), is(matchers.get(0).getContentHash()));
+  }
 }
@@ -0,0 +1,131 @@
+package com.rapid7.recog.pattern;
+
+import com.rapid7.recog.RecogMatchers;
+import com.rapid7.recog.TestFingerprints;
+import com.rapid7.recog.parser.RecogParser;
+import java.time.Duration;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class AutomatonRecogPatternMatcherTest {
+
+  @Test
+  public void extractsPositionalAndNamedGroups() {
+    // given
+    RecogPatternMatcher matcher = AutomatonRecogPatternMatcher.create("^(?<product>\\w+)/([\\d.]+)(?: \\((.+)\\))?", 0);
+
+    // when
+    RecogPatternMatchResult result = matcher.match("nginx/1.18.0 extra");
+
+    // then
+    assertThat(matcher.getEngine(), is(AutomatonRecogPatternMatcher.ENGINE));
+    assertThat(result.groupCount(), is(3));
+    assertThat(result.group(0), is("nginx/1.18.0"));
+    assertThat(result.group("product"), is("nginx"));
+    assertThat(result.group(2), is("1.18.0"));
+    assertThat(result.group(3), is(nullValue()));
+    assertThrows(IllegalArgumentException.class, () -> result.group("version"));
+    assertThrows(IndexOutOfBoundsException.class, () -> result.group(4));
+  }
+
+  @Test
+  public void fallsBackToJavaRegexForBackreferencesAndLookaround() {
+    // when
+    RecogPatternMatcher backreference = AutomatonRecogPatternMatcher.create("(\\w+)-\\1", 0);
+    RecogPatternMatcher lookahead = AutomatonRecogPatternMatcher.create("^(?!Apache).*Server", 0);
+
+    // then
+    assertThat(backreference.getEngine(), is(JavaRegexRecogPatternMatcher.ENGINE));
+    assertThat(backreference.match("foo-foo").group(1), is("foo"));
+    assertThat(lookahead.getEngine(), is(JavaRegexRecogPatternMatcher.ENGINE));
+    assertThat(lookahead.matches("Apache Server"), is(false));
+  }
+
+  @Test
+  public void rejectsInvalidPatterns() {
+    assertThrows(PatternSyntaxException.class, () -> AutomatonRecogPatternMatcher.create("^Apache(", 0));
+  }
+
+  @Test
+  public void matchesInputsOutsideTheAutomatonAlphabet() {
+    // given
+    RecogPatternMatcher matcher = AutomatonRecogPatternMatcher.create("\\b(\\w+) (.)$", 0);
+
+    // when
+    RecogPatternMatchResult result = matcher.match("café name 😀");
+
+    // then
+    assertThat(matcher.getEngine(), is(AutomatonRecogPatternMatcher.ENGINE));
+    assertThat(result, is(notNullValue()));
+    assertThat(result.group(1), is("name"));
+    assertThat(result.group(2), is("😀"));
+  }
+
+  @Test
+  public void matchesSurrogatesLikeJavaRegex() {
+    // given
+    String[] patterns = {".", "^(.)(.)$", "(.+?)(\\S)", "[^a]+", "\\x{1F600}(.)", "[\\x{1F600}-\\x{1F64F}]+(.)", "[^\\x{1F600}]",
+        "(?s)(.*)$", "\\W(\\w)", "(?m)^(.)", "a(.)c", "\\D{2}", "[\\uD800-\\uDBFF]", "x?\\uDE00"};
+    String[] inputs = {"a\uD83D\uDE00c", "\uD83D\uDE00", "\uD83D", "\uDE00", "x\uDE00\uD83Dy", "\uD83D\uDE00\uD83D\uDE01!", "\uD83D\uD83D\uDE00"};
+
+    for (String regex : patterns) {
+      RecogPatternMatcher expected = new JavaRegexRecogPatternMatcher(Pattern.compile(regex));
+      RecogPatternMatcher actual = AutomatonRecogPatternMatcher.create(regex, 0);
+      assertThat(regex, actual.getEngine(), is(AutomatonRecogPatternMatcher.ENGINE));
+      for (String input : inputs) {
+        // when
+        RecogPatternMatchResult expectedResult = expected.match(input);
+        RecogPatternMatchResult actualResult = actual.match(input);
+
+        // then
+        assertThat(regex + " against '" + input + "'", actual.matches(input), is(expected.matches(input)));
+        assertThat(regex + " against '" + input + "'", actualResult == null, is(expectedResult == null));
+        for (int group = 0; expectedResult != null && group <= expectedResult.groupCount(); group++)
+          assertThat(regex + " against '" + input + "'", actualResult.group(group), is(expectedResult.group(group)));
+      }
+    }
+  }
+
+  @Test
+  public void matchesInLinearTime() {
+    // given
+    RecogPatternMatcher matcher = AutomatonRecogPatternMatcher.create("^(?:a|a)*(?:a|aa)*b", 0);
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 100_000; i++)
+      input.append('a');
+
+    // when
+    assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+      // then
+      assertThat(matcher.getEngine(), is(AutomatonRecogPatternMatcher.ENGINE));
+      assertThat(matcher.matches(input.toString()), is(false));
+      assertThat(matcher.match(input + "b"), is(notNullValue()));
+      assertThat(matcher.matches(input + "\uD83D\uDE00"), is(false));
+    });
+  }
+
+  @Test
+  public void matchesAreIdenticalToJavaRegex() {
+    // given
+    RecogMatchers expected = TestFingerprints.matchers();
+    RecogMatchers actual = TestFingerprints.matchers(RecogParser.AUTOMATON_PATTERN_MATCHER_FACTORY);
+
+    for (String banner : TestFingerprints.banners()) {
+      for (int i = 0; i < expected.size(); i++) {
+        // when
+        Pattern pattern = Pattern.compile(expected.get(i).getPattern(), expected.get(i).getFlags());
+
+        // then
+        assertThat(pattern + " against '" + banner + "'", actual.get(i).match(banner), is(expected.get(i).match(banner)));
+        assertThat(pattern + " against '" + banner + "'", actual.get(i).matches(banner), is(expected.get(i).matches(banner)));
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package com.rapid7.recog.pattern;
+
+import com.rapid7.recog.RecogMatchers;
+import com.rapid7.recog.TestFingerprints;
+import com.rapid7.recog.parser.RecogParser;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JavaRegexRecogPatternMatcherTest {
+
+  @Test
+  public void reusedResultIsValidUntilNextMatch() {
+    // given
+    JavaRegexRecogPatternMatcher matcher = new JavaRegexRecogPatternMatcher(Pattern.compile("^nginx/(?<version>[\\d.]+)"), true);
+
+    // when
+    RecogPatternMatchResult first = matcher.match("nginx/1.18.0");
+    String version = first.group("version");
+    RecogPatternMatchResult second = matcher.match("nginx/1.25.3");
+
+    // then
+    assertThat(matcher.isReusingMatchers(), is(true));
+    assertThat(version, is("1.18.0"));
+    assertThat(second, is(sameInstance(first)));
+    assertThat(first.group(1), is("1.25.3"));
+    assertThat(matcher.match("Apache"), is(nullValue()));
+    assertThat(matcher.matches("nginx/1"), is(true));
+  }
+
+  @Test
+  public void copiedResultSurvivesNextMatch() {
+    // given
+    JavaRegexRecogPatternMatcher matcher = new JavaRegexRecogPatternMatcher(Pattern.compile("^nginx/([\\d.]+)"), true);
+    RecogPatternMatchResult view = matcher.match("nginx/1.18.0");
+
+    // when
+    RecogPatternMatchResult copy = view.copy();
+    RecogPatternMatchResult next = matcher.match("nginx/1.25.3");
+
+    // then
+    assertThat(copy, is(not(sameInstance(view))));
+    assertThat(copy.group(1), is("1.18.0"));
+    assertThat(next.group(1), is("1.25.3"));
+    assertThat(new JavaRegexRecogPatternMatcher(Pattern.compile("x")).match("x").copy().groupCount(), is(0));
+  }
+
+  @Test
+  public void releasedResultLetsGoOfItsInput() {
+    // given
+    JavaRegexRecogPatternMatcher matcher = new JavaRegexRecogPatternMatcher(Pattern.compile("^nginx/([\\d.]+)"), true);
+    RecogPatternMatchResult copied = matcher.match("nginx/1.18.0");
+    RecogPatternMatchResult copy = copied.copy();
+    RecogPatternMatchResult view = matcher.match("nginx/1.25.3");
+
+    // when
+    copied.release();
+    view.release();
+
+    // then
+    assertThat(copy.group(1), is("1.18.0"));
+    assertThrows(IllegalStateException.class, () -> view.group(1));
+    assertThat(matcher.match("nginx/1.27.0").group(1), is("1.27.0"));
+  }
+
+  @Test
+  public void reusedMatchersDoNotRetainInputs() {
+    // given
+    JavaRegexRecogPatternMatcher matcher = new JavaRegexRecogPatternMatcher(Pattern.compile("^nginx/([\\d.]+)"), true);
+    StringBuilder decided = new StringBuilder("nginx/1.18.0");
+    StringBuilder unmatched = new StringBuilder("Apache/2.4");
+    WeakReference<CharSequence> decidedReference = new WeakReference<>(decided);
+    WeakReference<CharSequence> unmatchedReference = new WeakReference<>(unmatched);
+
+    // when
+    boolean matches = matcher.matches(decided);
+    RecogPatternMatchResult result = matcher.match(unmatched);
+    decided = null;
+    unmatched = null;
+    for (int i = 0; i < 10 && (decidedReference.get() != null || unmatchedReference.get() != null); i++)
+      System.gc();
+
+    // then
+    assertThat(matches, is(true));
+    assertThat(result, is(nullValue()));
+    assertThat(decidedReference.get(), is(nullValue()));
+    assertThat(unmatchedReference.get(), is(nullValue()));
+  }
+
+  @Test
+  public void matchesAreIdenticalWithoutReuse() {
+    // given
+    RecogMatchers expected = TestFingerprints.matchers();
+    RecogMatchers actual = TestFingerprints.matchers(RecogParser.REUSING_PATTERN_MATCHER_FACTORY);
+
+    for (String banner : TestFingerprints.banners()) {
+      for (int i = 0; i < expected.size(); i++) {
+        // when
+        String description = expected.get(i).getPattern() + " against '" + banner + "'";
+
+        // then
+        assertThat(description, actual.get(i).match(banner), is(expected.get(i).match(banner)));
+        assertThat(description, actual.get(i).matches(banner), is(expected.get(i).matches(banner)));
+      }
+    }
+  }
+
+  @Test
+  public void threadsReuseTheirOwnMatchers() throws Exception {
+    // given
+    JavaRegexRecogPatternMatcher matcher = new JavaRegexRecogPatternMatcher(Pattern.compile("^version ([\\d]+)$"), true);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    try {
+      // when
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        String version = String.valueOf(thread);
+        results.add(executor.submit(() -> {
+          for (int i = 0; i < 10_000; i++)
+            if (!version.equals(matcher.match("version " + version).group(1)))
+              return false;
+          return true;
+        }));
+      }
+
+      // then
+      for (Future<Boolean> result : results)
+        assertThat(result.get(), is(true));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.rapid7.recog.pattern;
+
+import com.rapid7.recog.RecogMatchers;
+import com.rapid7.recog.parser.ParseException;
+import com.rapid7.recog.parser.RecogParser;
+import com.rapid7.recog.regex.QuickReject;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.PatternSyntaxException;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LazyRecogPatternMatcherTest {
+
+  @Test
+  public void compilesOnceOnFirstUse() {
+    // given
+    AtomicInteger compiles = new AtomicInteger();
+    LazyRecogPatternMatcher matcher = new LazyRecogPatternMatcher("^Apache/(\\S+)", 0, (pattern, flags) -> {
+      compiles.incrementAndGet();
+      return AutomatonRecogPatternMatcher.create(pattern, flags);
+    });
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      // when
+      boolean compiledBefore = matcher.isCompiled();
+      List<CompletableFuture<String>> matches = new ArrayList<>();
+      for (int thread = 0; thread < 16; thread++)
+        matches.add(CompletableFuture.supplyAsync(() -> matcher.match("Apache/2.4").group(1), executor));
+
+      // then
+      assertThat(compiledBefore, is(false));
+      for (CompletableFuture<String> match : matches)
+        assertThat(match.join(), is("2.4"));
+      assertThat(compiles.get(), is(1));
+      assertThat(matcher.getEngine(), is(AutomatonRecogPatternMatcher.ENGINE));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void invalidPatternsAreFoundByCompilingAndOtherwiseNeverMatch() throws ParseException {
+    // given
+    String xml = "<?xml version=\"1.0\"?>\n"
+        + "<fingerprints matches=\"http_header.server\">\n"
+        + "  <fingerprint pattern=\"^Apache/(\\S+)\"/>\n"
+        + "  <fingerprint pattern=\"^nginx(\"/>\n"
+        + "</fingerprints>";
+    RecogParser parser = new RecogParser(false, RecogParser.lazy(RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY));
+
+    // when
+    RecogMatchers matchers = parser.parse(new StringReader(xml), "http_servers");
+    CompletionException exception = assertThrows(CompletionException.class, () -> matchers.compilePatterns(Runnable::run).join());
+
+    // then
+    assertThat(matchers.size(), is(2));
+    assertThat(exception.getCause(), is(instanceOf(PatternSyntaxException.class)));
+    assertThat(matchers.get(0).getPatternMatcher().getEngine(), is(JavaRegexRecogPatternMatcher.ENGINE));
+    assertThat(matchers.get(1).matches("nginx("), is(false));
+    assertThat(matchers.get(1).getPatternMatcher().match("nginx("), is(nullValue()));
+    assertThat(matchers.getMatches("Apache/2.4").get(0).getParameters().isEmpty(), is(true));
+  }
+
+  @Test
+  public void strictModeRejectsInvalidPatternsAsTheyAreParsed() throws ParseException {
+    // given
+    String valid = "<?xml version=\"1.0\"?>\n"
+        + "<fingerprints matches=\"http_header.server\">\n"
+        + "  <fingerprint pattern=\"^Apache/(\\S+)\"/>\n"
+        + "</fingerprints>";
+    String invalid = valid.replace("</fingerprints>", "  <fingerprint pattern=\"^nginx(\"/>\n</fingerprints>");
+    RecogParser parser = new RecogParser(true, RecogParser.lazy(RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY));
+
+    // when
+    RecogMatchers matchers = parser.parse(new StringReader(valid), "http_servers");
+
+    // then
+    assertThrows(PatternSyntaxException.class, () -> parser.parse(new StringReader(invalid), "http_servers"));
+    assertThat(matchers.get(0).getPatternMatcher(), is(instanceOf(LazyRecogPatternMatcher.class)));
+    assertThat(matchers.get(0).matches("Apache/2.4"), is(true));
+  }
+
+  @Test
+  public void unusedDatabasesAreNotCompiled() throws ParseException {
+    // given
+    String xml = "<?xml version=\"1.0\"?>\n"
+        + "<fingerprints matches=\"ssh.banner\">\n"
+        + "  <fingerprint pattern=\"^SSH-(\\S+)-\"><param pos=\"1\" name=\"ssh.protocol\"/></fingerprint>\n"
+        + "</fingerprints>";
+    RecogParser parser = new RecogParser(false, RecogParser.lazy(RecogParser.AUTOMATON_PATTERN_MATCHER_FACTORY));
+
+    // when
+    RecogMatchers unused = parser.parse(new StringReader(xml), "ssh_banners");
+    RecogMatchers used = parser.parse(new StringReader(xml), "ssh_banners");
+    String protocol = used.getMatches("SSH-2.0-OpenSSH_8.9").get(0).getParameters().get("ssh.protocol");
+
+    // then
+    assertThat(((LazyRecogPatternMatcher) unused.get(0).getPatternMatcher()).isCompiled(), is(false));
+    assertThat(((LazyRecogPatternMatcher) used.get(0).getPatternMatcher()).isCompiled(), is(true));
+    assertThat(protocol, is("2.0"));
+    assertThat(used.get(0).getQuickReject(), is(not(QuickReject.NONE)));
+  }
+}
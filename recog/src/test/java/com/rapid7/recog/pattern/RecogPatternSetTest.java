@@ -0,0 +1,95 @@
+package com.rapid7.recog.pattern;
+
+import com.rapid7.recog.RecogMatcher;
+import com.rapid7.recog.RecogMatchers;
+import com.rapid7.recog.TestFingerprints;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class RecogPatternSetTest {
+
+  @Test
+  public void findsAllMatchingPatterns() {
+    // given
+    RecogPatternSet set = RecogPatternSet.compile(Arrays.asList(
+        AutomatonRecogPatternMatcher.create("^Apache", 0),
+        AutomatonRecogPatternMatcher.create("(\\w+)-\\1", 0),
+        AutomatonRecogPatternMatcher.create("\\bOpenSSL/([\\d.]+)", 0),
+        AutomatonRecogPatternMatcher.create("^SSH-", 0),
+        AutomatonRecogPatternMatcher.create("(?m)^PHP$", Pattern.UNIX_LINES)));
+
+    // when
+    BitSet matches = set.matches("Apache/2.4 OpenSSL/1.1.1 x-x\nPHP\n");
+
+    // then
+    assertThat(set.size(), is(5));
+    assertThat(set.getAutomatonCount(), is(4));
+    assertThat(matches, is(bitSet(0, 1, 2, 4)));
+  }
+
+  @Test
+  public void candidatesIncludeUnevaluatedPatterns() {
+    // given
+    RecogPatternSet set = RecogPatternSet.compile(Arrays.asList(
+        AutomatonRecogPatternMatcher.create("^Apache", 0),
+        AutomatonRecogPatternMatcher.create("(\\w+)-\\1", 0),
+        AutomatonRecogPatternMatcher.create("^SSH-", 0)));
+
+    // when
+    BitSet candidates = set.candidates("Apache/2.4");
+
+    // then
+    assertThat(set.matches("Apache/2.4"), is(bitSet(0)));
+    assertThat(candidates, is(bitSet(0, 1)));
+  }
+
+  @Test
+  public void resolvesWordBoundariesInNonAsciiInput() {
+    // given
+    RecogPatternSet set = RecogPatternSet.compile(Arrays.asList(
+        AutomatonRecogPatternMatcher.create("\\bServer\\b", 0),
+        AutomatonRecogPatternMatcher.create("Server", 0)));
+
+    // when
+    BitSet matches = set.matches("\u00e9Server");
+
+    // then
+    BitSet expected = bitSet(1);
+    if (Pattern.compile("\\bServer\\b").matcher("\u00e9Server").find())
+      expected.set(0);
+    assertThat(matches, is(expected));
+  }
+
+  @Test
+  public void matchesAreIdenticalToIndividualMatchers() {
+    // given
+    RecogMatchers matchers = TestFingerprints.matchers();
+    List<RecogPatternMatcher> patterns = matchers.stream().map(RecogMatcher::getPatternMatcher).collect(toList());
+    RecogPatternSet set = RecogPatternSet.compile(patterns);
+
+    for (String banner : TestFingerprints.banners()) {
+      // when
+      BitSet actual = set.matches(banner);
+
+      // then
+      BitSet expected = new BitSet();
+      for (int i = 0; i < patterns.size(); i++)
+        if (patterns.get(i).matches(banner))
+          expected.set(i);
+      assertThat("Matches for '" + banner + "'", actual, is(expected));
+    }
+  }
+
+  private static BitSet bitSet(int... positions) {
+    BitSet bitSet = new BitSet();
+    for (int position : positions)
+      bitSet.set(position);
+    return bitSet;
+  }
+}
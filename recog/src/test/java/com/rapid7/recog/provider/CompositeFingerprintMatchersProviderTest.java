@@ -3,13 +3,20 @@ package com.rapid7.recog.provider;
 import com.rapid7.recog.RecogMatcher;
 import com.rapid7.recog.RecogMatchers;
 import com.rapid7.recog.RecogType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.jupiter.api.Test;
+import static com.rapid7.recog.RecogMatcher.pattern;
 import static com.rapid7.recog.TestGenerators.anyEnum;
 import static com.rapid7.recog.TestGenerators.anyUTF8String;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
 
@@ -181,6 +188,59 @@ public class CompositeFingerprintMatchersProviderTest {
     // then
     assertThat(matchers, contains(matcher1));
   }
-  
 
+  @Test
+  public void getMatchersByTypeUnitesDatabasesWithTheSameKey() {
+    // given
+    IRecogMatchersProvider provider1 = mock(IRecogMatchersProvider.class);
+    IRecogMatchersProvider provider2 = mock(IRecogMatchersProvider.class);
+    IRecogMatchersProvider provider3 = mock(IRecogMatchersProvider.class);
+    RecogMatcher matcher1 = new RecogMatcher(pattern("^a"));
+    RecogMatcher matcher2 = new RecogMatcher(pattern("^b"));
+    RecogMatcher matcher3 = new RecogMatcher(pattern("^a"));
+    RecogMatcher matcher4 = new RecogMatcher(pattern("^c"));
+    RecogMatchers ssh1 = new RecogMatchers("ssh.banner", "ssh", "service", 0.9f);
+    ssh1.add(matcher1);
+    ssh1.add(matcher2);
+    RecogMatchers ssh2 = new RecogMatchers("ssh.banner", null, null, 0.1f);
+    ssh2.add(matcher3);
+    ssh2.add(matcher4);
+    RecogMatchers http = new RecogMatchers("http_header.server", "http", "service", 0.5f);
+    given(provider1.getMatchers(RecogType.BUILTIN)).willReturn(Arrays.asList(ssh1));
+    given(provider2.getMatchers(RecogType.BUILTIN)).willReturn(null);
+    given(provider3.getMatchers(RecogType.BUILTIN)).willReturn(Arrays.asList(http, ssh2));
+    CompositeRecogMatchersProvider composite = new CompositeRecogMatchersProvider(provider1, provider2, provider3);
+
+    // when
+    List<RecogMatchers> matchers = new ArrayList<>(composite.getMatchers(RecogType.BUILTIN));
+
+    // then
+    assertThat(matchers, hasSize(2));
+    assertThat(matchers.get(0).getKey(), is("ssh.banner"));
+    assertThat(matchers.get(0).getProtocol(), is("ssh"));
+    assertThat(matchers.get(0).getPreference(), is(0.9f));
+    assertThat(matchers.get(0), contains(matcher1, matcher2, matcher4));
+    assertThat(matchers.get(1), is(sameInstance(http)));
+    assertThat(composite.getMatchers(RecogType.CUSTOM), is(nullValue()));
+  }
+
+  @Test
+  public void getContentGenerationChangesWithProviders() {
+    // given
+    IRecogMatchersProvider provider1 = mock(IRecogMatchersProvider.class);
+    IRecogMatchersProvider provider2 = mock(IRecogMatchersProvider.class);
+    given(provider1.getContentGeneration()).willReturn(3L);
+    CompositeRecogMatchersProvider composite = new CompositeRecogMatchersProvider(provider1);
+    long initial = composite.getContentGeneration();
+
+    // when
+    given(provider1.getContentGeneration()).willReturn(4L);
+    long reloaded = composite.getContentGeneration();
+    composite.addProvider(provider2);
+    long added = composite.getContentGeneration();
+
+    // then
+    assertThat(reloaded, is(not(initial)));
+    assertThat(added, is(not(reloaded)));
+  }
 }
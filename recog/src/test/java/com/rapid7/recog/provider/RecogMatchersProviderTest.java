@@ -0,0 +1,134 @@
+package com.rapid7.recog.provider;
+
+import com.rapid7.recog.RecogMatcher;
+import com.rapid7.recog.RecogMatchers;
+import com.rapid7.recog.RecogType;
+import com.rapid7.recog.parser.RecogParser;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RecogMatchersProviderTest {
+
+  @TempDir
+  Path temp;
+
+  @Test
+  public void parallelLoadingLoadsTheSameContent() throws IOException {
+    // given
+    Path content = Files.createDirectories(temp.resolve("content"));
+    for (int file = 0; file < 20; file++)
+      Files.write(content.resolve("banners_" + file + ".xml"), xml("banner." + file, "^Server " + file + "/(\\S+)"));
+    Files.write(content.resolve("broken.xml"), "<fingerprints".getBytes(StandardCharsets.UTF_8));
+    Path zip = temp.resolve("content.zip");
+    try (OutputStream output = Files.newOutputStream(zip); ZipOutputStream entries = new ZipOutputStream(output)) {
+      for (int file = 0; file < 20; file++) {
+        entries.putNextEntry(new ZipEntry("banners_" + file + ".xml"));
+        entries.write(xml("banner." + file, "^Server " + file + "/(\\S+)"));
+        entries.closeEntry();
+      }
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      // when
+      RecogMatchersProvider sequential = new RecogMatchersProvider(RecogType.BUILTIN, content);
+      RecogMatchersProvider parallel = new RecogMatchersProvider(RecogType.BUILTIN, content, executor);
+      RecogMatchersProvider parallelZip = new RecogMatchersProvider(RecogType.BUILTIN, zip, executor);
+
+      // then
+      assertThat(parallel.getVersion().getSha1(), is(sequential.getVersion().getSha1()));
+      assertThat(patterns(parallel), containsInAnyOrder(patterns(sequential).toArray()));
+      assertThat(patterns(parallelZip), containsInAnyOrder(patterns(sequential).toArray()));
+      assertThat(parallel.getMatchers("banners_7.xml", RecogType.BUILTIN).getKey(), is("banner.7"));
+      assertThat(parallelZip.getMatchers("banner.7", RecogType.BUILTIN).get(0).matches("Server 7/1.0"), is(true));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void malformedFilesAreSkipped() throws IOException {
+    // given
+    Path content = Files.createDirectories(temp.resolve("content"));
+    Files.write(content.resolve("banners.xml"), xml("banner", "^Server/(\\S+)"));
+    byte[] malformed = xml("latin1", "^Caf\u00e9/(\\S+)");
+    Files.write(content.resolve("latin1.xml"), new String(malformed, StandardCharsets.UTF_8).getBytes(StandardCharsets.ISO_8859_1));
+
+    // when
+    RecogMatchersProvider provider = new RecogMatchersProvider(RecogType.BUILTIN, content);
+
+    // then
+    assertThat(provider.getMatchers(RecogType.BUILTIN), hasSize(1));
+    assertThat(provider.getMatchers("latin1", RecogType.BUILTIN), is(nullValue()));
+  }
+
+  @Test
+  public void failedLoadingWaitsForAllFiles() throws IOException {
+    // given
+    Path zip = temp.resolve("content.zip");
+    try (OutputStream output = Files.newOutputStream(zip); ZipOutputStream entries = new ZipOutputStream(output)) {
+      entries.putNextEntry(new ZipEntry("a_failing.xml"));
+      entries.write(xml("failing", "^Failing"));
+      entries.closeEntry();
+      for (int file = 0; file < 8; file++) {
+        entries.putNextEntry(new ZipEntry("banners_" + file + ".xml"));
+        entries.write(xml("banner." + file, "^Server " + file + "/(\\S+)"));
+        entries.closeEntry();
+      }
+    }
+    AtomicInteger parsed = new AtomicInteger();
+    RecogParser parser = new RecogParser(false, (pattern, flags) -> {
+      if (pattern.equals("^Failing"))
+        throw new IllegalStateException("Failing");
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+      parsed.incrementAndGet();
+      return RecogParser.DEFAULT_PATTERN_MATCHER_FACTORY.create(pattern, flags);
+    });
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      // when
+      assertThrows(IllegalStateException.class, () -> new RecogMatchersProvider(RecogType.BUILTIN, zip, parser, executor, false, null));
+
+      // then
+      assertThat(parsed.get(), is(8));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static List<String> patterns(RecogMatchersProvider provider) {
+    return provider.getMatchers(RecogType.BUILTIN).stream().flatMap(List::stream).map(RecogMatcher::getPattern).collect(toList());
+  }
+
+  private static byte[] xml(String key, String pattern) {
+    return ("<?xml version=\"1.0\"?>\n"
+        + "<fingerprints matches=\"" + key + "\">\n"
+        + "  <fingerprint pattern=\"" + pattern + "\">\n"
+        + "    <param pos=\"1\" name=\"service.version\"/>\n"
+        + "  </fingerprint>\n"
+        + "</fingerprints>\n").getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,227 @@
+package com.rapid7.recog.provider;
+
+import com.rapid7.recog.RecogEngine;
+import com.rapid7.recog.RecogMatchResult;
+import com.rapid7.recog.RecogMatcher;
+import com.rapid7.recog.RecogMatchers;
+import com.rapid7.recog.RecogType;
+import com.rapid7.recog.RecogVersion;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+
+public class ReloadingRecogMatchersProviderTest {
+
+  @TempDir
+  Path temp;
+
+  @Test
+  public void reloadSwapsInNewContent() throws IOException {
+    // given
+    Path content = Files.createDirectories(temp.resolve("recog-3.1.2"));
+    write(content, "ssh_banners.xml", "ssh.banner", "^SSH-2\\.0-OpenSSH_(\\S+)", "service.version");
+    ReloadingRecogMatchersProvider provider = new ReloadingRecogMatchersProvider(RecogType.BUILTIN, content);
+    RecogMatchers before = provider.getMatchers("ssh.banner", RecogType.BUILTIN);
+    RecogVersion first = provider.getVersion();
+
+    // when
+    write(content, "ssh_banners.xml", "ssh.banner", "^SSH-(\\S+)-", "ssh.protocol");
+    write(content, "http_servers.xml", "http_header.server", "^Apache/(\\S+)", "service.version");
+    RecogVersion second = provider.reload();
+
+    // then
+    assertThat(first.getTag(), is("3.1.2"));
+    assertThat(first.getSha1(), is(notNullValue()));
+    assertThat(second.getSha1(), is(not(first.getSha1())));
+    assertThat(provider.getVersion(), is(second));
+    assertThat(before.get(0).getPattern(), is("^SSH-2\\.0-OpenSSH_(\\S+)"));
+    assertThat(provider.getMatchers("ssh.banner", RecogType.BUILTIN).get(0).getPattern(), is("^SSH-(\\S+)-"));
+    assertThat(provider.getMatchers(RecogType.BUILTIN), hasSize(2));
+    assertThat(provider.getContentGeneration(), is(1L));
+  }
+
+  @Test
+  public void reloadKeepsContentWhenNothingLoads() throws IOException {
+    // given
+    Path content = Files.createDirectories(temp.resolve("content"));
+    write(content, "ssh_banners.xml", "ssh.banner", "^SSH-(\\S+)-", "ssh.protocol");
+    ReloadingRecogMatchersProvider provider = new ReloadingRecogMatchersProvider(RecogType.BUILTIN, content);
+    RecogVersion version = provider.getVersion();
+
+    // when
+    Files.delete(content.resolve("ssh_banners.xml"));
+    RecogVersion reloaded = provider.reload();
+
+    // then
+    assertThat(reloaded, is(version));
+    assertThat(provider.getMatchers(RecogType.BUILTIN), hasSize(1));
+    assertThat(provider.getContentGeneration(), is(0L));
+  }
+
+  @Test
+  public void reloadKeepsContentWhenAServedFileFails() throws IOException {
+    // given
+    Path content = Files.createDirectories(temp.resolve("content"));
+    write(content, "ssh_banners.xml", "ssh.banner", "^SSH-(\\S+)-", "ssh.protocol");
+    write(content, "http_servers.xml", "http_header.server", "^Apache/(\\S+)", "service.version");
+    ReloadingRecogMatchersProvider provider = new ReloadingRecogMatchersProvider(RecogType.BUILTIN, content);
+
+    // when
+    Files.write(content.resolve("ftp_banners.xml"), "<fingerprints".getBytes(StandardCharsets.UTF_8));
+    write(content, "ssh_banners.xml", "ssh.banner", "^SSH-2\\.0-OpenSSH_(\\S+)", "service.version");
+    RecogContentDiff newFileFails = provider.refresh();
+    Files.write(content.resolve("http_servers.xml"), "<fingerprints".getBytes(StandardCharsets.UTF_8));
+    RecogContentDiff servedFileFails = provider.refresh();
+
+    // then
+    assertThat(newFileFails.isEmpty(), is(false));
+    assertThat(servedFileFails.isEmpty(), is(true));
+    assertThat(provider.getMatchers(RecogType.BUILTIN), hasSize(2));
+    assertThat(provider.getMatchers("http_header.server", RecogType.BUILTIN).get(0).getPattern(), is("^Apache/(\\S+)"));
+    assertThat(provider.getMatchers("ssh.banner", RecogType.BUILTIN).get(0).getPattern(), is("^SSH-2\\.0-OpenSSH_(\\S+)"));
+  }
+
+  @Test
+  public void watchFollowsCreatedDirectories() throws IOException, InterruptedException {
+    // given
+    Path content = Files.createDirectories(temp.resolve("content"));
+    write(content, "ssh_banners.xml", "ssh.banner", "^SSH-(\\S+)-", "ssh.protocol");
+    try (ReloadingRecogMatchersProvider provider = new ReloadingRecogMatchersProvider(RecogType.BUILTIN, content)) {
+      provider.watch(Duration.ofMillis(50));
+      Path created = Files.createDirectories(content.resolve("http"));
+      for (int wait = 0; wait < 200 && provider.getContentGeneration() == 0; wait++)
+        Thread.sleep(50);
+
+      // when
+      write(created, "http_servers.xml", "http_header.server", "^Apache/(\\S+)", "service.version");
+      for (int wait = 0; wait < 200 && provider.getMatchers(RecogType.BUILTIN).size() == 1; wait++)
+        Thread.sleep(50);
+
+      // then
+      assertThat(provider.getMatchers(RecogType.BUILTIN), hasSize(2));
+    }
+  }
+
+  @Test
+  public void engineFollowsReloadedContent() throws IOException, InterruptedException {
+    // given
+    Path content = Files.createDirectories(temp.resolve("content"));
+    write(content, "ssh_banners.xml", "ssh.banner", "^SSH-2\\.0-OpenSSH_(\\S+)", "service.version");
+    try (ReloadingRecogMatchersProvider provider = new ReloadingRecogMatchersProvider(RecogType.BUILTIN, content)) {
+      RecogEngine engine = new RecogEngine(provider, RecogType.BUILTIN);
+      provider.watch(Duration.ofMillis(50));
+      String sha1 = provider.getVersion().getSha1();
+
+      // when
+      write(content, "ssh_banners.xml", "ssh.banner", "^SSH-(\\S+)-", "ssh.protocol");
+      for (int wait = 0; wait < 200 && sha1.equals(provider.getVersion().getSha1()); wait++)
+        Thread.sleep(50);
+      List<RecogMatchResult> results = engine.fingerprintByKey("SSH-2.0-OpenSSH_8.9", "ssh.banner");
+
+      // then
+      assertThat(results.stream().map(result -> result.getMatches().get("ssh.protocol")).collect(toList()), contains("2.0"));
+    }
+  }
+
+  @Test
+  public void refreshReusesUnchangedContent() throws IOException {
+    // given
+    Path content = Files.createDirectories(temp.resolve("content"));
+    write(content, "ssh_banners.xml", "ssh.banner", "^SSH-(\\S+)-", "ssh.protocol");
+    write(content, "http_servers.xml", "http_header.server", "^Apache/(\\S+)", "service.version");
+    write(content, "ftp_banners.xml", "ftp.banner", "^220 (\\S+)", "service.product");
+    ReloadingRecogMatchersProvider provider = new ReloadingRecogMatchersProvider(RecogType.BUILTIN, content);
+    RecogMatchers ssh = provider.getMatchers("ssh.banner", RecogType.BUILTIN);
+    RecogMatchers http = provider.getMatchers("http_header.server", RecogType.BUILTIN);
+
+    // when
+    write(content, "http_servers.xml", "http_header.server", "^Apache/(\\S+)", "service.product");
+    Files.delete(content.resolve("ftp_banners.xml"));
+    write(content, "smtp_banners.xml", "smtp.banner", "^220 (\\S+) ESMTP", "host.name");
+    RecogContentDiff diff = provider.refresh();
+    RecogContentDiff unchanged = provider.refresh();
+
+    // then
+    assertThat(provider.getMatchers("ssh.banner", RecogType.BUILTIN), is(sameInstance(ssh)));
+    RecogMatcher changed = provider.getMatchers("http_header.server", RecogType.BUILTIN).get(0);
+    assertThat(changed.getPatternMatcher(), is(sameInstance(http.get(0).getPatternMatcher())));
+    assertThat(diff.getChangedFiles(), contains("ftp_banners.xml", "http_servers.xml", "smtp_banners.xml"));
+    assertThat(diff.getChanged(), contains(changed));
+    assertThat(diff.getAdded().stream().map(RecogMatcher::getPattern).collect(toList()), contains("^220 (\\S+) ESMTP"));
+    assertThat(diff.getRemoved().stream().map(RecogMatcher::getPattern).collect(toList()), contains("^220 (\\S+)"));
+    assertThat(unchanged.isEmpty(), is(true));
+  }
+
+  @Test
+  public void refreshDoesNotChangeServedMatchers() throws IOException {
+    // given
+    Path content = Files.createDirectories(temp.resolve("content"));
+    write(content, "http_servers.xml", "http_header.server", "^Apache/(\\S+)", "service.version");
+    ReloadingRecogMatchersProvider provider = new ReloadingRecogMatchersProvider(RecogType.BUILTIN, content);
+    RecogMatcher served = provider.getMatchers("http_header.server", RecogType.BUILTIN).get(0);
+
+    // when
+    String xml = "<?xml version=\"1.0\"?>\n"
+        + "<fingerprints matches=\"http_header.server\">\n"
+        + "  <fingerprint pattern=\"^nginx/(\\S+)\">\n"
+        + "    <param pos=\"1\" name=\"service.version\"/>\n"
+        + "  </fingerprint>\n"
+        + "  <fingerprint pattern=\"^Apache/(\\S+)\">\n"
+        + "    <param pos=\"1\" name=\"service.version\"/>\n"
+        + "  </fingerprint>\n"
+        + "</fingerprints>\n";
+    Files.write(content.resolve("http_servers.xml"), xml.getBytes(StandardCharsets.UTF_8));
+    RecogContentDiff diff = provider.refresh();
+
+    // then
+    RecogMatcher moved = provider.getMatchers("http_header.server", RecogType.BUILTIN).get(1);
+    assertThat(served.getLine(), is(3));
+    assertThat(moved.getLine(), is(6));
+    assertThat(moved.getPatternMatcher(), is(sameInstance(served.getPatternMatcher())));
+    assertThat(diff.getAdded(), hasSize(1));
+    assertThat(diff.getChanged(), is(empty()));
+  }
+
+  @Test
+  public void refreshReusesPatternsWithInlineFlags() throws IOException {
+    // given
+    Path content = Files.createDirectories(temp.resolve("content"));
+    write(content, "http_servers.xml", "http_header.server", "^Server: (?i)apache/(\\S+)", "service.version");
+    ReloadingRecogMatchersProvider provider = new ReloadingRecogMatchersProvider(RecogType.BUILTIN, content);
+    RecogMatcher before = provider.getMatchers("http_header.server", RecogType.BUILTIN).get(0);
+
+    // when
+    write(content, "http_servers.xml", "http_header.server", "^Server: (?i)apache/(\\S+)", "service.product");
+    provider.refresh();
+
+    // then
+    RecogMatcher after = provider.getMatchers("http_header.server", RecogType.BUILTIN).get(0);
+    assertThat(after, is(not(sameInstance(before))));
+    assertThat(after.getPatternMatcher(), is(sameInstance(before.getPatternMatcher())));
+    assertThat(after.matches("SERVER: apache/2.4"), is(false));
+  }
+
+  private static void write(Path directory, String file, String key, String pattern, String param) throws IOException {
+    String xml = "<?xml version=\"1.0\"?>\n"
+        + "<fingerprints matches=\"" + key + "\">\n"
+        + "  <fingerprint pattern=\"" + pattern + "\">\n"
+        + "    <param pos=\"1\" name=\"" + param + "\"/>\n"
+        + "  </fingerprint>\n"
+        + "</fingerprints>\n";
+    Files.write(directory.resolve(file), xml.getBytes(StandardCharsets.UTF_8));
+  }
+}
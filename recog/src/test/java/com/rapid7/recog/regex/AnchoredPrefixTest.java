@@ -0,0 +1,38 @@
+package com.rapid7.recog.regex;
+
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AnchoredPrefixTest {
+
+  @Test
+  public void literalAfterAnchor() {
+    assertThat(prefix("^SSH-2\\.0-OpenSSH_([\\w.]+)", 0), is("ssh-2.0-openssh_"));
+  }
+
+  @Test
+  public void literalInGroupsAndQuotes() {
+    assertThat(prefix("^(?<product>Boa)/(?<version>[\\d.]+)", 0), is("boa/"));
+    assertThat(prefix("^\\QHTTP/1.\\E[01] ", 0), is("http/1."));
+  }
+
+  @Test
+  public void caseInsensitiveClassIsALetter() {
+    assertThat(prefix("^[Ee]xim ([\\d.]+)", 0), is("exim "));
+    assertThat(prefix("^220[ -]ProFTPD", Pattern.CASE_INSENSITIVE), is("220"));
+  }
+
+  @Test
+  public void noPrefixWithoutAnchor() {
+    assertThat(prefix("Apache", 0), is(""));
+    assertThat(prefix("^Ubuntu|Debian$", 0), is(""));
+    assertThat(prefix("(?m)^Server: (.*)$", Pattern.UNIX_LINES), is(""));
+    assertThat(prefix("^(?:openresty|nginx)/", 0), is(""));
+  }
+
+  private static String prefix(String pattern, int flags) {
+    return AnchoredPrefix.of(RegexParser.parse(pattern, flags));
+  }
+}
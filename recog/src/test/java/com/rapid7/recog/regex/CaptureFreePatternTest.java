@@ -0,0 +1,45 @@
+package com.rapid7.recog.regex;
+
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CaptureFreePatternTest {
+
+  @Test
+  public void capturingGroupsBecomeNonCapturing() {
+    assertThat(captureFree("^Apache/(\\d+)\\.(\\d+)(?: \\((\\w+)\\))?", 0), is("^Apache/(?:\\d+)\\.(?:\\d+)(?: \\((?:\\w+)\\))?"));
+    assertThat(captureFree("^(?<product>Boa)/(?<version>[\\d.]+)", 0), is("^(?:Boa)/(?:[\\d.]+)"));
+  }
+
+  @Test
+  public void otherGroupsAreUnchanged() {
+    assertThat(captureFree("(?i)(?:nginx|openresty)(?=/)(?<!x)(?>a+)", 0), is("(?i)(?:nginx|openresty)(?=/)(?<!x)(?>a+)"));
+    assertThat(captureFree("[(]\\(\\Q(\\E(x)", Pattern.CASE_INSENSITIVE), is("[(]\\(\\Q(\\E(?:x)"));
+  }
+
+  @Test
+  public void backReferencesCannotBeRewritten() {
+    assertThat(captureFree("(\\w+)-\\1", 0), is(nullValue()));
+    assertThat(captureFree("(?<word>\\w+)-\\k<word>", 0), is(nullValue()));
+  }
+
+  @Test
+  public void rewrittenPatternHasNoGroups() {
+    // given
+    String pattern = "^SSH-([\\d.]+)-(?<product>OpenSSH)_(?<version>[\\w.]+)(?: (.+))?$";
+
+    // when
+    Pattern rewritten = Pattern.compile(captureFree(pattern, 0));
+
+    // then
+    assertThat(rewritten.matcher("").groupCount(), is(0));
+    assertThat(rewritten.matcher("SSH-2.0-OpenSSH_8.9p1 Ubuntu-3").find(), is(true));
+  }
+
+  private static String captureFree(String pattern, int flags) {
+    return CaptureFreePattern.of(RegexParser.parse(pattern, flags));
+  }
+}
@@ -0,0 +1,52 @@
+package com.rapid7.recog.regex;
+
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+public class ExactLiteralTest {
+
+  @Test
+  public void literalBetweenAnchors() {
+    // when
+    ExactLiteral literal = exactLiteral("^Apache-Coyote/1\\.1$", Pattern.UNIX_LINES);
+
+    // then
+    assertThat(literal.isCaseInsensitive(), is(false));
+    assertThat(literal.getInputs(), contains("Apache-Coyote/1.1", "Apache-Coyote/1.1\n"));
+  }
+
+  @Test
+  public void caseInsensitiveLiteral() {
+    // when
+    ExactLiteral literal = exactLiteral("^[Nn]ginx\\z", 0);
+
+    // then
+    assertThat(literal.isCaseInsensitive(), is(true));
+    assertThat(literal.getInputs(), contains("nginx"));
+  }
+
+  @Test
+  public void nonUnixLinesDollarAllowsAnyFinalTerminator() {
+    // when
+    ExactLiteral literal = exactLiteral("^$", 0);
+
+    // then
+    assertThat(literal.getInputs(), contains("", "\n", "\r\n", "\r", "\u0085", "\u2028", "\u2029"));
+  }
+
+  @Test
+  public void patternsWithVariablePartsAreNotExact() {
+    assertThat(exactLiteral("^Apache", 0), is(nullValue()));
+    assertThat(exactLiteral("Apache$", 0), is(nullValue()));
+    assertThat(exactLiteral("^Apache/\\d$", 0), is(nullValue()));
+    assertThat(exactLiteral("(?m)^Apache$", 0), is(nullValue()));
+  }
+
+  private static ExactLiteral exactLiteral(String pattern, int flags) {
+    return ExactLiteral.of(RegexParser.parse(pattern, flags));
+  }
+}
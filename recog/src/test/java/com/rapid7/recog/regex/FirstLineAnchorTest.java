@@ -0,0 +1,38 @@
+package com.rapid7.recog.regex;
+
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FirstLineAnchorTest {
+
+  @Test
+  public void anchoredPatternsWithinALineAreConfined() {
+    assertThat(firstLine("^SSH-2\\.0-OpenSSH_([\\w.]+)", 0), is(true));
+    assertThat(firstLine("^Server: (.*)", 0), is(true));
+    assertThat(firstLine("^(?:openresty|nginx)/(\\d+)?(?=\\.)\\b", 0), is(true));
+    assertThat(firstLine("^([^;\\n]+); (\\w+)", 0), is(true));
+  }
+
+  @Test
+  public void patternsMatchingLineBreaksAreNotConfined() {
+    assertThat(firstLine("^Server: (.*)", Pattern.DOTALL), is(false));
+    assertThat(firstLine("^Server:\\s+(\\S+)", 0), is(false));
+    assertThat(firstLine("^([^;]+)", 0), is(false));
+    assertThat(firstLine("^Apache\\n", 0), is(false));
+  }
+
+  @Test
+  public void patternsNotAnchoredToTheFirstLineAreNotConfined() {
+    assertThat(firstLine("Apache/([\\d.]+)", 0), is(false));
+    assertThat(firstLine("^Apache", Pattern.MULTILINE), is(false));
+    assertThat(firstLine("^nginx$", 0), is(false));
+    assertThat(firstLine("^nginx\\z", 0), is(false));
+    assertThat(firstLine("(?:^a|b)", 0), is(false));
+  }
+
+  private static boolean firstLine(String regex, int flags) {
+    return FirstLineAnchor.of(RegexParser.parse(regex, flags));
+  }
+}
@@ -0,0 +1,64 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.PatternRewriter.Result;
+import com.rapid7.recog.regex.PatternRewriter.Rewrite;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PatternRewriterTest {
+
+  @Test
+  public void unusedGroupsAreMadeNonCapturing() {
+    // given
+    RegexTree tree = RegexParser.parse("^(Apache|nginx)/(\\d+)(?:\\.(\\d+))?(?<os> \\(\\w+\\))?", 0);
+
+    // when
+    Result result = PatternRewriter.rewrite(tree, Rewrite.UNUSED_GROUPS, new HashSet<>(Arrays.asList(2, 3)), Collections.emptySet());
+
+    // then
+    assertThat(result.getPattern(), is("^(?:Apache|nginx)/(\\d+)(?:\\.(\\d+))?(?: \\(\\w+\\))?"));
+    assertThat(result.getGroup(1), is(0));
+    assertThat(result.getGroup(2), is(1));
+    assertThat(result.getGroup(3), is(2));
+    assertThat(result.getGroup(4), is(0));
+    assertThat(result.getGroup(6), is(4));
+  }
+
+  @Test
+  public void groupsAreKeptWithBackReferences() {
+    // given
+    RegexTree tree = RegexParser.parse("^(['\"])(\\w+)\\1", 0);
+
+    // when
+    Result result = PatternRewriter.rewrite(tree, Rewrite.UNUSED_GROUPS, Collections.singleton(2), Collections.emptySet());
+
+    // then
+    assertThat(result.getPattern(), is(tree.getPattern()));
+    assertThat(result.getGroup(2), is(2));
+  }
+
+  @Test
+  public void repetitionsFollowedByDisjointCharactersAreMadePossessive() {
+    assertThat(rewrite("^([^;]*); (\\d+)\\.", Rewrite.POSSESSIVE_QUANTIFIERS), is("^([^;]*+); (\\d++)\\."));
+    assertThat(rewrite("(?i)^a*B", Rewrite.POSSESSIVE_QUANTIFIERS), is("(?i)^a*+B"));
+    assertThat(rewrite("^a*A\\w*?x\\d+$", Rewrite.POSSESSIVE_QUANTIFIERS), is("^a*+A\\w*?x\\d+$"));
+    assertThat(rewrite("^[^;,]*(?:;|,)[^;]*(?=;)", Rewrite.POSSESSIVE_QUANTIFIERS), is("^[^;,]*+(?:;|,)[^;]*(?=;)"));
+    assertThat(rewrite("(?i)^a*A", Rewrite.POSSESSIVE_QUANTIFIERS), is("(?i)^a*A"));
+  }
+
+  @Test
+  public void commonPrefixesAreFactoredOutOfAlternations() {
+    assertThat(rewrite("^(?:Apache|Apple|Ap)/", Rewrite.COMMON_PREFIXES), is("^(?:Ap(?:ache|ple|))/"));
+    assertThat(rewrite("^(Microsoft-IIS|Microsoft-HTTPAPI)/(\\d)", Rewrite.COMMON_PREFIXES), is("^(Microsoft-(?:IIS|HTTPAPI))/(\\d)"));
+    assertThat(rewrite("(?:ab(?:cd|ce)|ax)", Rewrite.COMMON_PREFIXES), is("(?:a(?:b(?:c(?:d|e))|x))"));
+    assertThat(rewrite("(?:ab|(?i)ab)", Rewrite.COMMON_PREFIXES), is("(?:ab|(?i)ab)"));
+  }
+
+  private static String rewrite(String regex, Rewrite rewrite) {
+    return PatternRewriter.rewrite(RegexParser.parse(regex, 0), rewrite).getPattern();
+  }
+}
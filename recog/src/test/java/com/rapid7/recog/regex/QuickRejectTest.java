@@ -0,0 +1,55 @@
+package com.rapid7.recog.regex;
+
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class QuickRejectTest {
+
+  @Test
+  public void literalsAreRequired() {
+    // given
+    QuickReject quickReject = quickReject("^SSH-2\\.0-OpenSSH_([\\w.]+)", 0);
+
+    // then
+    assertThat(quickReject.getRequiredChars(), is(CharBitmap.of("ssh-2.0-openssh_")));
+    assertThat(quickReject.getMinLength(), is(17));
+    assertThat(quickReject.rejects(CharBitmap.of("SSH-2.0-OpenSSH_8.9"), 19), is(false));
+    assertThat(quickReject.rejects(CharBitmap.of("SSH-2.0-dropbear_2022.82"), 24), is(true));
+    assertThat(quickReject.rejects(CharBitmap.of("SSH-2.0-OpenSSH_"), 16), is(true));
+  }
+
+  @Test
+  public void caseIsIgnored() {
+    // given
+    QuickReject quickReject = quickReject("[Ee]xim", 0);
+
+    // then
+    assertThat(quickReject.getRequiredChars(), is(CharBitmap.of("exim")));
+    assertThat(quickReject.rejects(CharBitmap.of("EXIM"), 4), is(false));
+    assertThat(quickReject(".*apache.*", Pattern.CASE_INSENSITIVE).rejects(CharBitmap.of("Apache"), 6), is(false));
+  }
+
+  @Test
+  public void alternativesRequireCommonCharacters() {
+    // given
+    QuickReject quickReject = quickReject("^(?:openresty|nginx)/(\\d+)?", 0);
+
+    // then
+    assertThat(quickReject.getRequiredChars(), is(CharBitmap.of("n/")));
+    assertThat(quickReject.getMinLength(), is(6));
+  }
+
+  @Test
+  public void optionalPartsAreNotRequired() {
+    assertThat(quickReject("(?:Server: )?Apache(?=/)\\b", 0).getRequiredChars(), is(CharBitmap.of("apache")));
+    assertThat(quickReject("(x)?\\1y{0,3}", 0), is(QuickReject.NONE));
+    assertThat(quickReject("[a-z]{2,}", 0).getMinLength(), is(2));
+    assertThat(quickReject("^$", 0), is(QuickReject.NONE));
+  }
+
+  private static QuickReject quickReject(String pattern, int flags) {
+    return QuickReject.of(RegexParser.parse(pattern, flags));
+  }
+}
@@ -0,0 +1,113 @@
+package com.rapid7.recog.regex;
+
+import com.rapid7.recog.regex.RequiredLiterals.Literal;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RequiredLiteralsTest {
+
+  @Test
+  public void literalPattern() {
+    // when
+    List<Literal> literals = requiredLiterals("^Apache HTTPD$", Pattern.UNIX_LINES);
+
+    // then
+    assertThat(literals, containsInAnyOrder(new Literal("Apache HTTPD", false)));
+  }
+
+  @Test
+  public void longestLiteralIsPreferred() {
+    // when
+    List<Literal> literals = requiredLiterals("^Apache(?:-AdvancedExtranetServer)?(?:/([012][\\d.]*)\\s*(.*))?$", Pattern.UNIX_LINES);
+
+    // then
+    assertThat(literals, containsInAnyOrder(new Literal("Apache", false)));
+  }
+
+  @Test
+  public void literalAfterVariablePart() {
+    // when
+    List<Literal> literals = requiredLiterals("^SSH-([\\d.]+)-OpenSSH_([\\w.]+)", Pattern.UNIX_LINES);
+
+    // then
+    assertThat(literals, containsInAnyOrder(new Literal("-OpenSSH_", false)));
+  }
+
+  @Test
+  public void caseInsensitiveFlag() {
+    // when
+    List<Literal> literals = requiredLiterals("^Microsoft-IIS/([\\d.]+)$", Pattern.UNIX_LINES | Pattern.CASE_INSENSITIVE);
+
+    // then
+    assertThat(literals, containsInAnyOrder(new Literal("microsoft-iis/", true)));
+  }
+
+  @Test
+  public void inlineCaseInsensitiveFlagIsScoped() {
+    // when
+    List<Literal> literals = requiredLiterals("(?:(?i)ab)cd", Pattern.UNIX_LINES);
+
+    // then - mixed case sensitivity degrades to case-insensitive
+    assertThat(literals, containsInAnyOrder(new Literal("abcd", true)));
+  }
+
+  @Test
+  public void alternationYieldsDisjunction() {
+    // when
+    List<Literal> literals = requiredLiterals("(?:nginx|openresty)/([\\d.]+)", Pattern.UNIX_LINES);
+
+    // then
+    assertThat(literals, containsInAnyOrder(new Literal("nginx/", false), new Literal("openresty/", false)));
+  }
+
+  @Test
+  public void smallClassesExpand() {
+    // when
+    List<Literal> literals = requiredLiterals("[Ss]erver: [ab]", Pattern.UNIX_LINES);
+
+    // then
+    assertThat(literals, containsInAnyOrder(new Literal("server: a", true), new Literal("server: b", true)));
+  }
+
+  @Test
+  public void optionalPatternRequiresNothing() {
+    // when
+    List<Literal> literals = requiredLiterals("^(?:Apache)?.*$", Pattern.UNIX_LINES);
+
+    // then
+    assertThat(literals, is(empty()));
+  }
+
+  @Test
+  public void alternationWithUnconstrainedBranchRequiresNothing() {
+    // when
+    List<Literal> literals = requiredLiterals("Apache|\\d+", Pattern.UNIX_LINES);
+
+    // then
+    assertThat(literals, is(empty()));
+  }
+
+  @Test
+  public void quotedLiteral() {
+    // when
+    List<Literal> literals = requiredLiterals("\\Q(a.b)\\E+", Pattern.UNIX_LINES);
+
+    // then - like Pattern, the quantifier applies to the last quoted character only
+    assertThat(literals, containsInAnyOrder(new Literal("(a.b", false)));
+  }
+
+  @Test
+  public void unsupportedConstructIsRejected() {
+    assertThrows(UnsupportedRegexException.class, () -> RegexParser.parse("\\p{L}+", Pattern.UNIX_LINES));
+  }
+
+  private static List<Literal> requiredLiterals(String pattern, int flags) {
+    return RequiredLiterals.of(RegexParser.parse(pattern, flags));
+  }
+}
@@ -0,0 +1,110 @@
+package com.rapid7.recog;
+
+import com.rapid7.recog.provider.IRecogMatchersProvider;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+
+public class FlowFingerprintProcessorTest {
+
+  private static final RecogMatchers MATCHERS = TestFingerprints.matchers();
+
+  private static final IRecogMatchersProvider PROVIDER = new IRecogMatchersProvider() {
+    @Override
+    public RecogMatchers getMatchers(String name, RecogType type) {
+      return "test".equals(name) ? MATCHERS : null;
+    }
+
+    @Override
+    public Collection<RecogMatchers> getMatchers(RecogType type) {
+      return Collections.singletonList(MATCHERS);
+    }
+  };
+
+  @Test
+  public void processesRecordsOfAFlowPublisher() throws Exception {
+    // given
+    ForkJoinPool pool = new ForkJoinPool(4);
+    FlowFingerprintProcessor<Entry<String, String>> processor = new FlowFingerprintProcessor<>(new FingerprintProcessor<>(
+        PROVIDER, RecogType.BUILTIN, Entry::getKey, Entry::getValue, pool, 4, true));
+    Subscriber subscriber = new Subscriber();
+    List<String> banners = TestFingerprints.banners();
+
+    // when
+    try (SubmissionPublisher<Entry<String, String>> publisher = new SubmissionPublisher<>(pool, 2)) {
+      publisher.subscribe(processor);
+      processor.subscribe(subscriber);
+      for (String banner : banners)
+        publisher.submit(new SimpleEntry<>("test", banner));
+    }
+
+    // then
+    assertThat(subscriber.completed.await(10, TimeUnit.SECONDS), is(true));
+    pool.shutdown();
+    assertThat(subscriber.errors, is(empty()));
+    assertThat(subscriber.results.stream().map(result -> result.getRecord().getValue()).collect(toList()), is(banners));
+    for (FingerprintResult<Entry<String, String>> result : subscriber.results)
+      assertThat(result.getMatches(), hasSize(MATCHERS.getMatches(result.getRecord().getValue()).size()));
+  }
+
+  @Test
+  public void rejectsASecondSubscriber() {
+    // given
+    FlowFingerprintProcessor<Entry<String, String>> processor = new FlowFingerprintProcessor<>(new FingerprintProcessor<>(
+        PROVIDER, RecogType.BUILTIN, Entry::getKey, Entry::getValue, Runnable::run, 2, true));
+    processor.subscribe(new Subscriber());
+    Subscriber second = new Subscriber();
+
+    // when
+    processor.subscribe(second);
+
+    // then
+    assertThat(second.subscription, is(instanceOf(Flow.Subscription.class)));
+    assertThat(second.errors, hasSize(1));
+    assertThat(second.errors.get(0), is(instanceOf(IllegalStateException.class)));
+  }
+
+  /** Requests every result as soon as it is subscribed. */
+  private static final class Subscriber implements Flow.Subscriber<FingerprintResult<Entry<String, String>>> {
+    private final List<FingerprintResult<Entry<String, String>>> results = new CopyOnWriteArrayList<>();
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private volatile Flow.Subscription subscription;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(FingerprintResult<Entry<String, String>> result) {
+      results.add(result);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      errors.add(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      completed.countDown();
+    }
+  }
+}